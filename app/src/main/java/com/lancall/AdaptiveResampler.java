@@ -0,0 +1,139 @@
+package com.lancall;
+
+/**
+ * محول معدل بنسبة متغيرة دقيقة - لتعويض انحراف الساعة بأجزاء من المليون
+ * Resampler for ratios a hair away from 1, adjustable per call: absorbs
+ * the clock drift between the sender's capture and our playout without
+ * the audible jumps of dropping or repeating samples.
+ *
+ * Each output sample is a windowed-sinc interpolation of the input at a
+ * fractional position that advances by the ratio. The kernel is tabulated
+ * at 128 phases per sample and interpolated linearly between phases, so
+ * any ratio works without redesigning a filter. At ratio 1 the position
+ * stays on whole samples and the input comes back unchanged, 12 samples
+ * late.
+ *
+ * Streaming on {@code short[]}; one instance per thread, nothing is
+ * allocated per call.
+ */
+public class AdaptiveResampler {
+
+    public static final double MAX_DEVIATION = 0.01; // ±1%، أكبر بكثير من أي انحراف ساعة
+    private static final int TAPS = 24;
+    private static final int PHASES = 128;
+    private static final double KAISER_BETA = 8.0;
+
+    private final float[] kernel; // النواة عند u = m / PHASES - TAPS / 2
+    private final float[] history;
+    private final int maxInputSamples;
+
+    private int filled;
+    private double position; // موقع الخرج التالي في history
+    private double ratio = 1.0;
+
+    /**
+     * @param maxInputSamples largest chunk passed to {@link #process}
+     */
+    public AdaptiveResampler(int maxInputSamples) {
+        this.maxInputSamples = maxInputSamples;
+        kernel = new float[TAPS * PHASES + 1];
+        double half = TAPS / 2.0;
+        double norm = besselI0(KAISER_BETA);
+        for (int m = 0; m < kernel.length; m++) {
+            double u = (double) m / PHASES - half;
+            double sinc = u == 0 ? 1.0 : Math.sin(Math.PI * u) / (Math.PI * u);
+            double x = u / half;
+            kernel[m] = (float) (sinc * besselI0(KAISER_BETA * Math.sqrt(Math.max(0.0, 1.0 - x * x))) / norm);
+        }
+        history = new float[TAPS + maxInputSamples + 1];
+        reset();
+    }
+
+    /**
+     * النسبة - Input samples consumed per output sample: above 1 plays the
+     * input in less time, below 1 in more. Clamped to 1 ± {@link #MAX_DEVIATION}.
+     */
+    public void setRatio(double ratio) {
+        this.ratio = Math.max(1.0 - MAX_DEVIATION, Math.min(1.0 + MAX_DEVIATION, ratio));
+    }
+
+    public double getRatio() {
+        return ratio;
+    }
+
+    /** أقصى خرج لدفعة - Upper bound on the samples {@link #process} returns for {@code inputSamples}. */
+    public static int getMaxOutputSamples(int inputSamples) {
+        return (int) Math.ceil(inputSamples / (1.0 - MAX_DEVIATION)) + 2;
+    }
+
+    /**
+     * تحويل دفعة - Resample a chunk.
+     *
+     * @param out room for {@link #getMaxOutputSamples(int)} samples
+     * @return samples written to {@code out}
+     */
+    public int process(short[] in, int inOffset, int inSamples, short[] out, int outOffset) {
+        if (inSamples > maxInputSamples) {
+            throw new IllegalArgumentException("Chunk larger than " + maxInputSamples + ": " + inSamples);
+        }
+        float[] x = history;
+        for (int i = 0; i < inSamples; i++) {
+            x[filled + i] = in[inOffset + i];
+        }
+        filled += inSamples;
+
+        int half = TAPS / 2;
+        int produced = 0;
+        while ((int) position + half < filled) {
+            int whole = (int) position;
+            double phase = (position - whole) * PHASES;
+            int step = (int) phase;
+            float fraction = (float) (phase - step);
+            // العينة whole - half + 1 + k تقابل u = f + TAPS - 1 - k في النواة
+            int first = whole - half + 1;
+            float sum = 0f;
+            for (int k = 0; k < TAPS; k++) {
+                int index = (TAPS - 1 - k) * PHASES + step;
+                float weight = kernel[index] + fraction * (kernel[index + 1] - kernel[index]);
+                sum += weight * x[first + k];
+            }
+            out[outOffset + produced++] = clip(sum);
+            position += ratio;
+        }
+
+        // إبقاء ما يحتاجه الخرج التالي فقط - keep only the history the next output needs
+        int consumed = (int) position - (half - 1);
+        if (consumed > 0) {
+            int keep = filled - consumed;
+            System.arraycopy(x, consumed, x, 0, keep);
+            filled = keep;
+            position -= consumed;
+        }
+        return produced;
+    }
+
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0f;
+        }
+        filled = TAPS - 1;
+        position = TAPS / 2 - 1;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2.0 * k)) * (x / (2.0 * k));
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static short clip(float value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
@@ -0,0 +1,47 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * واجهة الترميز الصوتي - تقع بين التقاط الصوت وإرسال الحزمة وبين استقبالها وتشغيلها
+ * Audio codec SPI - sits between capture and the datagram payload on send,
+ * and mirrors it on receive.
+ *
+ * Encoders may keep state between frames, but every encoded frame must be
+ * decodable on its own so a lost datagram never desynchronises the decoder.
+ * Offsets into the {@link ByteBuffer} are absolute; implementations must not
+ * change its position or allocate per call.
+ */
+public interface AudioCodec {
+
+    /** اسم الترميز كما يظهر في رسائل الإشارات - Name used in call negotiation */
+    String getName();
+
+    /** نوع الحمولة في ترويسة MediaPacket - Payload type carried in the media header */
+    int getPayloadType();
+
+    /** أكبر حجم ممكن بالبايت لإطار من {@code samples} عينة */
+    int getMaxEncodedSize(int samples);
+
+    /** عدد العينات الناتجة عن فك حمولة بطول {@code encodedLength} */
+    int getDecodedSamples(int encodedLength);
+
+    /**
+     * ترميز إطار - Encode {@code samples} PCM samples into {@code out} at
+     * {@code outOffset}.
+     *
+     * @return number of bytes written
+     */
+    int encode(short[] pcm, int offset, int samples, ByteBuffer out, int outOffset);
+
+    /**
+     * فك ترميز إطار - Decode {@code length} bytes at {@code inOffset} into
+     * {@code pcm} at {@code pcmOffset}.
+     *
+     * @return number of samples written
+     */
+    int decode(ByteBuffer in, int inOffset, int length, short[] pcm, int pcmOffset);
+
+    /** إعادة ضبط حالة المرمّز بين المكالمات - Reset encoder state between calls */
+    void reset();
+}
@@ -0,0 +1,75 @@
+package com.lancall;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * سجل الترميزات الصوتية والتفاوض عليها - Audio codec registry and negotiation
+ * The caller offers {@link #getSupportedNames()} in preference order and the
+ * callee picks the first entry it also supports. Receivers never depend on
+ * the outcome: every datagram names its codec through the payload type.
+ */
+public final class AudioCodecs {
+
+    // ترتيب التفضيل: الأكثر توفيراً لعرض النطاق أولاً - most bandwidth-efficient first
+    private static final List<String> SUPPORTED = Arrays.asList(
+            ImaAdpcmCodec.NAME,
+            G711Codec.NAME_MU_LAW,
+            G711Codec.NAME_A_LAW,
+            Pcm16Codec.NAME);
+
+    private AudioCodecs() {
+    }
+
+    public static List<String> getSupportedNames() {
+        return new ArrayList<>(SUPPORTED);
+    }
+
+    /**
+     * إنشاء ترميز بالاسم - Create a codec by negotiated name.
+     *
+     * @return the codec, or null if the name is unknown
+     */
+    public static AudioCodec create(String name) {
+        if (ImaAdpcmCodec.NAME.equals(name)) {
+            return new ImaAdpcmCodec();
+        } else if (G711Codec.NAME_MU_LAW.equals(name)) {
+            return new G711Codec(false);
+        } else if (G711Codec.NAME_A_LAW.equals(name)) {
+            return new G711Codec(true);
+        } else if (Pcm16Codec.NAME.equals(name)) {
+            return new Pcm16Codec();
+        }
+        return null;
+    }
+
+    /**
+     * جدول مفككات الترميز مفهرس بنوع الحمولة - Decoder table indexed by
+     * payload type, built once per call so the receive path never allocates.
+     */
+    public static AudioCodec[] createDecoderTable() {
+        AudioCodec[] table = new AudioCodec[MediaPacket.MAX_PAYLOAD_TYPES];
+        for (String name : SUPPORTED) {
+            AudioCodec codec = create(name);
+            table[codec.getPayloadType()] = codec;
+        }
+        return table;
+    }
+
+    /**
+     * اختيار الترميز من عرض المتصل - Pick the first offered codec we support.
+     * Peers that predate negotiation send no offer and get raw PCM.
+     */
+    public static String negotiate(List<String> offered) {
+        if (offered == null || offered.isEmpty()) {
+            return Pcm16Codec.NAME;
+        }
+        for (String name : offered) {
+            if (SUPPORTED.contains(name)) {
+                return name;
+            }
+        }
+        return Pcm16Codec.NAME;
+    }
+}
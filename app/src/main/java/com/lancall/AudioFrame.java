@@ -0,0 +1,20 @@
+package com.lancall;
+
+/**
+ * إطار صوت PCM معاد الاستخدام - خانة في حلقات التسليم بين الخيوط
+ * Reusable PCM frame - the slot type of the rings that hand audio between
+ * threads. The sample array is allocated once at its maximum size.
+ */
+public class AudioFrame {
+
+    public final short[] pcm;
+    public int samples; // عدد العينات الصالحة في pcm
+    public long mediaTimestamp; // موقع أول عينة على ساعة الوسائط - in samples
+    public long timestampNanos; // وقت اكتمال الالتقاط أو التشغيل - System.nanoTime()
+    public boolean speech; // قرار كاشف الكلام، أو إطار مفكوك عند التشغيل
+    public double noiseLevelDbov; // مستوى الضجيج الخلفي كما سيرسل - set by the VAD, moved by gain stages
+
+    public AudioFrame(int maxSamples) {
+        this.pcm = new short[maxSamples];
+    }
+}
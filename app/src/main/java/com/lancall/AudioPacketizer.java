@@ -0,0 +1,266 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * مرمز الحزم - يحول الإطار المعالج إلى حزمة وسائط: ترميز، تكرار، إرسال متقطع وتكافؤ
+ * Turns processed capture frames into media packets: encoding, RED,
+ * DTX with comfort noise descriptors, and XOR parity.
+ *
+ * Speech frames ({@link AudioFrame#speech}) are encoded straight into the
+ * payload area of the caller's packet buffer. During silence only a comfort
+ * noise descriptor at {@link AudioFrame#noiseLevelDbov} goes out, at the
+ * start of the pause and then every {@link #COMFORT_NOISE_INTERVAL_MS}.
+ * Descriptors do not consume a sequence number, so gaps still mean loss.
+ *
+ * A packet may carry several capture frames ({@link #setFramesPerPacket}):
+ * their samples are gathered and encoded as one longer frame, so the packet
+ * time grows without touching the capture side. The encoder and FEC can be
+ * swapped between packets ({@link #reconfigure}); both serve the
+ * {@link BitrateController}.
+ *
+ * Knows nothing about sockets: the caller sends what {@link #packetize},
+ * {@link #packetizeParity} and {@link #packetizeReport} write. One instance per call, on the
+ * sending thread; nothing is allocated per frame.
+ */
+public class AudioPacketizer {
+
+    // الإرسال المتقطع - DTX: during silence only a comfort noise descriptor goes out, this often
+    public static final int COMFORT_NOISE_INTERVAL_MS = 200;
+
+    private AudioCodec encoder;
+    private FecEncoder fec;
+    private final int streamId;
+    private final int descriptorInterval; // بالإطارات
+
+    // تجميع الإطارات في حزمة واحدة - frames gathered for the next packet
+    private final short[] pending;
+    private int framesPerPacket = 1;
+    private int pendingFrames;
+    private int pendingSamples;
+    private long pendingTimestamp;
+
+    private int sequenceNumber;
+    private boolean talkspurtStart = true;
+    private int silentFrames;
+    private boolean lastSpeech;
+    private int lastPayloadBytes;
+
+    private long framesPacketized;
+    private long framesSuppressed;
+    private long descriptorsSent;
+    private long paritySent;
+    private long reportsSent;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * @param ptime             capture ptime, the duration of one frame
+     * @param maxPacketSamples  most samples one packet may gather
+     */
+    public AudioPacketizer(AudioCodec encoder, FecEncoder fec, int ptime, int streamId, int maxPacketSamples) {
+        this.encoder = encoder;
+        this.fec = fec;
+        this.streamId = streamId;
+        this.descriptorInterval = Math.max(1, COMFORT_NOISE_INTERVAL_MS / ptime);
+        this.pending = new short[maxPacketSamples];
+    }
+
+    /**
+     * تغيير الترميز أو FEC - Encode the next packets with another codec or
+     * FEC mode. Takes effect at the next packet; the receiver follows the
+     * payload type.
+     */
+    public void reconfigure(AudioCodec encoder, FecEncoder fec) {
+        this.encoder = encoder;
+        this.fec = fec;
+    }
+
+    /**
+     * إطارات في كل حزمة - Capture frames per packet; the packet time is this
+     * many capture ptimes. Frames already gathered go out with the next packet.
+     */
+    public void setFramesPerPacket(int frames) {
+        framesPerPacket = Math.max(1, frames);
+    }
+
+    public int getFramesPerPacket() {
+        return framesPerPacket;
+    }
+
+    /**
+     * تحويل إطار إلى حزمة - Write the packet for one frame.
+     *
+     * @param packet buffer of at least the FEC frame MTU; header and payload
+     *               are written from index 0
+     * @return packet length, or 0 when DTX suppresses the frame or it waits
+     *         for the rest of its packet
+     */
+    public int packetize(AudioFrame frame, ByteBuffer packet) {
+        long start = System.nanoTime();
+        int length = write(frame, packet);
+        long elapsed = System.nanoTime() - start;
+        totalNanos += elapsed;
+        if (elapsed > maxNanos) {
+            maxNanos = elapsed;
+        }
+        framesPacketized++;
+        return length;
+    }
+
+    private int write(AudioFrame frame, ByteBuffer packet) {
+        lastSpeech = frame.speech;
+        if (frame.speech) {
+            if (framesPerPacket == 1 && pendingFrames == 0) {
+                return writeSpeech(frame.pcm, frame.samples, frame.mediaTimestamp, packet);
+            }
+            // إطار منقطع عن المجمع (حلقة الالتقاط أهملت إطارات) - send what we have, start over
+            if (pendingFrames > 0 && frame.mediaTimestamp != pendingTimestamp + pendingSamples) {
+                int length = flush(packet);
+                gather(frame);
+                return length;
+            }
+            gather(frame);
+            return pendingFrames >= framesPerPacket ? flush(packet) : 0;
+        }
+
+        // نهاية الكلام تخرج المجمع أولاً، والواصف مع الإطار التالي - the descriptor follows one frame later
+        if (pendingFrames > 0) {
+            return flush(packet);
+        }
+        // DTX: واصف ضجيج عند بداية الصمت ثم كل COMFORT_NOISE_INTERVAL_MS فقط
+        talkspurtStart = true;
+        fec.onSilence();
+        if (silentFrames++ % descriptorInterval != 0) {
+            framesSuppressed++;
+            lastPayloadBytes = 0;
+            return 0;
+        }
+        int payloadBytes = ComfortNoise.writeDescriptor(packet, MediaPacket.HEADER_SIZE, frame.noiseLevelDbov);
+        // الواصف لا يستهلك رقم تسلسل - descriptors bypass the jitter buffer
+        MediaPacket.writeHeader(packet, 0, 0, MediaPacket.PAYLOAD_CN, sequenceNumber, frame.mediaTimestamp,
+                streamId);
+        descriptorsSent++;
+        lastPayloadBytes = payloadBytes;
+        return MediaPacket.HEADER_SIZE + payloadBytes;
+    }
+
+    private void gather(AudioFrame frame) {
+        if (pendingFrames == 0) {
+            pendingTimestamp = frame.mediaTimestamp;
+        }
+        int samples = Math.min(frame.samples, pending.length - pendingSamples);
+        System.arraycopy(frame.pcm, 0, pending, pendingSamples, samples);
+        pendingSamples += samples;
+        pendingFrames++;
+        if (pendingSamples == pending.length) {
+            pendingFrames = framesPerPacket; // لا مكان لإطار آخر
+        }
+    }
+
+    private int flush(ByteBuffer packet) {
+        int length = writeSpeech(pending, pendingSamples, pendingTimestamp, packet);
+        pendingFrames = 0;
+        pendingSamples = 0;
+        return length;
+    }
+
+    private int writeSpeech(short[] pcm, int samples, long mediaTimestamp, ByteBuffer packet) {
+        // مع RED يسبق الإطار السابق الإطار الحالي - RED puts the previous frame first
+        int payloadOffset = MediaPacket.HEADER_SIZE;
+        if (fec.isRedundant()) {
+            payloadOffset += fec.writeRedundancy(packet, payloadOffset, encoder.getPayloadType(), mediaTimestamp);
+        }
+        // الترميز مباشرة في منطقة الحمولة - encode straight into the payload area
+        int encoded = encoder.encode(pcm, 0, samples, packet, payloadOffset);
+        fec.onFrameSent(packet, payloadOffset, encoded, encoder.getPayloadType(), mediaTimestamp, sequenceNumber);
+        int payloadBytes = payloadOffset - MediaPacket.HEADER_SIZE + encoded;
+        int payloadType = fec.isRedundant() ? MediaPacket.PAYLOAD_RED : encoder.getPayloadType();
+        int flags = 0;
+        if (talkspurtStart) {
+            flags = MediaPacket.FLAG_MARKER;
+            talkspurtStart = false;
+        }
+        silentFrames = 0;
+
+        MediaPacket.writeHeader(packet, 0, flags, payloadType, sequenceNumber, mediaTimestamp, streamId);
+        sequenceNumber++;
+        lastPayloadBytes = payloadBytes;
+        return MediaPacket.HEADER_SIZE + payloadBytes;
+    }
+
+    /**
+     * حزمة التكافؤ إن حان وقتها - Write the parity packet due after the last
+     * frame: after every full group, or for a partial group when silence
+     * starts.
+     *
+     * @return packet length, or 0 when no parity is due
+     */
+    public int packetizeParity(ByteBuffer packet) {
+        if (!fec.isParityReady() && (lastSpeech || !fec.hasPendingParity())) {
+            return 0;
+        }
+        int baseSequence = fec.getParityBaseSequence();
+        long baseTimestamp = fec.getParityBaseTimestamp();
+        int parityBytes = fec.writeParity(packet, MediaPacket.HEADER_SIZE);
+        MediaPacket.writeHeader(packet, 0, 0, MediaPacket.PAYLOAD_PARITY, baseSequence, baseTimestamp, streamId);
+        paritySent++;
+        return MediaPacket.HEADER_SIZE + parityBytes;
+    }
+
+    /**
+     * حزمة التقرير - Write a control report behind a header for this stream.
+     * Like a descriptor it takes the next sequence number without consuming it.
+     *
+     * @param mediaTimestamp timestamp of the last frame captured
+     * @return packet length
+     */
+    public int packetizeReport(MediaReport report, long mediaTimestamp, ByteBuffer packet) {
+        int reportBytes = report.write(packet, MediaPacket.HEADER_SIZE);
+        MediaPacket.writeHeader(packet, 0, 0, MediaPacket.PAYLOAD_REPORT, sequenceNumber, mediaTimestamp, streamId);
+        reportsSent++;
+        return MediaPacket.HEADER_SIZE + reportBytes;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    /** عدد إطارات الكلام المرسلة - Media frames sent, which is also the next sequence number. */
+    public int getFramesSent() {
+        return sequenceNumber;
+    }
+
+    public int getLastPayloadBytes() {
+        return lastPayloadBytes;
+    }
+
+    public long getFramesPacketized() {
+        return framesPacketized;
+    }
+
+    public long getFramesSuppressed() {
+        return framesSuppressed;
+    }
+
+    public long getDescriptorsSent() {
+        return descriptorsSent;
+    }
+
+    public long getParitySent() {
+        return paritySent;
+    }
+
+    public long getReportsSent() {
+        return reportsSent;
+    }
+
+    /** متوسط زمن الترميز لكل إطار - Mean time per frame, in microseconds. */
+    public double getMeanMicros() {
+        return framesPacketized > 0 ? totalNanos / 1000.0 / framesPacketized : 0.0;
+    }
+
+    public double getMaxMicros() {
+        return maxNanos / 1000.0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.lancall;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * سلسلة مراحل المعالجة - تمرر الإطار على المراحل بالترتيب وتقيس زمن كل مرحلة
+ * Ordered chain of {@link AudioProcessor} stages with per-stage timing.
+ *
+ * Stages are added once while the call is set up; {@link #process} then
+ * runs them in order on the same frame and records the time each one took,
+ * so a slow stage shows up by name in the call log or a JVM benchmark. A
+ * pipeline is itself a stage and can be nested.
+ *
+ * Not thread-safe: build on one thread, then run on the media thread only.
+ */
+public class AudioPipeline implements AudioProcessor {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<AudioProcessor> stages = new ArrayList<>();
+    private AudioProcessor[] chain = new AudioProcessor[0];
+    private long[] totalNanos = new long[0];
+    private long[] maxNanos = new long[0];
+    private long frames;
+
+    /**
+     * إضافة مرحلة في النهاية - Append a stage.
+     *
+     * @param name shown in {@link #describeTimings()}
+     */
+    public AudioPipeline add(String name, AudioProcessor stage) {
+        names.add(name);
+        stages.add(stage);
+        chain = stages.toArray(new AudioProcessor[0]);
+        totalNanos = new long[chain.length];
+        maxNanos = new long[chain.length];
+        frames = 0;
+        return this;
+    }
+
+    @Override
+    public void process(AudioFrame frame) {
+        AudioProcessor[] current = chain;
+        long start = System.nanoTime();
+        for (int i = 0; i < current.length; i++) {
+            current[i].process(frame);
+            long end = System.nanoTime();
+            long elapsed = end - start;
+            totalNanos[i] += elapsed;
+            if (elapsed > maxNanos[i]) {
+                maxNanos[i] = elapsed;
+            }
+            start = end;
+        }
+        frames++;
+    }
+
+    public int getStageCount() {
+        return chain.length;
+    }
+
+    public String getStageName(int stage) {
+        return names.get(stage);
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /** متوسط زمن المرحلة لكل إطار - Mean time of a stage per frame, in microseconds. */
+    public double getMeanMicros(int stage) {
+        return frames > 0 ? totalNanos[stage] / 1000.0 / frames : 0.0;
+    }
+
+    public double getMaxMicros(int stage) {
+        return maxNanos[stage] / 1000.0;
+    }
+
+    public void resetTimings() {
+        for (int i = 0; i < chain.length; i++) {
+            totalNanos[i] = 0;
+            maxNanos[i] = 0;
+        }
+        frames = 0;
+    }
+
+    /**
+     * ملخص الأزمنة للسجل - One-line summary such as
+     * {@code "aec 310/1200us, ns 180/900us"} (mean/max per frame). Allocates;
+     * call it at the end of a call, not per frame.
+     */
+    public String describeTimings() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < chain.length; i++) {
+            if (i > 0) {
+                summary.append(", ");
+            }
+            summary.append(names.get(i)).append(' ')
+                    .append(Math.round(getMeanMicros(i))).append('/')
+                    .append(Math.round(getMaxMicros(i))).append("us");
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * مشغل المسار الكامل داخل العملية - التقاط ثم معالجة ثم ترميز ثم استقبال ثم تشغيل بدون شبكة أو هاتف
+ * Runs the whole media path in-process: source → capture pipeline →
+ * packetizer → (simulated network) → receiver → playout pipeline → sink.
+ *
+ * Time is simulated: every frame advances the clock by one ptime, packets
+ * arrive at the time they were sent, and an optional loss rate drops
+ * packets at random. Nothing waits, so a JVM runs the path as fast as the
+ * processing allows and the per-stage timings show what each stage costs.
+ * Only runs one direction; for a two-way call use two runners.
+ *
+ * Not thread-safe; nothing is allocated per frame.
+ */
+public class AudioPipelineRunner {
+
+    private final AudioSource source;
+    private final AudioPipeline capture;
+    private final AudioPacketizer packetizer;
+    private final AudioReceiver receiver;
+    private final AudioPipeline playout;
+    private final AudioSink sink;
+    private final int ptime;
+    private final int frameSamples;
+
+    private final AudioFrame captureFrame;
+    private final AudioFrame playoutFrame;
+    private final ByteBuffer packet;
+    private final ByteBuffer parity;
+
+    private Random random;
+    private double lossRate;
+
+    private long nowMs;
+    private long mediaTimestamp;
+    private long frames;
+    private long packetsSent;
+    private long packetsLost;
+
+    /**
+     * @param maxFrameSamples the receiver's largest frame
+     * @param maxPacketBytes  size of the packet buffers, as on the sending thread
+     */
+    public AudioPipelineRunner(AudioSource source, AudioPipeline capture, AudioPacketizer packetizer,
+            AudioReceiver receiver, AudioPipeline playout, AudioSink sink, int ptime, int maxFrameSamples,
+            int maxPacketBytes) {
+        this.source = source;
+        this.capture = capture;
+        this.packetizer = packetizer;
+        this.receiver = receiver;
+        this.playout = playout;
+        this.sink = sink;
+        this.ptime = ptime;
+        this.frameSamples = FramePacer.samplesPerFrame(source.getSampleRate(), ptime);
+        captureFrame = new AudioFrame(frameSamples);
+        playoutFrame = new AudioFrame(AudioReceiver.getMaxPlayoutSamples(maxFrameSamples));
+        packet = ByteBuffer.allocate(maxPacketBytes);
+        parity = ByteBuffer.allocate(maxPacketBytes);
+    }
+
+    /**
+     * فقدان عشوائي للحزم - Drop each packet with the given probability.
+     *
+     * @param seed fixed seed so runs are repeatable
+     */
+    public void setPacketLoss(double probability, long seed) {
+        lossRate = probability;
+        random = new Random(seed);
+    }
+
+    /**
+     * تشغيل المسار - Run until the source ends or {@code maxFrames} frames
+     * have gone through.
+     *
+     * @return frames run
+     */
+    public long run(long maxFrames) {
+        long start = frames;
+        while (frames - start < maxFrames) {
+            int read = source.read(captureFrame.pcm, 0, frameSamples);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = read; i < frameSamples; i++) {
+                captureFrame.pcm[i] = 0; // آخر إطار ناقص يكمل بصمت
+            }
+            captureFrame.samples = frameSamples;
+            captureFrame.mediaTimestamp = mediaTimestamp;
+            captureFrame.timestampNanos = nowMs * 1_000_000L;
+            mediaTimestamp += frameSamples;
+
+            capture.process(captureFrame);
+            deliver(packet, packetizer.packetize(captureFrame, packet));
+            deliver(parity, packetizer.packetizeParity(parity));
+
+            receiver.playout(nowMs, playoutFrame);
+            playoutFrame.timestampNanos = nowMs * 1_000_000L;
+            playout.process(playoutFrame);
+            sink.write(playoutFrame.pcm, 0, playoutFrame.samples);
+
+            nowMs += ptime;
+            frames++;
+        }
+        return frames - start;
+    }
+
+    private void deliver(ByteBuffer data, int length) {
+        if (length <= 0) {
+            return;
+        }
+        packetsSent++;
+        if (random != null && random.nextDouble() < lossRate) {
+            packetsLost++;
+            return;
+        }
+        receiver.admit(data, length, nowMs);
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getPacketsLost() {
+        return packetsLost;
+    }
+
+    /**
+     * ملخص الأزمنة لكل المراحل - Mean/max microseconds per frame of every
+     * stage in path order. Allocates; call it after the run.
+     */
+    public String describeTimings() {
+        StringBuilder summary = new StringBuilder();
+        if (capture.getStageCount() > 0) {
+            summary.append(capture.describeTimings()).append(", ");
+        }
+        summary.append("encode ").append(Math.round(packetizer.getMeanMicros())).append('/')
+                .append(Math.round(packetizer.getMaxMicros())).append("us, decode ")
+                .append(Math.round(receiver.getMeanMicros())).append('/')
+                .append(Math.round(receiver.getMaxMicros())).append("us");
+        if (playout.getStageCount() > 0) {
+            summary.append(", playout ").append(playout.describeTimings());
+        }
+        return summary.toString();
+    }
+}
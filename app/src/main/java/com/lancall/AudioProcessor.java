@@ -0,0 +1,12 @@
+package com.lancall;
+
+/**
+ * مرحلة معالجة صوت - تعمل على إطار في مكانه
+ * One DSP stage of an {@link AudioPipeline}. Works on the frame in place
+ * and must not allocate; stages that classify audio (VAD) set
+ * {@link AudioFrame#speech} for the stages after them.
+ */
+public interface AudioProcessor {
+
+    void process(AudioFrame frame);
+}
@@ -0,0 +1,332 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * مستقبل الصوت - يحلل الحزم الواردة إلى مخزن الارتعاش ويخرج إطاراً للتشغيل في كل دورة
+ * Receive side of the media path: parses inbound packets into the jitter
+ * buffer and produces one playout frame per call to {@link #playout}.
+ *
+ * {@link #admit} extends sequence numbers and timestamps, handles comfort
+ * noise descriptors, RED and XOR parity and control reports, and buffers
+ * media frames. A new
+ * stream id (the sender restarted) resets the buffer. {@link #playout}
+ * decodes the frame that is due; a frame lost mid-speech is concealed by
+ * pitch repetition, any other gap is filled with comfort noise at the last
+ * described level.
+ *
+ * The delay follows the jitter buffer's target through a
+ * {@link TimeStretcher}: a few percent faster while the buffer holds more
+ * than the target, slower while it holds less, so the delay converges
+ * without dropped frames or inserted silence. Output frames are therefore
+ * whole 10 ms hops, not codec frames. The steady drift between the
+ * sender's capture clock and ours is estimated from the packets
+ * ({@link DriftEstimator}) and removed beforehand by an
+ * {@link AdaptiveResampler}, so over a long call the stretcher only
+ * handles jitter and the delay stays flat.
+ *
+ * Arrivals and played frames are reported to a {@link CallStatistics},
+ * the receiver's own unless the call shares one through
+ * {@link #setStatistics}.
+ *
+ * Both methods run on the playout thread; nothing is allocated per packet.
+ */
+public class AudioReceiver {
+
+    // ضبط السرعة من خطأ التأخير - playout rate from the delay error beyond a dead band
+    private static final int RATE_DEADBAND_MS = 10;
+    private static final double RATE_PER_MS = 0.002; // 2% لكل 10 مللي ثانية زائدة
+    private static final double MAX_SPEEDUP = 0.08;
+    private static final double MAX_SLOWDOWN = 0.05;
+    private static final int MAX_PULLS = 4; // إطارات تسحب في الاستدعاء الواحد حتى تخرج قفزة
+
+    private final MediaPacket header = new MediaPacket();
+    private final MediaReport report = new MediaReport();
+    private final AudioCodec[] decoders = AudioCodecs.createDecoderTable();
+    private final JitterBuffer buffer;
+    private final ComfortNoise comfortNoise = new ComfortNoise(); // صامت حتى يصل أول واصف
+    private final FecDecoder fec;
+    private final PacketLossConcealer concealer;
+    private final DriftEstimator drift;
+    private final AdaptiveResampler driftResampler;
+    private final TimeStretcher stretcher;
+    private final short[] decoded;
+    private final short[] resampled;
+    private final int sampleRate;
+    private final int maxFrameSamples;
+    private final byte[] payload;
+    private final ByteBuffer payloadView;
+
+    private CallStatistics statistics;
+    private boolean haveStream = false;
+    private int remoteStreamId = 0;
+    private int highestSequence = 0;
+    private long highestTimestamp = 0;
+    private int lastFrameSamples = 0;
+    private long receivedPackets = 0;
+    private long streamChanges = 0;
+
+    private long framesFaster;
+    private long framesSlower;
+    private long frames;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * @param maxFrameSamples largest codec frame; ADPCM may decode one more
+     * @param maxPayloadBytes largest payload the jitter buffer holds
+     */
+    public AudioReceiver(JitterBuffer buffer, int sampleRate, int maxFrameSamples, int maxPayloadBytes) {
+        this.buffer = buffer;
+        this.sampleRate = sampleRate;
+        this.maxFrameSamples = maxFrameSamples;
+        this.statistics = new CallStatistics(sampleRate);
+        this.fec = new FecDecoder(maxPayloadBytes, maxFrameSamples + 1);
+        this.concealer = new PacketLossConcealer(sampleRate);
+        this.drift = new DriftEstimator(sampleRate);
+        this.driftResampler = new AdaptiveResampler(maxFrameSamples + 1);
+        int resampledSamples = AdaptiveResampler.getMaxOutputSamples(maxFrameSamples + 1);
+        this.stretcher = new TimeStretcher(sampleRate, resampledSamples);
+        this.decoded = new short[maxFrameSamples + 1];
+        this.resampled = new short[resampledSamples];
+        buffer.setTimeStretching(true);
+        this.payload = new byte[maxPayloadBytes];
+        this.payloadView = ByteBuffer.wrap(payload);
+    }
+
+    /**
+     * إدخال حزمة واردة - Admit one datagram.
+     *
+     * @return whether a media frame was buffered (descriptors, parity,
+     *         reports and invalid packets return false)
+     */
+    public boolean admit(ByteBuffer data, int length, long arrivalMs) {
+        if (!header.parse(data, 0, length)) {
+            return false; // حزمة غير صالحة
+        }
+        statistics.onDatagram(length, arrivalMs); // المعدل الوارد يشمل كل الحزم
+
+        // تدفق جديد (إعادة تشغيل المرسل) - restart sequence tracking
+        if (!haveStream || header.streamId != remoteStreamId) {
+            if (haveStream) {
+                buffer.reset();
+                fec.reset();
+                drift.reset();
+                streamChanges++;
+            }
+            statistics.onStreamStart(header.streamId);
+            haveStream = true;
+            remoteStreamId = header.streamId;
+            highestSequence = header.sequence;
+            highestTimestamp = header.timestamp;
+        }
+
+        // واصف الضجيج لا يدخل مخزن الارتعاش - it only sets the level played into gaps
+        if (header.payloadType == MediaPacket.PAYLOAD_CN) {
+            comfortNoise.setLevel(ComfortNoise.readDescriptor(data, header.payloadOffset, header.payloadLength));
+            return false;
+        }
+        // تقرير الطرف الآخر يذهب إلى الإحصاءات - control reports only update the statistics
+        if (header.payloadType == MediaPacket.PAYLOAD_REPORT) {
+            if (report.parse(data, header.payloadOffset, header.payloadLength)) {
+                statistics.onReport(report, arrivalMs);
+            }
+            return false;
+        }
+        // حزمة التكافؤ تعيد بناء إطار مفقود واحد من مجموعتها ولا تدخل المخزن بنفسها
+        if (header.payloadType == MediaPacket.PAYLOAD_PARITY) {
+            // التكافؤ يصل بعد آخر إطار في مجموعته: عمق المخزن يغطي المجموعة كلها
+            // parity follows the last frame of its group, so buffer a whole group
+            if (header.payloadLength > 0) {
+                int count = data.get(header.payloadOffset) & 0xFF;
+                buffer.setRepairDelayMs((int) ((long) count * lastFrameSamples * 1000 / sampleRate));
+            }
+            fec.onParity(buffer, decoders, MediaPacket.extendSequence(highestSequence, header.sequence),
+                    MediaPacket.extendTimestamp(highestTimestamp, header.timestamp), data,
+                    header.payloadOffset, header.payloadLength);
+            return false;
+        }
+
+        int payloadType = header.payloadType;
+        int payloadOffset = header.payloadOffset;
+        int payloadLength = header.payloadLength;
+        boolean redundant = payloadType == MediaPacket.PAYLOAD_RED;
+        if (redundant) {
+            if (!fec.parseRedundant(data, payloadOffset, payloadLength)) {
+                return false;
+            }
+            payloadType = fec.primaryPayloadType;
+            payloadOffset = fec.primaryOffset;
+            payloadLength = fec.primaryLength;
+        }
+        if (decoders[payloadType] == null) {
+            return false; // نوع حمولة غير معروف
+        }
+
+        int sequence = MediaPacket.extendSequence(highestSequence, header.sequence);
+        long timestamp = MediaPacket.extendTimestamp(highestTimestamp, header.timestamp);
+        if (sequence - highestSequence > 0) {
+            highestSequence = sequence;
+            highestTimestamp = timestamp;
+        }
+
+        int samples = decoders[payloadType].getDecodedSamples(payloadLength);
+        if (samples > maxFrameSamples + 1) {
+            return false; // إطار أكبر من ذاكرة التشغيل - oversized frame from the peer
+        }
+        buffer.put(sequence, timestamp, samples, payloadType, data, payloadOffset, payloadLength, arrivalMs);
+        lastFrameSamples = samples;
+        drift.onPacket(timestamp, arrivalMs);
+        statistics.onPacketReceived(sequence, timestamp, samples, arrivalMs, payloadType);
+        fec.remember(sequence, timestamp, payloadType, data, payloadOffset, payloadLength);
+        if (redundant) {
+            // النسخة المكررة تملأ الإطار السابق إن كان مفقوداً - fills frame seq-1 if it is missing
+            fec.recoverRedundant(buffer, decoders, data, sequence - 1, timestamp - fec.redundantTimestampOffset);
+        }
+        receivedPackets++;
+        return true;
+    }
+
+    /**
+     * أقصى خرج لاستدعاء playout - Room a playout frame needs: two codec
+     * frames, enough for the slowest rate plus the hops held back.
+     */
+    public static int getMaxPlayoutSamples(int maxFrameSamples) {
+        return 2 * AdaptiveResampler.getMaxOutputSamples(maxFrameSamples + 1);
+    }
+
+    /**
+     * إطار التشغيل التالي - Fill {@code frame} with the next stretch of audio
+     * to play: decoded audio ({@link AudioFrame#speech} set), or concealment
+     * or comfort noise for a gap, at the playout rate the delay calls for.
+     * Pulls as many codec frames as it takes to produce at least one hop.
+     *
+     * @param frame needs room for {@link #getMaxPlayoutSamples(int)} samples
+     * @return samples written, also stored in {@link AudioFrame#samples}
+     */
+    public int playout(long nowMs, AudioFrame frame) {
+        long start = System.nanoTime();
+        int produced = 0;
+        for (int pull = 0; pull < MAX_PULLS && produced == 0; pull++) {
+            int samples = decodeNext(nowMs, frame);
+            // المرسل الأسرع بـ e يعطي 1 + e عينة لكل عينة نشغلها - consume them at that ratio
+            driftResampler.setRatio(1.0 + drift.getDriftPpm() * 1e-6);
+            samples = driftResampler.process(decoded, 0, samples, resampled, 0);
+            double rate = playoutRate();
+            if (rate > 1.0) {
+                framesFaster++;
+            } else if (rate < 1.0) {
+                framesSlower++;
+            }
+            stretcher.setRate(rate);
+            produced = stretcher.process(resampled, 0, samples, frame.pcm, 0, frame.pcm.length);
+        }
+        frame.samples = produced;
+
+        long elapsed = System.nanoTime() - start;
+        totalNanos += elapsed;
+        if (elapsed > maxNanos) {
+            maxNanos = elapsed;
+        }
+        frames++;
+        return produced;
+    }
+
+    /** فك الإطار المستحق أو ملء الفجوة - Decode the due frame or fill the gap into {@code decoded}. */
+    private int decodeNext(long nowMs, AudioFrame frame) {
+        int samples;
+        int length = buffer.poll(nowMs, payload, 0);
+        if (length > 0) {
+            AudioCodec decoder = decoders[buffer.getLastPayloadType()];
+            samples = decoder.decode(payloadView, 0, length, decoded, 0);
+            concealer.onGoodFrame(decoded, 0, samples); // يمزج البداية بعد فقدان
+            frame.speech = true;
+            statistics.onFramePlayed(false, getPlayoutDelayMs(samples));
+        } else {
+            // إطار مفقود وسط الكلام: تكرار دورة النغمة، وإلا ضجيج مريح بمستوى آخر واصف
+            samples = Math.min(maxFrameSamples, buffer.getLastSamples());
+            if (length != JitterBuffer.RESULT_LOST || !concealer.conceal(decoded, 0, samples)) {
+                comfortNoise.generate(decoded, 0, samples);
+            }
+            if (length == JitterBuffer.RESULT_LOST) {
+                statistics.onFramePlayed(true, getPlayoutDelayMs(samples)); // لا يحسب الصمت المقصود فقداً
+            }
+            frame.speech = false;
+        }
+        return samples;
+    }
+
+    /** تأخير الاستقبال - Frame duration plus the audio queued in the buffer and the stretcher. */
+    private int getPlayoutDelayMs(int frameSamples) {
+        return buffer.getBufferedMs() + (frameSamples + stretcher.getQueuedSamples()) * 1000 / sampleRate;
+    }
+
+    /** السرعة المطلوبة من خطأ التأخير - Rate from how far the buffer is from its target. */
+    private double playoutRate() {
+        int error = buffer.getBufferedMs() - buffer.getTargetDelayMs();
+        if (error > RATE_DEADBAND_MS) {
+            return 1.0 + Math.min(MAX_SPEEDUP, (error - RATE_DEADBAND_MS) * RATE_PER_MS);
+        }
+        if (error < -RATE_DEADBAND_MS) {
+            return 1.0 - Math.min(MAX_SLOWDOWN, (-error - RATE_DEADBAND_MS) * RATE_PER_MS);
+        }
+        return 1.0;
+    }
+
+    public JitterBuffer getJitterBuffer() {
+        return buffer;
+    }
+
+    public FecDecoder getFec() {
+        return fec;
+    }
+
+    public PacketLossConcealer getConcealer() {
+        return concealer;
+    }
+
+    /** مشاركة إحصاءات المكالمة - Report into a per-call statistics object; set before the first packet. */
+    public void setStatistics(CallStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public CallStatistics getStatistics() {
+        return statistics;
+    }
+
+    public DriftEstimator getDriftEstimator() {
+        return drift;
+    }
+
+    public TimeStretcher getStretcher() {
+        return stretcher;
+    }
+
+    /** إطارات شغلت أسرع - Codec frames played faster than real time to shrink the delay. */
+    public long getFramesFaster() {
+        return framesFaster;
+    }
+
+    /** إطارات شغلت أبطأ - Codec frames played slower than real time to grow the delay. */
+    public long getFramesSlower() {
+        return framesSlower;
+    }
+
+    public long getReceivedPackets() {
+        return receivedPackets;
+    }
+
+    /** عدد مرات تغير معرف التدفق - Times the sender restarted its stream. */
+    public long getStreamChanges() {
+        return streamChanges;
+    }
+
+    /** متوسط زمن فك الترميز لكل إطار - Mean playout time per frame, in microseconds. */
+    public double getMeanMicros() {
+        return frames > 0 ? totalNanos / 1000.0 / frames : 0.0;
+    }
+
+    public double getMaxMicros() {
+        return maxNanos / 1000.0;
+    }
+}
@@ -0,0 +1,47 @@
+package com.lancall;
+
+import android.media.AudioRecord;
+
+/**
+ * مصدر الميكروفون - يغلف AudioRecord
+ * {@link AudioSource} over an {@link AudioRecord} that is already
+ * recording. Reads block until the whole frame has been captured, looping
+ * over short reads.
+ */
+public class AudioRecordSource implements AudioSource {
+
+    private final AudioRecord record;
+    private final int sampleRate;
+
+    public AudioRecordSource(AudioRecord record, int sampleRate) {
+        this.record = record;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int samples) {
+        int total = 0;
+        while (total < samples) {
+            int read = record.read(buffer, offset + total, samples - total);
+            if (read < 0) {
+                return total > 0 ? total : read; // رمز خطأ AudioRecord
+            }
+            if (read == 0) {
+                break; // أوقف التسجيل - recording was stopped under us
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        record.stop();
+        record.release();
+    }
+}
@@ -0,0 +1,22 @@
+package com.lancall;
+
+/**
+ * مصرف صوت - سماعة أو ملف أو ذاكرة
+ * Sink of 16-bit mono PCM: the speaker on a phone, a file or an array on a
+ * plain JVM.
+ */
+public interface AudioSink {
+
+    int getSampleRate();
+
+    /**
+     * كتابة عينات - Write {@code samples} samples. The speaker sink blocks
+     * while its buffer is full, which is what paces playout.
+     *
+     * @return samples written, or a negative value on error
+     */
+    int write(short[] buffer, int offset, int samples);
+
+    /** إيقاف المصرف وتحرير موارده - Stop the sink and free its resources */
+    void close();
+}
@@ -0,0 +1,23 @@
+package com.lancall;
+
+/**
+ * مصدر صوت - ميكروفون أو ملف أو ذاكرة، حتى يعمل مسار الوسائط كاملاً خارج الهاتف
+ * Source of 16-bit mono PCM: the microphone on a phone, a file or an array
+ * on a plain JVM, so the whole media path can run and be measured anywhere.
+ */
+public interface AudioSource {
+
+    int getSampleRate();
+
+    /**
+     * قراءة عينات - Read up to {@code samples} samples. Live sources block
+     * until the frame is complete; file and memory sources return at once.
+     *
+     * @return samples read, -1 at the end of the source, or another negative
+     *         value on a device error
+     */
+    int read(short[] buffer, int offset, int samples);
+
+    /** إيقاف المصدر وتحرير موارده - Stop the source and free its resources */
+    void close();
+}
@@ -0,0 +1,35 @@
+package com.lancall;
+
+import android.media.AudioTrack;
+
+/**
+ * مصرف السماعة - يغلف AudioTrack
+ * {@link AudioSink} over an {@link AudioTrack} in streaming mode. The
+ * blocking write paces the playout loop.
+ */
+public class AudioTrackSink implements AudioSink {
+
+    private final AudioTrack track;
+    private final int sampleRate;
+
+    public AudioTrackSink(AudioTrack track, int sampleRate) {
+        this.track = track;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int write(short[] buffer, int offset, int samples) {
+        return track.write(buffer, offset, samples);
+    }
+
+    @Override
+    public void close() {
+        track.stop();
+        track.release();
+    }
+}
@@ -0,0 +1,151 @@
+package com.lancall;
+
+/**
+ * التحكم التلقائي في الكسب - يوحد مستوى الكلام بين الأجهزة ثم يمنع القص بمحدد قمم
+ * Automatic gain control followed by a {@link PeakLimiter}.
+ *
+ * The speech level is measured only on frames the caller marks as speech,
+ * so pauses and comfort noise are never pumped up. The gain moves towards
+ * {@code target - speech level} within [{@code minGainDb}, {@code maxGainDb}]:
+ * quickly down when speech gets louder, slowly up when it gets quieter.
+ * Within a frame the gain is interpolated per sample so changes never click.
+ * The limiter then catches the peaks the slow gain cannot, so nothing
+ * reaches the codec or the speaker clipped.
+ *
+ * One instance per thread; {@code short[]} in place, nothing allocated per
+ * frame. Output lags input by the limiter look-ahead (3 ms).
+ */
+public class AutomaticGainControl implements AudioProcessor {
+
+    // الالتقاط: ميكروفونات تختلف بعشرات الديسيبل بين الأجهزة
+    public static final float CAPTURE_TARGET_DBOV = -18f;
+    public static final float CAPTURE_MIN_GAIN_DB = -12f;
+    public static final float CAPTURE_MAX_GAIN_DB = 24f;
+    // التشغيل: تطبيع أخف لما يصل من الطرف الآخر
+    public static final float PLAYOUT_TARGET_DBOV = -18f;
+    public static final float PLAYOUT_MIN_GAIN_DB = -6f;
+    public static final float PLAYOUT_MAX_GAIN_DB = 12f;
+
+    private static final float FULL_SCALE_SQUARED = 32768f * 32768f;
+    private static final float MIN_SPEECH_DBOV = -60f; // أهدأ من ذلك ليس كلاماً يستحق القياس
+    private static final float LEVEL_SMOOTHING = 0.1f; // لكل إطار كلام
+    private static final float ATTACK_DB_PER_SECOND = 30f;
+    private static final float RECOVERY_DB_PER_SECOND = 4f; // بطيء حتى لا يرفع الضجيج بين الجمل
+
+    private final int sampleRate;
+    private final float targetDbov;
+    private final float minGainDb;
+    private final float maxGainDb;
+    private final PeakLimiter limiter;
+
+    private boolean haveLevel;
+    private float speechLevelDb;
+    private float gainDb;
+    private float gain = 1f;
+
+    public AutomaticGainControl(int sampleRate, float targetDbov, float minGainDb, float maxGainDb) {
+        this.sampleRate = sampleRate;
+        this.targetDbov = targetDbov;
+        this.minGainDb = minGainDb;
+        this.maxGainDb = maxGainDb;
+        this.limiter = new PeakLimiter(sampleRate);
+    }
+
+    public static AutomaticGainControl forCapture(int sampleRate) {
+        return new AutomaticGainControl(sampleRate, CAPTURE_TARGET_DBOV, CAPTURE_MIN_GAIN_DB, CAPTURE_MAX_GAIN_DB);
+    }
+
+    public static AutomaticGainControl forPlayout(int sampleRate) {
+        return new AutomaticGainControl(sampleRate, PLAYOUT_TARGET_DBOV, PLAYOUT_MIN_GAIN_DB, PLAYOUT_MAX_GAIN_DB);
+    }
+
+    /**
+     * Gain and limiting on a pipeline frame, learning the level if it is
+     * speech. The noise level moves with the gain, so comfort noise is
+     * described as it would have sounded.
+     */
+    @Override
+    public void process(AudioFrame frame) {
+        process(frame.pcm, 0, frame.samples, frame.speech);
+        frame.noiseLevelDbov += gainDb;
+    }
+
+    /**
+     * معالجة إطار في مكانه - Apply gain and limiting to a frame in place.
+     *
+     * @param speech whether the frame holds speech; only speech frames move
+     *               the level estimate, every frame gets the current gain
+     */
+    public void process(short[] pcm, int offset, int samples, boolean speech) {
+        if (samples <= 0) {
+            return;
+        }
+        if (speech) {
+            updateGain(pcm, offset, samples);
+        }
+
+        // استيفاء الكسب عبر الإطار - ramp from the previous gain to the new one
+        float start = gain;
+        float end = (float) Math.pow(10.0, gainDb / 20.0);
+        float step = (end - start) / samples;
+        for (int i = 0; i < samples; i++) {
+            float amplified = pcm[offset + i] * (start + step * (i + 1));
+            pcm[offset + i] = clip(limiter.process(amplified));
+        }
+        gain = end;
+    }
+
+    public void reset() {
+        haveLevel = false;
+        gainDb = 0f;
+        gain = 1f;
+        limiter.reset();
+    }
+
+    /** الكسب الحالي بالديسيبل - Current gain, before limiting. */
+    public float getGainDb() {
+        return gainDb;
+    }
+
+    public float getSpeechLevelDb() {
+        return speechLevelDb;
+    }
+
+    public long getSamplesLimited() {
+        return limiter.getSamplesLimited();
+    }
+
+    private void updateGain(short[] pcm, int offset, int samples) {
+        long energy = 0;
+        for (int i = 0; i < samples; i++) {
+            int sample = pcm[offset + i];
+            energy += (long) sample * sample;
+        }
+        float meanSquare = (float) energy / samples;
+        if (meanSquare <= 0f) {
+            return;
+        }
+        float levelDb = 10f * (float) Math.log10(meanSquare / FULL_SCALE_SQUARED);
+        if (levelDb < MIN_SPEECH_DBOV) {
+            return;
+        }
+        if (!haveLevel) {
+            speechLevelDb = levelDb;
+            haveLevel = true;
+        } else {
+            speechLevelDb += (levelDb - speechLevelDb) * LEVEL_SMOOTHING;
+        }
+
+        float desired = Math.max(minGainDb, Math.min(maxGainDb, targetDbov - speechLevelDb));
+        float seconds = (float) samples / sampleRate;
+        if (desired < gainDb) {
+            gainDb = Math.max(desired, gainDb - ATTACK_DB_PER_SECOND * seconds);
+        } else {
+            gainDb = Math.min(desired, gainDb + RECOVERY_DB_PER_SECOND * seconds);
+        }
+    }
+
+    private static short clip(float value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
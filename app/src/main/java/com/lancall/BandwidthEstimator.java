@@ -0,0 +1,241 @@
+package com.lancall;
+
+/**
+ * تقدير عرض النطاق من تدرج التأخير - جهة الاستقبال، على نمط GCC
+ * Delay-based bandwidth estimate on the receive side, after Google
+ * congestion control (GCC).
+ *
+ * A queue building up in the access point shows as one-way delay growing
+ * before any packet is dropped. For each media packet in order the delay
+ * variation (arrival gap minus timestamp gap) is accumulated and smoothed,
+ * and a least-squares trend over the last 20 packets gives the delay
+ * gradient. Compared against an adaptive threshold it signals overuse
+ * (queue filling), underuse (queue draining) or normal. The estimate
+ * follows AIMD on the measured incoming rate: 85% of it on overuse, +8% a
+ * second while normal up to 1.5 times it, held on underuse. The sender steps its bitrate from
+ * this estimate, carried back in {@link MediaReport}.
+ *
+ * Playout thread only; nothing is allocated per packet.
+ */
+public class BandwidthEstimator {
+
+    public static final int STATE_NORMAL = 0;
+    public static final int STATE_OVERUSE = 1;
+    public static final int STATE_UNDERUSE = 2;
+
+    // مرشح الاتجاه - trendline filter, as in GCC
+    private static final int WINDOW = 20;
+    private static final double SMOOTHING = 0.9;
+    private static final double TREND_GAIN = 4.0;
+    private static final int MAX_TREND_DELTAS = 60;
+    private static final int MAX_GAP_MS = 1000; // بعد صمت أطول تبدأ نافذة جديدة - DTX gap
+
+    // العتبة التكيفية - adaptive threshold on the modified trend
+    private static final double THRESHOLD_INITIAL = 12.5;
+    private static final double THRESHOLD_MIN = 6.0;
+    private static final double THRESHOLD_MAX = 600.0;
+    private static final double THRESHOLD_UP = 0.0087;
+    private static final double THRESHOLD_DOWN = 0.039;
+    private static final int OVERUSE_TIME_MS = 10;
+
+    // AIMD
+    private static final double DECREASE_FACTOR = 0.85;
+    private static final double INCREASE_PER_SECOND = 1.08;
+    private static final double MAX_OVER_INCOMING = 1.5; // لا يبتعد التقدير كثيراً عن المقاس
+    private static final int MIN_DECREASE_INTERVAL_MS = 200;
+    private static final int RATE_WINDOW_MS = 500;
+    private static final int MAX_MEDIA_GAP_MS = 100; // نافذة انتهت بصمت لا تقيس المعدل
+    private static final int IP_UDP_OVERHEAD = 28;
+
+    private final int sampleRate;
+    private final double[] times = new double[WINDOW];
+    private final double[] delays = new double[WINDOW];
+
+    // تدرج التأخير - delay gradient
+    private boolean havePrevious;
+    private long previousArrivalMs;
+    private long previousTimestamp;
+    private long firstArrivalMs;
+    private double accumulatedMs;
+    private double smoothedMs;
+    private int samples;
+    private int deltas;
+    private double trend;
+    private double previousTrend;
+    private double threshold = THRESHOLD_INITIAL;
+    private long lastThresholdMs;
+    private long overuseStartMs = -1;
+    private int state = STATE_NORMAL;
+    private long overuseEvents;
+
+    // المعدل الوارد والتقدير - incoming rate and AIMD estimate, in bits per second
+    private long rateWindowStartMs = -1;
+    private long rateWindowBytes;
+    private boolean rateWindowSilent; // بدأ صمت أو انقطاع داخل النافذة
+    private long lastMediaMs = -1;
+    private int incomingBps;
+    private double estimateBps;
+    private long lastUpdateMs;
+    private long lastDecreaseMs;
+
+    public BandwidthEstimator(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * كل حزمة واردة - Every datagram of the call, for the incoming rate.
+     * Only windows of continuous speech count: during DTX the peer sends a
+     * descriptor every 200 ms, which says nothing about the path.
+     */
+    public void onDatagram(int bytes, long arrivalMs) {
+        if (rateWindowStartMs < 0) {
+            rateWindowStartMs = arrivalMs;
+            rateWindowSilent = false;
+        }
+        rateWindowBytes += bytes + IP_UDP_OVERHEAD;
+        long elapsed = arrivalMs - rateWindowStartMs;
+        if (elapsed >= RATE_WINDOW_MS) {
+            if (!rateWindowSilent && lastMediaMs >= 0 && arrivalMs - lastMediaMs <= MAX_MEDIA_GAP_MS) {
+                incomingBps = (int) (rateWindowBytes * 8000 / elapsed);
+                if (estimateBps == 0) {
+                    estimateBps = incomingBps * MAX_OVER_INCOMING; // أول قياس - first measurement
+                    lastUpdateMs = arrivalMs;
+                }
+            }
+            rateWindowBytes = 0;
+            rateWindowStartMs = arrivalMs;
+            rateWindowSilent = false;
+        }
+    }
+
+    /**
+     * حزمة وسائط بالترتيب - A media packet newer than all before it.
+     *
+     * @param endTimestamp extended media timestamp of the packet's end, in
+     *                     samples: a packet leaves once its last frame is
+     *                     captured, so a longer ptime is not mistaken for
+     *                     queueing
+     * @param roundTripMs last measured round trip, or -1
+     */
+    public void onPacket(long endTimestamp, long arrivalMs, int roundTripMs) {
+        if (lastMediaMs < 0 || arrivalMs - lastMediaMs > MAX_MEDIA_GAP_MS) {
+            rateWindowSilent = true;
+        }
+        lastMediaMs = arrivalMs;
+        if (havePrevious && arrivalMs - previousArrivalMs <= MAX_GAP_MS) {
+            double sendGapMs = (endTimestamp - previousTimestamp) * 1000.0 / sampleRate;
+            accumulatedMs += (arrivalMs - previousArrivalMs) - sendGapMs;
+            smoothedMs = SMOOTHING * smoothedMs + (1 - SMOOTHING) * accumulatedMs;
+            int slot = samples % WINDOW;
+            times[slot] = arrivalMs - firstArrivalMs;
+            delays[slot] = smoothedMs;
+            samples++;
+            deltas = Math.min(deltas + 1, MAX_TREND_DELTAS);
+            if (samples >= WINDOW) {
+                previousTrend = trend;
+                trend = slope();
+                detect(arrivalMs);
+            }
+        } else {
+            // أول حزمة أو بعد صمت طويل - start over; the old trend says nothing now
+            firstArrivalMs = arrivalMs;
+            accumulatedMs = 0;
+            smoothedMs = 0;
+            samples = 0;
+            deltas = 0;
+            trend = 0;
+            overuseStartMs = -1;
+            state = STATE_NORMAL;
+        }
+        havePrevious = true;
+        previousArrivalMs = arrivalMs;
+        previousTimestamp = endTimestamp;
+        updateEstimate(arrivalMs, roundTripMs);
+    }
+
+    private double slope() {
+        double meanTime = 0;
+        double meanDelay = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            meanTime += times[i];
+            meanDelay += delays[i];
+        }
+        meanTime /= WINDOW;
+        meanDelay /= WINDOW;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            double dt = times[i] - meanTime;
+            covariance += dt * (delays[i] - meanDelay);
+            variance += dt * dt;
+        }
+        return variance > 0 ? covariance / variance : 0.0;
+    }
+
+    /** كاشف الإفراط - overuse detector with the adaptive threshold of GCC. */
+    private void detect(long nowMs) {
+        double modified = Math.min(deltas, MAX_TREND_DELTAS) * trend * TREND_GAIN;
+        if (modified > threshold) {
+            if (overuseStartMs < 0) {
+                overuseStartMs = nowMs;
+            }
+            // إفراط مستمر واتجاه غير متناقص - sustained and not already easing
+            if (nowMs - overuseStartMs >= OVERUSE_TIME_MS && trend >= previousTrend && state != STATE_OVERUSE) {
+                state = STATE_OVERUSE;
+                overuseEvents++;
+            }
+        } else {
+            overuseStartMs = -1;
+            state = modified < -threshold ? STATE_UNDERUSE : STATE_NORMAL;
+        }
+
+        double excess = Math.abs(modified) - threshold;
+        long elapsed = Math.min(100, lastThresholdMs > 0 ? nowMs - lastThresholdMs : 0);
+        lastThresholdMs = nowMs;
+        if (excess <= 15) { // القفزات الكبيرة لا ترفع العتبة - spikes do not drag the threshold
+            double gain = excess > 0 ? THRESHOLD_UP : THRESHOLD_DOWN;
+            threshold = Math.max(THRESHOLD_MIN, Math.min(THRESHOLD_MAX, threshold + elapsed * gain * excess));
+        }
+    }
+
+    private void updateEstimate(long nowMs, int roundTripMs) {
+        if (estimateBps == 0) {
+            return; // لا قياس بعد للمعدل الوارد
+        }
+        double elapsed = Math.min(1000, nowMs - lastUpdateMs) / 1000.0;
+        lastUpdateMs = nowMs;
+        if (state == STATE_OVERUSE) {
+            if (nowMs - lastDecreaseMs >= Math.max(MIN_DECREASE_INTERVAL_MS, roundTripMs)) {
+                estimateBps = DECREASE_FACTOR * Math.min(estimateBps, incomingBps);
+                lastDecreaseMs = nowMs;
+            }
+        } else if (state == STATE_NORMAL) {
+            // الزيادة لا تتجاوز ما يبرره المقاس، لكنها لا تخفض تقديراً قائماً
+            double ceiling = Math.max(estimateBps, MAX_OVER_INCOMING * incomingBps + 10_000);
+            estimateBps = Math.min(ceiling, estimateBps * Math.pow(INCREASE_PER_SECOND, elapsed));
+        }
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    /** عدد مرات الإفراط - Transitions into overuse; a change asks for an early report. */
+    public long getOveruseEvents() {
+        return overuseEvents;
+    }
+
+    /** التقدير - Estimated available bitrate in bits per second, 0 until measured. */
+    public int getEstimateBps() {
+        return (int) estimateBps;
+    }
+
+    public int getIncomingBps() {
+        return incomingBps;
+    }
+
+    /** اتجاه التأخير - Delay gradient, ms of queueing per ms. */
+    public double getTrend() {
+        return trend;
+    }
+}
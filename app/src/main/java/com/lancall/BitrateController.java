@@ -0,0 +1,243 @@
+package com.lancall;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * التحكم في معدل الإرسال - يتنقل بين مستويات الترميز ومدة الحزمة و FEC حسب تقارير المستقبل
+ * Sender side of the congestion control: steps the outgoing audio through
+ * a ladder of codec and packet-time levels, and the FEC mode on top, from
+ * the receiver's delay-based estimate ({@link BandwidthEstimator}) and
+ * loss carried back in {@link MediaReport}.
+ *
+ * The ladder starts at the negotiated codec and ptime and lists every
+ * cheaper combination, most expensive first: cheaper codecs the peer can
+ * decode, and longer packets as whole multiples of the capture ptime
+ * (fewer packets cost less airtime on Wi-Fi than fewer bytes). A report signalling overuse, or an estimate below the current
+ * level, steps down at once to the first level that fits, so the call backs
+ * off while the access point's queue is still growing, not after it drops
+ * packets. Stepping up is a probe: one level after a calm hold, and every
+ * probe that ends in overuse doubles the next hold. While a probe settles,
+ * only overuse counts: the peer's estimate trails the new rate by design.
+ *
+ * FEC follows the loss the peer reports, up to the negotiated mode as a
+ * ceiling: off without loss, XOR parity for moderate loss, RED for heavy
+ * loss, and off again under congestion, where it would only add load.
+ *
+ * Sending thread only.
+ */
+public class BitrateController {
+
+    private static final int IP_UDP_OVERHEAD = 28;
+    private static final int UP_HOLD_MS = 8000; // هدوء قبل تجربة مستوى أعلى
+    private static final int MAX_UP_HOLD_MS = 64000;
+    private static final int MIN_STEP_INTERVAL_MS = 500; // لا ننزل مرتين قبل أن يظهر أثر الأولى
+    private static final int PROBE_GRACE_MS = 3000; // يلحق التقدير بالمعدل الجديد
+    private static final double ESTIMATE_HEADROOM = 0.9; // لا نملأ التقدير كله
+    private static final int XOR_LOSS = 5; // من 256 - فقدان يستحق التكافؤ (2%)
+    private static final int RED_LOSS = 26; // 10%
+
+    /** مستوى - One rung of the ladder. */
+    public static final class Level {
+        public final String codecName;
+        public final int ptime;
+        public final int bitrateBps; // بدون FEC، مع ترويسات IP و UDP
+        final boolean redFits; // إطاران في حزمة واحدة دون تجزئة
+
+        Level(String codecName, int ptime, int bitrateBps, boolean redFits) {
+            this.codecName = codecName;
+            this.ptime = ptime;
+            this.bitrateBps = bitrateBps;
+            this.redFits = redFits;
+        }
+
+        @Override
+        public String toString() {
+            return codecName + "/" + ptime + "ms " + bitrateBps / 1000 + "kbps";
+        }
+    }
+
+    private final int sampleRate;
+    private final int capturePtime;
+    private final String maxFecMode;
+    private final List<Level> ladder = new ArrayList<>();
+
+    private int level;
+    private String fecMode;
+    private long lastStepMs;
+    private long lastUpMs = Long.MIN_VALUE / 2;
+    private long calmSinceMs;
+    private int upHoldMs = UP_HOLD_MS;
+    private boolean probing;
+    private long stepsDown;
+    private long stepsUp;
+
+    /**
+     * @param codecName    negotiated codec, the top of the ladder
+     * @param peerCodecs   codecs the peer can decode; others stay off the ladder
+     * @param capturePtime ptime frames are captured at, and the top ptime
+     * @param fecMode      negotiated FEC mode, the most FEC used
+     */
+    public BitrateController(int sampleRate, String codecName, List<String> peerCodecs, int capturePtime,
+            String fecMode, int mtu) {
+        this.sampleRate = sampleRate;
+        this.capturePtime = capturePtime;
+        this.maxFecMode = fecMode;
+        this.fecMode = fecMode;
+
+        int topBitrate = bitrate(AudioCodecs.create(codecName), capturePtime);
+        for (String name : AudioCodecs.getSupportedNames()) {
+            if (!name.equals(codecName) && (peerCodecs == null || !peerCodecs.contains(name))) {
+                continue;
+            }
+            AudioCodec codec = AudioCodecs.create(name);
+            for (int ptime = capturePtime; ptime <= FramePacer.MAX_PTIME_MS; ptime += capturePtime) {
+                int bitrate = bitrate(codec, ptime);
+                boolean top = name.equals(codecName) && ptime == capturePtime;
+                // المستوى الأعلى ثبت عند الاتفاق؛ الباقي يجب أن يتسع له MTU - the rest must fit the MTU
+                if (!top && (!FramePacer.isSupportedPtime(ptime) || bitrate >= topBitrate
+                        || !fits(codec, ptime, FecEncoder.getFrameMtu(fecMode, mtu)))) {
+                    continue;
+                }
+                boolean redFits = fits(codec, ptime, FecEncoder.getFrameMtu(FecEncoder.MODE_RED, mtu));
+                insert(new Level(name, ptime, bitrate, redFits));
+            }
+        }
+    }
+
+    private void insert(Level candidate) {
+        int i = 0;
+        while (i < ladder.size() && ladder.get(i).bitrateBps >= candidate.bitrateBps) {
+            i++;
+        }
+        ladder.add(i, candidate);
+    }
+
+    private boolean fits(AudioCodec codec, int ptime, int frameMtu) {
+        int datagram = IP_UDP_OVERHEAD + MediaPacket.HEADER_SIZE
+                + codec.getMaxEncodedSize(FramePacer.samplesPerFrame(sampleRate, ptime));
+        return datagram <= frameMtu;
+    }
+
+    private int bitrate(AudioCodec codec, int ptime) {
+        int payload = codec.getMaxEncodedSize(FramePacer.samplesPerFrame(sampleRate, ptime));
+        return (payload + MediaPacket.HEADER_SIZE + IP_UDP_OVERHEAD) * 8 * 1000 / ptime;
+    }
+
+    /** كلفة FEC - Bitrate of a level with an FEC mode on top. */
+    private static int withFec(Level level, String mode) {
+        if (FecEncoder.MODE_RED.equals(mode)) {
+            return level.bitrateBps * 2;
+        }
+        if (FecEncoder.MODE_XOR.equals(mode)) {
+            return level.bitrateBps + level.bitrateBps / FecEncoder.DEFAULT_GROUP_SIZE;
+        }
+        return level.bitrateBps;
+    }
+
+    /**
+     * تقرير جديد من المستقبل - Decide from the receiver's latest report.
+     *
+     * @param estimateBps receiver's estimate, 0 if it sent none
+     * @param overuse     receiver currently sees the delay growing
+     * @param fractionLost loss since its previous report, out of 256
+     * @return whether the level or FEC mode changed
+     */
+    public boolean onReport(long nowMs, int estimateBps, boolean overuse, int fractionLost) {
+        int previousLevel = level;
+        String previousFec = fecMode;
+        boolean settled = nowMs - lastUpMs >= PROBE_GRACE_MS;
+        boolean congested = overuse
+                || (settled && estimateBps > 0 && estimateBps < withFec(ladder.get(level), fecMode));
+
+        if (congested) {
+            calmSinceMs = nowMs;
+            if (probing) {
+                upHoldMs = Math.min(MAX_UP_HOLD_MS, upHoldMs * 2); // التجربة فشلت
+                probing = false;
+            }
+            if (nowMs - lastStepMs >= MIN_STEP_INTERVAL_MS) {
+                stepDown(estimateBps, overuse);
+                lastStepMs = nowMs;
+            }
+        } else if (nowMs - calmSinceMs >= upHoldMs && level > 0) {
+            if (probing) {
+                upHoldMs = UP_HOLD_MS; // المستوى السابق ثبت - the last probe held
+            }
+            level--;
+            stepsUp++;
+            probing = true;
+            calmSinceMs = nowMs;
+            lastStepMs = nowMs;
+            lastUpMs = nowMs;
+        }
+
+        fecMode = chooseFec(congested, fractionLost, estimateBps);
+        return level != previousLevel || !fecMode.equals(previousFec);
+    }
+
+    private void stepDown(int estimateBps, boolean overuse) {
+        int target = level + (overuse ? 1 : 0);
+        if (estimateBps > 0) {
+            // أول مستوى يتسع له التقدير - jump straight to the first level that fits
+            while (target < ladder.size() - 1 && ladder.get(target).bitrateBps > estimateBps * ESTIMATE_HEADROOM) {
+                target++;
+            }
+        }
+        target = Math.min(target, ladder.size() - 1);
+        if (target != level) {
+            level = target;
+            stepsDown++;
+        }
+    }
+
+    private String chooseFec(boolean congested, int fractionLost, int estimateBps) {
+        if (congested || fractionLost < XOR_LOSS || FecEncoder.MODE_OFF.equals(maxFecMode)) {
+            return FecEncoder.MODE_OFF;
+        }
+        Level current = ladder.get(level);
+        boolean redAllowed = FecEncoder.MODE_RED.equals(maxFecMode) && current.redFits;
+        String wanted = fractionLost >= RED_LOSS && redAllowed ? FecEncoder.MODE_RED : FecEncoder.MODE_XOR;
+        if (estimateBps > 0 && withFec(current, wanted) > estimateBps * ESTIMATE_HEADROOM) {
+            wanted = FecEncoder.MODE_XOR; // RED لا يتسع - fall back to the cheaper repair
+            if (withFec(current, wanted) > estimateBps * ESTIMATE_HEADROOM) {
+                return FecEncoder.MODE_OFF;
+            }
+        }
+        return wanted;
+    }
+
+    public Level getLevel() {
+        return ladder.get(level);
+    }
+
+    public int getLevelIndex() {
+        return level;
+    }
+
+    public List<Level> getLadder() {
+        return new ArrayList<>(ladder);
+    }
+
+    public String getFecMode() {
+        return fecMode;
+    }
+
+    /** إطارات الالتقاط في كل حزمة - Capture frames per packet at the current level. */
+    public int getFramesPerPacket() {
+        return ladder.get(level).ptime / capturePtime;
+    }
+
+    /** معدل الإرسال الحالي - Current outgoing bitrate including FEC and headers. */
+    public int getBitrateBps() {
+        return withFec(ladder.get(level), fecMode);
+    }
+
+    public long getStepsDown() {
+        return stepsDown;
+    }
+
+    public long getStepsUp() {
+        return stepsUp;
+    }
+}
@@ -29,10 +29,15 @@ public class CallManagementActivity extends AppCompatActivity implements CallSer
 
     private static final String TAG = "CallManagementActivity";
 
+    // حدود MOS لتصنيف الجودة - R of 80 and 60 on the E-model scale
+    private static final double MOS_GOOD = 4.0;
+    private static final double MOS_FAIR = 3.1;
+
     // UI Components
     private TextView tvCallStatus;
     private TextView tvRemoteAddress;
     private TextView tvCallDuration;
+    private TextView tvCallQuality;
     private MaterialButton btnEndCall;
     private MaterialButton btnMute;
     private MaterialButton btnSpeaker;
@@ -111,6 +116,7 @@ public class CallManagementActivity extends AppCompatActivity implements CallSer
         tvCallStatus = findViewById(R.id.tvCallStatus);
         tvRemoteAddress = findViewById(R.id.tvRemoteAddress);
         tvCallDuration = findViewById(R.id.tvCallDuration);
+        tvCallQuality = findViewById(R.id.tvCallQuality);
         btnEndCall = findViewById(R.id.btnEndCall);
         btnMute = findViewById(R.id.btnMute);
         btnSpeaker = findViewById(R.id.btnSpeaker);
@@ -232,6 +238,7 @@ public class CallManagementActivity extends AppCompatActivity implements CallSer
                     long duration = System.currentTimeMillis() - callStartTime;
                     String durationText = formatDuration(duration);
                     tvCallDuration.setText(getString(R.string.call_duration, durationText));
+                    updateCallQuality();
 
                     durationHandler.postDelayed(this, 1000); // Update every second
                 }
@@ -240,6 +247,35 @@ public class CallManagementActivity extends AppCompatActivity implements CallSer
         durationHandler.post(durationUpdateRunnable);
     }
 
+    /**
+     * تحديث مؤشر الجودة - Show the service's MOS estimate with the jitter,
+     * loss and delay behind it; polled with the duration once a second.
+     */
+    private void updateCallQuality() {
+        if (callService == null) {
+            return;
+        }
+        CallStatistics.Snapshot stats = callService.getCallStatistics();
+        if (stats == null || stats.framesPlayed + stats.framesLost == 0) {
+            return; // لا صوت بعد - keep the placeholder until audio plays
+        }
+        int label;
+        int color;
+        if (stats.mos >= MOS_GOOD) {
+            label = R.string.call_quality_good;
+            color = R.color.button_active;
+        } else if (stats.mos >= MOS_FAIR) {
+            label = R.string.call_quality_fair;
+            color = R.color.quality_fair;
+        } else {
+            label = R.string.call_quality_poor;
+            color = R.color.button_end_call;
+        }
+        tvCallQuality.setText(getString(R.string.call_quality, getString(label), stats.mos,
+                (int) Math.round(stats.jitterMs), stats.lossPercent, stats.oneWayDelayMs));
+        tvCallQuality.setTextColor(getColor(color));
+    }
+
     private String formatDuration(long durationMs) {
         long seconds = durationMs / 1000;
         long minutes = seconds / 60;
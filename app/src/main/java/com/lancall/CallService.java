@@ -12,6 +12,7 @@ import android.media.AudioManager;
 import android.media.AudioRecord;
 import android.media.AudioTrack;
 import android.media.MediaRecorder;
+import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.os.Binder;
 import android.os.Build;
@@ -26,18 +27,17 @@ import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.UUID;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * خدمة إدارة المكالمات - تعمل في الخلفية لمعالجة المكالمات الصوتية
@@ -55,38 +55,61 @@ public class CallService extends Service {
                                                                // واحدة
     private static final int NOTIFICATION_ID = 1001; // رقم فريد للإشعار - يمكن تحديثه أو إلغاؤه باستخدام هذا الرقم
 
+    // سجلات المسار الصوتي الدورية تبني نصوصاً - off unless enabled with: adb shell setprop log.tag.CallService DEBUG
+    private static final boolean MEDIA_DEBUG_LOG = Log.isLoggable(TAG, Log.DEBUG);
+
     // إعدادات الصوت - Audio configuration
-    private static final int SAMPLE_RATE = 16000; // معدل العينات: 16 ألف عينة في الثانية - جودة عالية للمكالمات الصوتية
     private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT; // تنسيق الصوت: PCM 16 بت - كل عينة صوتية
                                                                             // تحفظ في 16 بت
     private static final int CHANNEL_CONFIG_IN = AudioFormat.CHANNEL_IN_MONO; // إعداد التسجيل: قناة واحدة (أحادي) -
                                                                               // يوفر مساحة ويكفي للصوت البشري
     private static final int CHANNEL_CONFIG_OUT = AudioFormat.CHANNEL_OUT_MONO; // إعداد التشغيل: قناة واحدة (أحادي) -
                                                                                 // مطابق للتسجيل
-    private static final int BUFFER_SIZE = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG_IN, AUDIO_FORMAT); // حجم
-                                                                                                                       // الذاكرة
-                                                                                                                       // المؤقتة:
-                                                                                                                       // الحد
-                                                                                                                       // الأدنى
-                                                                                                                       // المطلوب
-                                                                                                                       // لتسجيل
-                                                                                                                       // الصوت
-                                                                                                                       // بهذه
-                                                                                                                       // المواصفات
+    // أجهزة الصوت تعمل بمعدلها الأصلي إن أمكن والتحويل إلى معدل الشبكة عندنا - the native rate keeps
+    // the platform on its fast path; rates outside this range fall back to the default wire rate
+    private static final int MIN_DEVICE_SAMPLE_RATE = 8000;
+    private static final int MAX_DEVICE_SAMPLE_RATE = 48000;
 
     // إعدادات الشبكة - Network configuration
     public static final int SIGNALING_PORT = 10001; // منفذ إشارات التحكم: يستخدم بروتوكول TCP لإرسال أوامر المكالمة
                                                     // (بدء، قبول، رفض، إنهاء)
     public static final int AUDIO_PORT = 10002; // منفذ البيانات الصوتية: يستخدم بروتوكول UDP لنقل الصوت بسرعة عالية
 
+    // مهلة الرنين - how long the caller waits for CALL_ACCEPT/CALL_DECLINE before giving up
+    private static final int CALL_ANSWER_TIMEOUT_MS = 45000;
+
+    // إعدادات مخزن الارتعاش - Jitter buffer configuration
+    private static final int JITTER_BUFFER_FRAMES = 64; // عدد خانات المخزن - يكفي لأكثر من ثانية من الصوت
+
+    // أحجام الإطارات - Frame sizing, independent of getMinBufferSize
+    private static final int MAX_FRAME_SAMPLES = FramePacer.samplesPerFrame(SampleRates.MAX_RATE,
+            FramePacer.MAX_PTIME_MS); // أكبر معدل وأطول حزمة - buffers fit any negotiated rate
+    // التشغيل بسرعة متغيرة قد يخرج أكثر من إطار في الدورة - time-stretched playout frames
+    private static final int MAX_PLAYOUT_SAMPLES = AudioReceiver.getMaxPlayoutSamples(MAX_FRAME_SAMPLES);
+
+    // كلفة ملغي الصدى تتناسب مع عدد المعاملات - NLMS cost is taps × rate, so HD rates get a shorter tail
+    private static final int MAX_ECHO_TAPS = 2048; // 64 مللي ثانية حتى 32 كيلوهرتز، 42 عند 48
+    private static final int MAX_DATAGRAM_SIZE = FramePacer.DEFAULT_MTU; // أكبر حزمة نقبلها من الطرف الآخر
+    private static final int REPORT_INTERVAL_MS = 1000; // تقرير التحكم: نحو 50 بايت في الثانية
+
+    // حلقات التسليم بين الخيوط - SPSC hand-off: capture → encoder/network and network → playout
+    private static final int CAPTURE_RING_FRAMES = 8; // 160 مللي ثانية بإطارات 20 مللي ثانية
+    private static final int ECHO_REFERENCE_FRAMES = 16; // ما شغل ولم يصل بعد إلى ملغي الصدى
+    private static final int RECEIVE_RING_PACKETS = 32; // يستوعب دفعات الحزم المتأخرة
+    private static final long RING_WAIT_NANOS = 100_000_000L; // إعادة فحص حالة المكالمة كل 100 مللي ثانية
+
     // حالة الخدمة - Service state
     private boolean isServiceRunning = false; // هل الخدمة تعمل؟ - يتحكم في حلقات الاستماع والمعالجة
     private boolean isInCall = false; // هل توجد مكالمة نشطة؟ - يحدد ما إذا كان هناك تبادل صوتي جاري
     private boolean isMuted = false; // هل الميكروفون مكتوم؟ - يتحكم في إرسال الصوت للطرف الآخر
+    private volatile boolean echoCancellation = true; // إلغاء صدى مكبر الصوت قبل الترميز
+    private int noiseSuppressionLevel = NoiseSuppressor.LEVEL_MODERATE; // يطبق من المكالمة التالية
 
     // مكونات الشبكة - Network components
     private ServerSocket signalingServer; // خادم TCP: يستمع للاتصالات الواردة على منفذ إشارات التحكم
-    private DatagramSocket audioSocket; // مقبس UDP: يرسل ويستقبل حزم البيانات الصوتية
+    private PeerConnectionManager peerConnections; // اتصال إشارات دائم لكل جهاز، مشترك مع الأنشطة
+    private MediaTransport mediaTransport; // محرك نقل الوسائط: خيط واحد يستقبل حزم جميع التدفقات الصوتية
+    private MediaTransport.Stream audioStream; // تدفق UDP للمكالمة الحالية - يرسل ويستقبل حزم البيانات الصوتية
     private ExecutorService executorService; // مدير المهام المتوازية: ينفذ عدة مهام في نفس الوقت (استماع، إرسال،
                                              // استقبال)
 
@@ -95,11 +118,59 @@ public class CallService extends Service {
     private AudioTrack audioTrack; // مشغل الصوت: يحول البيانات الرقمية المستقبلة إلى صوت في السماعة
 
     // Reusable audio buffers for better memory management
-    private byte[] audioSendBuffer;
-    private byte[] audioReceiveBuffer;
+    private ByteBuffer audioSendPacket; // مخزن مباشر: يرمز فيه الإطار ويرسل منه دون نسخ
+    private ByteBuffer audioParityPacket; // حزمة التكافؤ تبنى منفصلة بعد كل مجموعة
+    private short[] captureFrame; // يستقبل الإطار الملتقط عند امتلاء الحلقة ثم يهمل
+
+    // مدة الحزمة المطلوبة (10/20/40/60 مللي ثانية) - requested packet time, capped by the MTU per codec
+    private int packetTimeMs = FramePacer.DEFAULT_PTIME_MS;
+
+    // معدل العينات على الشبكة للمكالمة الحالية - wire rate, negotiated per call
+    private int sampleRate = SampleRates.DEFAULT_RATE;
+    // أعلى معدل نقبله - user limit on the wire rate, further capped by the Wi-Fi link
+    private int maxSampleRate = SampleRates.MAX_RATE;
+
+    // معدل أجهزة الصوت الفعلي - rates AudioRecord/AudioTrack were opened at
+    private int captureSampleRate = SampleRates.DEFAULT_RATE;
+    private int playoutSampleRate = SampleRates.DEFAULT_RATE;
+
+    // الترميز الذي نرسل به - codec this side encodes with; the receiver decodes by payload type
+    private String audioCodecName = AudioCodecs.getSupportedNames().get(0);
+    // ترميزات يفككها الطرف الآخر - codecs the peer decodes; the bitrate controller may switch among them
+    private List<String> remoteCodecs;
+
+    // تصحيح الأخطاء الأمامي - FEC mode we ask for when calling, and the mode agreed for the current call
+    private String fecPreference = FecEncoder.MODE_OFF;
+    private String activeFecMode = FecEncoder.MODE_OFF;
+
+    // مخزن تعويض الارتعاش - Jitter buffer, owned by the playout thread
+    private JitterBuffer jitterBuffer;
+
+    // إحصاءات جودة المكالمة الحالية أو الأخيرة - quality statistics, polled by the UI
+    private volatile CallStatistics callStatistics;
+
+    // حالة التجهيز المسبق - media warm-up state, guarded by mediaLock
+    private final Object mediaLock = new Object();
+    private boolean mediaWarm = false;
+    private int audioStreamRemotePort;
+
+    // زمن أول صوت في المكالمة - time-to-first-audio, measured from the moment the call connects
+    private volatile long callConnectedNanos;
+    private volatile long firstAudioSentMs = -1;
+    private volatile long firstAudioPlayedMs = -1;
+
+    // حلقات التسليم للمكالمة الحالية - per-call hand-off rings
+    private SpscRing<AudioFrame> captureRing; // خيط الالتقاط → خيط الترميز والإرسال
+    private SpscRing<InboundPacket> receiveRing; // خيط نقل الوسائط → خيط التشغيل
+    private SpscRing<AudioFrame> echoReferenceRing; // خيط التشغيل → ملغي الصدى في خيط الإرسال
 
     // معلومات المكالمة الحالية - Current call information
     private String remoteIP; // عنوان IP للجهاز الآخر في المكالمة - يحدد وجهة إرسال البيانات الصوتية
+    private int remoteAudioPort = AUDIO_PORT; // منفذ الصوت الذي أعلنه الطرف الآخر في الطلب أو القبول
+
+    // المكالمة التي ترن - the caller ringing here, answered over its peer connection
+    private String pendingCallPeer;
+    private final Handler ringTimer = new Handler(Looper.getMainLooper()); // مهلة الرنين
     private CallState currentCallState = CallState.IDLE; // حالة المكالمة الحالية - تبدأ بـ IDLE (خاملة) وتتغير حسب
                                                          // مراحل المكالمة
 
@@ -173,6 +244,8 @@ public class CallService extends Service {
         super.onCreate();
         executorService = Executors.newCachedThreadPool(); // إنشاء مجموعة خيوط مرنة - تنشئ خيوط حسب الحاجة وتغلقها عند
                                                            // عدم الاستخدام
+        mediaTransport = new MediaTransport(); // يبدأ خيطه عند أول مكالمة
+        peerConnections = new PeerConnectionManager(new SignalingHandler());
         createNotificationChannel(); // إنشاء قناة الإشعارات - ضروري لعرض إشعارات الخدمة في Android 8.0+
         Log.d(TAG, "CallService created"); // تسجيل إنشاء الخدمة في اللوغ للمتابعة
 
@@ -206,6 +279,8 @@ public class CallService extends Service {
         if (executorService != null) { // إذا كان مدير المهام موجوداً
             executorService.shutdown(); // إغلاق مدير المهام وإنهاء جميع الخيوط العاملة
         }
+        mediaTransport.shutdown(); // إيقاف خيط نقل الوسائط
+        peerConnections.close(); // إغلاق اتصالات الإشارات مع كل الأجهزة
         Log.d(TAG, "CallService destroyed"); // تسجيل تدمير الخدمة في اللوغ
     }
 
@@ -289,7 +364,7 @@ public class CallService extends Service {
                         Log.d(TAG, "Waiting for incoming connections...");
                         Socket clientSocket = signalingServer.accept();
                         Log.d(TAG, "New connection received from: " + clientSocket.getInetAddress().getHostAddress());
-                        executorService.execute(() -> handleSignalingConnection(clientSocket));
+                        peerConnections.adopt(clientSocket); // يصبح اتصال هذا الجهاز في الاتجاهين
                     } catch (IOException e) {
                         if (isServiceRunning) {
                             Log.e(TAG, "Error accepting signaling connection", e);
@@ -305,112 +380,169 @@ public class CallService extends Service {
         });
     }
 
-    private void handleSignalingConnection(Socket clientSocket) {
-        Log.d(TAG, "Handling signaling connection from: " + clientSocket.getInetAddress());
+    /**
+     * معالج الإشارات - يعمل في خيط قراءة اتصال الجهاز
+     * Signaling handler - runs on the reader thread of the peer's connection;
+     * every message type arrives here, over one connection per peer.
+     */
+    private class SignalingHandler implements PeerConnectionManager.Listener {
+        @Override
+        public void onMessage(String peerIp, SignalingProtocol.Message message) {
+            handleSignalingMessage(peerIp, message);
+        }
 
-        try {
-            // Set a timeout for reading
-            clientSocket.setSoTimeout(5000); // 5 second timeout
-
-            String fromIP = clientSocket.getInetAddress().getHostAddress();
-
-            // Read the incoming message with better handling
-            InputStream inputStream = clientSocket.getInputStream();
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            byte[] data = new byte[1024];
-            int nRead;
-
-            // Read all available data
-            while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
-                // Check if we have a complete JSON message
-                String currentData = buffer.toString("UTF-8");
-                if (currentData.trim().endsWith("}")) {
-                    break; // We have a complete JSON message
-                }
+        @Override
+        public void onDisconnected(String peerIp) {
+            cancelRingingCall(peerIp, "caller disconnected"); // المتصل اختفى أثناء الرنين
+        }
+    }
+
+    private void handleSignalingMessage(String fromIP, SignalingProtocol.Message message) {
+        Log.d(TAG, "Parsed message type: " + message.type + " from " + fromIP);
+        if (SignalingProtocol.MESSAGE_TYPE_CALL_REQUEST.equals(message.type)) {
+            // مشغول - busy: answer at once instead of letting the caller wait for a timeout
+            if (isInCall || currentCallState == CallState.INCOMING
+                    || currentCallState == CallState.OUTGOING) {
+                Log.d(TAG, "Busy, declining call from: " + fromIP);
+                sendSignalingMessage(fromIP, SignalingProtocol.createCallDecline(getLocalIPv4()));
+                return;
             }
 
-            buffer.flush();
-            String jsonMessage = buffer.toString("UTF-8");
-            Log.d(TAG, "Received complete message from " + fromIP + ": " + jsonMessage);
+            // Handle call request
+            remoteIP = fromIP;
+            currentCallState = CallState.INCOMING;
+
+            // اختيار الترميز من عرض المتصل - pick our send codec from the caller's offer
+            SignalingProtocol.CallRequestData request = SignalingProtocol.getData(message,
+                    SignalingProtocol.CallRequestData.class);
+            audioCodecName = AudioCodecs.negotiate(request != null ? request.codecs : null);
+            remoteCodecs = request != null ? request.codecs : null;
+            remoteAudioPort = request != null && request.audioPort > 0 ? request.audioPort : AUDIO_PORT;
+            activeFecMode = FecEncoder.negotiate(request != null ? request.fec : null);
+            sampleRate = SampleRates.negotiate(request != null ? request.sampleRates : null,
+                    getSampleRateLimit());
+            Log.d(TAG, "Negotiated audio codec: " + audioCodecName + ", fec: " + activeFecMode
+                    + ", sample rate: " + sampleRate + "Hz");
+            synchronized (this) {
+                pendingCallPeer = fromIP; // الرد يعود على اتصال هذا الجهاز
+            }
+            ringTimer.postDelayed(() -> cancelRingingCall(fromIP, "no answer"), CALL_ANSWER_TIMEOUT_MS);
+            warmUpMediaAsync(); // تجهيز الصوت أثناء الرنين
 
-            // Parse the message
-            SignalingProtocol.Message message = SignalingProtocol.jsonToMessage(jsonMessage);
+            Log.d(TAG, "Incoming call from: " + fromIP);
 
-            if (message != null) {
-                Log.d(TAG, "Parsed message type: " + message.type);
-                if (SignalingProtocol.MESSAGE_TYPE_CALL_REQUEST.equals(message.type)) {
-                    // Handle call request
-                    remoteIP = fromIP;
-                    currentCallState = CallState.INCOMING;
+            // تحديث الإشعار لإظهار المكالمة الواردة
+            updateNotification("مكالمة واردة من: " + fromIP);
 
-                    Log.d(TAG, "Incoming call from: " + fromIP);
+            // لا نبدأ audio streaming تلقائياً - ننتظر المستخدم يضغط "رد"
+            // currentCallState يبقى INCOMING حتى يرد المستخدم
 
-                    // تحديث الإشعار لإظهار المكالمة الواردة
-                    updateNotification("مكالمة واردة من: " + fromIP);
+            // إرسال إشعار باتصال وارد
+            if (callback != null) {
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    Log.d(TAG, "Calling callback.onIncomingCall for: " + fromIP);
+                    callback.onIncomingCall(fromIP);
+                    // لا نرسل onCallConnected تلقائياً - ننتظر المستخدم يضغط "رد"
+                });
+            } else {
+                Log.w(TAG, "No callback set for incoming call!");
+            }
+        } else if (SignalingProtocol.MESSAGE_TYPE_CALL_END.equals(message.type)) {
+            // الطرف الآخر أنهى المكالمة، أو ألغاها أثناء الرنين - remote hang-up or cancel
+            if (isInCall && fromIP.equals(remoteIP)) {
+                Log.d(TAG, "Call ended by remote: " + fromIP);
+                finishCall();
+            } else {
+                cancelRingingCall(fromIP, message.type);
+            }
+        } else if (SignalingProtocol.MESSAGE_TYPE_TEXT_MESSAGE.equals(message.type)) {
+            // Handle text message
+            SignalingProtocol.TextMessageData textData = SignalingProtocol.getData(message,
+                    SignalingProtocol.TextMessageData.class);
+            if (textData == null) {
+                Log.w(TAG, "Text message without text from " + fromIP);
+                return;
+            }
+            Log.d(TAG, "Received text message from " + fromIP + ": " + textData.message);
 
-                    // لا نبدأ audio streaming تلقائياً - ننتظر المستخدم يضغط "رد"
-                    // currentCallState يبقى INCOMING حتى يرد المستخدم
+            // Notify the callback about the received text message
+            if (callback != null) {
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    callback.onTextMessageReceived(fromIP, textData.message);
+                });
+            }
+        } else if (SignalingProtocol.MESSAGE_TYPE_CONNECTION_REQUEST.equals(message.type)) {
+            // Handle connection request
+            Log.d(TAG, "Received connection request from: " + fromIP);
 
-                    // إرسال إشعار باتصال وارد
-                    if (callback != null) {
-                        new Handler(Looper.getMainLooper()).post(() -> {
-                            Log.d(TAG, "Calling callback.onIncomingCall for: " + fromIP);
-                            callback.onIncomingCall(fromIP);
-                            // لا نرسل onCallConnected تلقائياً - ننتظر المستخدم يضغط "رد"
-                        });
-                    } else {
-                        Log.w(TAG, "No callback set for incoming call!");
-                    }
-                } else if (SignalingProtocol.MESSAGE_TYPE_TEXT_MESSAGE.equals(message.type)) {
-                    // Handle text message
-                    SignalingProtocol.TextMessageData textData = (SignalingProtocol.TextMessageData) message.data;
-                    Log.d(TAG, "Received text message from " + fromIP + ": " + textData.message);
+            // Send acknowledgment
+            sendSignalingMessage(fromIP, SignalingProtocol.createConnectionAck(getLocalIPv4()));
 
-                    // Notify the callback about the received text message
-                    if (callback != null) {
-                        new Handler(Looper.getMainLooper()).post(() -> {
-                            callback.onTextMessageReceived(fromIP, textData.message);
-                        });
-                    }
-                } else if (SignalingProtocol.MESSAGE_TYPE_CONNECTION_REQUEST.equals(message.type)) {
-                    // Handle connection request
-                    Log.d(TAG, "Received connection request from: " + fromIP);
-
-                    // Send acknowledgment
-                    SignalingProtocol.Message ack = SignalingProtocol.createConnectionAck(getLocalIPv4());
-                    String ackJson = SignalingProtocol.messageToJson(ack);
-
-                    if (ackJson != null) {
-                        clientSocket.getOutputStream().write(ackJson.getBytes("UTF-8"));
-                        clientSocket.getOutputStream().flush();
-                        Log.d(TAG, "Sent connection acknowledgment to: " + fromIP);
-
-                        // Notify the callback about the established connection
-                        if (callback != null) {
-                            new Handler(Looper.getMainLooper()).post(() -> {
-                                callback.onConnectionEstablished(fromIP);
-                            });
-                        }
-                    }
-                } else {
-                    Log.d(TAG, "Received unknown message type: " + message.type);
-                }
-            } else {
-                Log.e(TAG, "Failed to parse incoming message: " + jsonMessage);
+            // Notify the callback about the established connection
+            if (callback != null) {
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    callback.onConnectionEstablished(fromIP);
+                });
             }
+        } else {
+            Log.d(TAG, "Received unknown message type: " + message.type);
+        }
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error handling signaling connection", e);
-        } finally {
-            try {
-                clientSocket.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Error closing signaling socket", e);
+    /**
+     * إلغاء المكالمة الواردة - Drop the incoming call if {@code peer} is still
+     * ringing: the caller cancelled or disconnected, or nobody answered.
+     */
+    private void cancelRingingCall(String peer, String reason) {
+        synchronized (this) {
+            if (!peer.equals(pendingCallPeer)) {
+                return; // المستخدم رد أو رفض - already answered or declined
             }
+            pendingCallPeer = null;
+        }
+        ringTimer.removeCallbacksAndMessages(null);
+
+        Log.d(TAG, "Incoming call cancelled: " + reason);
+        currentCallState = CallState.ENDED;
+        releaseWarmMedia();
+        updateNotification("جاهز لاستقبال المكالمات - المنفذ: " + SIGNALING_PORT);
+        if (callback != null) {
+            new Handler(Looper.getMainLooper()).post(() -> callback.onCallEnded());
+        }
+    }
+
+    private synchronized String takePendingCallPeer() {
+        String peer = pendingCallPeer;
+        pendingCallPeer = null;
+        ringTimer.removeCallbacksAndMessages(null);
+        return peer;
+    }
+
+    /**
+     * إرسال رسالة إشارة على اتصال الجهاز - Signaling message to the peer,
+     * over its connection. Blocks while reconnecting; off the main thread.
+     *
+     * @return whether it was written
+     */
+    private boolean sendSignalingMessage(String targetIP, SignalingProtocol.Message message) {
+        try {
+            peerConnections.send(targetIP, SIGNALING_PORT, message);
+            Log.d(TAG, "Sent " + message.type + " to: " + targetIP);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error sending " + message.type + " to " + targetIP, e);
+            return false;
         }
     }
 
+    /**
+     * اتصالات الأجهزة - The signaling connections, shared with the activities
+     * so they talk to a peer over the same connection as the service.
+     */
+    public PeerConnectionManager getPeerConnections() {
+        return peerConnections;
+    }
+
     public void makeCall(String targetIP, int targetPort) {
         if (isInCall) {
             Log.w(TAG, "Already in call");
@@ -422,8 +554,15 @@ public class CallService extends Service {
 
         remoteIP = targetIP;
         currentCallState = CallState.OUTGOING;
+        audioCodecName = AudioCodecs.getSupportedNames().get(0); // المتصل يرسل بتفضيله الأول
+        remoteCodecs = null;
+        remoteAudioPort = AUDIO_PORT; // حتى يصل القبول بمنفذ الطرف الآخر
+        activeFecMode = FecEncoder.MODE_OFF; // حتى يؤكده القبول
+        sampleRate = SampleRates.DEFAULT_RATE;
+        int sampleRateLimit = getSampleRateLimit(); // قياس الرابط قبل العرض - measured before offering
 
         Log.d(TAG, "Making call to: " + targetIP + ":" + targetPort);
+        warmUpMediaAsync(); // تجهيز الصوت أثناء انتظار الرد
 
         executorService.execute(() -> {
             try {
@@ -432,27 +571,35 @@ public class CallService extends Service {
                 SignalingProtocol.Message callRequest = SignalingProtocol.createCallRequest(
                         localIP,
                         "Caller",
-                        AUDIO_PORT);
-                String jsonMessage = SignalingProtocol.messageToJson(callRequest);
-
-                if (jsonMessage != null) {
-                    // محاولة الاتصال بخادم الإشارات في الجهاز المستهدف
-                    Socket signalingSocket = new Socket();
-                    signalingSocket.connect(new java.net.InetSocketAddress(targetIP, targetPort), 10000); // 10 seconds
-                                                                                                          // timeout
-
-                    Log.d(TAG, "Connected to target signaling server");
-
-                    // إرسال إشارة بالاتصال
-                    Log.d(TAG, "Sending call signal from: " + localIP);
-                    signalingSocket.getOutputStream().write(jsonMessage.getBytes("UTF-8"));
-                    signalingSocket.getOutputStream().flush();
-
-                    // إغلاق الاتصال فوراً لتفعيل handleSignalingConnection في الجهة الأخرى
-                    signalingSocket.close();
+                        AUDIO_PORT,
+                        AudioCodecs.getSupportedNames(),
+                        fecPreference,
+                        SampleRates.getOffer(sampleRateLimit));
+
+                long setupStartMs = System.currentTimeMillis();
+
+                // إرسال إشارة بالاتصال وانتظار الرد على اتصال الجهاز - wait for CALL_ACCEPT/CALL_DECLINE
+                Log.d(TAG, "Sending call signal from: " + localIP);
+                SignalingProtocol.Message reply = peerConnections.request(targetIP, targetPort, callRequest,
+                        CALL_ANSWER_TIMEOUT_MS, SignalingProtocol.MESSAGE_TYPE_CALL_ACCEPT,
+                        SignalingProtocol.MESSAGE_TYPE_CALL_DECLINE);
+
+                if (currentCallState != CallState.OUTGOING) {
+                    Log.d(TAG, "Outgoing call cancelled");
+                    return; // ألغاه المستخدم أثناء الرنين - endCall() already reported it
+                }
 
-                    // انتظار قصير ثم اعتبار الاتصال متصل
-                    Thread.sleep(2000);
+                if (reply != null && SignalingProtocol.MESSAGE_TYPE_CALL_ACCEPT.equals(reply.type)) {
+                    SignalingProtocol.CallAcceptData accept = SignalingProtocol.getData(reply,
+                            SignalingProtocol.CallAcceptData.class);
+                    // نرسل بالترميز الذي اختاره المستقبل إن كنا ندعمه
+                    if (accept != null && AudioCodecs.create(accept.codec) != null) {
+                        audioCodecName = accept.codec;
+                    }
+                    remoteCodecs = accept != null ? accept.codecs : null; // المجيبون الأقدم لا يرسلونها
+                    remoteAudioPort = accept != null && accept.audioPort > 0 ? accept.audioPort : AUDIO_PORT;
+                    activeFecMode = FecEncoder.negotiate(accept != null ? accept.fec : null);
+                    sampleRate = SampleRates.accepted(accept != null ? accept.sampleRate : 0);
 
                     currentCallState = CallState.CONNECTED;
                     isInCall = true;
@@ -461,27 +608,38 @@ public class CallService extends Service {
                         new Handler(Looper.getMainLooper()).post(() -> callback.onCallConnected());
                     }
 
-                    Log.d(TAG, "Call connected, starting audio streaming");
+                    Log.d(TAG, "Call accepted in " + (System.currentTimeMillis() - setupStartMs)
+                            + "ms, codec: " + audioCodecName + ", fec: " + activeFecMode + ", sample rate: " + sampleRate
+                            + "Hz, starting audio streaming");
                     startAudioStreaming();
                 } else {
-                    Log.e(TAG, "Failed to serialize call request");
+                    boolean declined = reply != null
+                            && SignalingProtocol.MESSAGE_TYPE_CALL_DECLINE.equals(reply.type);
+                    Log.d(TAG, "Call not accepted: " + (reply != null ? reply.type : "connection closed"));
                     currentCallState = CallState.ENDED;
+                    releaseWarmMedia();
                     if (callback != null) {
-                        new Handler(Looper.getMainLooper())
-                                .post(() -> callback.onCallError("فشل في إعداد المكالمة"));
+                        new Handler(Looper.getMainLooper()).post(() -> callback.onCallError(
+                                declined ? "رفض الطرف الآخر المكالمة" : "انقطع الاتصال قبل الرد"));
                     }
                 }
 
             } catch (SocketTimeoutException e) {
                 Log.e(TAG, "Connection timeout: " + e.getMessage(), e);
                 currentCallState = CallState.ENDED;
+                releaseWarmMedia();
                 if (callback != null) {
                     new Handler(Looper.getMainLooper())
                             .post(() -> callback.onCallError("انتهت مهلة الاتصال"));
                 }
             } catch (Exception e) {
+                if (currentCallState != CallState.OUTGOING) {
+                    Log.d(TAG, "Outgoing call cancelled");
+                    return; // ألغى endCall() الانتظار - endCall() cancelled the wait
+                }
                 Log.e(TAG, "Error making call: " + e.getMessage(), e);
                 currentCallState = CallState.ENDED;
+                releaseWarmMedia();
                 if (callback != null) {
                     new Handler(Looper.getMainLooper())
                             .post(() -> callback.onCallError("فشل الاتصال: " + e.getMessage()));
@@ -491,7 +649,8 @@ public class CallService extends Service {
     }
 
     public void answerCall() {
-        if (currentCallState != CallState.INCOMING) {
+        String peer = takePendingCallPeer();
+        if (currentCallState != CallState.INCOMING || peer == null) {
             Log.w(TAG, "No incoming call to answer");
             return;
         }
@@ -503,16 +662,25 @@ public class CallService extends Service {
             callback.onCallConnected();
         }
 
+        // القبول يحمل منفذ الصوت والترميز المختار - accept carries our audio port and codec
+        SignalingProtocol.Message accept = SignalingProtocol.createCallAccept(getLocalIPv4(), AUDIO_PORT,
+                audioCodecName, activeFecMode, sampleRate, AudioCodecs.getSupportedNames());
+        executorService.execute(() -> sendSignalingMessage(peer, accept));
+
         startAudioStreaming();
     }
 
     public void declineCall() {
-        if (currentCallState != CallState.INCOMING) {
+        String peer = takePendingCallPeer();
+        if (currentCallState != CallState.INCOMING || peer == null) {
             Log.w(TAG, "No incoming call to decline");
             return;
         }
 
         currentCallState = CallState.ENDED;
+        SignalingProtocol.Message decline = SignalingProtocol.createCallDecline(getLocalIPv4());
+        executorService.execute(() -> sendSignalingMessage(peer, decline));
+        releaseWarmMedia();
 
         if (callback != null) {
             callback.onCallEnded();
@@ -520,18 +688,42 @@ public class CallService extends Service {
     }
 
     public void endCall() {
+        if (currentCallState == CallState.OUTGOING) {
+            // إلغاء المكالمة أثناء الرنين - CALL_END stops the ringing at the callee at once
+            currentCallState = CallState.ENDED;
+            String peer = remoteIP;
+            peerConnections.cancelRequest(peer);
+            SignalingProtocol.Message end = SignalingProtocol.createCallEnd(getLocalIPv4());
+            executorService.execute(() -> sendSignalingMessage(peer, end));
+            releaseWarmMedia();
+            if (callback != null) {
+                callback.onCallEnded();
+            }
+            return;
+        }
+
         if (!isInCall) {
             Log.w(TAG, "Not in call");
             return;
         }
 
+        String peer = remoteIP;
+        SignalingProtocol.Message end = SignalingProtocol.createCallEnd(getLocalIPv4());
+        executorService.execute(() -> sendSignalingMessage(peer, end));
+        finishCall();
+    }
+
+    /**
+     * إنهاء المكالمة محلياً - Tear down the call on this side.
+     */
+    private void finishCall() {
         isInCall = false;
         currentCallState = CallState.ENDED;
 
         stopAudioStreaming();
 
         if (callback != null) {
-            callback.onCallEnded();
+            new Handler(Looper.getMainLooper()).post(() -> callback.onCallEnded());
         }
     }
 
@@ -548,9 +740,11 @@ public class CallService extends Service {
 
         Log.d(TAG, "Attempting to send text message: " + message + " to " + remoteIP);
 
+        String peer = remoteIP;
+        SignalingProtocol.Message textMessage = SignalingProtocol.createTextMessage(getLocalIPv4(), message);
         executorService.execute(() -> {
-            // Try to send message with retry mechanism
-            boolean sent = sendMessageWithRetry(message, 3);
+            // على اتصال الجهاز الدائم، مع إعادة الاتصال والمحاولة - reconnects and retries with backoff
+            boolean sent = sendSignalingMessage(peer, textMessage);
 
             if (!sent) {
                 Log.e(TAG, "Failed to send text message after retries");
@@ -565,76 +759,136 @@ public class CallService extends Service {
         });
     }
 
+    public void toggleMute() {
+        isMuted = !isMuted;
+        Log.d(TAG, "Mute toggled: " + isMuted);
+    }
+
+    public boolean isMuted() {
+        return isMuted;
+    }
+
     /**
-     * إرسال رسالة مع إعادة المحاولة
-     * Send message with retry mechanism
+     * تفعيل إلغاء الصدى - Enable or disable the software echo canceller.
+     * Mostly matters with the speakerphone on; takes effect on the next frame.
      */
-    private boolean sendMessageWithRetry(String message, int maxRetries) {
-        for (int i = 0; i < maxRetries; i++) {
-            Socket signalingSocket = null;
-            try {
-                // Create text message with unique ID
-                String localIP = getLocalIPv4();
-                String messageId = UUID.randomUUID().toString();
-                SignalingProtocol.Message textMessage = SignalingProtocol.createTextMessage(localIP, message);
-                String jsonMessage = SignalingProtocol.messageToJson(textMessage);
-
-                if (jsonMessage != null) {
-                    Log.d(TAG, "Serialized text message: " + jsonMessage);
-                    // Send message via TCP socket
-                    signalingSocket = new Socket();
-                    signalingSocket.connect(new java.net.InetSocketAddress(remoteIP, SIGNALING_PORT), 5000); // 5
-                                                                                                             // seconds
-                                                                                                             // timeout
-                    Log.d(TAG, "Connected to signaling server at " + remoteIP + ":" + SIGNALING_PORT);
-
-                    // Set timeout for the socket
-                    signalingSocket.setSoTimeout(5000);
-
-                    signalingSocket.getOutputStream().write(jsonMessage.getBytes("UTF-8"));
-                    signalingSocket.getOutputStream().flush();
-                    Log.d(TAG, "Sent text message to " + remoteIP);
-
-                    // Ensure data is sent before closing
-                    signalingSocket.shutdownOutput();
-
-                    signalingSocket.close();
-                    return true; // Message sent successfully
-                } else {
-                    Log.e(TAG, "Failed to serialize text message");
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error sending text message (attempt " + (i + 1) + "): " + e.getMessage(), e);
-                if (i < maxRetries - 1) {
-                    try {
-                        Thread.sleep(1000); // Wait 1 second before retry
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-            } finally {
-                // Always close the socket
-                if (signalingSocket != null) {
-                    try {
-                        signalingSocket.close();
-                        Log.d(TAG, "Closed signaling socket");
-                    } catch (IOException e) {
-                        Log.e(TAG, "Error closing signaling socket", e);
-                    }
-                }
+    public void setEchoCancellation(boolean enabled) {
+        echoCancellation = enabled;
+        Log.d(TAG, "Echo cancellation: " + enabled);
+    }
+
+    public boolean isEchoCancellation() {
+        return echoCancellation;
+    }
+
+    /**
+     * قوة كبت الضجيج للمكالمة التالية - Noise suppression strength for the
+     * next call, one of the {@code NoiseSuppressor.LEVEL_*} constants. Any
+     * level but off adds 20 ms of capture latency.
+     */
+    public void setNoiseSuppression(int level) {
+        noiseSuppressionLevel = Math.max(NoiseSuppressor.LEVEL_OFF,
+                Math.min(NoiseSuppressor.LEVEL_HIGH, level));
+    }
+
+    public int getNoiseSuppression() {
+        return noiseSuppressionLevel;
+    }
+
+    /**
+     * تعيين مدة الحزمة للمكالمة التالية - Set the packet time for the next call.
+     * The sender still lowers it if one frame would not fit the MTU.
+     */
+    public void setPacketTime(int ptimeMs) {
+        if (!FramePacer.isSupportedPtime(ptimeMs)) {
+            Log.w(TAG, "Unsupported packet time: " + ptimeMs);
+            return;
+        }
+        packetTimeMs = ptimeMs;
+    }
+
+    public int getPacketTime() {
+        return packetTimeMs;
+    }
+
+    /**
+     * أعلى معدل عينات مسموح - Upper limit on the wire rate, for sites that
+     * must stay narrowband or want HD voice. Both sides apply their own
+     * limit, and each also caps it by its Wi-Fi link quality.
+     */
+    public void setMaxSampleRate(int rate) {
+        if (!SampleRates.isSupported(rate)) {
+            Log.w(TAG, "Unsupported sample rate: " + rate);
+            return;
+        }
+        maxSampleRate = rate;
+    }
+
+    public int getMaxSampleRate() {
+        return maxSampleRate;
+    }
+
+    /** معدل المكالمة الحالية - Wire rate of the current or last call. */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * الحد الفعلي للمعدل - The user limit capped by what the Wi-Fi link can
+     * carry right now (RSSI and PHY rate).
+     */
+    private int getSampleRateLimit() {
+        int linkLimit = SampleRates.DEFAULT_RATE;
+        try {
+            WifiManager wm = (WifiManager) getApplicationContext().getSystemService(WIFI_SERVICE);
+            WifiInfo info = wm != null ? wm.getConnectionInfo() : null;
+            if (info != null) {
+                linkLimit = SampleRates.forLinkQuality(info.getRssi(), info.getLinkSpeed());
+                Log.d(TAG, "Wi-Fi RSSI: " + info.getRssi() + "dBm, link: " + info.getLinkSpeed()
+                        + "Mbps, rate limit: " + linkLimit + "Hz");
             }
+        } catch (Exception e) {
+            Log.w(TAG, "Wi-Fi link quality unavailable", e);
         }
-        return false; // Failed to send after all retries
+        return Math.min(maxSampleRate, linkLimit);
     }
 
-    public void toggleMute() {
-        isMuted = !isMuted;
-        Log.d(TAG, "Mute toggled: " + isMuted);
+    /**
+     * نمط تصحيح الأخطاء للمكالمات الصادرة - FEC mode to request on outgoing
+     * calls: {@link FecEncoder#MODE_OFF}, {@link FecEncoder#MODE_XOR} (about
+     * 25% extra bandwidth, one loss per 4 frames repaired) or
+     * {@link FecEncoder#MODE_RED} (about 2x payload, every isolated loss
+     * repaired). The callee accepts it for both directions.
+     */
+    public void setFecMode(String mode) {
+        fecPreference = FecEncoder.negotiate(mode);
     }
 
-    public boolean isMuted() {
-        return isMuted;
+    public String getFecMode() {
+        return fecPreference;
+    }
+
+    /**
+     * إحصاءات المكالمة - Quality statistics of the current call, or of the
+     * last one once it has ended; null before the first call. Cheap enough
+     * to poll every second.
+     */
+    public CallStatistics.Snapshot getCallStatistics() {
+        CallStatistics statistics = callStatistics;
+        return statistics != null ? statistics.snapshot() : null;
+    }
+
+    /**
+     * زمن أول إطار صوتي مشغل في المكالمة الحالية - Milliseconds from connect
+     * to the first remote frame written to the speaker, or -1 if none yet.
+     */
+    public long getTimeToFirstAudioMs() {
+        return firstAudioPlayedMs;
+    }
+
+    /** Milliseconds from connect to the first local frame sent, or -1. */
+    public long getTimeToFirstSentAudioMs() {
+        return firstAudioSentMs;
     }
 
     public CallState getCallState() {
@@ -661,56 +915,198 @@ public class CallService extends Service {
     }
 
     private void initializeAudioBuffers() {
-        audioSendBuffer = new byte[BUFFER_SIZE];
-        audioReceiveBuffer = new byte[BUFFER_SIZE];
+        // الحزمة = ترويسة الوسائط + الحمولة المرمزة - header and payload share one direct buffer
+        // مع RED تحمل الحزمة إطارين - with RED a packet carries two frames
+        audioSendPacket = ByteBuffer.allocateDirect(MediaPacket.HEADER_SIZE + FecEncoder.RED_HEADER_SIZE
+                + 2 * MAX_FRAME_SAMPLES * 2);
+        audioParityPacket = ByteBuffer.allocateDirect(MediaPacket.HEADER_SIZE + FecEncoder.PARITY_HEADER_SIZE
+                + MAX_FRAME_SAMPLES * 2);
+        captureFrame = new short[MAX_FRAME_SAMPLES];
+    }
+
+    /**
+     * تجهيز الوسائط أثناء الرنين - Media warm-up, run while the call is still
+     * INCOMING/OUTGOING: creates AudioRecord/AudioTrack, switches AudioManager
+     * to communication mode, opens the UDP stream and allocates the per-call
+     * buffers, so connecting only has to start the devices and the loops.
+     * Safe to call more than once; {@link #stopAudioStreaming()} undoes it.
+     */
+    private void warmUpMedia() throws IOException {
+        synchronized (mediaLock) {
+            if (mediaWarm) {
+                return;
+            }
+            long startNanos = System.nanoTime();
+
+            captureRing = new SpscRing<>(CAPTURE_RING_FRAMES, () -> new AudioFrame(MAX_FRAME_SAMPLES));
+            echoReferenceRing = new SpscRing<>(ECHO_REFERENCE_FRAMES, () -> new AudioFrame(MAX_PLAYOUT_SAMPLES));
+            receiveRing = new SpscRing<>(RECEIVE_RING_PACKETS, InboundPacket::new);
+
+            // فتح تدفق متصل بالطرف الآخر مرة واحدة - resolve and connect once so the hot path
+            // neither looks up the address nor accepts datagrams from other hosts
+            mediaTransport.start();
+            openAudioStream();
+
+            // تفعيل وضع المكالمة في مدير الصوت
+            AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+            int nativeRate = SampleRates.DEFAULT_RATE;
+            if (audioManager != null) {
+                audioManager.setMode(AudioManager.MODE_IN_COMMUNICATION);
+                audioManager.setSpeakerphoneOn(false); // استخدام سماعة الأذن
+                nativeRate = getNativeSampleRate(audioManager);
+                Log.d(TAG, "Audio manager configured for call mode, native rate: " + nativeRate + "Hz");
+            }
+
+            // إنشاء أجهزة الصوت دون تشغيلها - the microphone stays off until the call connects
+            if (audioRecord == null) {
+                audioRecord = createAudioRecord(nativeRate);
+                if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED
+                        && nativeRate != SampleRates.DEFAULT_RATE) {
+                    Log.w(TAG, "AudioRecord rejected " + nativeRate + "Hz, falling back to "
+                            + SampleRates.DEFAULT_RATE + "Hz");
+                    audioRecord.release();
+                    audioRecord = createAudioRecord(SampleRates.DEFAULT_RATE);
+                }
+            }
+
+            if (audioTrack == null) {
+                audioTrack = createAudioTrack(nativeRate);
+                if (audioTrack.getState() != AudioTrack.STATE_INITIALIZED
+                        && nativeRate != SampleRates.DEFAULT_RATE) {
+                    Log.w(TAG, "AudioTrack rejected " + nativeRate + "Hz, falling back to "
+                            + SampleRates.DEFAULT_RATE + "Hz");
+                    audioTrack.release();
+                    audioTrack = createAudioTrack(SampleRates.DEFAULT_RATE);
+                }
+            }
+
+            mediaWarm = true;
+            Log.d(TAG, "Media warmed up in " + (System.nanoTime() - startNanos) / 1_000_000 + "ms");
+        }
+    }
+
+    /**
+     * معدل العينات الأصلي للجهاز - The rate the platform mixes at (usually
+     * 48000 Hz), so capture and playout skip its internal resampler.
+     */
+    private static int getNativeSampleRate(AudioManager audioManager) {
+        String property = audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
+        try {
+            int rate = property != null ? Integer.parseInt(property) : SampleRates.DEFAULT_RATE;
+            return rate >= MIN_DEVICE_SAMPLE_RATE && rate <= MAX_DEVICE_SAMPLE_RATE ? rate : SampleRates.DEFAULT_RATE;
+        } catch (NumberFormatException e) {
+            return SampleRates.DEFAULT_RATE;
+        }
+    }
+
+    private AudioRecord createAudioRecord(int sampleRate) {
+        captureSampleRate = sampleRate;
+        int minBuffer = AudioRecord.getMinBufferSize(sampleRate, CHANNEL_CONFIG_IN, AUDIO_FORMAT);
+        int frameBytes = FramePacer.samplesPerFrame(sampleRate, FramePacer.MAX_PTIME_MS) * 2;
+        return new AudioRecord(
+                MediaRecorder.AudioSource.VOICE_COMMUNICATION, // مصدر أفضل للمكالمات
+                sampleRate,
+                CHANNEL_CONFIG_IN,
+                AUDIO_FORMAT,
+                Math.max(minBuffer * 2, frameBytes * 2)); // تتسع لإطارين على الأقل
+    }
+
+    private AudioTrack createAudioTrack(int sampleRate) {
+        playoutSampleRate = sampleRate;
+        int minBuffer = AudioTrack.getMinBufferSize(sampleRate, CHANNEL_CONFIG_OUT, AUDIO_FORMAT);
+        return new AudioTrack(
+                AudioManager.STREAM_VOICE_CALL,
+                sampleRate,
+                CHANNEL_CONFIG_OUT,
+                AUDIO_FORMAT,
+                minBuffer * 2, // مضاعفة حجم الذاكرة
+                AudioTrack.MODE_STREAM);
+    }
+
+    /**
+     * تجهيز الوسائط في الخلفية أثناء الرنين - Warm up on a worker thread; a
+     * failure here is retried when the call connects.
+     */
+    private void warmUpMediaAsync() {
+        executorService.execute(() -> {
+            try {
+                warmUpMedia();
+            } catch (Exception e) {
+                Log.w(TAG, "Media warm-up failed, will retry on connect", e);
+            }
+        });
+    }
+
+    /**
+     * تحرير الوسائط المجهزة عندما لا تكتمل المكالمة - Release warmed-up media
+     * after a decline, cancel or timeout.
+     */
+    private void releaseWarmMedia() {
+        executorService.execute(this::stopAudioStreaming);
+    }
+
+    private void openAudioStream() throws IOException {
+        audioStream = mediaTransport.openStream(AUDIO_PORT, new InetSocketAddress(remoteIP, remoteAudioPort),
+                new AudioReceiveHandler(), MAX_DATAGRAM_SIZE);
+        audioStreamRemotePort = remoteAudioPort;
+        Log.d(TAG, "Audio stream opened on port: " + AUDIO_PORT + ", connected to: " + remoteIP + ":"
+                + remoteAudioPort);
     }
 
     private void startAudioStreaming() {
+        callConnectedNanos = System.nanoTime();
+        firstAudioSentMs = -1;
+        firstAudioPlayedMs = -1;
+
         executorService.execute(() -> {
             try {
                 Log.d(TAG, "Starting audio streaming with remote IP: " + remoteIP);
 
-                // Initialize audio components
-                audioSocket = new DatagramSocket(AUDIO_PORT);
-                Log.d(TAG, "Audio socket created on port: " + AUDIO_PORT);
+                // عادة تم التجهيز أثناء الرنين - normally already done while ringing
+                warmUpMedia();
 
-                // تفعيل وضع المكالمة في مدير الصوت
-                AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-                if (audioManager != null) {
-                    audioManager.setMode(AudioManager.MODE_IN_COMMUNICATION);
-                    audioManager.setSpeakerphoneOn(false); // استخدام سماعة الأذن
-                    Log.d(TAG, "Audio manager configured for call mode");
+                AudioCodec encoder = AudioCodecs.create(audioCodecName);
+                if (encoder == null) {
+                    encoder = new Pcm16Codec();
                 }
-
-                // Start audio recording
-                if (audioRecord == null) {
-                    audioRecord = new AudioRecord(
-                            MediaRecorder.AudioSource.VOICE_COMMUNICATION, // مصدر أفضل للمكالمات
-                            SAMPLE_RATE,
-                            CHANNEL_CONFIG_IN,
-                            AUDIO_FORMAT,
-                            BUFFER_SIZE * 2); // مضاعفة حجم الذاكرة
+                // كل الأحجام تتبع المعدل المتفق عليه - frame sizes and the media clock follow the wire rate
+                int rate = sampleRate;
+                String fecMode = activeFecMode;
+                int fitted = FramePacer.fitPtimeToMtu(packetTimeMs, rate, encoder,
+                        FecEncoder.getFrameMtu(fecMode, FramePacer.DEFAULT_MTU));
+                if (fitted == FramePacer.PTIME_DOES_NOT_FIT && FecEncoder.MODE_RED.equals(fecMode)) {
+                    // إطاران لا يتسعان في حزمة واحدة - fall back to parity, one frame per datagram
+                    fecMode = FecEncoder.MODE_XOR;
+                    fitted = FramePacer.fitPtimeToMtu(packetTimeMs, rate, encoder, FramePacer.DEFAULT_MTU);
+                    Log.w(TAG, "RED frames of " + encoder.getName() + " exceed the MTU, using XOR parity");
                 }
-
-                // Start audio playback
-                if (audioTrack == null) {
-                    audioTrack = new AudioTrack(
-                            AudioManager.STREAM_VOICE_CALL,
-                            SAMPLE_RATE,
-                            CHANNEL_CONFIG_OUT,
-                            AUDIO_FORMAT,
-                            BUFFER_SIZE * 2, // مضاعفة حجم الذاكرة
-                            AudioTrack.MODE_STREAM);
+                if (fitted == FramePacer.PTIME_DOES_NOT_FIT) {
+                    Log.w(TAG, encoder.getName() + " frames exceed the MTU at every ptime, packets will fragment");
+                }
+                int ptime = fitted != FramePacer.PTIME_DOES_NOT_FIT ? fitted : packetTimeMs;
+                FecEncoder fec = new FecEncoder(fecMode, FecEncoder.DEFAULT_GROUP_SIZE, MAX_FRAME_SAMPLES * 2);
+                jitterBuffer = new JitterBuffer(rate, JITTER_BUFFER_FRAMES, MAX_DATAGRAM_SIZE - MediaPacket.HEADER_SIZE,
+                        FramePacer.samplesPerFrame(rate, ptime));
+                callStatistics = new CallStatistics(rate);
+
+                synchronized (mediaLock) {
+                    // القبول أعلن منفذاً مختلفاً عن المتوقع أثناء التجهيز
+                    if (audioStreamRemotePort != remoteAudioPort) {
+                        mediaTransport.closeStream(audioStream);
+                        openAudioStream();
+                    }
+                    audioRecord.startRecording();
+                    audioTrack.play();
                 }
 
-                audioRecord.startRecording();
-                audioTrack.play();
-
-                // Start audio streaming threads
-                executorService.execute(this::audioSendingLoop);
-                executorService.execute(this::audioReceivingLoop);
+                // Start audio streaming threads - الاستقبال يتم في خيط نقل الوسائط
+                AudioCodec sendCodec = encoder;
+                executorService.execute(() -> audioCaptureLoop(rate, ptime));
+                executorService.execute(() -> audioSendingLoop(sendCodec, fec, rate, ptime));
+                executorService.execute(() -> audioPlayoutLoop(rate));
 
-                Log.d(TAG, "Audio streaming started");
+                Log.d(TAG, "Audio streaming started " + (System.nanoTime() - callConnectedNanos) / 1_000_000
+                        + "ms after connect");
 
             } catch (Exception e) {
                 Log.e(TAG, "Error starting audio streaming", e);
@@ -721,71 +1117,345 @@ public class CallService extends Service {
         });
     }
 
-    private void audioSendingLoop() {
-        long sequenceNumber = 0;
-        Log.d(TAG, "Audio sending loop started, sending to: " + remoteIP + ":" + AUDIO_PORT);
+    /**
+     * حلقة الالتقاط - تقرأ إطاراً من الميكروفون إلى خانة في حلقة الالتقاط ولا تفعل شيئاً آخر،
+     * فلا يمكن لبطء الترميز أو الإرسال أن يؤخر القراءة
+     * Capture loop - only reads frames into the capture ring; a slow encoder or
+     * network write can no longer stall AudioRecord.read.
+     */
+    private void audioCaptureLoop(int rate, int ptime) {
+        long mediaTimestamp = 0;
+        FramePacer pacer = new FramePacer(rate, ptime);
+        int frameSamples = pacer.getFrameSamples();
+        SpscRing<AudioFrame> ring = captureRing;
+        AudioRecord record = audioRecord;
+        if (record == null) {
+            return;
+        }
+        AudioSource source = new AudioRecordSource(record, captureSampleRate);
+        if (captureSampleRate != rate) {
+            source = new ResamplingAudioSource(source, rate, MAX_FRAME_SAMPLES);
+        }
+        Log.d(TAG, "Audio capture loop started, ptime: " + ptime + "ms, rate: " + rate + "Hz, device rate: "
+                + captureSampleRate + "Hz");
 
         while (isInCall && audioRecord != null) {
             try {
-                int bytesRead = audioRecord.read(audioSendBuffer, 0, audioSendBuffer.length);
-
-                if (bytesRead > 0 && !isMuted) {
-                    // Create audio packet and send to remote
-                    DatagramPacket packet = new DatagramPacket(
-                            audioSendBuffer, bytesRead,
-                            InetAddress.getByName(remoteIP),
-                            AUDIO_PORT);
-
-                    if (audioSocket != null) {
-                        audioSocket.send(packet);
-                        if (sequenceNumber % 100 == 0) { // طباعة كل 100 حزمة
-                            Log.d(TAG, "Sent audio packet " + sequenceNumber + ", bytes: " + bytesRead);
-                        }
+                // الحلقة ممتلئة: نقرأ الإطار ونهمله حتى لا يتراكم في الجهاز
+                AudioFrame frame = ring.claim();
+                short[] target = frame != null ? frame.pcm : captureFrame;
+
+                // قراءة إطار واحد بالضبط - القراءة الحاجبة تعود عند اكتمال الإطار حسب ساعة الالتقاط
+                int samplesRead = source.read(target, 0, frameSamples);
+                if (samplesRead < 0) {
+                    Log.e(TAG, "AudioRecord read failed: " + samplesRead);
+                    break;
+                }
+                long now = System.nanoTime();
+                pacer.onFrameCaptured(now);
+
+                if (frame != null && samplesRead > 0) {
+                    frame.samples = samplesRead;
+                    frame.mediaTimestamp = mediaTimestamp;
+                    frame.timestampNanos = now;
+                    ring.publish();
+                }
+
+                // الطابع الزمني يتقدم مع ساعة الالتقاط حتى للإطارات المهملة
+                mediaTimestamp += samplesRead;
+
+            } catch (Exception e) {
+                Log.e(TAG, "Error in audio capture loop: " + e.getMessage(), e);
+                break;
+            }
+        }
+        Log.d(TAG, "Audio capture loop ended, mean drift: " + pacer.getMeanAbsDriftMs() + "ms, late frames: "
+                + pacer.getFramesLate() + ", ring overruns: " + ring.getOverruns() + ", max occupancy: "
+                + ring.getMaxOccupancy());
+    }
+
+    /**
+     * حلقة الترميز والإرسال - تسحب الإطارات من حلقة الالتقاط، ترمزها وترسلها
+     * Encoder/network loop - drains the capture ring, encodes and sends.
+     */
+    private void audioSendingLoop(AudioCodec encoder, FecEncoder fec, int rate, int ptime) {
+        int streamId = ThreadLocalRandom.current().nextInt(); // معرف فريد لتدفق هذه المكالمة
+        ByteBuffer packetView = audioSendPacket;
+        ByteBuffer parityView = audioParityPacket;
+        SpscRing<AudioFrame> ring = captureRing;
+        SpscRing<AudioFrame> echoReference = echoReferenceRing;
+        CallStatistics statistics = callStatistics;
+        MediaReport report = new MediaReport();
+        ByteBuffer reportView = ByteBuffer.allocate(MediaPacket.HEADER_SIZE + MediaReport.SIZE);
+        long nextReportMs = 0;
+        long overuseReported = 0;
+        long reportsSeen = 0;
+        EchoCanceller echoCanceller = new EchoCanceller(rate, MAX_FRAME_SAMPLES,
+                Math.min(EchoCanceller.DEFAULT_TAIL_MS, MAX_ECHO_TAPS * 1000 / rate));
+        NoiseSuppressor noiseSuppressor = new NoiseSuppressor(rate, noiseSuppressionLevel);
+        AutomaticGainControl captureGain = AutomaticGainControl.forCapture(rate);
+        VoiceActivityDetector vad = new VoiceActivityDetector(rate);
+        AudioPacketizer packetizer = new AudioPacketizer(encoder, fec, ptime, streamId, MAX_FRAME_SAMPLES);
+        statistics.setLocalStreamId(streamId);
+        // الترميز و FEC الحاليان بعد تكييف المعدل - current codec and FEC after bitrate adaptation
+        AudioCodec sendEncoder = encoder;
+        FecEncoder sendFec = fec;
+        BitrateController bitrate = new BitrateController(rate, encoder.getName(), remoteCodecs, ptime,
+                fec.getMode(), FramePacer.DEFAULT_MTU);
+
+        // ترتيب المراحل: إلغاء الصدى قبل كبت الضجيج حتى لا يرى الإشارة غير الخطية، وكشف الكلام
+        // على الصوت النظيف، وتوحيد المستوى بعد قرار الكلام حتى يقاس الكلام وحده
+        AudioPipeline pipeline = new AudioPipeline()
+                .add("aec", frame -> {
+                    if (echoCancellation && !isMuted) {
+                        echoCanceller.process(frame);
+                    } else {
+                        echoCanceller.skip(frame.samples); // يبقى الميكروفون على ساعة التشغيل
                     }
+                })
+                .add("ns", noiseSuppressor)
+                .add("vad", frame -> {
+                    vad.process(frame);
+                    if (isMuted) {
+                        // الكتم يعامل كصمت - muting is just forced silence, so it goes through DTX too
+                        frame.speech = false;
+                        frame.noiseLevelDbov = ComfortNoise.MIN_LEVEL_DBOV;
+                    }
+                })
+                .add("agc", captureGain);
+        long framesCaptured = 0;
+        Log.d(TAG, "Audio sending loop started, sending to: " + remoteIP + ":" + remoteAudioPort + " with codec: "
+                + encoder.getName() + ", ptime: " + ptime + "ms, fec: " + fec.getMode());
+
+        while (isInCall) {
+            AudioFrame frame = ring.await(RING_WAIT_NANOS);
+            if (frame == null) {
+                continue;
+            }
+            try {
+                framesCaptured++;
+                // ما شغل حتى الآن مرجع لملغي الصدى - drain the playout reference even when disabled
+                AudioFrame played;
+                while ((played = echoReference.peek()) != null) {
+                    echoCanceller.onFarEnd(played.pcm, 0, played.samples, played.mediaTimestamp,
+                            played.timestampNanos);
+                    echoReference.release();
+                }
+                pipeline.process(frame);
+
+                // التقرير الدوري يمر حتى أثناء الصمت، والإفراط الجديد يبلغ فوراً - overuse is reported at once
+                MediaTransport.Stream stream = audioStream;
+                long nowMs = System.currentTimeMillis();
+                long overuseEvents = statistics.getOveruseEvents();
+                if (stream != null && (nowMs >= nextReportMs || overuseEvents != overuseReported)) {
+                    statistics.fillReport(report, nowMs);
+                    int reportLength = packetizer.packetizeReport(report, frame.mediaTimestamp, reportView);
+                    stream.send(reportView, reportLength);
+                    nextReportMs = nowMs + REPORT_INTERVAL_MS;
+                    overuseReported = overuseEvents;
+                }
 
-                    sequenceNumber++;
+                // تقرير الطرف الآخر يقرر المعدل - the peer's latest report drives our bitrate
+                long reports = statistics.getReportsReceived();
+                if (reports != reportsSeen) {
+                    reportsSeen = reports;
+                    if (bitrate.onReport(nowMs, statistics.getRemoteEstimateBps(), statistics.isRemoteOveruse(),
+                            statistics.getRemoteFractionLost())) {
+                        BitrateController.Level level = bitrate.getLevel();
+                        if (!level.codecName.equals(sendEncoder.getName())) {
+                            sendEncoder = AudioCodecs.create(level.codecName);
+                        }
+                        if (!bitrate.getFecMode().equals(sendFec.getMode())) {
+                            sendFec = new FecEncoder(bitrate.getFecMode(), FecEncoder.DEFAULT_GROUP_SIZE,
+                                    MAX_FRAME_SAMPLES * 2);
+                        }
+                        packetizer.reconfigure(sendEncoder, sendFec);
+                        packetizer.setFramesPerPacket(bitrate.getFramesPerPacket());
+                        Log.d(TAG, "Bitrate changed to " + level + ", fec: " + sendFec.getMode() + ", peer estimate: "
+                                + statistics.getRemoteEstimateBps() / 1000 + "kbps, overuse: "
+                                + statistics.isRemoteOveruse());
+                    }
                 }
 
-                Thread.sleep(20); // ~50 FPS audio
+                int length = packetizer.packetize(frame, packetView);
+                if (length == 0) {
+                    continue; // DTX
+                }
+                if (stream != null) {
+                    stream.send(packetView, length);
+                    statistics.onPacketSent(length);
+                    if (frame.speech && firstAudioSentMs < 0) {
+                        firstAudioSentMs = (System.nanoTime() - callConnectedNanos) / 1_000_000;
+                        Log.d(TAG, "Time to first sent audio frame: " + firstAudioSentMs + "ms");
+                    }
+                    if (MEDIA_DEBUG_LOG && frame.speech && packetizer.getFramesSent() % 100 == 1) { // كل 100 حزمة
+                        Log.d(TAG, "Sent audio packet " + (packetizer.getFramesSent() - 1) + ", bytes: "
+                                + packetizer.getLastPayloadBytes()
+                                + ", capture ring: " + ring.size() + "/" + ring.getCapacity()
+                                + ", noise floor: " + (int) vad.getNoiseFloorDb() + "dBov");
+                    }
 
+                    // التكافؤ بعد كل مجموعة كاملة، أو للمجموعة الجزئية عند بداية الصمت
+                    int parityLength = packetizer.packetizeParity(parityView);
+                    if (parityLength > 0) {
+                        stream.send(parityView, parityLength);
+                        statistics.onPacketSent(parityLength);
+                    }
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error in audio sending loop: " + e.getMessage(), e);
                 break;
+            } finally {
+                ring.release();
             }
         }
-        Log.d(TAG, "Audio sending loop ended");
+        Log.d(TAG, "Audio sending loop ended, sent: " + packetizer.getFramesSent() + ", parity: "
+                + packetizer.getParitySent() + ", reports: " + packetizer.getReportsSent() + ", comfort noise: " + packetizer.getDescriptorsSent()
+                + ", suppressed: " + packetizer.getFramesSuppressed() + " of " + framesCaptured + " frames, echo delay: "
+                + echoCanceller.getDelayMs() + "ms, ERLE: " + (int) echoCanceller.getErleDb() + "dB, noise suppression: "
+                + (int) noiseSuppressor.getMeanAttenuationDb() + "dB, capture gain: " + (int) captureGain.getGainDb()
+                + "dB, limited samples: " + captureGain.getSamplesLimited() + ", stage timings: "
+                + pipeline.describeTimings() + ", encode " + Math.round(packetizer.getMeanMicros()) + "/"
+                + Math.round(packetizer.getMaxMicros()) + "us, bitrate: " + bitrate.getLevel() + " ("
+                + bitrate.getStepsDown() + " down, " + bitrate.getStepsUp() + " up)");
     }
 
-    private void audioReceivingLoop() {
-        long receivedPackets = 0;
-        Log.d(TAG, "Audio receiving loop started, listening on port: " + AUDIO_PORT);
-
-        while (isInCall && audioTrack != null) {
-            try {
-                DatagramPacket packet = new DatagramPacket(audioReceiveBuffer, audioReceiveBuffer.length);
+    /**
+     * حزمة واردة بانتظار خيط التشغيل - A datagram copied off the transport thread
+     */
+    private static final class InboundPacket {
+        final ByteBuffer data = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        int length;
+        long arrivalMs;
+    }
 
-                if (audioSocket != null) {
-                    audioSocket.receive(packet);
+    /**
+     * معالج الاستقبال - يعمل في خيط نقل الوسائط، ينسخ الحزمة إلى حلقة الاستقبال فقط
+     * Receive handler - runs on the media transport thread and only copies the
+     * datagram into the receive ring, so the selector never waits on playout.
+     */
+    private class AudioReceiveHandler implements MediaTransport.PacketHandler {
+        private final SpscRing<InboundPacket> ring = receiveRing;
+
+        @Override
+        public void onPacket(MediaTransport.Stream stream, ByteBuffer packet, int length, long arrivalMs) {
+            InboundPacket slot = ring.claim();
+            if (slot == null) {
+                return; // خيط التشغيل متأخر - counted as a ring overrun
+            }
+            packet.limit(length).position(0);
+            slot.data.clear();
+            slot.data.put(packet);
+            slot.length = length;
+            slot.arrivalMs = arrivalMs;
+            ring.publish();
+        }
+    }
 
-                    // Play received audio
-                    int written = audioTrack.write(packet.getData(), 0, packet.getLength());
+    /**
+     * حلقة التشغيل - تنقل الحزم الواردة من حلقة الاستقبال إلى مخزن الارتعاش، ثم تسحب إطاراً
+     * واحداً لكل دورة وتكتبه في AudioTrack
+     * الكتابة الحاجبة في AudioTrack هي التي تضبط الإيقاع، وعند غياب الصوت يكتب صمت
+     * Playout loop - pulls one frame per iteration; the blocking AudioTrack write
+     * paces the loop, and silence is written whenever no frame is due.
+     */
+    private void audioPlayoutLoop(int rate) {
+        SpscRing<InboundPacket> ring = receiveRing;
+        SpscRing<AudioFrame> echoReference = echoReferenceRing;
+        AudioTrack track = audioTrack;
+        if (track == null) {
+            return;
+        }
+        AudioSink sink = new AudioTrackSink(track, playoutSampleRate);
+        if (playoutSampleRate != rate) {
+            sink = new ResamplingAudioSink(sink, rate, MAX_PLAYOUT_SAMPLES);
+        }
+        AudioReceiver receiver = new AudioReceiver(jitterBuffer, rate, MAX_FRAME_SAMPLES,
+                MAX_DATAGRAM_SIZE - MediaPacket.HEADER_SIZE);
+        receiver.setStatistics(callStatistics);
+        AutomaticGainControl playoutGain = AutomaticGainControl.forPlayout(rate);
+        AudioPipeline pipeline = new AudioPipeline().add("agc", playoutGain);
+        AudioFrame frame = new AudioFrame(MAX_PLAYOUT_SAMPLES);
+        long playedSamples = 0; // موقع المرجع على ساعة التشغيل
+        Log.d(TAG, "Audio playout loop started, device rate: " + playoutSampleRate + "Hz");
 
-                    receivedPackets++;
-                    if (receivedPackets % 100 == 0) { // طباعة كل 100 حزمة
-                        Log.d(TAG, "Received audio packet " + receivedPackets + ", bytes: " + packet.getLength()
-                                + ", written: " + written);
+        while (isInCall && audioTrack != null) {
+            try {
+                // نقل كل ما وصل إلى مخزن الارتعاش - this thread alone touches the jitter buffer
+                InboundPacket packet;
+                while ((packet = ring.peek()) != null) {
+                    long streamChanges = receiver.getStreamChanges();
+                    boolean buffered = receiver.admit(packet.data, packet.length, packet.arrivalMs);
+                    if (receiver.getStreamChanges() != streamChanges) {
+                        Log.d(TAG, "Remote audio stream changed, resetting jitter buffer");
+                    }
+                    if (MEDIA_DEBUG_LOG && buffered && receiver.getReceivedPackets() % 100 == 0) { // كل 100 حزمة
+                        Log.d(TAG, "Received audio packet " + receiver.getReceivedPackets() + ", bytes: "
+                                + packet.length + ", jitter: " + (int) jitterBuffer.getJitterMs() + "ms, target: "
+                                + jitterBuffer.getTargetDelayMs() + "ms");
                     }
+                    ring.release();
                 }
 
+                // فك الترميز، أو إخفاء الفقدان، أو ضجيج مريح - decoded, concealed or comfort noise
+                int samples = receiver.playout(System.currentTimeMillis(), frame);
+                pipeline.process(frame);
+                sink.write(frame.pcm, 0, samples);
+                publishEchoReference(echoReference, frame, playedSamples);
+                playedSamples += samples;
+                if (frame.speech && firstAudioPlayedMs < 0) {
+                    firstAudioPlayedMs = (System.nanoTime() - callConnectedNanos) / 1_000_000;
+                    Log.d(TAG, "Time to first played audio frame: " + firstAudioPlayedMs + "ms");
+                }
             } catch (Exception e) {
-                Log.e(TAG, "Error in audio receiving loop: " + e.getMessage(), e);
+                Log.e(TAG, "Error in audio playout loop: " + e.getMessage(), e);
                 break;
             }
         }
-        Log.d(TAG, "Audio receiving loop ended");
+        FecDecoder fec = receiver.getFec();
+        CallStatistics.Snapshot stats = receiver.getStatistics().snapshot();
+        Log.d(TAG, "Audio playout loop ended, played: " + jitterBuffer.getFramesPlayed()
+                + ", lost: " + jitterBuffer.getFramesLost() + ", recovered: " + fec.getFramesRecovered()
+                + " (red " + fec.getRecoveredByRedundancy() + ", parity " + fec.getRecoveredByParity()
+                + "), concealed: " + receiver.getConcealer().getFramesConcealed()
+                + ", faster: " + receiver.getFramesFaster() + ", slower: " + receiver.getFramesSlower()
+                + ", clock drift: " + Math.round(receiver.getDriftEstimator().getDriftPpm()) + "ppm"
+                + ", dropped: " + jitterBuffer.getFramesDropped()
+                + ", late: " + jitterBuffer.getFramesLate()
+                + ", duplicate: " + jitterBuffer.getFramesDuplicate() + ", underruns: " + jitterBuffer.getUnderruns()
+                + ", receive ring overruns: " + ring.getOverruns() + ", playout gain: " + (int) playoutGain.getGainDb()
+                + "dB, decode " + Math.round(receiver.getMeanMicros()) + "/" + Math.round(receiver.getMaxMicros())
+                + "us, stage timings: " + pipeline.describeTimings()
+                + String.format(Locale.US, ", MOS: %.2f, RTT: %dms, remote loss: %.1f%%", stats.mos,
+                        stats.roundTripMs, stats.remoteLossPercent)
+                + ", estimate: " + stats.estimateBps / 1000 + "kbps, overuse events: " + stats.overuseEvents);
+    }
+
+    /**
+     * تسليم ما كتب في AudioTrack لملغي الصدى - Hand what was just written to
+     * the speaker to the echo canceller. A full ring drops the frame; the
+     * canceller fills the gap from the position.
+     */
+    private void publishEchoReference(SpscRing<AudioFrame> ring, AudioFrame played, long position) {
+        AudioFrame reference = ring.claim();
+        if (reference == null) {
+            return;
+        }
+        System.arraycopy(played.pcm, 0, reference.pcm, 0, played.samples);
+        reference.samples = played.samples;
+        reference.mediaTimestamp = position;
+        reference.timestampNanos = System.nanoTime();
+        ring.publish();
     }
 
     private void stopAudioStreaming() {
+        synchronized (mediaLock) {
+            mediaWarm = false;
+            releaseMedia();
+        }
+    }
+
+    private void releaseMedia() {
         try {
             if (audioRecord != null) {
                 audioRecord.stop();
@@ -799,9 +1469,14 @@ public class CallService extends Service {
                 audioTrack = null;
             }
 
-            if (audioSocket != null) {
-                audioSocket.close();
-                audioSocket = null;
+            if (audioStream != null) {
+                mediaTransport.closeStream(audioStream);
+                audioStream = null;
+            }
+
+            AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+            if (audioManager != null) {
+                audioManager.setMode(AudioManager.MODE_NORMAL);
             }
 
             Log.d(TAG, "Audio streaming stopped");
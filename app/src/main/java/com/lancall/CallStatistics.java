@@ -0,0 +1,438 @@
+package com.lancall;
+
+/**
+ * إحصاءات جودة المكالمة - الارتعاش والفقدان والتأخير وتقدير MOS بنموذج E
+ * Per-call quality statistics: interarrival jitter as in RFC 3550, network
+ * and playout loss with its burstiness, reordering, duplicates, delay, and
+ * an E-model (ITU-T G.107) R-factor and MOS derived from them.
+ *
+ * It also closes the report loop ({@link MediaReport}): the sending thread
+ * fills our periodic report from these counters, and the peer's reports
+ * tell how our own stream is received and give the round trip. The
+ * receive side's delay-based bandwidth estimate ({@link BandwidthEstimator})
+ * travels the same way, for the peer's {@link BitrateController}.
+ *
+ * Each group of counters has a single writer: the playout thread records
+ * received packets, played frames and the peer's reports, the sending
+ * thread records sent packets and the reports it sends. Counters are
+ * volatile and written without locks; {@link #snapshot()} may be called
+ * from any thread, e.g. the UI polling once a second, and sees each
+ * counter at most a packet behind the others.
+ */
+public class CallStatistics {
+
+    // نموذج E المبسط - E-model defaults (G.107): R0 - Is with default parameters, and the
+    // packet-loss robustness of a codec with concealment (G.113 Appendix I, G.711 with PLC)
+    private static final double R_DEFAULT = 93.2;
+    private static final double BPL_WITH_CONCEALMENT = 25.1;
+    private static final double IE_ADPCM = 7.0; // G.113: G.726 بمعدل 32 كيلوبت
+    private static final double DELAY_KNEE_MS = 177.3;
+    private static final int JITTER_GAIN_SHIFT = 4; // J += (|D| - J) / 16 كما في RFC 3550
+    private static final int DUPLICATE_WINDOW = 64;
+    private static final int MAX_ROUND_TRIP_MS = 10_000;
+
+    private final int sampleRate;
+
+    // خيط التشغيل - written by the playout thread only
+    private volatile boolean haveSequence;
+    private volatile int baseSequence;
+    private volatile int highestSequence;
+    private volatile long expectedBefore; // حزم متوقعة من تدفقات سابقة - from streams before a restart
+    private volatile int sourceStreamId; // تدفق الطرف الآخر الذي نستقبله
+    private long recentMask; // الحزم المستلمة خلف الأعلى - bit i: highest - i arrived
+    private volatile long packetsReceived;
+    private volatile long packetsReordered;
+    private volatile long packetsDuplicate;
+    private boolean haveTransit;
+    private long lastTransit;
+    private volatile double jitter; // بوحدات الطابع الزمني
+    private volatile int lastPayloadType = MediaPacket.PAYLOAD_PCM16;
+    private final BandwidthEstimator bandwidth;
+    private volatile int estimateBps;
+    private volatile boolean overuse;
+    private volatile long overuseEvents;
+
+    private volatile long framesPlayed;
+    private volatile long framesLost;
+    private volatile long lossBursts;
+    private volatile int maxBurstFrames;
+    private int burstFrames;
+    private boolean lastLost;
+    private boolean havePlayed;
+    private volatile long framesAfterGood;
+    private volatile long lossesAfterGood;
+    private volatile long framesAfterLost;
+    private volatile long recoveriesAfterLost;
+    private volatile int playoutDelayMs;
+
+    // تقارير الطرف الآخر - the peer's reports, written by the playout thread
+    private volatile boolean haveLastReport;
+    private volatile long lastReport; // وقت التقرير في الأعلى، ووقت وصوله في الأسفل - LSR and its arrival
+    private volatile long reportsReceived;
+    private volatile int remoteFractionLost;
+    private volatile int remoteCumulativeLost;
+    private volatile long remoteJitter;
+    private volatile int remoteEstimateBps;
+    private volatile boolean remoteOveruse;
+
+    // خيط الإرسال - written by the sending thread only
+    private volatile long packetsSent;
+    private volatile long bytesSent;
+    private volatile int localStreamId;
+    private long reportExpected; // عند التقرير السابق - at the previous report, for the fraction lost
+    private long reportReceived;
+
+    private volatile int roundTripMs = -1;
+
+    public CallStatistics(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.bandwidth = new BandwidthEstimator(sampleRate);
+    }
+
+    /** حزمة واردة من أي نوع - Any datagram of the call arrived (playout thread), for the incoming rate. */
+    public void onDatagram(int bytes, long arrivalMs) {
+        bandwidth.onDatagram(bytes, arrivalMs);
+    }
+
+    /**
+     * حزمة وسائط واردة - A media packet arrived (playout thread).
+     *
+     * @param sequence  extended sequence number
+     * @param timestamp extended media timestamp, in samples
+     * @param samples   samples the packet carries
+     */
+    public void onPacketReceived(int sequence, long timestamp, int samples, long arrivalMs, int payloadType) {
+        if (!haveSequence) {
+            haveSequence = true;
+            baseSequence = sequence;
+            highestSequence = sequence;
+            recentMask = 1;
+            onNewestPacket(timestamp + samples, arrivalMs);
+        } else {
+            int ahead = sequence - highestSequence;
+            if (ahead > 0) {
+                recentMask = ahead >= DUPLICATE_WINDOW ? 1 : (recentMask << ahead) | 1;
+                highestSequence = sequence;
+                onNewestPacket(timestamp + samples, arrivalMs);
+            } else if (-ahead < DUPLICATE_WINDOW) {
+                long bit = 1L << -ahead;
+                if ((recentMask & bit) != 0) {
+                    packetsDuplicate++;
+                    return;
+                }
+                recentMask |= bit;
+                packetsReordered++;
+            } else {
+                packetsReordered++; // أقدم من النافذة - too old to tell, count it as reordered
+            }
+        }
+        packetsReceived++;
+        lastPayloadType = payloadType;
+
+        // الارتعاش بين الوصولين كما في RFC 3550 - D(i-1, i) with transit in timestamp units
+        long transit = arrivalMs * sampleRate / 1000 - timestamp;
+        if (haveTransit) {
+            long delta = Math.abs(transit - lastTransit);
+            jitter += (delta - jitter) / (1 << JITTER_GAIN_SHIFT);
+        }
+        lastTransit = transit;
+        haveTransit = true;
+    }
+
+    /** تدرج التأخير من الحزم بالترتيب فقط - the delay gradient only follows packets in order. */
+    private void onNewestPacket(long endTimestamp, long arrivalMs) {
+        bandwidth.onPacket(endTimestamp, arrivalMs, roundTripMs);
+        estimateBps = bandwidth.getEstimateBps();
+        overuse = bandwidth.getState() == BandwidthEstimator.STATE_OVERUSE;
+        overuseEvents = bandwidth.getOveruseEvents();
+    }
+
+    /**
+     * تدفق جديد من المرسل - The peer's stream started or restarted (playout
+     * thread): sequence numbers and timestamps start over, counts carry on.
+     */
+    public void onStreamStart(int streamId) {
+        if (haveSequence) {
+            expectedBefore += highestSequence - baseSequence + 1;
+        }
+        sourceStreamId = streamId;
+        haveSequence = false;
+        haveTransit = false;
+    }
+
+    /**
+     * إطار مستحق للتشغيل - A due frame was played or concealed (playout
+     * thread). Silence the sender chose not to send is not reported.
+     *
+     * @param lost    the frame was missing after FEC and had to be concealed
+     * @param delayMs current playout delay: buffered audio plus one frame
+     */
+    public void onFramePlayed(boolean lost, int delayMs) {
+        if (havePlayed) {
+            // انتقالات سلسلة ماركوف بحالتين - two-state Markov transitions for BurstR
+            if (lastLost) {
+                framesAfterLost++;
+                if (!lost) {
+                    recoveriesAfterLost++;
+                }
+            } else {
+                framesAfterGood++;
+                if (lost) {
+                    lossesAfterGood++;
+                }
+            }
+        }
+        havePlayed = true;
+        if (lost) {
+            framesLost++;
+            if (!lastLost) {
+                lossBursts++;
+                burstFrames = 0;
+            }
+            burstFrames++;
+            if (burstFrames > maxBurstFrames) {
+                maxBurstFrames = burstFrames;
+            }
+        } else {
+            framesPlayed++;
+        }
+        lastLost = lost;
+        playoutDelayMs = delayMs;
+    }
+
+    /** حزمة مرسلة - A packet went out (sending thread). */
+    public void onPacketSent(int bytes) {
+        packetsSent++;
+        bytesSent += bytes;
+    }
+
+    /** زمن الذهاب والإياب المقاس - A measured round trip. */
+    public void onRoundTrip(int rttMs) {
+        roundTripMs = rttMs;
+    }
+
+    /** تدفقنا الصادر - Stream id of our outgoing audio, so the peer's reports on it are recognised. */
+    public void setLocalStreamId(int streamId) {
+        localStreamId = streamId;
+    }
+
+    /**
+     * تقرير من الطرف الآخر - A report from the peer arrived (playout thread):
+     * remember its time for the echo in our next report, take its view of
+     * our stream, and the round trip from the echo of our own report.
+     */
+    public void onReport(MediaReport report, long arrivalMs) {
+        long arrival = MediaReport.compactTime(arrivalMs);
+        lastReport = report.reportTime << 32 | arrival;
+        haveLastReport = true;
+        reportsReceived++;
+        if (report.hasReception() && report.sourceStreamId == localStreamId) {
+            remoteFractionLost = report.fractionLost;
+            remoteCumulativeLost = report.cumulativeLost;
+            remoteJitter = report.jitter;
+            remoteEstimateBps = (int) Math.min(Integer.MAX_VALUE, report.estimatedBitrate);
+            remoteOveruse = report.isOveruse();
+        }
+        if (report.lastReportTime != 0) {
+            // الذهاب والإياب = الآن - وقت تقريرنا - مدة احتجازه عند الطرف الآخر
+            int rtt = MediaReport.compactToMs(arrival - report.lastReportTime - report.delaySinceLastReport);
+            if (rtt < MAX_ROUND_TRIP_MS) {
+                onRoundTrip(rtt); // أكبر من ذلك يعني ساعة رجعت أو تقريراً قديماً
+            }
+        }
+    }
+
+    /**
+     * ملء تقريرنا - Fill the report to send now (sending thread): our
+     * sending counters, reception of the peer's stream since the previous
+     * report with our bandwidth estimate for it, and the echo of the peer's
+     * last report.
+     */
+    public void fillReport(MediaReport report, long nowMs) {
+        long now = MediaReport.compactTime(nowMs);
+        report.flags = overuse ? MediaReport.FLAG_OVERUSE : 0;
+        report.estimatedBitrate = estimateBps;
+        report.reportTime = now;
+        report.packetsSent = packetsSent;
+        report.bytesSent = bytesSent;
+        report.sourceStreamId = sourceStreamId;
+        if (haveSequence) {
+            long received = packetsReceived;
+            long expected = Math.max(received, expectedBefore + highestSequence - baseSequence + 1);
+            long expectedInterval = expected - reportExpected;
+            long lostInterval = expectedInterval - (received - reportReceived);
+            reportExpected = expected;
+            reportReceived = received;
+            report.flags |= MediaReport.FLAG_RECEPTION;
+            report.fractionLost = expectedInterval > 0 && lostInterval > 0
+                    ? (int) Math.min(255, (lostInterval << 8) / expectedInterval)
+                    : 0;
+            report.cumulativeLost = (int) Math.min(Integer.MAX_VALUE, expected - received);
+            report.highestSequence = highestSequence & 0xFFFFFFFFL;
+            report.jitter = (long) jitter;
+        } else {
+            report.fractionLost = 0;
+            report.cumulativeLost = 0;
+            report.highestSequence = 0;
+            report.jitter = 0;
+        }
+        if (haveLastReport) {
+            long last = lastReport;
+            report.lastReportTime = last >>> 32;
+            report.delaySinceLastReport = (now - (last & 0xFFFFFFFFL)) & 0xFFFFFFFFL;
+        } else {
+            report.lastReportTime = 0;
+            report.delaySinceLastReport = 0;
+        }
+    }
+
+    /** عدد تقارير الطرف الآخر - Reports received; a change means the remote values below are new. */
+    public long getReportsReceived() {
+        return reportsReceived;
+    }
+
+    /** تقدير الطرف الآخر لتدفقنا - The peer's bandwidth estimate for our stream, 0 without one. */
+    public int getRemoteEstimateBps() {
+        return remoteEstimateBps;
+    }
+
+    public boolean isRemoteOveruse() {
+        return remoteOveruse;
+    }
+
+    /** فقدان تدفقنا عند الطرف الآخر - Out of 256, since its previous report. */
+    public int getRemoteFractionLost() {
+        return remoteFractionLost;
+    }
+
+    /**
+     * مرات الإفراط في تدفق الطرف الآخر - Transitions into overuse seen on the
+     * peer's stream; the sending thread reports a new one at once instead of
+     * waiting for the next periodic report.
+     */
+    public long getOveruseEvents() {
+        return overuseEvents;
+    }
+
+    /** لقطة للعرض - Current values, computed on the calling thread. */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * عامل R من نموذج E - R-factor of the simplified E-model:
+     * {@code R = 93.2 - Id - Ie,eff}, with the delay impairment of Cole and
+     * Rosenbluth and the burst-aware effective equipment impairment of G.107.
+     *
+     * @param lossPercent  frames lost at playout, in percent
+     * @param burstR       observed over random burst length, 1 for random loss
+     * @param oneWayDelayMs mouth-to-ear delay
+     */
+    public static double rFactor(double ie, double bpl, double lossPercent, double burstR, double oneWayDelayMs) {
+        double delayImpairment = 0.024 * oneWayDelayMs;
+        if (oneWayDelayMs > DELAY_KNEE_MS) {
+            delayImpairment += 0.11 * (oneWayDelayMs - DELAY_KNEE_MS);
+        }
+        double effective = ie + (95.0 - ie) * lossPercent / (lossPercent / burstR + bpl);
+        return R_DEFAULT - delayImpairment - effective;
+    }
+
+    /** تحويل R إلى MOS - G.107 mapping from R to a 1 to 4.5 opinion score. */
+    public static double mos(double r) {
+        if (r <= 0) {
+            return 1.0;
+        }
+        if (r >= 100) {
+            return 4.5;
+        }
+        return 1.0 + 0.035 * r + r * (r - 60) * (100 - r) * 7e-6;
+    }
+
+    /** ضعف الترميز - Equipment impairment Ie of the codec behind a payload type. */
+    static double equipmentImpairment(int payloadType) {
+        return payloadType == MediaPacket.PAYLOAD_IMA_ADPCM ? IE_ADPCM : 0.0;
+    }
+
+    /**
+     * لقطة إحصاءات - Statistics at one moment; a plain copy, safe to keep or
+     * hand to another thread.
+     */
+    public static final class Snapshot {
+        public final long packetsReceived;
+        public final long packetsExpected;
+        public final long packetsLost; // فقدان الشبكة قبل FEC - network loss, RFC 3550 cumulative
+        public final double lossPercent;
+        public final long packetsReordered;
+        public final long packetsDuplicate;
+        public final double jitterMs;
+
+        public final long framesPlayed;
+        public final long framesLost; // بعد FEC والتأخر - missing at playout and concealed
+        public final double playoutLossPercent;
+        public final long lossBursts;
+        public final double meanBurstFrames;
+        public final int maxBurstFrames;
+        public final double burstR;
+
+        // كيف يستقبل الطرف الآخر تدفقنا - how the peer receives our stream, from its last report
+        public final long reportsReceived;
+        public final double remoteLossPercent; // منذ تقريره السابق
+        public final int remoteCumulativeLost;
+        public final double remoteJitterMs;
+        public final int remoteEstimateBps; // تقديره لما يتسع له مسار تدفقنا
+
+        public final int estimateBps; // تقديرنا لمسار تدفقه - our estimate for the peer's stream
+        public final long overuseEvents;
+
+        public final int roundTripMs; // -1 حتى يقاس
+        public final int oneWayDelayMs;
+        public final long packetsSent;
+        public final long bytesSent;
+
+        public final double rFactor;
+        public final double mos;
+
+        private Snapshot(CallStatistics s) {
+            packetsReceived = s.packetsReceived;
+            long expected = s.expectedBefore
+                    + (s.haveSequence ? (long) s.highestSequence - s.baseSequence + 1 : 0);
+            packetsExpected = Math.max(expected, packetsReceived);
+            packetsLost = packetsExpected - packetsReceived;
+            lossPercent = packetsExpected > 0 ? 100.0 * packetsLost / packetsExpected : 0.0;
+            packetsReordered = s.packetsReordered;
+            packetsDuplicate = s.packetsDuplicate;
+            jitterMs = s.jitter * 1000.0 / s.sampleRate;
+
+            framesPlayed = s.framesPlayed;
+            framesLost = s.framesLost;
+            long due = framesPlayed + framesLost;
+            playoutLossPercent = due > 0 ? 100.0 * framesLost / due : 0.0;
+            lossBursts = s.lossBursts;
+            meanBurstFrames = lossBursts > 0 ? (double) framesLost / lossBursts : 0.0;
+            maxBurstFrames = s.maxBurstFrames;
+            // BurstR = 1 / (p + q) لسلسلة ماركوف - 1 when losses are independent
+            double p = s.framesAfterGood > 0 ? (double) s.lossesAfterGood / s.framesAfterGood : 0.0;
+            double q = s.framesAfterLost > 0 ? (double) s.recoveriesAfterLost / s.framesAfterLost : 0.0;
+            burstR = p > 0 && q > 0 ? 1.0 / (p + q) : 1.0;
+
+            reportsReceived = s.reportsReceived;
+            remoteLossPercent = s.remoteFractionLost * 100.0 / 256;
+            remoteCumulativeLost = s.remoteCumulativeLost;
+            remoteJitterMs = s.remoteJitter * 1000.0 / s.sampleRate;
+            remoteEstimateBps = s.remoteEstimateBps;
+
+            estimateBps = s.estimateBps;
+            overuseEvents = s.overuseEvents;
+
+            roundTripMs = s.roundTripMs;
+            // التأخير من الفم إلى الأذن: نصف الذهاب والإياب ثم التخزين - network half of the RTT plus playout
+            oneWayDelayMs = Math.max(0, roundTripMs) / 2 + s.playoutDelayMs;
+            packetsSent = s.packetsSent;
+            bytesSent = s.bytesSent;
+
+            rFactor = CallStatistics.rFactor(equipmentImpairment(s.lastPayloadType), BPL_WITH_CONCEALMENT,
+                    playoutLossPercent, burstR, oneWayDelayMs);
+            mos = CallStatistics.mos(rFactor);
+        }
+    }
+}
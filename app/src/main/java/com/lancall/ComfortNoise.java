@@ -0,0 +1,79 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * الضجيج المريح - وصف مستوى الضجيج الخلفي أثناء الصمت وتوليده عند المستقبل
+ * Comfort noise. During silence the sender transmits a one-byte descriptor
+ * ({@link MediaPacket#PAYLOAD_CN}) carrying the background level as -dBov,
+ * the same encoding as RFC 3389, and the receiver fills the gaps with white
+ * noise at that level so the line never sounds dead.
+ */
+public class ComfortNoise {
+
+    public static final int DESCRIPTOR_SIZE = 1;
+    public static final int MIN_LEVEL_DBOV = -127; // يعني صمتاً تاماً - full silence
+
+    private static final double FULL_SCALE = 32768.0;
+    private static final double SQRT3 = Math.sqrt(3.0); // قيمة RMS لضجيج منتظم = السعة / جذر 3
+    private static final float GAIN_SMOOTHING = 0.001f; // انتقال ناعم بين المستويات لكل عينة
+
+    private int seed = 0x2545F491;
+    private float gain;
+    private float targetGain;
+
+    /**
+     * كتابة واصف الضجيج - Write a descriptor for {@code levelDbov} at
+     * {@code offset}.
+     *
+     * @return bytes written
+     */
+    public static int writeDescriptor(ByteBuffer out, int offset, double levelDbov) {
+        int level = (int) Math.round(-levelDbov);
+        out.put(offset, (byte) Math.max(0, Math.min(-MIN_LEVEL_DBOV, level)));
+        return DESCRIPTOR_SIZE;
+    }
+
+    /**
+     * قراءة واصف الضجيج - Read the level (dBov) from a descriptor.
+     */
+    public static int readDescriptor(ByteBuffer in, int offset, int length) {
+        if (length < DESCRIPTOR_SIZE) {
+            return MIN_LEVEL_DBOV;
+        }
+        return -(in.get(offset) & 0x7F);
+    }
+
+    /**
+     * ضبط مستوى الضجيج المولد - Set the level to synthesize.
+     */
+    public void setLevel(int levelDbov) {
+        targetGain = levelDbov <= MIN_LEVEL_DBOV
+                ? 0f
+                : (float) (FULL_SCALE * Math.pow(10.0, levelDbov / 20.0) * SQRT3);
+    }
+
+    /**
+     * توليد ضجيج - Fill {@code samples} samples with noise at the current level.
+     */
+    public void generate(short[] out, int offset, int samples) {
+        int s = seed;
+        float g = gain;
+        for (int i = 0; i < samples; i++) {
+            // xorshift32 - رخيص ولا يخصص ذاكرة
+            s ^= s << 13;
+            s ^= s >>> 17;
+            s ^= s << 5;
+            g += (targetGain - g) * GAIN_SMOOTHING;
+            float value = (s >> 8) * (1f / (1 << 23)) * g; // منتظم ضمن [-1, 1)
+            out[offset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, (int) value));
+        }
+        seed = s;
+        gain = g;
+    }
+
+    public void reset() {
+        gain = 0f;
+        targetGain = 0f;
+    }
+}
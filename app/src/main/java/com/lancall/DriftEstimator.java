@@ -0,0 +1,131 @@
+package com.lancall;
+
+/**
+ * تقدير انحراف الساعة بين التقاط المرسل وساعتنا - من الطوابع الزمنية للوسائط مقابل زمن الوصول
+ * Estimates how fast the sender's capture clock runs against ours, from
+ * media timestamps against local arrival times.
+ *
+ * Each packet's transit (arrival time in samples minus its media
+ * timestamp) is the network delay plus an offset that grows or shrinks
+ * with the drift. Queueing only ever adds delay, so the least transit of
+ * every 5 s window tracks the path floor; a least-squares line through the
+ * last two minutes of floors gives the slope, and the slope is the drift.
+ * Phones drift by tens of ppm, which over an hour is over a second of
+ * audio.
+ *
+ * Fed from the playout thread; nothing is allocated per packet.
+ */
+public class DriftEstimator {
+
+    private static final int WINDOW_MS = 5000;
+    private static final int WINDOWS = 24; // دقيقتان من الأرضيات - two minutes of floors
+    private static final int MIN_WINDOWS = 6; // لا تقدير قبل 30 ثانية - ms arrival times need the span
+    private static final double MAX_DRIFT_PPM = 1000.0; // أكثر من هذا ليس انحراف ساعة
+
+    private final int sampleRate;
+    private final double[] floorTimes = new double[WINDOWS]; // ثوان منذ أول حزمة
+    private final double[] floorTransits = new double[WINDOWS]; // عينات
+
+    private boolean started;
+    private long baseArrivalMs;
+    private long baseTimestamp;
+    private long windowStartMs;
+    private double windowTime;
+    private double windowTransit;
+    private int floors;
+
+    private boolean haveEstimate;
+    private double driftPpm;
+
+    public DriftEstimator(int sampleRate) {
+        this.sampleRate = sampleRate;
+        reset();
+    }
+
+    /**
+     * تسجيل حزمة - Record a media packet.
+     *
+     * @param timestamp extended media timestamp, in samples
+     */
+    public void onPacket(long timestamp, long arrivalMs) {
+        if (!started) {
+            started = true;
+            baseArrivalMs = arrivalMs;
+            baseTimestamp = timestamp;
+            windowStartMs = arrivalMs;
+        }
+        if (arrivalMs - windowStartMs >= WINDOW_MS) {
+            closeWindow();
+            windowStartMs = arrivalMs;
+        }
+        double time = (arrivalMs - baseArrivalMs) / 1000.0;
+        double transit = time * sampleRate - (timestamp - baseTimestamp);
+        if (transit < windowTransit) {
+            windowTransit = transit;
+            windowTime = time;
+        }
+    }
+
+    private void closeWindow() {
+        if (windowTransit == Double.POSITIVE_INFINITY) {
+            return;
+        }
+        int slot = floors % WINDOWS;
+        floorTimes[slot] = windowTime;
+        floorTransits[slot] = windowTransit;
+        floors++;
+        windowTransit = Double.POSITIVE_INFINITY;
+        fit();
+    }
+
+    /** خط المربعات الصغرى عبر الأرضيات - least-squares slope of transit against time. */
+    private void fit() {
+        int count = Math.min(floors, WINDOWS);
+        if (count < MIN_WINDOWS) {
+            return;
+        }
+        double meanTime = 0;
+        double meanTransit = 0;
+        for (int i = 0; i < count; i++) {
+            meanTime += floorTimes[i];
+            meanTransit += floorTransits[i];
+        }
+        meanTime /= count;
+        meanTransit /= count;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < count; i++) {
+            double dt = floorTimes[i] - meanTime;
+            covariance += dt * (floorTransits[i] - meanTransit);
+            variance += dt * dt;
+        }
+        if (variance <= 0) {
+            return;
+        }
+        // المرسل الأسرع يرسل عينات أكثر في ثانيتنا فيتناقص العبور - a fast sender makes transit fall
+        double ppm = -covariance / variance / sampleRate * 1e6;
+        driftPpm = Math.max(-MAX_DRIFT_PPM, Math.min(MAX_DRIFT_PPM, ppm));
+        haveEstimate = true;
+    }
+
+    public boolean hasEstimate() {
+        return haveEstimate;
+    }
+
+    /**
+     * الانحراف بأجزاء المليون - How much faster the sender's clock runs than
+     * ours, in ppm; negative if slower. 0 until {@link #hasEstimate()}.
+     */
+    public double getDriftPpm() {
+        return driftPpm;
+    }
+
+    /** عند تغير التدفق - Forget everything; a restarted sender may be another clock. */
+    public void reset() {
+        started = false;
+        floors = 0;
+        windowTransit = Double.POSITIVE_INFINITY;
+        haveEstimate = false;
+        driftPpm = 0.0;
+    }
+}
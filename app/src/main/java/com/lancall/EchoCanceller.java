@@ -0,0 +1,414 @@
+package com.lancall;
+
+import java.util.Arrays;
+
+/**
+ * إلغاء الصدى الصوتي - يطرح من الميكروفون صدى ما شغلته السماعة بمرشح NLMS تكيفي
+ * Acoustic echo canceller: a time-domain NLMS filter that models the path
+ * from the loudspeaker to the microphone and subtracts its estimate from
+ * each capture frame before encoding.
+ *
+ * Far-end (played) and near-end (captured) audio are lined up by sample
+ * position, not by arrival: the first capture frame is anchored to the
+ * playout stream by wall clock, and from then on both sides advance by
+ * sample counts. The bulk delay through AudioTrack, the air and AudioRecord
+ * (often 50-300 ms on phones) is found by correlating 5 ms energy
+ * envelopes of both signals, so the filter only has to cover the room
+ * tail after it.
+ *
+ * Adaptation is frozen during double talk: once the filter has converged,
+ * an error envelope that jumps well above the residual echo the filter
+ * normally leaves (and above the noise floor) has a near-end talker in it. Double talk that never ends means
+ * the echo path moved, and a filter that keeps the output louder than the
+ * input has diverged; both reset the filter.
+ *
+ * Capture frames that are not processed must still be passed to
+ * {@link #skip}, or the near end falls behind the far end by the time
+ * skipped and the echo no longer lines up with the filter.
+ *
+ * Both {@link #onFarEnd} and {@link #process} run on the sending thread;
+ * nothing is allocated per frame.
+ */
+public class EchoCanceller implements AudioProcessor {
+
+    public static final int DEFAULT_TAIL_MS = 64; // ذيل الصدى بعد التأخير الكلي
+    private static final int MAX_DELAY_MS = 400; // أكبر تأخير كلي يبحث عنه
+    private static final int BLOCK_MS = 5; // دقة غلاف الطاقة وقرار التحدث المزدوج
+
+    private static final float STEP_SIZE = 0.5f;
+    private static final float REGULARIZATION = 1e-5f; // لكل معامل، نحو -50 dBFS
+    private static final float FAR_ACTIVE_POWER = 1e-6f; // متوسط قدرة المرجع، نحو -60 dBFS
+    private static final float DOUBLE_TALK_FACTOR = 4f; // الخطأ أعلى من المتبقي المتوقع بـ 12 ديسيبل
+    private static final int DOUBLE_TALK_HANGOVER_MS = 30;
+    private static final float ENVELOPE_RATE = 1f / 32f; // غلاف سريع، نحو 2 مللي ثانية
+    private static final float NOISE_RISE = 1.00001f; // أرضية الضجيج تصعد نحو 1.4 ديسيبل في الثانية
+    private static final int PATH_CHANGE_MS = 2000; // تحدث مزدوج أطول من ذلك يعني مساراً جديداً
+    private static final float CONVERGED_ERLE_DB = 6f; // قبلها لا يوثق بتقدير الصدى
+    private static final float ERLE_RISE = 0.05f;
+    private static final float ERLE_FALL = 0.005f; // بطيء حتى لا يلحق بمتحدث قريب يعلو تدريجياً
+    private static final float DIVERGENCE_DB = -6f; // الخرج أعلى من الدخل بـ 6 ديسيبل في المتوسط
+
+    private static final float ENVELOPE_MEAN_RATE = 0.002f; // نحو 2.5 ثانية
+    private static final float CORRELATION_RATE = 0.004f; // نحو 1.25 ثانية
+    private static final float MIN_DELAY_SCORE = 0.4f;
+    private static final int STABLE_BLOCKS = 20; // 100 مللي ثانية على نفس التأخير قبل اعتماده
+    private static final int PRE_DELAY_BLOCKS = 2; // هامش قبل ذروة الارتباط
+
+    private final int sampleRate;
+    private final int taps;
+    private final int block;
+    private final int maxLagBlocks;
+    private final int doubleTalkHangover;
+    private final int pathChangeBlocks;
+    private final float regularization;
+
+    // المرشح ونافذة المرجع الخطية لكل إطار - filter and a linear copy of the far-end window
+    private final float[] weights;
+    private final float[] window;
+
+    // تاريخ المرجع حسب موقع العينة - far-end samples by absolute position
+    private final float[] farHistory;
+    private final int farMask;
+    private long farEnd; // موقع العينة التالية
+    private long farEndNanos;
+    private boolean haveFar;
+    private float farBlockSum;
+
+    // أغلفة الطاقة لتقدير التأخير - 5 ms envelopes for the delay search
+    private final float[] farEnvelope;
+    private final int envelopeMask;
+    private long farBlocksDone;
+    private float farMean;
+    private float farVariance;
+    private float nearMean;
+    private float nearVariance;
+    private final float[] correlation;
+    private int candidateLag = -1;
+    private int stableBlocks;
+
+    // حالة الميكروفون - near-end state
+    private long nearIndex;
+    private boolean anchored;
+    private int delaySamples;
+    private float power;
+    private float nearBlockSum;
+    private float nearEnergy;
+    private float errorEnergy;
+    private float erleDb;
+    private float errorEnvelope;
+    private float echoEnvelope;
+    private float noiseEnvelope;
+    private float residualGain;
+    private int doubleTalkLeft; // بالعينات
+    private int doubleTalkBlocks;
+
+    private long framesProcessed;
+    private long delayChanges;
+    private long resets;
+
+    public EchoCanceller(int sampleRate, int maxFrameSamples) {
+        this(sampleRate, maxFrameSamples, DEFAULT_TAIL_MS);
+    }
+
+    /**
+     * @param maxFrameSamples largest capture frame passed to {@link #process}
+     * @param tailMs          echo tail covered after the bulk delay; cost grows linearly with it
+     */
+    public EchoCanceller(int sampleRate, int maxFrameSamples, int tailMs) {
+        this.sampleRate = sampleRate;
+        this.taps = sampleRate * tailMs / 1000;
+        this.block = sampleRate * BLOCK_MS / 1000;
+        this.maxLagBlocks = MAX_DELAY_MS / BLOCK_MS;
+        this.doubleTalkHangover = sampleRate * DOUBLE_TALK_HANGOVER_MS / 1000;
+        this.pathChangeBlocks = PATH_CHANGE_MS / BLOCK_MS;
+        this.regularization = REGULARIZATION * taps;
+        weights = new float[taps];
+        window = new float[taps + maxFrameSamples];
+
+        // يكفي للتأخير الأقصى والذيل وتأخر خيط الإرسال عن التشغيل
+        int history = Integer.highestOneBit(
+                (sampleRate * MAX_DELAY_MS / 1000 + taps + 4 * maxFrameSamples) * 2 - 1);
+        farHistory = new float[history];
+        farMask = history - 1;
+        int envelopes = Integer.highestOneBit(history / block * 2 - 1);
+        farEnvelope = new float[envelopes];
+        envelopeMask = envelopes - 1;
+        correlation = new float[maxLagBlocks + 1];
+    }
+
+    /**
+     * إضافة صوت مشغل - Append audio that was just written to the speaker.
+     *
+     * @param position     sample position of the frame in the playout stream; a
+     *                     jump (dropped reference frames) is filled with silence
+     * @param writtenNanos System.nanoTime() when the write returned
+     */
+    public void onFarEnd(short[] pcm, int offset, int samples, long position, long writtenNanos) {
+        if (!haveFar) {
+            farEnd = position;
+            haveFar = true;
+        } else if (position > farEnd) {
+            long gap = position - farEnd;
+            if (gap > farHistory.length) {
+                // فجوة أطول من التاريخ - nothing old is worth keeping
+                Arrays.fill(farHistory, 0f);
+                farEnd = position - farHistory.length;
+                gap = farHistory.length;
+            }
+            for (long i = 0; i < gap; i++) {
+                appendFar(0f);
+            }
+        }
+        for (int i = 0; i < samples; i++) {
+            appendFar(pcm[offset + i] * (1f / 32768f));
+        }
+        farEndNanos = writtenNanos;
+    }
+
+    @Override
+    public void process(AudioFrame frame) {
+        process(frame.pcm, 0, frame.samples, frame.timestampNanos);
+    }
+
+    /**
+     * إلغاء الصدى من إطار ملتقط في مكانه - Remove the echo from a capture
+     * frame in place. Frames arriving before any far-end audio pass through.
+     *
+     * @param capturedNanos System.nanoTime() when the frame finished capturing
+     */
+    public void process(short[] pcm, int offset, int samples, long capturedNanos) {
+        if (!anchored) {
+            if (!haveFar) {
+                return;
+            }
+            // موقع الإطار على ساعة التشغيل - which playout position was being written when
+            // this frame's first sample was captured
+            nearIndex = farEnd + (capturedNanos - farEndNanos) * sampleRate / 1_000_000_000L - samples;
+            anchored = true;
+        }
+
+        // نسخة خطية من المرجع: العينة الأحدث للعينة k في window[k + taps - 1]
+        long base = nearIndex - delaySamples - taps + 1;
+        int length = taps + samples - 1;
+        for (int i = 0; i < length; i++) {
+            window[i] = farAt(base + i);
+        }
+        float p = 0f;
+        for (int i = 0; i < taps; i++) {
+            p += window[i] * window[i];
+        }
+        power = p;
+
+        for (int k = 0; k < samples; k++) {
+            float near = pcm[offset + k] * (1f / 32768f);
+            float echo = 0f;
+            for (int j = 0; j < taps; j++) {
+                echo += weights[j] * window[k + j];
+            }
+            float error = near - echo;
+
+            // كشف التحدث المزدوج لكل عينة قبل التكييف - the error jumping far above the residual
+            // the converged filter normally leaves means someone is talking at the near end
+            float errorAbs = Math.abs(error);
+            errorEnvelope += (errorAbs - errorEnvelope) * ENVELOPE_RATE;
+            echoEnvelope += (Math.abs(echo) - echoEnvelope) * ENVELOPE_RATE;
+            noiseEnvelope = errorEnvelope < noiseEnvelope ? errorEnvelope : noiseEnvelope * NOISE_RISE;
+            if (residualGain > 0f
+                    && errorEnvelope > DOUBLE_TALK_FACTOR * echoEnvelope * residualGain + 2f * noiseEnvelope) {
+                doubleTalkLeft = doubleTalkHangover;
+            } else if (doubleTalkLeft > 0) {
+                doubleTalkLeft--;
+            }
+
+            if (doubleTalkLeft == 0 && power > FAR_ACTIVE_POWER * taps) {
+                float gain = STEP_SIZE * error / (power + regularization);
+                for (int j = 0; j < taps; j++) {
+                    weights[j] += gain * window[k + j];
+                }
+            }
+            pcm[offset + k] = clip(error * 32768f);
+
+            if (k + 1 < samples) {
+                float entering = window[k + taps];
+                float leaving = window[k];
+                power = Math.max(0f, power + entering * entering - leaving * leaving);
+            }
+
+            nearEnergy += near * near;
+            errorEnergy += error * error;
+            nearBlockSum += Math.abs(near);
+            nearIndex++;
+            if (Math.floorMod(nearIndex, block) == 0) {
+                endBlock(Math.floorDiv(nearIndex, block) - 1);
+            }
+        }
+        framesProcessed++;
+    }
+
+    /**
+     * تخطي إطار ملتقط - A capture frame of {@code samples} samples that is not
+     * being processed (muted, or cancellation switched off). The near-end
+     * position still advances so the microphone stays lined up with the
+     * far-end audio that keeps arriving; the filter is left as it is, since
+     * the echo path has not changed.
+     */
+    public void skip(int samples) {
+        if (!anchored) {
+            return;
+        }
+        nearIndex += samples;
+        // الكتلة الجزئية قبل التخطي لا تخص ما بعده - drop the partial block
+        nearBlockSum = 0f;
+        nearEnergy = errorEnergy = 0f;
+    }
+
+    public void reset() {
+        resetFilter();
+        Arrays.fill(farHistory, 0f);
+        Arrays.fill(farEnvelope, 0f);
+        Arrays.fill(correlation, 0f);
+        haveFar = false;
+        anchored = false;
+        farBlockSum = 0f;
+        farBlocksDone = 0;
+        farMean = farVariance = nearMean = nearVariance = 0f;
+        nearBlockSum = 0f;
+        candidateLag = -1;
+        stableBlocks = 0;
+        delaySamples = 0;
+    }
+
+    /** التأخير الكلي المعتمد - Bulk delay currently applied to the far end. */
+    public int getDelayMs() {
+        return delaySamples * 1000 / sampleRate;
+    }
+
+    /** تقليل الصدى المقدر - Smoothed echo return loss enhancement while the far end talks. */
+    public float getErleDb() {
+        return erleDb;
+    }
+
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+
+    public long getDelayChanges() {
+        return delayChanges;
+    }
+
+    /** Number of times the filter diverged and was cleared. */
+    public long getResets() {
+        return resets;
+    }
+
+    private void appendFar(float value) {
+        farHistory[(int) (farEnd & farMask)] = value;
+        farBlockSum += Math.abs(value);
+        farEnd++;
+        if (Math.floorMod(farEnd, block) == 0) {
+            float envelope = farBlockSum / block;
+            farBlockSum = 0f;
+            farBlocksDone = Math.floorDiv(farEnd, block);
+            farEnvelope[(int) ((farBlocksDone - 1) & envelopeMask)] = envelope;
+            farMean += (envelope - farMean) * ENVELOPE_MEAN_RATE;
+            float deviation = envelope - farMean;
+            farVariance += (deviation * deviation - farVariance) * CORRELATION_RATE;
+        }
+    }
+
+    private float farAt(long position) {
+        if (position >= farEnd || position < farEnd - farHistory.length) {
+            return 0f; // لم يشغل بعد أو خرج من التاريخ
+        }
+        return farHistory[(int) (position & farMask)];
+    }
+
+    /** نهاية كتلة 5 مللي ثانية - double-talk, convergence and delay decisions. */
+    private void endBlock(long nearBlock) {
+        boolean farActive = power > FAR_ACTIVE_POWER * taps;
+        if (farActive && nearEnergy > 0f) {
+            if (doubleTalkLeft > 0) {
+                if (++doubleTalkBlocks > pathChangeBlocks) {
+                    resetFilter(); // لا ينتهي: تغير مسار الصدى نفسه - the echo path itself moved
+                    resets++;
+                }
+            } else {
+                doubleTalkBlocks = 0;
+                float erle = 10f * (float) Math.log10(nearEnergy / Math.max(errorEnergy, 1e-12f));
+                erleDb += (erle - erleDb) * (erle > erleDb ? ERLE_RISE : ERLE_FALL);
+                if (erleDb < DIVERGENCE_DB) {
+                    resetFilter(); // المرشح يزيد الصدى - the filter is adding echo, start over
+                    resets++;
+                }
+            }
+        }
+        // المتبقي المتوقع بعد التقارب - residual echo gain once converged, 0 before
+        residualGain = erleDb > CONVERGED_ERLE_DB ? (float) Math.pow(10.0, -erleDb / 20.0) : 0f;
+
+        updateDelay(nearBlock, nearBlockSum / block);
+        nearBlockSum = 0f;
+        nearEnergy = errorEnergy = 0f;
+    }
+
+    /**
+     * تقدير التأخير الكلي - Correlate the microphone envelope with the far-end
+     * envelope at every lag up to {@link #MAX_DELAY_MS} and move the filter
+     * window when a clear, stable peak is found away from the current delay.
+     */
+    private void updateDelay(long nearBlock, float envelope) {
+        nearMean += (envelope - nearMean) * ENVELOPE_MEAN_RATE;
+        if (farVariance <= 1e-10f) {
+            return; // المرجع صامت - nothing to correlate against
+        }
+        float deviation = envelope - nearMean;
+        nearVariance += (deviation * deviation - nearVariance) * CORRELATION_RATE;
+
+        int bestLag = -1;
+        float bestCorrelation = 0f;
+        for (int lag = 0; lag <= maxLagBlocks; lag++) {
+            long farBlock = nearBlock - lag;
+            if (farBlock >= farBlocksDone || farBlock < farBlocksDone - farEnvelope.length) {
+                continue;
+            }
+            float farDeviation = farEnvelope[(int) (farBlock & envelopeMask)] - farMean;
+            float c = correlation[lag] + (deviation * farDeviation - correlation[lag]) * CORRELATION_RATE;
+            correlation[lag] = c;
+            if (c > bestCorrelation) {
+                bestCorrelation = c;
+                bestLag = lag;
+            }
+        }
+        if (bestLag < 0
+                || bestCorrelation < MIN_DELAY_SCORE * (float) Math.sqrt(nearVariance * farVariance)) {
+            stableBlocks = 0;
+            return;
+        }
+
+        if (Math.abs(bestLag - candidateLag) <= 1) {
+            stableBlocks++;
+        } else {
+            candidateLag = bestLag;
+            stableBlocks = 0;
+        }
+        if (stableBlocks >= STABLE_BLOCKS) {
+            int delay = Math.max(0, bestLag - PRE_DELAY_BLOCKS) * block;
+            if (Math.abs(delay - delaySamples) >= taps / 4) {
+                delaySamples = delay;
+                resetFilter(); // مسار جديد - the old weights model a different alignment
+                delayChanges++;
+            }
+        }
+    }
+
+    private void resetFilter() {
+        Arrays.fill(weights, 0f);
+        erleDb = 0f;
+        residualGain = 0f;
+        doubleTalkLeft = 0;
+        doubleTalkBlocks = 0;
+    }
+
+    private static short clip(float value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
@@ -0,0 +1,201 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * تصحيح الأخطاء الأمامي - جهة الاستقبال
+ * Forward error correction, receiver side. Rebuilds lost frames from the
+ * RED and XOR parity packets described in {@link FecEncoder} and hands
+ * them to the jitter buffer as recovered frames. Every decoder supports
+ * both formats; negotiation only decides what the peer sends.
+ *
+ * Runs on the playout thread; all storage is preallocated.
+ */
+public class FecDecoder {
+
+    private static final int HISTORY = 32; // ضعف أكبر مجموعة - twice the largest group
+
+    // نتيجة تحليل حزمة RED - Fields filled by parseRedundant()
+    public int primaryPayloadType;
+    public int primaryOffset;
+    public int primaryLength;
+    public int redundantPayloadType;
+    public int redundantOffset;
+    public int redundantLength;
+    public int redundantTimestampOffset;
+
+    // الحزم المستقبلة مؤخراً - recently received media frames, indexed by seq
+    private final boolean[] historyUsed = new boolean[HISTORY];
+    private final int[] historySeq = new int[HISTORY];
+    private final int[] historyPayloadType = new int[HISTORY];
+    private final int[] historyLength = new int[HISTORY];
+    private final long[] historyTimestamp = new long[HISTORY];
+    private final byte[][] historyData;
+
+    private final byte[] rebuilt;
+    private final ByteBuffer rebuiltView;
+    private final int maxFrameSamples;
+
+    private long recoveredByRedundancy;
+    private long recoveredByParity;
+
+    /**
+     * @param maxPayloadBytes largest payload a single frame may carry
+     * @param maxFrameSamples largest frame playout can decode; bigger rebuilt frames are ignored
+     */
+    public FecDecoder(int maxPayloadBytes, int maxFrameSamples) {
+        this.maxFrameSamples = maxFrameSamples;
+        historyData = new byte[HISTORY][maxPayloadBytes];
+        rebuilt = new byte[maxPayloadBytes];
+        rebuiltView = ByteBuffer.wrap(rebuilt);
+    }
+
+    /**
+     * تحليل حزمة RED - Split a RED payload into its primary and redundant
+     * parts.
+     *
+     * @return false if the payload is malformed
+     */
+    public boolean parseRedundant(ByteBuffer data, int offset, int length) {
+        if (length < FecEncoder.RED_HEADER_SIZE) {
+            return false;
+        }
+        primaryPayloadType = data.get(offset) & 0xFF;
+        redundantPayloadType = data.get(offset + 1) & 0xFF;
+        redundantTimestampOffset = data.getShort(offset + 2) & 0xFFFF;
+        redundantLength = data.getShort(offset + 4) & 0xFFFF;
+        redundantOffset = offset + FecEncoder.RED_HEADER_SIZE;
+        primaryOffset = redundantOffset + redundantLength;
+        primaryLength = length - FecEncoder.RED_HEADER_SIZE - redundantLength;
+        return primaryLength >= 0;
+    }
+
+    /**
+     * استعادة الإطار السابق من حزمة RED - Offer the redundant copy of frame
+     * {@code sequence} (already parsed) to the jitter buffer.
+     */
+    public void recoverRedundant(JitterBuffer buffer, AudioCodec[] decoders, ByteBuffer data, int sequence,
+            long timestamp) {
+        if (redundantLength == 0 || decoders[redundantPayloadType] == null) {
+            return;
+        }
+        int samples = decoders[redundantPayloadType].getDecodedSamples(redundantLength);
+        if (samples > maxFrameSamples) {
+            return;
+        }
+        if (buffer.putRecovered(sequence, timestamp, samples, redundantPayloadType, data, redundantOffset,
+                redundantLength)) {
+            recoveredByRedundancy++;
+            remember(sequence, timestamp, redundantPayloadType, data, redundantOffset, redundantLength);
+        }
+    }
+
+    /**
+     * حفظ إطار مستقبل - Keep a copy of a received media frame for parity
+     * recovery.
+     */
+    public void remember(int sequence, long timestamp, int payloadType, ByteBuffer data, int offset, int length) {
+        int slot = sequence & (HISTORY - 1);
+        if (length > historyData[slot].length) {
+            return;
+        }
+        historyUsed[slot] = true;
+        historySeq[slot] = sequence;
+        historyTimestamp[slot] = timestamp;
+        historyPayloadType[slot] = payloadType;
+        historyLength[slot] = length;
+        byte[] target = historyData[slot];
+        for (int i = 0; i < length; i++) {
+            target[i] = data.get(offset + i);
+        }
+    }
+
+    /**
+     * معالجة حزمة تكافؤ - Rebuild the one missing frame of a parity group,
+     * if exactly one is missing.
+     *
+     * @param baseSequence  extended sequence number of the group's first frame
+     * @param baseTimestamp extended timestamp of the group's first frame
+     */
+    public void onParity(JitterBuffer buffer, AudioCodec[] decoders, int baseSequence, long baseTimestamp,
+            ByteBuffer data, int offset, int length) {
+        if (length < FecEncoder.PARITY_HEADER_SIZE) {
+            return;
+        }
+        int count = data.get(offset) & 0xFF;
+        if (count < 1 || count > FecEncoder.MAX_GROUP_SIZE) {
+            return;
+        }
+
+        int missing = -1;
+        for (int i = 0; i < count; i++) {
+            int sequence = baseSequence + i;
+            int slot = sequence & (HISTORY - 1);
+            if (!historyUsed[slot] || historySeq[slot] != sequence) {
+                if (missing >= 0) {
+                    return; // أكثر من إطار مفقود - parity repairs only one
+                }
+                missing = sequence;
+            }
+        }
+        if (missing < 0) {
+            return; // المجموعة كاملة
+        }
+
+        int payloadType = data.get(offset + 1) & 0xFF;
+        int rebuiltLength = data.getShort(offset + 2) & 0xFFFF;
+        int timestampXor = data.getInt(offset + 4);
+        int parityLength = length - FecEncoder.PARITY_HEADER_SIZE;
+        if (parityLength > rebuilt.length) {
+            return;
+        }
+        for (int i = 0; i < parityLength; i++) {
+            rebuilt[i] = data.get(offset + FecEncoder.PARITY_HEADER_SIZE + i);
+        }
+        for (int i = 0; i < count; i++) {
+            int sequence = baseSequence + i;
+            if (sequence == missing) {
+                continue;
+            }
+            int slot = sequence & (HISTORY - 1);
+            payloadType ^= historyPayloadType[slot];
+            rebuiltLength ^= historyLength[slot];
+            timestampXor ^= (int) historyTimestamp[slot];
+            byte[] source = historyData[slot];
+            for (int j = 0; j < historyLength[slot]; j++) {
+                rebuilt[j] ^= source[j];
+            }
+        }
+
+        if (rebuiltLength > parityLength || payloadType >= decoders.length || decoders[payloadType] == null) {
+            return;
+        }
+        long timestamp = MediaPacket.extendTimestamp(baseTimestamp, timestampXor & 0xFFFFFFFFL);
+        int samples = decoders[payloadType].getDecodedSamples(rebuiltLength);
+        if (samples > maxFrameSamples) {
+            return;
+        }
+        if (buffer.putRecovered(missing, timestamp, samples, payloadType, rebuiltView, 0, rebuiltLength)) {
+            recoveredByParity++;
+            remember(missing, timestamp, payloadType, rebuiltView, 0, rebuiltLength);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < HISTORY; i++) {
+            historyUsed[i] = false;
+        }
+    }
+
+    public long getRecoveredByRedundancy() {
+        return recoveredByRedundancy;
+    }
+
+    public long getRecoveredByParity() {
+        return recoveredByParity;
+    }
+
+    public long getFramesRecovered() {
+        return recoveredByRedundancy + recoveredByParity;
+    }
+}
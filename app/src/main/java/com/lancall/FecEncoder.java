@@ -0,0 +1,201 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * تصحيح الأخطاء الأمامي - جهة الإرسال
+ * Forward error correction, sender side. Two modes, negotiated per call:
+ *
+ * <ul>
+ * <li>{@link #MODE_RED} - every media packet also carries the previous
+ * frame, so any isolated loss is repaired by the next packet (about twice
+ * the payload bandwidth). Layout after the media header:
+ *
+ * <pre>
+ * | primary PT (u8) | redundant PT (u8) | redundant ts offset (u16) | redundant length (u16) |
+ * | redundant payload ... | primary payload ... |
+ * </pre>
+ *
+ * </li>
+ * <li>{@link #MODE_XOR} - after every {@code groupSize} media packets an
+ * extra parity packet XORs their payload type, length, timestamp and
+ * payload bytes, so one loss per group is rebuilt (1/groupSize extra
+ * bandwidth). The media header of the parity packet carries the first
+ * sequence number of the group; its payload is:
+ *
+ * <pre>
+ * | count (u8) | PT xor (u8) | length xor (u16) | timestamp xor (u32) | payload xor ... |
+ * </pre>
+ *
+ * </li>
+ * </ul>
+ *
+ * Neither kind of packet consumes a media sequence number.
+ */
+public class FecEncoder {
+
+    public static final String MODE_OFF = "off";
+    public static final String MODE_RED = "red";
+    public static final String MODE_XOR = "xor";
+
+    public static final int RED_HEADER_SIZE = 6;
+    public static final int PARITY_HEADER_SIZE = 8;
+    public static final int DEFAULT_GROUP_SIZE = 4;
+    public static final int MAX_GROUP_SIZE = 16;
+
+    private final String mode;
+    private final int groupSize;
+
+    // الإطار السابق للتكرار - previous frame for RED
+    private final byte[] previousPayload;
+    private boolean havePrevious;
+    private int previousLength;
+    private int previousPayloadType;
+    private long previousTimestamp;
+
+    // تراكم التكافؤ - XOR accumulator for the current group
+    private final byte[] parity;
+    private int parityLength; // أطول حمولة في المجموعة
+    private int groupCount;
+    private int groupBaseSequence;
+    private long groupBaseTimestamp;
+    private int payloadTypeXor;
+    private int lengthXor;
+    private int timestampXor;
+
+    public FecEncoder(String mode, int groupSize, int maxPayloadBytes) {
+        this.mode = negotiate(mode);
+        this.groupSize = Math.max(2, Math.min(MAX_GROUP_SIZE, groupSize));
+        this.previousPayload = new byte[maxPayloadBytes];
+        this.parity = new byte[maxPayloadBytes];
+    }
+
+    /**
+     * اختيار نمط التصحيح - Accept an offered mode if known, otherwise off.
+     * Peers that predate FEC offer nothing.
+     */
+    public static String negotiate(String offered) {
+        if (MODE_RED.equals(offered) || MODE_XOR.equals(offered)) {
+            return offered;
+        }
+        return MODE_OFF;
+    }
+
+    /**
+     * MTU المتاح للإطار الأساسي - MTU to fit a single encoded frame into.
+     * With RED a datagram holds two frames, so the primary gets half.
+     */
+    public static int getFrameMtu(String mode, int mtu) {
+        return MODE_RED.equals(mode) ? mtu / 2 : mtu;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public boolean isRedundant() {
+        return mode.equals(MODE_RED);
+    }
+
+    public boolean isParity() {
+        return mode.equals(MODE_XOR);
+    }
+
+    /**
+     * كتابة ترويسة التكرار والإطار السابق - RED only: write the redundancy
+     * header and previous frame at {@code offset}; the primary payload goes
+     * right after the returned number of bytes.
+     */
+    public int writeRedundancy(ByteBuffer packet, int offset, int primaryPayloadType, long primaryTimestamp) {
+        int length = havePrevious ? previousLength : 0;
+        packet.put(offset, (byte) primaryPayloadType);
+        packet.put(offset + 1, (byte) (havePrevious ? previousPayloadType : 0));
+        packet.putShort(offset + 2, (short) (havePrevious ? primaryTimestamp - previousTimestamp : 0));
+        packet.putShort(offset + 4, (short) length);
+        for (int i = 0; i < length; i++) {
+            packet.put(offset + RED_HEADER_SIZE + i, previousPayload[i]);
+        }
+        return RED_HEADER_SIZE + length;
+    }
+
+    /**
+     * تسجيل الإطار المرسل - Record a primary frame just sent, for the next
+     * packet's redundancy and the current parity group.
+     */
+    public void onFrameSent(ByteBuffer packet, int offset, int length, int payloadType, long timestamp,
+            int sequence) {
+        if (isRedundant()) {
+            for (int i = 0; i < length; i++) {
+                previousPayload[i] = packet.get(offset + i);
+            }
+            previousLength = length;
+            previousPayloadType = payloadType;
+            previousTimestamp = timestamp;
+            havePrevious = true;
+        } else if (isParity()) {
+            if (groupCount == 0) {
+                groupBaseSequence = sequence;
+                groupBaseTimestamp = timestamp;
+            }
+            for (int i = 0; i < length; i++) {
+                parity[i] ^= packet.get(offset + i);
+            }
+            parityLength = Math.max(parityLength, length);
+            payloadTypeXor ^= payloadType;
+            lengthXor ^= length;
+            timestampXor ^= (int) timestamp;
+            groupCount++;
+        }
+    }
+
+    /** اكتملت المجموعة - A full parity group is waiting to be sent. */
+    public boolean isParityReady() {
+        return groupCount >= groupSize;
+    }
+
+    /** مجموعة جزئية عند بداية الصمت - Any frames not yet covered by parity. */
+    public boolean hasPendingParity() {
+        return groupCount > 0;
+    }
+
+    public int getParityBaseSequence() {
+        return groupBaseSequence;
+    }
+
+    public long getParityBaseTimestamp() {
+        return groupBaseTimestamp;
+    }
+
+    /**
+     * كتابة حزمة التكافؤ وبدء مجموعة جديدة - Write the parity payload at
+     * {@code offset} and start a new group. Read the base sequence and
+     * timestamp before calling.
+     *
+     * @return payload bytes written
+     */
+    public int writeParity(ByteBuffer packet, int offset) {
+        packet.put(offset, (byte) groupCount);
+        packet.put(offset + 1, (byte) payloadTypeXor);
+        packet.putShort(offset + 2, (short) lengthXor);
+        packet.putInt(offset + 4, timestampXor);
+        for (int i = 0; i < parityLength; i++) {
+            packet.put(offset + PARITY_HEADER_SIZE + i, parity[i]);
+            parity[i] = 0;
+        }
+        int written = PARITY_HEADER_SIZE + parityLength;
+        groupCount = 0;
+        parityLength = 0;
+        payloadTypeXor = 0;
+        lengthXor = 0;
+        timestampXor = 0;
+        return written;
+    }
+
+    /**
+     * بداية صمت - Forget the previous frame so the first packet of the next
+     * talkspurt does not carry stale audio.
+     */
+    public void onSilence() {
+        havePrevious = false;
+    }
+}
@@ -0,0 +1,165 @@
+package com.lancall;
+
+/**
+ * منظم إيقاع الإطارات - يحدد حجم الإطار من مدة الحزمة (ptime) ويقيس انحراف
+ * كل إطار عن موعده حسب ساعة الوسائط
+ * Capture frame scheduler. Frame size follows from the packet time, each
+ * frame's deadline follows from the media clock (start + n × ptime), and the
+ * pacer reports how far every captured frame drifted from that deadline.
+ *
+ * The blocking capture read is what paces the loop: it returns once one
+ * frame of samples exists, so no wall-clock sleep is needed. A negative
+ * drift means the device handed over backlog, which is sent immediately.
+ */
+public class FramePacer {
+
+    public static final int DEFAULT_PTIME_MS = 20;
+    public static final int MAX_PTIME_MS = 60;
+    private static final int[] SUPPORTED_PTIMES_MS = { 10, 20, 40, 60 };
+
+    public static final int DEFAULT_MTU = 1500;
+    public static final int PTIME_DOES_NOT_FIT = -1; // حتى أقصر إطار يتجاوز MTU
+    private static final int IP_UDP_OVERHEAD = 28; // ترويسة IPv4 (20) + UDP (8)
+
+    private static final int RESYNC_FRAMES = 10; // بعد توقف أطول من 10 إطارات نعيد ضبط المرجع
+
+    private final int sampleRate;
+    private final int ptimeMs;
+    private final int frameSamples;
+    private final long frameNanos;
+
+    private boolean started = false;
+    private long startNanos;
+    private long frameIndex;
+
+    // إحصاءات الانحراف - Drift statistics (nanoseconds)
+    private long lastDriftNanos;
+    private long maxDriftNanos;
+    private long sumAbsDriftNanos;
+    private long framesMeasured;
+    private long framesLate;
+    private long resyncs;
+
+    public FramePacer(int sampleRate, int ptimeMs) {
+        if (!isSupportedPtime(ptimeMs)) {
+            throw new IllegalArgumentException("Unsupported ptime: " + ptimeMs);
+        }
+        this.sampleRate = sampleRate;
+        this.ptimeMs = ptimeMs;
+        this.frameSamples = samplesPerFrame(sampleRate, ptimeMs);
+        this.frameNanos = ptimeMs * 1_000_000L;
+    }
+
+    public static boolean isSupportedPtime(int ptimeMs) {
+        for (int supported : SUPPORTED_PTIMES_MS) {
+            if (supported == ptimeMs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static int samplesPerFrame(int sampleRate, int ptimeMs) {
+        return sampleRate * ptimeMs / 1000;
+    }
+
+    /**
+     * اختيار مدة الحزمة ضمن حدود MTU - Largest supported ptime not above
+     * {@code requestedPtimeMs} whose datagram fits in one unfragmented IP packet.
+     *
+     * @return the ptime, or {@link #PTIME_DOES_NOT_FIT} when not even the
+     *         shortest supported frame fits; the caller must then shrink the
+     *         packet (drop RED, pick a smaller codec) rather than fragment it
+     */
+    public static int fitPtimeToMtu(int requestedPtimeMs, int sampleRate, AudioCodec codec, int mtu) {
+        int chosen = PTIME_DOES_NOT_FIT;
+        for (int ptime : SUPPORTED_PTIMES_MS) {
+            if (ptime > requestedPtimeMs) {
+                break;
+            }
+            int datagram = IP_UDP_OVERHEAD + MediaPacket.HEADER_SIZE
+                    + codec.getMaxEncodedSize(samplesPerFrame(sampleRate, ptime));
+            if (datagram <= mtu) {
+                chosen = ptime;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * تسجيل التقاط إطار - Record that one frame finished capturing at
+     * {@code nowNanos} and return its drift from the media-clock deadline.
+     */
+    public long onFrameCaptured(long nowNanos) {
+        if (!started) {
+            started = true;
+            startNanos = nowNanos;
+            frameIndex = 0;
+        }
+        long deadline = startNanos + frameIndex * frameNanos;
+        long drift = nowNanos - deadline;
+
+        if (Math.abs(drift) > RESYNC_FRAMES * frameNanos) {
+            // توقف طويل (مثل انشغال المعالج) - re-anchor instead of reporting it forever
+            resyncs++;
+            startNanos = nowNanos;
+            frameIndex = 0;
+            drift = 0;
+        }
+
+        lastDriftNanos = drift;
+        if (drift > maxDriftNanos) {
+            maxDriftNanos = drift;
+        }
+        if (drift > frameNanos) {
+            framesLate++;
+        }
+        sumAbsDriftNanos += Math.abs(drift);
+        framesMeasured++;
+        frameIndex++;
+        return drift;
+    }
+
+    public void reset() {
+        started = false;
+        lastDriftNanos = 0;
+        maxDriftNanos = 0;
+        sumAbsDriftNanos = 0;
+        framesMeasured = 0;
+        framesLate = 0;
+        resyncs = 0;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getPtimeMs() {
+        return ptimeMs;
+    }
+
+    public int getFrameSamples() {
+        return frameSamples;
+    }
+
+    public double getLastDriftMs() {
+        return lastDriftNanos / 1e6;
+    }
+
+    public double getMaxDriftMs() {
+        return maxDriftNanos / 1e6;
+    }
+
+    public double getMeanAbsDriftMs() {
+        return framesMeasured == 0 ? 0 : sumAbsDriftNanos / 1e6 / framesMeasured;
+    }
+
+    /** Frames that completed more than one ptime after their deadline. */
+    public long getFramesLate() {
+        return framesLate;
+    }
+
+    public long getResyncs() {
+        return resyncs;
+    }
+}
@@ -0,0 +1,144 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ترميز G.711 بقانوني μ و A - يضغط كل عينة 16 بت إلى 8 بت (نصف عرض النطاق)
+ * G.711 μ-law / A-law codec. Companding is per sample, so it works at any
+ * sample rate; decoding goes through a 256-entry table built once per class.
+ */
+public class G711Codec implements AudioCodec {
+
+    public static final String NAME_MU_LAW = "PCMU";
+    public static final String NAME_A_LAW = "PCMA";
+
+    private static final int MU_BIAS = 0x84;
+    private static final int MU_CLIP = 32635;
+
+    private static final short[] MU_LAW_DECODE = new short[256];
+    private static final short[] A_LAW_DECODE = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            MU_LAW_DECODE[i] = muLawToLinear((byte) i);
+            A_LAW_DECODE[i] = aLawToLinear((byte) i);
+        }
+    }
+
+    private final boolean aLaw;
+
+    /**
+     * @param aLaw true for A-law (PCMA), false for μ-law (PCMU)
+     */
+    public G711Codec(boolean aLaw) {
+        this.aLaw = aLaw;
+    }
+
+    @Override
+    public String getName() {
+        return aLaw ? NAME_A_LAW : NAME_MU_LAW;
+    }
+
+    @Override
+    public int getPayloadType() {
+        return aLaw ? MediaPacket.PAYLOAD_PCMA : MediaPacket.PAYLOAD_PCMU;
+    }
+
+    @Override
+    public int getMaxEncodedSize(int samples) {
+        return samples;
+    }
+
+    @Override
+    public int getDecodedSamples(int encodedLength) {
+        return encodedLength;
+    }
+
+    @Override
+    public int encode(short[] pcm, int offset, int samples, ByteBuffer out, int outOffset) {
+        if (aLaw) {
+            for (int i = 0; i < samples; i++) {
+                out.put(outOffset + i, linearToALaw(pcm[offset + i]));
+            }
+        } else {
+            for (int i = 0; i < samples; i++) {
+                out.put(outOffset + i, linearToMuLaw(pcm[offset + i]));
+            }
+        }
+        return samples;
+    }
+
+    @Override
+    public int decode(ByteBuffer in, int inOffset, int length, short[] pcm, int pcmOffset) {
+        short[] table = aLaw ? A_LAW_DECODE : MU_LAW_DECODE;
+        for (int i = 0; i < length; i++) {
+            pcm[pcmOffset + i] = table[in.get(inOffset + i) & 0xFF];
+        }
+        return length;
+    }
+
+    @Override
+    public void reset() {
+        // لا توجد حالة - stateless
+    }
+
+    static byte linearToMuLaw(int sample) {
+        int sign = (sample >> 8) & 0x80;
+        if (sign != 0) {
+            sample = -sample;
+        }
+        if (sample > MU_CLIP) {
+            sample = MU_CLIP;
+        }
+        sample += MU_BIAS;
+        int exponent = 7;
+        for (int mask = 0x4000; (sample & mask) == 0 && exponent > 0; mask >>= 1) {
+            exponent--;
+        }
+        int mantissa = (sample >> (exponent + 3)) & 0x0F;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+
+    static short muLawToLinear(byte encoded) {
+        int value = ~encoded & 0xFF;
+        int sign = value & 0x80;
+        int exponent = (value >> 4) & 0x07;
+        int mantissa = value & 0x0F;
+        int sample = (((mantissa << 3) + MU_BIAS) << exponent) - MU_BIAS;
+        return (short) (sign != 0 ? -sample : sample);
+    }
+
+    static byte linearToALaw(int sample) {
+        int sign = (~sample >> 8) & 0x80; // A-law: البت 1 يعني موجب
+        if (sign == 0) {
+            sample = -sample;
+        }
+        if (sample > 32767) {
+            sample = 32767;
+        }
+        int encoded;
+        if (sample >= 256) {
+            int exponent = 7;
+            for (int mask = 0x4000; (sample & mask) == 0 && exponent > 1; mask >>= 1) {
+                exponent--;
+            }
+            int mantissa = (sample >> (exponent + 3)) & 0x0F;
+            encoded = (exponent << 4) | mantissa;
+        } else {
+            encoded = sample >> 4;
+        }
+        return (byte) ((encoded | sign) ^ 0x55);
+    }
+
+    static short aLawToLinear(byte encoded) {
+        int value = (encoded ^ 0x55) & 0xFF;
+        int sign = value & 0x80;
+        int exponent = (value >> 4) & 0x07;
+        int mantissa = value & 0x0F;
+        int sample = (mantissa << 4) + 8;
+        if (exponent != 0) {
+            sample = (sample + 0x100) << (exponent - 1);
+        }
+        return (short) (sign != 0 ? sample : -sample);
+    }
+}
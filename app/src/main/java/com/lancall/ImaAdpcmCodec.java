@@ -0,0 +1,162 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ترميز IMA-ADPCM - 4 بت لكل عينة (ربع عرض نطاق PCM)
+ * IMA-ADPCM codec, 4 bits per sample. Each frame starts with a 4-byte block
+ * header (predictor as little-endian int16, step index, reserved) holding the
+ * encoder state at the first sample, so every frame decodes independently
+ * while the encoder still carries its state across frames.
+ */
+public class ImaAdpcmCodec implements AudioCodec {
+
+    public static final String NAME = "IMA-ADPCM";
+
+    private static final int BLOCK_HEADER_SIZE = 4;
+
+    private static final int[] INDEX_TABLE = {
+            -1, -1, -1, -1, 2, 4, 6, 8,
+            -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+            19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+            130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+            876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+            5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    // حالة المرمّز بين الإطارات - Encoder state carried across frames
+    private int encodePredictor = 0;
+    private int encodeIndex = 0;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getPayloadType() {
+        return MediaPacket.PAYLOAD_IMA_ADPCM;
+    }
+
+    @Override
+    public int getMaxEncodedSize(int samples) {
+        return BLOCK_HEADER_SIZE + (samples + 1) / 2;
+    }
+
+    @Override
+    public int getDecodedSamples(int encodedLength) {
+        return Math.max(0, encodedLength - BLOCK_HEADER_SIZE) * 2;
+    }
+
+    @Override
+    public int encode(short[] pcm, int offset, int samples, ByteBuffer out, int outOffset) {
+        int predictor = encodePredictor;
+        int index = encodeIndex;
+
+        out.put(outOffset, (byte) predictor);
+        out.put(outOffset + 1, (byte) (predictor >> 8));
+        out.put(outOffset + 2, (byte) index);
+        out.put(outOffset + 3, (byte) 0);
+
+        int position = outOffset + BLOCK_HEADER_SIZE;
+        int packed = 0;
+        for (int i = 0; i < samples; i++) {
+            int step = STEP_TABLE[index];
+            int diff = pcm[offset + i] - predictor;
+            int code = 0;
+            if (diff < 0) {
+                code = 8;
+                diff = -diff;
+            }
+            // تقريب الفرق بخطوات ثنائية وبناء التنبؤ الجديد بنفس طريقة فك الترميز
+            int delta = step >> 3;
+            if (diff >= step) {
+                code |= 4;
+                diff -= step;
+                delta += step;
+            }
+            step >>= 1;
+            if (diff >= step) {
+                code |= 2;
+                diff -= step;
+                delta += step;
+            }
+            step >>= 1;
+            if (diff >= step) {
+                code |= 1;
+                delta += step;
+            }
+            predictor += (code & 8) != 0 ? -delta : delta;
+            predictor = clamp16(predictor);
+            index = clampIndex(index + INDEX_TABLE[code]);
+
+            if ((i & 1) == 0) {
+                packed = code; // النصف الأدنى أولاً - low nibble first
+            } else {
+                out.put(position++, (byte) (packed | (code << 4)));
+            }
+        }
+        if ((samples & 1) != 0) {
+            out.put(position++, (byte) packed);
+        }
+
+        encodePredictor = predictor;
+        encodeIndex = index;
+        return position - outOffset;
+    }
+
+    @Override
+    public int decode(ByteBuffer in, int inOffset, int length, short[] pcm, int pcmOffset) {
+        if (length < BLOCK_HEADER_SIZE) {
+            return 0;
+        }
+        int predictor = (short) ((in.get(inOffset) & 0xFF) | (in.get(inOffset + 1) << 8));
+        int index = clampIndex(in.get(inOffset + 2) & 0xFF);
+
+        int samples = 0;
+        for (int position = inOffset + BLOCK_HEADER_SIZE; position < inOffset + length; position++) {
+            int packed = in.get(position) & 0xFF;
+            for (int nibble = 0; nibble < 2; nibble++) {
+                int code = nibble == 0 ? packed & 0x0F : packed >> 4;
+                int step = STEP_TABLE[index];
+                int delta = step >> 3;
+                if ((code & 4) != 0) {
+                    delta += step;
+                }
+                if ((code & 2) != 0) {
+                    delta += step >> 1;
+                }
+                if ((code & 1) != 0) {
+                    delta += step >> 2;
+                }
+                predictor += (code & 8) != 0 ? -delta : delta;
+                predictor = clamp16(predictor);
+                index = clampIndex(index + INDEX_TABLE[code]);
+                pcm[pcmOffset + samples++] = (short) predictor;
+            }
+        }
+        return samples;
+    }
+
+    @Override
+    public void reset() {
+        encodePredictor = 0;
+        encodeIndex = 0;
+    }
+
+    private static int clamp16(int value) {
+        return value > Short.MAX_VALUE ? Short.MAX_VALUE : (value < Short.MIN_VALUE ? Short.MIN_VALUE : value);
+    }
+
+    private static int clampIndex(int index) {
+        return index < 0 ? 0 : (index > STEP_TABLE.length - 1 ? STEP_TABLE.length - 1 : index);
+    }
+}
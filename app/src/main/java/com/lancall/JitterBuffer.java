@@ -0,0 +1,444 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * مخزن تعويض الارتعاش التكيفي - يرتب الإطارات الصوتية الواردة حسب رقم التسلسل
+ * ويؤخر تشغيلها بمقدار يتكيف مع تذبذب زمن الوصول على الشبكة
+ * Adaptive jitter buffer - holds received audio frames by sequence number and
+ * releases them to playout after a target delay that follows measured jitter.
+ *
+ * The class has no Android dependencies: every call takes the arrival or
+ * playout time explicitly, so it can be driven by synthetic arrival traces.
+ * All storage is preallocated; {@link #put} and {@link #poll} never allocate.
+ */
+public class JitterBuffer {
+
+    // نتائج poll - Results returned by poll() instead of a payload length
+    public static final int RESULT_BUFFERING = -1; // المخزن دون عمق الهدف - play silence, nothing consumed
+    public static final int RESULT_UNDERRUN = -2; // المخزن فارغ - nothing arrived in time
+    public static final int RESULT_LOST = -3; // الإطار المتوقع مفقود وما بعده موجود - conceal one frame
+
+    private static final int DEFAULT_MIN_DELAY_MS = 20;
+    private static final int DEFAULT_MAX_DELAY_MS = 400;
+    private static final double JITTER_MULTIPLIER = 4.0; // عمق الهدف = إطار + 4 × الارتعاش
+    private static final double JITTER_ATTACK = 1.0 / 8; // تكيف سريع عند ازدياد الارتعاش
+    private static final double JITTER_RELEASE = 1.0 / 128; // تكيف بطيء عند تحسن الشبكة
+    private static final int HYSTERESIS_FRAMES = 2; // هامش حول الهدف قبل تكبير التأخير أو تقليصه
+    private static final int STRETCH_DROP_MARGIN_MS = 120; // مع تغيير السرعة: الإسقاط ملاذ أخير فقط
+
+    private final int clockRate;
+    private final int mask;
+    private final int minDelayMs;
+    private final int maxDelayMs;
+
+    // خانات التخزين المسبقة - Preallocated slots indexed by seq & mask
+    private final boolean[] slotUsed;
+    private final int[] slotSeq;
+    private final int[] slotPayloadType;
+    private final long[] slotTimestamp;
+    private final int[] slotSamples;
+    private final int[] slotLength;
+    private final byte[][] slotData;
+
+    private boolean started = false; // هل بدأ التشغيل؟
+    private boolean haveNextSeq = false;
+    private int nextSeq; // رقم التسلسل التالي المنتظر للتشغيل
+    private boolean havePlayed = false;
+    private int lastPlayedSeq; // آخر تسلسل مر موعد تشغيله - survives underruns, cleared only by reset()
+    private int bufferedFrames = 0;
+    private long bufferedSamples = 0;
+    private int lastFrameSamples;
+    private boolean timeStretching = false;
+
+    // تقدير الارتعاش - Jitter estimation
+    private boolean haveTransit = false;
+    private double lastTransitMs;
+    private double jitterMs = 0;
+    private int targetDelayMs;
+    private int repairDelayMs; // أدنى عمق يسمح للتكافؤ بالوصول قبل موعد التشغيل
+
+    // نتيجة آخر poll - Metadata of the last polled frame
+    private long lastTimestamp;
+    private int lastPayloadType;
+    private int lastSamples;
+
+    // عدادات - Counters
+    private long framesReceived;
+    private long framesPlayed;
+    private long framesLate;
+    private long framesDuplicate;
+    private long framesLost;
+    private long framesRecovered;
+    private long framesDropped;
+    private long framesInserted;
+    private long underruns;
+
+    /**
+     * @param clockRate       media clock rate (samples per second)
+     * @param capacity        number of frame slots, rounded up to a power of two
+     * @param maxPayloadBytes largest payload a single frame may carry
+     * @param frameSamples    nominal samples per frame until real frames arrive
+     */
+    public JitterBuffer(int clockRate, int capacity, int maxPayloadBytes, int frameSamples) {
+        this(clockRate, capacity, maxPayloadBytes, frameSamples, DEFAULT_MIN_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    public JitterBuffer(int clockRate, int capacity, int maxPayloadBytes, int frameSamples,
+            int minDelayMs, int maxDelayMs) {
+        if (clockRate <= 0 || capacity <= 0 || maxPayloadBytes <= 0 || frameSamples <= 0) {
+            throw new IllegalArgumentException("Invalid jitter buffer configuration");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.clockRate = clockRate;
+        this.mask = size - 1;
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = Math.max(minDelayMs, maxDelayMs);
+        this.lastFrameSamples = frameSamples;
+        this.lastSamples = frameSamples;
+        this.targetDelayMs = Math.max(minDelayMs, samplesToMs(frameSamples));
+
+        slotUsed = new boolean[size];
+        slotSeq = new int[size];
+        slotPayloadType = new int[size];
+        slotTimestamp = new long[size];
+        slotSamples = new int[size];
+        slotLength = new int[size];
+        slotData = new byte[size][maxPayloadBytes];
+    }
+
+    /**
+     * إضافة إطار وارد - Insert a received frame.
+     *
+     * @param seq         extended (unwrapped) sequence number
+     * @param timestamp   media timestamp of the first sample, in clock-rate units
+     * @param samples     number of samples the frame decodes to
+     * @param payloadType codec payload type from the media header
+     * @param arrivalMs   local arrival time in milliseconds
+     * @return true if the frame was stored, false if it was late, duplicate or
+     *         oversized
+     */
+    public synchronized boolean put(int seq, long timestamp, int samples, int payloadType, byte[] data, int offset,
+            int length, long arrivalMs) {
+        int slot = admit(seq, timestamp, samples, payloadType, length, arrivalMs);
+        if (slot < 0) {
+            return false;
+        }
+        System.arraycopy(data, offset, slotData[slot], 0, length);
+        return true;
+    }
+
+    /**
+     * إضافة إطار من ByteBuffer (مثل مخزن الاستقبال المباشر) - Same as the
+     * array variant, reading with absolute gets so the buffer is untouched.
+     */
+    public synchronized boolean put(int seq, long timestamp, int samples, int payloadType, ByteBuffer data,
+            int offset, int length, long arrivalMs) {
+        int slot = admit(seq, timestamp, samples, payloadType, length, arrivalMs);
+        if (slot < 0) {
+            return false;
+        }
+        byte[] target = slotData[slot];
+        for (int i = 0; i < length; i++) {
+            target[i] = data.get(offset + i);
+        }
+        return true;
+    }
+
+    /**
+     * قبول الإطار وحجز خانته - Validate a frame and claim its slot.
+     *
+     * @return the slot index, or -1 if the frame is rejected
+     */
+    private int admit(int seq, long timestamp, int samples, int payloadType, int length, long arrivalMs) {
+        if (length > slotData[0].length || samples <= 0) {
+            framesDropped++;
+            return -1;
+        }
+        framesReceived++;
+        updateJitter(timestamp, samples, arrivalMs);
+
+        if (havePlayed && seq - lastPlayedSeq <= 0) {
+            framesLate++; // وصل بعد موعد تشغيله، حتى لو فرغ المخزن بعدها وعاد للتعبئة
+            return -1;
+        }
+        if (!haveNextSeq) {
+            nextSeq = seq;
+            haveNextSeq = true;
+        } else if (seq - nextSeq < 0) {
+            if (havePlayed || nextSeq - seq > mask) {
+                framesLate++;
+                return -1;
+            }
+            nextSeq = seq; // إطار أقدم وصل قبل أول تشغيل - the only time nextSeq may move back
+        } else if (seq - nextSeq > mask) {
+            // قفزة أكبر من سعة المخزن - المرسل أعاد البدء أو انقطاع طويل
+            clear();
+            nextSeq = seq;
+            haveNextSeq = true;
+        }
+
+        int slot = seq & mask;
+        if (slotUsed[slot]) {
+            framesDuplicate++;
+            return -1;
+        }
+        occupy(slot, seq, timestamp, samples, payloadType, length);
+        return slot;
+    }
+
+    /**
+     * إضافة إطار مستعاد بتصحيح الأخطاء الأمامي - Insert a frame rebuilt by
+     * FEC. It only fills a gap that has not been played yet, and it neither
+     * feeds the jitter estimate (the copy arrives later than the original
+     * would have) nor counts as late or duplicate.
+     *
+     * @return true if the frame filled a gap
+     */
+    public synchronized boolean putRecovered(int seq, long timestamp, int samples, int payloadType,
+            ByteBuffer data, int offset, int length) {
+        if (!haveNextSeq || seq - nextSeq < 0 || seq - nextSeq > mask || length > slotData[0].length
+                || samples <= 0) {
+            return false;
+        }
+        int slot = seq & mask;
+        if (slotUsed[slot]) {
+            return false;
+        }
+        occupy(slot, seq, timestamp, samples, payloadType, length);
+        byte[] target = slotData[slot];
+        for (int i = 0; i < length; i++) {
+            target[i] = data.get(offset + i);
+        }
+        framesRecovered++;
+        return true;
+    }
+
+    private void occupy(int slot, int seq, long timestamp, int samples, int payloadType, int length) {
+        slotUsed[slot] = true;
+        slotSeq[slot] = seq;
+        slotTimestamp[slot] = timestamp;
+        slotPayloadType[slot] = payloadType;
+        slotSamples[slot] = samples;
+        slotLength[slot] = length;
+        bufferedFrames++;
+        bufferedSamples += samples;
+        lastFrameSamples = samples;
+    }
+
+    /**
+     * وضع تغيير السرعة - With time stretching the caller moves the delay
+     * towards {@link #getTargetDelayMs()} by playing faster or slower, so the
+     * buffer no longer inserts silence to grow and drops a frame only when
+     * it is 120 ms over the target.
+     */
+    public synchronized void setTimeStretching(boolean enabled) {
+        timeStretching = enabled;
+    }
+
+    /**
+     * سحب الإطار التالي للتشغيل - Take the next frame for playout.
+     *
+     * @return payload length copied into {@code out}, or one of the
+     *         {@code RESULT_*} codes. {@link #getLastSamples()} always tells how
+     *         many samples of audio (or concealment) the caller should play.
+     */
+    public synchronized int poll(long nowMs, byte[] out, int outOffset) {
+        lastSamples = lastFrameSamples;
+        if (!started) {
+            if (bufferedFrames == 0 || getBufferedMsLocked() < targetDelayMs) {
+                return RESULT_BUFFERING;
+            }
+            started = true;
+        }
+        if (bufferedFrames == 0) {
+            underruns++;
+            started = false; // إعادة التعبئة حتى عمق الهدف - lets the delay grow
+            return RESULT_UNDERRUN;
+        }
+
+        // تكبير التأخير بإيقاف السحب لإطار واحد عندما يقل المخزن عن الهدف بهامش
+        int hysteresisMs = HYSTERESIS_FRAMES * samplesToMs(lastFrameSamples);
+        int bufferedMs = getBufferedMsLocked();
+        if (bufferedMs < targetDelayMs - hysteresisMs && !timeStretching) {
+            framesInserted++;
+            return RESULT_BUFFERING;
+        }
+
+        // تقليص التأخير بإسقاط الإطار الأقدم عندما يتجاوز المخزن الهدف بهامش
+        int dropMarginMs = timeStretching ? Math.max(hysteresisMs, STRETCH_DROP_MARGIN_MS) : hysteresisMs;
+        if (bufferedMs > targetDelayMs + dropMarginMs) {
+            int slot = nextSeq & mask;
+            if (slotUsed[slot] && slotSeq[slot] == nextSeq) {
+                releaseSlot(slot);
+                framesDropped++;
+            }
+            advance();
+        }
+
+        int slot = nextSeq & mask;
+        if (!slotUsed[slot] || slotSeq[slot] != nextSeq) {
+            framesLost++;
+            advance();
+            return RESULT_LOST;
+        }
+        int length = slotLength[slot];
+        System.arraycopy(slotData[slot], 0, out, outOffset, length);
+        lastTimestamp = slotTimestamp[slot];
+        lastPayloadType = slotPayloadType[slot];
+        lastSamples = slotSamples[slot];
+        releaseSlot(slot);
+        framesPlayed++;
+        advance();
+        return length;
+    }
+
+    /**
+     * تجاوز موعد الإطار الحالي - Mark the expected frame's playout slot as
+     * passed, whether it was played, concealed or dropped.
+     */
+    private void advance() {
+        lastPlayedSeq = nextSeq;
+        havePlayed = true;
+        nextSeq++;
+    }
+
+    /**
+     * تفريغ المخزن - Drop all buffered frames and restart buffering.
+     */
+    public synchronized void reset() {
+        clear();
+        havePlayed = false;
+        haveTransit = false;
+        jitterMs = 0;
+        targetDelayMs = Math.max(getFloorDelayMs(), samplesToMs(lastFrameSamples));
+    }
+
+    /**
+     * عمق يكفي لإصلاح FEC - Keep at least {@code delayMs} buffered so a
+     * repair that arrives after the frame it rebuilds (an XOR parity packet
+     * follows the last frame of its group) still lands before that frame's
+     * playout time. Capped at the maximum delay; 0 removes the floor.
+     */
+    public synchronized void setRepairDelayMs(int delayMs) {
+        repairDelayMs = Math.max(0, Math.min(maxDelayMs, delayMs));
+        targetDelayMs = Math.max(targetDelayMs, repairDelayMs);
+    }
+
+    private void clear() {
+        for (int i = 0; i <= mask; i++) {
+            slotUsed[i] = false;
+        }
+        bufferedFrames = 0;
+        bufferedSamples = 0;
+        started = false;
+        haveNextSeq = false;
+    }
+
+    private void releaseSlot(int slot) {
+        slotUsed[slot] = false;
+        bufferedFrames--;
+        bufferedSamples -= slotSamples[slot];
+    }
+
+    /**
+     * تحديث تقدير الارتعاش وعمق الهدف - Update the jitter estimate from the
+     * transit time (arrival minus media time) and recompute the target delay.
+     * Rising jitter is tracked quickly and falling jitter slowly, so the buffer
+     * grows at the first burst and only gives latency back once the link has
+     * been quiet for a while.
+     */
+    private void updateJitter(long timestamp, int samples, long arrivalMs) {
+        double transitMs = arrivalMs - timestamp * 1000.0 / clockRate;
+        if (haveTransit) {
+            double d = Math.abs(transitMs - lastTransitMs);
+            double gain = d > jitterMs ? JITTER_ATTACK : JITTER_RELEASE;
+            jitterMs += (d - jitterMs) * gain;
+        }
+        lastTransitMs = transitMs;
+        haveTransit = true;
+
+        int target = samplesToMs(samples) + (int) Math.ceil(JITTER_MULTIPLIER * jitterMs);
+        targetDelayMs = Math.max(getFloorDelayMs(), Math.min(maxDelayMs, target));
+    }
+
+    private int getFloorDelayMs() {
+        return Math.max(minDelayMs, repairDelayMs);
+    }
+
+    private int getBufferedMsLocked() {
+        return (int) (bufferedSamples * 1000 / clockRate);
+    }
+
+    private int samplesToMs(int samples) {
+        return (int) ((long) samples * 1000 / clockRate);
+    }
+
+    public synchronized int getBufferedMs() {
+        return getBufferedMsLocked();
+    }
+
+    public synchronized int getTargetDelayMs() {
+        return targetDelayMs;
+    }
+
+    public synchronized double getJitterMs() {
+        return jitterMs;
+    }
+
+    /** Media timestamp of the frame returned by the last successful poll. */
+    public synchronized long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /** Payload type of the frame returned by the last successful poll. */
+    public synchronized int getLastPayloadType() {
+        return lastPayloadType;
+    }
+
+    /** Samples the caller should play for the last poll result. */
+    public synchronized int getLastSamples() {
+        return lastSamples;
+    }
+
+    public synchronized long getFramesReceived() {
+        return framesReceived;
+    }
+
+    public synchronized long getFramesPlayed() {
+        return framesPlayed;
+    }
+
+    public synchronized long getFramesLate() {
+        return framesLate;
+    }
+
+    public synchronized long getFramesDuplicate() {
+        return framesDuplicate;
+    }
+
+    public synchronized long getFramesLost() {
+        return framesLost;
+    }
+
+    /** Gaps filled by {@link #putRecovered} before their playout time. */
+    public synchronized long getFramesRecovered() {
+        return framesRecovered;
+    }
+
+    public synchronized long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /** Playout slots filled with silence to grow the buffer towards its target. */
+    public synchronized long getFramesInserted() {
+        return framesInserted;
+    }
+
+    public synchronized long getUnderruns() {
+        return underruns;
+    }
+}
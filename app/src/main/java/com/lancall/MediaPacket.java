@@ -0,0 +1,112 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ترويسة حزم الوسائط الثنائية - تنسيق ثابت يسبق كل حزمة صوت على UDP
+ * Binary media packet header - fixed 12-byte layout in front of every audio
+ * datagram, modelled on RTP but without CSRC lists or extensions:
+ *
+ * <pre>
+ *  0               1               2               3
+ * +-------+-------+---------------+-------------------------------+
+ * |version| flags | payload type  |        sequence (u16)         |
+ * +-------+-------+---------------+-------------------------------+
+ * |                   media timestamp (u32)                       |
+ * +---------------------------------------------------------------+
+ * |                      stream id (u32)                          |
+ * +---------------------------------------------------------------+
+ * </pre>
+ *
+ * All fields are big-endian. Writing uses absolute puts and parsing fills
+ * this reusable holder, so neither direction allocates.
+ */
+public class MediaPacket {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 12;
+
+    public static final int FLAG_MARKER = 0x01; // أول حزمة بعد صمت أو بداية المكالمة - start of a talkspurt
+
+    // أنواع الحمولة - Payload types
+    public static final int PAYLOAD_PCM16 = 0; // PCM 16 بت خام - raw little-endian PCM16
+    public static final int PAYLOAD_PCMU = 1; // G.711 μ-law
+    public static final int PAYLOAD_PCMA = 2; // G.711 A-law
+    public static final int PAYLOAD_IMA_ADPCM = 3; // IMA-ADPCM 4 بت
+    public static final int PAYLOAD_CN = 13; // واصف الضجيج المريح أثناء الصمت - comfort noise, as in RFC 3389
+    public static final int PAYLOAD_RED = 20; // إطار أساسي مع نسخة من السابق - redundant encoding, see FecEncoder
+    public static final int PAYLOAD_PARITY = 21; // تكافؤ XOR لمجموعة إطارات - XOR parity, see FecEncoder
+    public static final int PAYLOAD_REPORT = 22; // تقرير مرسل ومستقبل - sender/receiver report, see MediaReport
+    public static final int MAX_PAYLOAD_TYPES = 256; // حجم جداول البحث حسب نوع الحمولة
+
+    // الحقول بعد التحليل - Fields filled by parse()
+    public int version;
+    public int flags;
+    public int payloadType;
+    public int sequence; // 16 بت كما وصل على الشبكة
+    public long timestamp; // 32 بت بدون إشارة
+    public int streamId;
+    public int payloadOffset;
+    public int payloadLength;
+
+    /**
+     * كتابة الترويسة - Write a header at {@code offset} without touching the
+     * buffer's position.
+     */
+    public static void writeHeader(ByteBuffer buffer, int offset, int flags, int payloadType, int sequence,
+            long timestamp, int streamId) {
+        buffer.put(offset, (byte) ((VERSION << 4) | (flags & 0x0F)));
+        buffer.put(offset + 1, (byte) payloadType);
+        buffer.putShort(offset + 2, (short) sequence);
+        buffer.putInt(offset + 4, (int) timestamp);
+        buffer.putInt(offset + 8, streamId);
+    }
+
+    /**
+     * تحليل الترويسة - Parse a datagram of {@code length} bytes starting at
+     * {@code offset}.
+     *
+     * @return false if the datagram is too short or has an unknown version
+     */
+    public boolean parse(ByteBuffer buffer, int offset, int length) {
+        if (length < HEADER_SIZE) {
+            return false;
+        }
+        int first = buffer.get(offset) & 0xFF;
+        version = first >>> 4;
+        if (version != VERSION) {
+            return false;
+        }
+        flags = first & 0x0F;
+        payloadType = buffer.get(offset + 1) & 0xFF;
+        sequence = buffer.getShort(offset + 2) & 0xFFFF;
+        timestamp = buffer.getInt(offset + 4) & 0xFFFFFFFFL;
+        streamId = buffer.getInt(offset + 8);
+        payloadOffset = offset + HEADER_SIZE;
+        payloadLength = length - HEADER_SIZE;
+        return true;
+    }
+
+    public boolean isMarker() {
+        return (flags & FLAG_MARKER) != 0;
+    }
+
+    /**
+     * توسيع رقم التسلسل - Extend a 16-bit wire sequence number to the 32-bit
+     * value closest to {@code reference} (the last extended number seen), so
+     * wrap-around and reordering across the wrap both resolve correctly.
+     */
+    public static int extendSequence(int reference, int sequence16) {
+        int delta = (short) (sequence16 - reference); // فرق موقّع ضمن ±32768
+        return reference + delta;
+    }
+
+    /**
+     * توسيع الطابع الزمني - Extend a 32-bit wire timestamp to the 64-bit value
+     * closest to {@code reference}.
+     */
+    public static long extendTimestamp(long reference, long timestamp32) {
+        int delta = (int) (timestamp32 - reference);
+        return reference + delta;
+    }
+}
@@ -0,0 +1,136 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * تقرير التحكم الدوري على مسار الوسائط - تقرير مرسل ومستقبل على نمط RTCP
+ * Periodic control report sent on the media path next to the audio, in
+ * the spirit of an RTCP sender report with one reception block. It rides
+ * behind a normal {@link MediaPacket} header with payload type
+ * {@link MediaPacket#PAYLOAD_REPORT}, which consumes no sequence number;
+ * peers that predate it drop it as an unknown payload type.
+ *
+ * <pre>
+ *  0               1               2               3
+ * +---------------+-----------------------------------------------+
+ * |     flags     |                  reserved                     |
+ * +---------------+-----------------------------------------------+
+ * |              report time (u32, 1/65536 s)                     |
+ * +---------------------------------------------------------------+
+ * |                     packets sent (u32)                        |
+ * +---------------------------------------------------------------+
+ * |                      bytes sent (u32)                         |
+ * +---------------------------------------------------------------+
+ * |          source stream id: the stream reported on             |
+ * +---------------+-----------------------------------------------+
+ * | fraction lost |         cumulative lost (s24)                 |
+ * +---------------+-----------------------------------------------+
+ * |           extended highest sequence received (u32)            |
+ * +---------------------------------------------------------------+
+ * |          interarrival jitter (u32, timestamp units)           |
+ * +---------------------------------------------------------------+
+ * |       last report time received from the source (LSR)         |
+ * +---------------------------------------------------------------+
+ * |   delay since that report (DLSR, u32, 1/65536 s)              |
+ * +---------------------------------------------------------------+
+ * |      estimated available bitrate for that stream (u32, bps)   |
+ * +---------------------------------------------------------------+
+ * </pre>
+ *
+ * The reception block is valid only with {@link #FLAG_RECEPTION}. The
+ * estimate ({@link BandwidthEstimator}) came later: reports of
+ * {@link #MIN_SIZE} bytes from older peers parse with it 0, and
+ * {@link #FLAG_OVERUSE} says the peer sees the queue on the path growing
+ * right now. Report
+ * times are the middle 32 bits of a local clock, as NTP times in RTCP:
+ * the peer echoes ours back in LSR with DLSR, and
+ * {@code now - LSR - DLSR} is the round trip without comparing clocks.
+ * Fields are big-endian; parsing fills this reusable holder.
+ */
+public class MediaReport {
+
+    public static final int SIZE = 44;
+    public static final int MIN_SIZE = 40; // بدون التقدير - as sent before the estimate was added
+    public static final int FLAG_RECEPTION = 0x01; // كتلة الاستقبال صالحة - we have received the peer's stream
+    public static final int FLAG_OVERUSE = 0x02; // التأخير يتزايد الآن - delay-based overuse detected
+    private static final int MAX_CUMULATIVE_LOST = 0x7FFFFF;
+
+    // الحقول - Fields, filled by parse() or set before write()
+    public int flags;
+    public long reportTime;
+    public long packetsSent;
+    public long bytesSent;
+    public int sourceStreamId;
+    public int fractionLost; // من 256 منذ التقرير السابق - out of 256, since the previous report
+    public int cumulativeLost;
+    public long highestSequence;
+    public long jitter;
+    public long lastReportTime;
+    public long delaySinceLastReport;
+    public long estimatedBitrate; // 0 إن لم يقدر - 0 when the peer has no estimate
+
+    public boolean hasReception() {
+        return (flags & FLAG_RECEPTION) != 0;
+    }
+
+    public boolean isOveruse() {
+        return (flags & FLAG_OVERUSE) != 0;
+    }
+
+    /**
+     * كتابة التقرير - Write the body at {@code offset} without touching the
+     * buffer's position.
+     *
+     * @return bytes written, {@link #SIZE}
+     */
+    public int write(ByteBuffer out, int offset) {
+        out.putInt(offset, flags << 24);
+        out.putInt(offset + 4, (int) reportTime);
+        out.putInt(offset + 8, (int) packetsSent);
+        out.putInt(offset + 12, (int) bytesSent);
+        out.putInt(offset + 16, sourceStreamId);
+        int lost = Math.max(-MAX_CUMULATIVE_LOST, Math.min(MAX_CUMULATIVE_LOST, cumulativeLost));
+        out.putInt(offset + 20, (fractionLost & 0xFF) << 24 | (lost & 0xFFFFFF));
+        out.putInt(offset + 24, (int) highestSequence);
+        out.putInt(offset + 28, (int) jitter);
+        out.putInt(offset + 32, (int) lastReportTime);
+        out.putInt(offset + 36, (int) delaySinceLastReport);
+        out.putInt(offset + 40, (int) estimatedBitrate);
+        return SIZE;
+    }
+
+    /**
+     * قراءة التقرير - Parse a body of {@code length} bytes.
+     *
+     * @return false if it is shorter than {@link #MIN_SIZE}
+     */
+    public boolean parse(ByteBuffer in, int offset, int length) {
+        if (length < MIN_SIZE) {
+            return false;
+        }
+        flags = (in.getInt(offset) >>> 24) & 0xFF;
+        reportTime = in.getInt(offset + 4) & 0xFFFFFFFFL;
+        packetsSent = in.getInt(offset + 8) & 0xFFFFFFFFL;
+        bytesSent = in.getInt(offset + 12) & 0xFFFFFFFFL;
+        sourceStreamId = in.getInt(offset + 16);
+        int loss = in.getInt(offset + 20);
+        fractionLost = (loss >>> 24) & 0xFF;
+        cumulativeLost = (loss << 8) >> 8; // توسيع إشارة 24 بت
+        highestSequence = in.getInt(offset + 24) & 0xFFFFFFFFL;
+        jitter = in.getInt(offset + 28) & 0xFFFFFFFFL;
+        lastReportTime = in.getInt(offset + 32) & 0xFFFFFFFFL;
+        delaySinceLastReport = in.getInt(offset + 36) & 0xFFFFFFFFL;
+        estimatedBitrate = length >= SIZE ? in.getInt(offset + 40) & 0xFFFFFFFFL : 0;
+        return true;
+    }
+
+    /** الوقت المضغوط - A local time in milliseconds as 32 bits of 1/65536 s, wrapping every 18 hours. */
+    public static long compactTime(long timeMs) {
+        return (timeMs * 65536 / 1000) & 0xFFFFFFFFL;
+    }
+
+    /** مدة مضغوطة إلى مللي ثانية - A compact-time difference, taken modulo 2^32, in milliseconds. */
+    public static int compactToMs(long compact) {
+        return (int) ((compact & 0xFFFFFFFFL) * 1000 / 65536);
+    }
+}
@@ -0,0 +1,241 @@
+package com.lancall;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * محرك نقل الوسائط - خيط واحد يخدم جميع تدفقات الصوت النشطة عبر DatagramChannel
+ * Media transport engine - one selector thread services every active media
+ * stream. Each stream owns a connected, non-blocking {@link DatagramChannel}
+ * and a direct receive buffer that is handed to the stream's handler as-is,
+ * so datagrams go from the kernel to the header parser without a copy.
+ *
+ * Sending is non-blocking and may be called from any thread; a datagram
+ * that does not fit in the socket send buffer is dropped and counted rather
+ * than stalling the caller.
+ */
+public class MediaTransport {
+
+    private static final String TAG = "MediaTransport";
+
+    /**
+     * معالج الحزم الواردة - Called on the transport thread for every datagram.
+     * The buffer is only valid until the handler returns.
+     */
+    public interface PacketHandler {
+        void onPacket(Stream stream, ByteBuffer packet, int length, long arrivalMs);
+    }
+
+    /**
+     * تدفق وسائط واحد - One connected media stream
+     */
+    public static class Stream {
+        private final DatagramChannel channel;
+        private final PacketHandler handler;
+        private final ByteBuffer receiveBuffer;
+
+        private volatile long packetsSent;
+        private volatile long packetsReceived;
+        private volatile long sendDrops;
+        private volatile long receiveErrors;
+
+        private Stream(DatagramChannel channel, PacketHandler handler, int maxPacketSize) {
+            this.channel = channel;
+            this.handler = handler;
+            this.receiveBuffer = ByteBuffer.allocateDirect(maxPacketSize);
+        }
+
+        /**
+         * إرسال حزمة - Send the first {@code length} bytes of {@code packet}.
+         * Only one thread may send on a stream at a time.
+         *
+         * @return false if the datagram was dropped
+         */
+        public boolean send(ByteBuffer packet, int length) {
+            packet.limit(length).position(0);
+            try {
+                if (channel.write(packet) > 0) {
+                    packetsSent++;
+                    return true;
+                }
+            } catch (IOException e) {
+                // مثل ICMP port unreachable قبل أن يفتح الطرف الآخر منفذه - peer not listening yet
+            }
+            sendDrops++;
+            return false;
+        }
+
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing media channel", e);
+            }
+        }
+
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        public long getPacketsSent() {
+            return packetsSent;
+        }
+
+        public long getPacketsReceived() {
+            return packetsReceived;
+        }
+
+        public long getSendDrops() {
+            return sendDrops;
+        }
+
+        public long getReceiveErrors() {
+            return receiveErrors;
+        }
+
+        /** قراءة كل الحزم المتاحة - Drain every datagram currently queued. */
+        private void drain() {
+            while (channel.isOpen()) {
+                receiveBuffer.clear();
+                int length;
+                try {
+                    length = channel.read(receiveBuffer);
+                } catch (IOException e) {
+                    receiveErrors++;
+                    return;
+                }
+                if (length <= 0) {
+                    return;
+                }
+                packetsReceived++;
+                handler.onPacket(this, receiveBuffer, length, System.currentTimeMillis());
+            }
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Stream> pendingStreams = new ConcurrentLinkedQueue<>();
+    private final ArrayList<Stream> streams = new ArrayList<>(); // خيط النقل فقط - transport thread only
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running = false;
+
+    /**
+     * تشغيل خيط النقل إن لم يكن يعمل - Start the transport thread if needed.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        running = true;
+        thread = new Thread(this::run, "media-transport");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * فتح تدفق جديد - Bind {@code localPort}, connect to {@code remote} and
+     * start delivering its datagrams to {@code handler}.
+     */
+    public Stream openStream(int localPort, InetSocketAddress remote, PacketHandler handler, int maxPacketSize)
+            throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(localPort));
+            channel.connect(remote);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        Stream stream = new Stream(channel, handler, maxPacketSize);
+        pendingStreams.add(stream);
+        selector.wakeup();
+        return stream;
+    }
+
+    /**
+     * إغلاق تدفق - Close a stream and wake the selector so it is unregistered.
+     */
+    public void closeStream(Stream stream) {
+        stream.close();
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+
+    private void run() {
+        Log.d(TAG, "Media transport started");
+        try {
+            while (running) {
+                selector.select();
+                registerPendingStreams();
+
+                // المرور على التدفقات مباشرة بدل مكرر المفاتيح - indexed loop, no iterator allocation
+                for (int i = streams.size() - 1; i >= 0; i--) {
+                    Stream stream = streams.get(i);
+                    if (stream.isOpen()) {
+                        stream.drain();
+                    } else {
+                        streams.remove(i);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            Log.e(TAG, "Media transport failed", e);
+        } finally {
+            for (int i = 0; i < streams.size(); i++) {
+                streams.get(i).close();
+            }
+            streams.clear();
+            try {
+                selector.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing selector", e);
+            }
+            running = false;
+            Log.d(TAG, "Media transport stopped");
+        }
+    }
+
+    private void registerPendingStreams() {
+        Stream stream;
+        while ((stream = pendingStreams.poll()) != null) {
+            try {
+                stream.channel.register(selector, SelectionKey.OP_READ, stream);
+                streams.add(stream);
+            } catch (IOException e) {
+                Log.e(TAG, "Error registering media stream", e);
+                stream.close();
+            }
+        }
+    }
+}
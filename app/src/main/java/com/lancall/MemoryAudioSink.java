@@ -0,0 +1,56 @@
+package com.lancall;
+
+/**
+ * مصرف في الذاكرة - يحفظ العينات في مصفوفة محجوزة مسبقاً
+ * {@link AudioSink} that keeps the samples in a preallocated array for
+ * comparison after a JVM run. Samples beyond the capacity are counted and
+ * dropped.
+ */
+public class MemoryAudioSink implements AudioSink {
+
+    private final short[] pcm;
+    private final int sampleRate;
+    private int length;
+    private long dropped;
+
+    public MemoryAudioSink(int sampleRate, int capacity) {
+        this.pcm = new short[capacity];
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int write(short[] buffer, int offset, int samples) {
+        int count = Math.min(samples, pcm.length - length);
+        System.arraycopy(buffer, offset, pcm, length, count);
+        length += count;
+        dropped += samples - count;
+        return samples;
+    }
+
+    /** العينات المكتوبة - The backing array; only the first {@link #getLength()} samples are valid. */
+    public short[] getSamples() {
+        return pcm;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void clear() {
+        length = 0;
+        dropped = 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,52 @@
+package com.lancall;
+
+/**
+ * مصدر من الذاكرة - يقرأ من مصفوفة عينات، اختيارياً بشكل دائري
+ * {@link AudioSource} over a PCM array, optionally looping, for running the
+ * media path on a plain JVM.
+ */
+public class MemoryAudioSource implements AudioSource {
+
+    private final short[] pcm;
+    private final int sampleRate;
+    private final boolean looping;
+    private int position;
+
+    public MemoryAudioSource(short[] pcm, int sampleRate, boolean looping) {
+        this.pcm = pcm;
+        this.sampleRate = sampleRate;
+        this.looping = looping && pcm.length > 0;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int samples) {
+        int total = 0;
+        while (total < samples) {
+            if (position == pcm.length) {
+                if (!looping) {
+                    break;
+                }
+                position = 0;
+            }
+            int count = Math.min(samples - total, pcm.length - position);
+            System.arraycopy(pcm, position, buffer, offset + total, count);
+            position += count;
+            total += count;
+        }
+        return total > 0 || samples == 0 ? total : -1;
+    }
+
+    /** إعادة القراءة من البداية - Rewind to the first sample. */
+    public void rewind() {
+        position = 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
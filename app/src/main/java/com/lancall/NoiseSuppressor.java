@@ -0,0 +1,198 @@
+package com.lancall;
+
+/**
+ * كبت الضجيج - مرشح Wiener طيفي يخفض الضجيج الثابت (مراوح، مكيفات، آلات) في الصوت الملتقط
+ * Spectral noise suppressor: a Wiener filter with decision-directed SNR
+ * estimation, applied by short-time FFT with 50% overlap-add.
+ *
+ * Audio is analysed in hops of 10 ms with a sine window over two hops, so
+ * analysis and synthesis windows together sum to one and unprocessed bins
+ * come back bit-exact (up to rounding). The noise spectrum is tracked per
+ * bin as a smoothed minimum - it falls quickly and rises about 2 dB/s - so
+ * no voice activity decision is needed and steady noise that starts
+ * mid-call is learned within seconds. The strength level sets how far a
+ * bin may be pulled down and how aggressively noise is over-estimated.
+ *
+ * Output lags input by one window (two hops, 20 ms) for any frame size:
+ * a hop is final only once the hop after it has been analysed. Runs on the
+ * sending thread; nothing is allocated per frame.
+ */
+public class NoiseSuppressor implements AudioProcessor {
+
+    public static final int LEVEL_OFF = 0;
+    public static final int LEVEL_LOW = 1;
+    public static final int LEVEL_MODERATE = 2;
+    public static final int LEVEL_HIGH = 3;
+
+    // لكل مستوى: أقصى تخفيض ومعامل المبالغة في تقدير الضجيج
+    private static final float[] MAX_ATTENUATION_DB = {0f, 9f, 15f, 21f};
+    private static final float[] OVER_SUBTRACTION = {1f, 1f, 1.5f, 2f};
+
+    private static final int HOP_MS = 10;
+    private static final float POWER_SMOOTHING = 0.3f; // تنعيم القدرة قبل تتبع الحد الأدنى
+    private static final float NOISE_FALL = 0.3f;
+    private static final float NOISE_RISE = 1.005f; // لكل قفزة 10 مللي ثانية: نحو 2 ديسيبل في الثانية
+    private static final int INITIAL_HOPS = 10; // أول 100 مللي ثانية تعتبر ضجيجاً
+    private static final float DECISION_DIRECTED = 0.98f; // وزن تقدير SNR السابق
+    private static final float MIN_NOISE = 1e-3f;
+
+    private final int level;
+    private final int hop;
+    private final int bins;
+    private final float gainFloor;
+    private final float overSubtraction;
+    private final RealFft fft;
+
+    private final float[] window; // نافذة جيبية على قفزتين
+    private final float[] previousInput;
+    private final float[] currentInput;
+    private final float[] ready; // القفزة السابقة بعد اكتمالها، تخرج أثناء تجميع التالية
+    private final float[] overlap;
+    private final float[] spectrum;
+    private final float[] smoothedPower;
+    private final float[] noisePower;
+    private final float[] cleanPower; // G² |X|² من القفزة السابقة
+    private int fill;
+    private int hops;
+
+    private double gainSum;
+    private long gainCount;
+
+    public NoiseSuppressor(int sampleRate, int level) {
+        this.level = Math.max(LEVEL_OFF, Math.min(LEVEL_HIGH, level));
+        this.hop = sampleRate * HOP_MS / 1000;
+        this.gainFloor = (float) Math.pow(10.0, -MAX_ATTENUATION_DB[this.level] / 20.0);
+        this.overSubtraction = OVER_SUBTRACTION[this.level];
+
+        // نافذة بطول قفزتين مع حشو صفري حتى قوة العدد 2
+        int fftSize = Integer.highestOneBit(2 * hop * 2 - 1);
+        fft = new RealFft(fftSize);
+        bins = fftSize / 2 + 1;
+        window = new float[2 * hop];
+        for (int i = 0; i < window.length; i++) {
+            window[i] = (float) Math.sin(Math.PI * (i + 0.5) / window.length);
+        }
+        previousInput = new float[hop];
+        currentInput = new float[hop];
+        ready = new float[hop];
+        overlap = new float[hop];
+        spectrum = new float[fftSize];
+        smoothedPower = new float[bins];
+        noisePower = new float[bins];
+        cleanPower = new float[bins];
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public void process(AudioFrame frame) {
+        process(frame.pcm, 0, frame.samples);
+    }
+
+    /**
+     * كبت الضجيج في إطار في مكانه - Denoise a frame in place. The output is
+     * the input of two hops earlier, so the first 20 ms of a call are silence.
+     */
+    public void process(short[] pcm, int offset, int samples) {
+        if (level == LEVEL_OFF) {
+            return;
+        }
+        for (int i = 0; i < samples; i++) {
+            float out = ready[fill];
+            currentInput[fill] = pcm[offset + i];
+            pcm[offset + i] = clip(out);
+            if (++fill == hop) {
+                processHop();
+                fill = 0;
+            }
+        }
+    }
+
+    public void reset() {
+        fill = 0;
+        hops = 0;
+        for (int i = 0; i < hop; i++) {
+            previousInput[i] = 0f;
+            ready[i] = 0f;
+            overlap[i] = 0f;
+        }
+        for (int k = 0; k < bins; k++) {
+            smoothedPower[k] = 0f;
+            noisePower[k] = 0f;
+            cleanPower[k] = 0f;
+        }
+    }
+
+    /** متوسط التخفيض المطبق - Mean attenuation applied so far, in dB (positive). */
+    public double getMeanAttenuationDb() {
+        return gainCount > 0 ? -20.0 * Math.log10(gainSum / gainCount) : 0.0;
+    }
+
+    private void processHop() {
+        // تحليل: قفزتان بنافذة وحشو صفري - window two hops and zero-pad
+        for (int i = 0; i < hop; i++) {
+            spectrum[i] = previousInput[i] * window[i];
+            spectrum[hop + i] = currentInput[i] * window[hop + i];
+            previousInput[i] = currentInput[i];
+        }
+        for (int i = 2 * hop; i < spectrum.length; i++) {
+            spectrum[i] = 0f;
+        }
+        fft.forward(spectrum);
+
+        int last = bins - 1;
+        float hopGain = 0f;
+        for (int k = 0; k <= last; k++) {
+            // الخانتان 0 وN/2 حقيقيتان ومحزومتان في أول المصفوفة
+            int re = k == 0 ? 0 : k == last ? 1 : 2 * k;
+            int im = k == 0 || k == last ? -1 : 2 * k + 1;
+            float power = spectrum[re] * spectrum[re] + (im >= 0 ? spectrum[im] * spectrum[im] : 0f);
+
+            float gain = gainFor(k, power);
+            spectrum[re] *= gain;
+            if (im >= 0) {
+                spectrum[im] *= gain;
+            }
+            hopGain += gain;
+        }
+        gainSum += hopGain / bins;
+        gainCount++;
+        hops++;
+
+        // تركيب: نافذة ثم جمع متداخل - synthesis window and overlap-add
+        fft.inverse(spectrum);
+        for (int i = 0; i < hop; i++) {
+            ready[i] = overlap[i] + spectrum[i] * window[i];
+            overlap[i] = spectrum[hop + i] * window[hop + i];
+        }
+    }
+
+    /** كسب Wiener لخانة - Wiener gain of one bin, updating its noise estimate. */
+    private float gainFor(int k, float power) {
+        float smoothed = smoothedPower[k] += (power - smoothedPower[k]) * POWER_SMOOTHING;
+        float noise = noisePower[k];
+        if (hops < INITIAL_HOPS) {
+            noise += (smoothed - noise) / (hops + 1); // متوسط البداية - assume the call opens on noise
+        } else if (smoothed < noise) {
+            noise += (smoothed - noise) * NOISE_FALL;
+        } else {
+            noise = Math.min(noise * NOISE_RISE, smoothed);
+        }
+        noise = Math.max(noise, MIN_NOISE);
+        noisePower[k] = noise;
+
+        float estimatedNoise = overSubtraction * noise;
+        float posterior = power / estimatedNoise;
+        float prior = DECISION_DIRECTED * cleanPower[k] / estimatedNoise
+                + (1f - DECISION_DIRECTED) * Math.max(posterior - 1f, 0f);
+        float gain = Math.max(prior / (1f + prior), gainFloor);
+        cleanPower[k] = gain * gain * power;
+        return gain;
+    }
+
+    private static short clip(float value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
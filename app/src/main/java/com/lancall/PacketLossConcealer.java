@@ -0,0 +1,231 @@
+package com.lancall;
+
+/**
+ * إخفاء فقدان الحزم - يولد إطاراً بديلاً عند فقدان حزمة بتكرار آخر دورة نغمة مع تخفيت تدريجي
+ * Packet loss concealment by pitch-period repetition, in the spirit of
+ * G.711 Appendix I.
+ *
+ * Every decoded frame is appended to a short history. When a frame is
+ * missing, the pitch period of the history tail is found by normalised
+ * autocorrelation and the last period is repeated. The pitch rarely spans a
+ * whole number of samples, so the last quarter of the copied period is
+ * overlap-added with the period before it, which ends where the copy
+ * starts: the loop has no seam to click at every repetition. Over the first
+ * quarter period, a fading offset carries the output on from the last
+ * sample played, so concealment does not start with a step either. The first
+ * {@link #FULL_GAIN_MS} play at full level, then the output fades linearly
+ * and is silent after {@link #MAX_CONCEAL_MS}. The first good frame after a
+ * loss is cross-faded with the continued repetition so recovery does not
+ * click.
+ *
+ * Runs on the playout thread only; nothing is allocated per frame.
+ */
+public class PacketLossConcealer {
+
+    private static final int MIN_PITCH_HZ = 60;
+    private static final int MAX_PITCH_HZ = 400;
+    private static final int CORRELATION_WINDOW_MS = 20;
+    private static final int FULL_GAIN_MS = 10; // أول 10 مللي ثانية بكامل المستوى
+    private static final int MAX_CONCEAL_MS = 60; // بعدها صمت - then give up and let comfort noise take over
+    private static final int FADE_IN_MS = 4; // مدة المزج عند عودة الحزم
+    private static final float MIN_CORRELATION = 0.3f; // أقل من ذلك ليس صوتاً دورياً
+
+    private final int minLag;
+    private final int maxLag;
+    private final int window;
+    private final int fullGainSamples;
+    private final int maxConcealSamples;
+    private final int fadeInSamples;
+
+    // تاريخ الإشارة الملعوبة كحلقة - ring of the most recent output samples
+    private final short[] history;
+    private int historyEnd; // موقع الكتابة التالي
+    private int historyFill;
+    private final float[] work; // نسخة خطية من نهاية التاريخ لحساب الترابط
+    private final float[] period; // الدورة المكررة بعد تنعيم نهايتها - the looped period, seam smoothed
+
+    private boolean concealing;
+    private int pitchLag;
+    private int overlap; // ربع الدورة - quarter period, for both seams
+    private float startOffset; // فرق البداية عن آخر عينة ملعوبة
+    private int concealPos; // عدد العينات المولدة منذ بداية الفقدان
+    private long framesConcealed;
+    private long concealEvents;
+
+    public PacketLossConcealer(int sampleRate) {
+        minLag = sampleRate / MAX_PITCH_HZ;
+        maxLag = sampleRate / MIN_PITCH_HZ;
+        window = sampleRate * CORRELATION_WINDOW_MS / 1000;
+        fullGainSamples = sampleRate * FULL_GAIN_MS / 1000;
+        maxConcealSamples = sampleRate * MAX_CONCEAL_MS / 1000;
+        fadeInSamples = sampleRate * FADE_IN_MS / 1000;
+        history = new short[maxLag + window];
+        work = new float[history.length];
+        period = new float[maxLag];
+    }
+
+    /**
+     * إطار سليم - Record a good decoded frame. If it follows concealment, its
+     * start is cross-faded in place with the continued repetition.
+     */
+    public void onGoodFrame(short[] pcm, int offset, int samples) {
+        if (concealing && pitchLag > 0) {
+            int fade = Math.min(fadeInSamples, samples);
+            for (int i = 0; i < fade; i++) {
+                float w = (i + 1) / (float) (fade + 1);
+                float continued = nextConcealedSample();
+                pcm[offset + i] = clip(w * pcm[offset + i] + (1f - w) * continued);
+            }
+        }
+        concealing = false;
+        append(pcm, offset, samples);
+    }
+
+    /**
+     * إخفاء إطار مفقود - Synthesize {@code samples} samples for a lost frame.
+     *
+     * @return false once concealment has faded out (or there is no history
+     *         to repeat); {@code out} then holds silence
+     */
+    public boolean conceal(short[] out, int offset, int samples) {
+        if (!concealing) {
+            if (historyFill < history.length) {
+                fill(out, offset, samples);
+                return false;
+            }
+            pitchLag = findPitchLag();
+            if (pitchLag > 0) {
+                buildPeriod();
+            }
+            concealPos = 0;
+            concealing = true;
+            concealEvents++;
+        }
+        framesConcealed++;
+        if (pitchLag == 0 || concealPos >= maxConcealSamples) {
+            fill(out, offset, samples);
+            concealPos += samples;
+            return false;
+        }
+        for (int i = 0; i < samples; i++) {
+            out[offset + i] = clip(nextConcealedSample());
+        }
+        return true;
+    }
+
+    public void reset() {
+        historyEnd = 0;
+        historyFill = 0;
+        concealing = false;
+    }
+
+    public long getFramesConcealed() {
+        return framesConcealed;
+    }
+
+    /** Number of loss bursts concealed. */
+    public long getConcealEvents() {
+        return concealEvents;
+    }
+
+    private float nextConcealedSample() {
+        float gain;
+        if (concealPos < fullGainSamples) {
+            gain = 1f;
+        } else if (concealPos < maxConcealSamples) {
+            gain = 1f - (concealPos - fullGainSamples) / (float) (maxConcealSamples - fullGainSamples);
+        } else {
+            gain = 0f;
+        }
+        float sample = period[concealPos % pitchLag];
+        if (concealPos < overlap) {
+            sample += startOffset * (1f - (concealPos + 1) / (float) (overlap + 1));
+        }
+        sample *= gain;
+        concealPos++;
+        return sample;
+    }
+
+    /**
+     * تجهيز الدورة المكررة - Copy the last pitch period out of {@link #work}
+     * and cross-fade its last quarter into the period before it, whose end
+     * runs straight into the copy's first sample. The history always holds
+     * two of the longest periods (maxLag is below the correlation window).
+     */
+    private void buildPeriod() {
+        int newest = work.length; // work[newest - k] هي العينة x[end - k]
+        overlap = pitchLag / 4;
+        // x[end] متوقعة كـ x[end - lag] مزاحة بما ابتعدت به الدورة - the copy, shifted onto the last sample
+        startOffset = work[newest - 1] - work[newest - 1 - pitchLag];
+        for (int j = 0; j < pitchLag; j++) {
+            float current = work[newest - pitchLag + j];
+            int intoOverlap = j - (pitchLag - overlap);
+            if (intoOverlap >= 0) {
+                float w = (intoOverlap + 1) / (float) (overlap + 1);
+                current = (1f - w) * current + w * work[newest - 2 * pitchLag + j];
+            }
+            period[j] = current;
+        }
+    }
+
+    /**
+     * تقدير دورة النغمة - Lag in [minLag, maxLag] with the highest normalised
+     * autocorrelation over the last {@code window} samples. A tail that is
+     * not periodic (unvoiced sounds) repeats the longest lag instead, which
+     * sounds like noise rather than a buzz; silence returns 0.
+     */
+    private int findPitchLag() {
+        int length = history.length;
+        for (int i = 0; i < length; i++) {
+            work[i] = history[(historyEnd + i) % length]; // الأقدم أولاً
+        }
+        int start = length - window;
+        float energyTail = 0f;
+        for (int i = start; i < length; i++) {
+            energyTail += work[i] * work[i];
+        }
+        if (energyTail <= 0f) {
+            return 0;
+        }
+
+        int bestLag = maxLag;
+        float bestScore = MIN_CORRELATION;
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            float cross = 0f;
+            float energyLag = 0f;
+            for (int i = start; i < length; i++) {
+                float past = work[i - lag];
+                cross += work[i] * past;
+                energyLag += past * past;
+            }
+            if (cross <= 0f || energyLag <= 0f) {
+                continue;
+            }
+            float score = cross / (float) Math.sqrt(energyTail * energyLag);
+            if (score > bestScore) {
+                bestScore = score;
+                bestLag = lag;
+            }
+        }
+        return bestLag;
+    }
+
+    private void append(short[] pcm, int offset, int samples) {
+        int length = history.length;
+        for (int i = 0; i < samples; i++) {
+            history[historyEnd] = pcm[offset + i];
+            historyEnd = historyEnd + 1 == length ? 0 : historyEnd + 1;
+        }
+        historyFill = Math.min(length, historyFill + samples);
+    }
+
+    private static void fill(short[] out, int offset, int samples) {
+        for (int i = 0; i < samples; i++) {
+            out[offset + i] = 0;
+        }
+    }
+
+    private static short clip(float value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
@@ -0,0 +1,59 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ترميز PCM خام 16 بت - بدون ضغط، للتوافق ولأعلى جودة
+ * Uncompressed little-endian PCM16, the format the media path used before
+ * codecs were introduced.
+ */
+public class Pcm16Codec implements AudioCodec {
+
+    public static final String NAME = "L16";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getPayloadType() {
+        return MediaPacket.PAYLOAD_PCM16;
+    }
+
+    @Override
+    public int getMaxEncodedSize(int samples) {
+        return samples * 2;
+    }
+
+    @Override
+    public int getDecodedSamples(int encodedLength) {
+        return encodedLength / 2;
+    }
+
+    @Override
+    public int encode(short[] pcm, int offset, int samples, ByteBuffer out, int outOffset) {
+        for (int i = 0; i < samples; i++) {
+            short sample = pcm[offset + i];
+            out.put(outOffset + 2 * i, (byte) sample);
+            out.put(outOffset + 2 * i + 1, (byte) (sample >> 8));
+        }
+        return samples * 2;
+    }
+
+    @Override
+    public int decode(ByteBuffer in, int inOffset, int length, short[] pcm, int pcmOffset) {
+        int samples = length / 2;
+        for (int i = 0; i < samples; i++) {
+            int lo = in.get(inOffset + 2 * i) & 0xFF;
+            int hi = in.get(inOffset + 2 * i + 1);
+            pcm[pcmOffset + i] = (short) ((hi << 8) | lo);
+        }
+        return samples;
+    }
+
+    @Override
+    public void reset() {
+        // لا توجد حالة - stateless
+    }
+}
@@ -0,0 +1,120 @@
+package com.lancall;
+
+import java.util.Arrays;
+
+/**
+ * محدد القمم بالنظر المسبق - يخفض الكسب قبل وصول القمة حتى لا يقص الصوت
+ * Look-ahead peak limiter. Audio is delayed by {@code lookaheadMs}; the gain
+ * needed to keep every sample under the ceiling is held at its minimum over
+ * the look-ahead window and then averaged over the same window, so the gain
+ * has already ramped down smoothly when a peak leaves the delay line and
+ * never lets it through. After the peak the gain recovers with an
+ * exponential release.
+ *
+ * Works on float samples in 16-bit scale so it can follow a gain stage that
+ * overshoots the short range. Nothing is allocated per sample.
+ */
+public class PeakLimiter {
+
+    public static final int DEFAULT_LOOKAHEAD_MS = 3;
+    public static final int DEFAULT_RELEASE_MS = 80;
+    public static final float DEFAULT_CEILING = 29204f; // -1 dBFS
+
+    private final float ceiling;
+    private final int lookahead;
+    private final float release;
+
+    private final float[] delay; // العينات المؤخرة - delayed input
+    private final float[] hold; // الكسب بعد التثبيت والتحرير، لمتوسط النافذة
+    private double holdSum;
+    private int position;
+    private long index;
+
+    // أدنى كسب مطلوب في النافذة - monotonic deque for the sliding minimum
+    private final long[] minIndex;
+    private final float[] minValue;
+    private int minHead;
+    private int minTail;
+
+    private float released = 1f;
+    private float lastGain = 1f;
+    private long samplesLimited;
+
+    public PeakLimiter(int sampleRate) {
+        this(sampleRate, DEFAULT_LOOKAHEAD_MS, DEFAULT_RELEASE_MS, DEFAULT_CEILING);
+    }
+
+    public PeakLimiter(int sampleRate, int lookaheadMs, int releaseMs, float ceiling) {
+        this.ceiling = ceiling;
+        this.lookahead = Math.max(1, sampleRate * lookaheadMs / 1000);
+        this.release = 1f - (float) Math.exp(-1.0 / (sampleRate * releaseMs / 1000.0));
+        delay = new float[lookahead];
+        hold = new float[lookahead];
+        holdSum = lookahead;
+        Arrays.fill(hold, 1f);
+        minIndex = new long[lookahead + 2];
+        minValue = new float[lookahead + 2];
+    }
+
+    /**
+     * تمرير عينة - Push one sample and return the limited sample that
+     * entered {@link #getLatencySamples()} samples earlier.
+     */
+    public float process(float sample) {
+        float magnitude = Math.abs(sample);
+        float required = magnitude > ceiling ? ceiling / magnitude : 1f;
+
+        // الحد الأدنى المنزلق على lookahead + 1 عينة
+        int capacity = minIndex.length;
+        while (minTail != minHead && minValue[(minTail - 1 + capacity) % capacity] >= required) {
+            minTail = (minTail - 1 + capacity) % capacity;
+        }
+        minIndex[minTail] = index;
+        minValue[minTail] = required;
+        minTail = (minTail + 1) % capacity;
+        while (minIndex[minHead] < index - lookahead) {
+            minHead = (minHead + 1) % capacity;
+        }
+        float held = minValue[minHead];
+
+        // تحرير أسي لا يتجاوز الحد الأدنى - release, never above the held minimum
+        released = Math.min(held, released + (1f - released) * release);
+
+        holdSum += released - hold[position];
+        hold[position] = released;
+        float gain = (float) (holdSum / lookahead);
+
+        float out = delay[position] * gain;
+        delay[position] = sample;
+        position = position + 1 == lookahead ? 0 : position + 1;
+        index++;
+        if (gain < 0.999f) {
+            samplesLimited++;
+        }
+        lastGain = gain;
+        return out;
+    }
+
+    public void reset() {
+        Arrays.fill(delay, 0f);
+        Arrays.fill(hold, 1f);
+        holdSum = lookahead;
+        position = 0;
+        index = 0;
+        minHead = minTail = 0;
+        released = 1f;
+        lastGain = 1f;
+    }
+
+    public int getLatencySamples() {
+        return lookahead;
+    }
+
+    public float getLastGain() {
+        return lastGain;
+    }
+
+    public long getSamplesLimited() {
+        return samplesLimited;
+    }
+}
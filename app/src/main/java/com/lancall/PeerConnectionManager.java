@@ -0,0 +1,476 @@
+package com.lancall;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * مدير اتصالات الأجهزة - اتصال TCP واحد دائم لكل جهاز تمر عليه كل رسائل الإشارات
+ * Keeps one long-lived signaling connection per peer and carries every
+ * message type over it, in both directions, framed by
+ * {@link SignalingFramer}.
+ *
+ * Whichever side speaks first opens the connection: {@link #send} connects
+ * on demand, and the signaling server hands what it accepts to
+ * {@link #adopt}. Each connection has a reader thread that delivers
+ * messages to the {@link Listener}, except replies a {@link #request} is
+ * waiting for. A failed connect or write is retried with exponential
+ * backoff, and a peer that failed recently is not dialled again before its
+ * backoff ends. Idle connections exchange {@code KEEP_ALIVE} so a peer
+ * that vanished from the network is noticed and dropped.
+ *
+ * A new connection to a peer that already has one supersedes it, except
+ * when both sides dial each other at once: then both keep the connection
+ * dialled from the lower address, so they agree on it. The superseded
+ * connection is shut for writing on both ends; it reads what was already
+ * in flight on it until the peer's end shuts too, then closes.
+ *
+ * Thread-safe; one instance is owned by {@link CallService} and shared
+ * with the activities through it.
+ */
+public class PeerConnectionManager {
+
+    private static final String TAG = "PeerConnectionManager";
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int CROSSED_DIAL_MS = CONNECT_TIMEOUT_MS; // اتصالان أحدث من ذلك تقاطعا
+    private static final int KEEP_ALIVE_INTERVAL_MS = 15000;
+    private static final int IDLE_TIMEOUT_MS = 3 * KEEP_ALIVE_INTERVAL_MS; // لا شيء من الطرف الآخر
+    private static final int SEND_ATTEMPTS = 3;
+    private static final int INITIAL_BACKOFF_MS = 250;
+    private static final int MAX_BACKOFF_MS = 8000;
+
+    /**
+     * مستمع الرسائل - Receives messages on the connection's reader thread,
+     * and the loss of a peer's connection on whichever thread noticed it.
+     */
+    public interface Listener {
+        void onMessage(String peerIp, SignalingProtocol.Message message);
+
+        void onDisconnected(String peerIp);
+    }
+
+    private final Listener listener;
+    private final ExecutorService readers = Executors.newCachedThreadPool();
+    private final Map<String, PeerConnection> connections = new HashMap<>();
+    private final Map<String, Backoff> backoffs = new HashMap<>();
+    private final Map<String, PendingRequest> requests = new HashMap<>();
+    private volatile boolean closed;
+
+    public PeerConnectionManager(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** اتصال واحد - One framed connection to a peer. */
+    private final class PeerConnection {
+        final String peerIp;
+        final String localIp; // العنوان الذي يرانا به الطرف الآخر - our address on this connection
+        final Socket socket;
+        final SignalingFramer framer;
+        final boolean outgoing;
+        final long openedMs = System.currentTimeMillis();
+        volatile long lastReceivedMs = openedMs;
+        volatile boolean retired;
+
+        PeerConnection(Socket socket, boolean outgoing) throws IOException {
+            this.peerIp = socket.getInetAddress().getHostAddress();
+            this.localIp = socket.getLocalAddress().getHostAddress();
+            this.socket = socket;
+            this.outgoing = outgoing;
+            this.framer = new SignalingFramer(socket.getInputStream(), socket.getOutputStream());
+            socket.setSoTimeout(KEEP_ALIVE_INTERVAL_MS);
+            socket.setTcpNoDelay(true); // الرسائل صغيرة وتنتظر ردها - small messages waiting on a reply
+        }
+
+        void readLoop() {
+            try {
+                while (!closed) {
+                    SignalingProtocol.Message message;
+                    try {
+                        message = framer.read();
+                    } catch (SocketTimeoutException e) {
+                        // الإطار الجزئي محفوظ في framer - a partly read frame resumes on the next read
+                        if (retired || System.currentTimeMillis() - lastReceivedMs >= IDLE_TIMEOUT_MS) {
+                            Log.d(TAG, "Peer silent, dropping connection: " + peerIp);
+                            break;
+                        }
+                        framer.write(SignalingProtocol.createKeepAlive(localIp));
+                        continue;
+                    }
+                    if (message == null) {
+                        break; // أغلقه الطرف الآخر
+                    }
+                    lastReceivedMs = System.currentTimeMillis();
+                    if (!SignalingProtocol.MESSAGE_TYPE_KEEP_ALIVE.equals(message.type)
+                            && !completeRequest(peerIp, message)) {
+                        listener.onMessage(peerIp, message);
+                    }
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Connection to " + peerIp + " lost: " + e.getMessage());
+            } finally {
+                drop(this);
+            }
+        }
+
+        /** هل طلبه الطرف ذو العنوان الأدنى - Whether the lower of the two addresses dialled it. */
+        boolean dialledFromLowerAddress() {
+            byte[] local = socket.getLocalAddress().getAddress();
+            byte[] remote = socket.getInetAddress().getAddress();
+            int order = compare(local, remote);
+            return outgoing ? order < 0 : order > 0;
+        }
+
+        /**
+         * إيقاف الكتابة - Superseded: shut our sending side so the peer reads
+         * to the end of what we sent and then sees the end of the stream.
+         * Reading goes on until the peer shuts its side too.
+         */
+        void retire() {
+            retired = true;
+            try {
+                socket.shutdownOutput();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // مغلق بالفعل
+            }
+        }
+    }
+
+    /** تأخير إعادة الاتصال - Reconnect backoff for one peer. */
+    private static final class Backoff {
+        int delayMs = INITIAL_BACKOFF_MS;
+        long retryAtMs;
+    }
+
+    /** طلب ينتظر رده - A request waiting for one of its reply types. */
+    private static final class PendingRequest {
+        final String[] replyTypes;
+        PeerConnection connection; // الاتصال الذي أرسل عليه - a reply cannot come once it is gone
+        SignalingProtocol.Message reply;
+        boolean done;
+
+        PendingRequest(String[] replyTypes) {
+            this.replyTypes = replyTypes;
+        }
+
+        boolean accepts(String type) {
+            for (String replyType : replyTypes) {
+                if (replyType.equals(type)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * اعتماد اتصال وارد - Take over a connection the signaling server
+     * accepted; it becomes the peer's connection for sending too.
+     */
+    public void adopt(Socket socket) {
+        try {
+            PeerConnection connection = new PeerConnection(socket, false);
+            register(connection);
+            Log.d(TAG, "Adopted connection from: " + connection.peerIp);
+        } catch (IOException e) {
+            Log.e(TAG, "Error adopting signaling connection", e);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // لا شيء آخر نفعله
+            }
+        }
+    }
+
+    /**
+     * تسجيل اتصال - Make {@code connection} the peer's connection, or keep
+     * the one it has when the two dials crossed, and retire the other.
+     *
+     * @return the peer's connection now, or null if the manager is closed
+     */
+    private PeerConnection register(PeerConnection connection) {
+        PeerConnection current;
+        PeerConnection superseded;
+        synchronized (this) {
+            if (closed) {
+                connection.close();
+                return null;
+            }
+            PeerConnection existing = connections.get(connection.peerIp);
+            boolean crossed = existing != null && existing.outgoing != connection.outgoing
+                    && connection.openedMs - existing.openedMs < CROSSED_DIAL_MS;
+            if (crossed && existing.dialledFromLowerAddress()) {
+                // طلب كل منا الآخر في الوقت نفسه: الطرفان يبقيان الاتصال نفسه - both ends keep the same one
+                current = existing;
+                superseded = connection;
+            } else {
+                connections.put(connection.peerIp, connection);
+                current = connection;
+                superseded = existing;
+            }
+            backoffs.remove(connection.peerIp);
+        }
+        readers.execute(connection::readLoop);
+        if (superseded != null) {
+            superseded.retire();
+        }
+        return current;
+    }
+
+    /** ترتيب عنوانين - Unsigned order of two addresses, IPv4 before IPv6. */
+    private static int compare(byte[] a, byte[] b) {
+        if (a.length != b.length) {
+            return a.length - b.length;
+        }
+        for (int i = 0; i < a.length; i++) {
+            int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /** إسقاط اتصال - Close a connection and, if it was the peer's current one, report the loss. */
+    private void drop(PeerConnection connection) {
+        connection.close();
+        PendingRequest pending = null;
+        synchronized (this) {
+            if (connections.get(connection.peerIp) != connection) {
+                return; // سبق إسقاطه، أو حل محله اتصال أحدث
+            }
+            connections.remove(connection.peerIp);
+            // لم يبق اتصال يصل عليه الرد - no connection is left for the reply to come on
+            PendingRequest request = requests.get(connection.peerIp);
+            if (request != null && request.connection != null) {
+                pending = requests.remove(connection.peerIp);
+            }
+        }
+        if (pending != null) {
+            finish(pending, null);
+        }
+        if (!closed) {
+            listener.onDisconnected(connection.peerIp);
+        }
+    }
+
+    /**
+     * الاتصال بالجهاز أو إعادة الحالي - The peer's connection, opened if
+     * there is none, waiting out the backoff of an earlier failure.
+     */
+    private PeerConnection connect(String peerIp, int port) throws IOException {
+        long waitMs;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Peer connections closed");
+            }
+            PeerConnection existing = connections.get(peerIp);
+            if (existing != null) {
+                return existing;
+            }
+            Backoff backoff = backoffs.get(peerIp);
+            waitMs = backoff != null ? backoff.retryAtMs - System.currentTimeMillis() : 0;
+        }
+        if (waitMs > 0) {
+            sleep(waitMs);
+        }
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(peerIp, port), CONNECT_TIMEOUT_MS);
+            PeerConnection current = register(new PeerConnection(socket, true));
+            if (current == null) {
+                throw new IOException("Peer connections closed");
+            }
+            Log.d(TAG, "Connected to " + peerIp + ":" + port);
+            return current;
+        } catch (IOException e) {
+            socket.close();
+            onFailure(peerIp);
+            throw e;
+        }
+    }
+
+    private synchronized void onFailure(String peerIp) {
+        Backoff backoff = backoffs.get(peerIp);
+        if (backoff == null) {
+            backoff = new Backoff();
+            backoffs.put(peerIp, backoff);
+        } else {
+            backoff.delayMs = Math.min(MAX_BACKOFF_MS, backoff.delayMs * 2);
+        }
+        backoff.retryAtMs = System.currentTimeMillis() + backoff.delayMs;
+    }
+
+    private static void sleep(long ms) throws IOException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to reconnect");
+        }
+    }
+
+    /**
+     * إرسال رسالة - Send a message to the peer on its connection, opening
+     * or reopening it as needed. Blocks; call it off the main thread.
+     *
+     * @throws IOException after {@link #SEND_ATTEMPTS} failed attempts
+     */
+    public void send(String peerIp, int port, SignalingProtocol.Message message) throws IOException {
+        deliver(peerIp, port, message);
+    }
+
+    private PeerConnection deliver(String peerIp, int port, SignalingProtocol.Message message) throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < SEND_ATTEMPTS; attempt++) {
+            PeerConnection connection = null;
+            try {
+                connection = connect(peerIp, port);
+                connection.framer.write(message);
+                return connection;
+            } catch (IOException e) {
+                failure = e;
+                Log.w(TAG, "Send " + message.type + " to " + peerIp + " failed (attempt " + (attempt + 1) + "): "
+                        + e.getMessage());
+                if (connection != null) {
+                    // الاتصال مات أثناء الكتابة - reconnect after the backoff
+                    drop(connection);
+                    onFailure(peerIp);
+                }
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * طلب ورد - Send a message and wait for the peer's reply of one of
+     * {@code replyTypes}, which bypasses the listener. One request per peer
+     * at a time.
+     *
+     * @return the reply, or null if the connection closed or
+     *         {@link #cancelRequest} was called first
+     * @throws SocketTimeoutException if no reply came within {@code timeoutMs}
+     */
+    public SignalingProtocol.Message request(String peerIp, int port, SignalingProtocol.Message message,
+            int timeoutMs, String... replyTypes) throws IOException {
+        PendingRequest pending = new PendingRequest(replyTypes);
+        synchronized (this) {
+            requests.put(peerIp, pending); // قبل الإرسال - the reply may beat send() back
+        }
+        try {
+            PeerConnection connection = deliver(peerIp, port, message);
+            synchronized (this) {
+                pending.connection = connection;
+                if (!connections.containsKey(peerIp) && requests.get(peerIp) == pending) {
+                    requests.remove(peerIp); // سقط الاتصال بعد الكتابة مباشرة
+                    finish(pending, null);
+                }
+            }
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            synchronized (pending) {
+                while (!pending.done) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new SocketTimeoutException("No reply to " + message.type + " from " + peerIp);
+                    }
+                    try {
+                        pending.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for " + peerIp);
+                    }
+                }
+                return pending.reply;
+            }
+        } finally {
+            synchronized (this) {
+                if (requests.get(peerIp) == pending) {
+                    requests.remove(peerIp);
+                }
+            }
+        }
+    }
+
+    private boolean completeRequest(String peerIp, SignalingProtocol.Message reply) {
+        PendingRequest pending;
+        synchronized (this) {
+            pending = requests.get(peerIp);
+            if (pending == null || !pending.accepts(reply.type)) {
+                return false;
+            }
+            requests.remove(peerIp);
+        }
+        finish(pending, reply);
+        return true;
+    }
+
+    private static void finish(PendingRequest pending, SignalingProtocol.Message reply) {
+        synchronized (pending) {
+            pending.reply = reply;
+            pending.done = true;
+            pending.notifyAll();
+        }
+    }
+
+    /** إلغاء انتظار الرد - Wake a {@link #request} waiting on the peer with no reply. */
+    public void cancelRequest(String peerIp) {
+        PendingRequest pending;
+        synchronized (this) {
+            pending = requests.remove(peerIp);
+        }
+        if (pending != null) {
+            finish(pending, null);
+        }
+    }
+
+    public synchronized boolean isConnected(String peerIp) {
+        return connections.containsKey(peerIp);
+    }
+
+    /** قطع الاتصال بجهاز - Close the peer's connection; the next send opens a new one. */
+    public void disconnect(String peerIp) {
+        PeerConnection connection;
+        synchronized (this) {
+            connection = connections.get(peerIp);
+        }
+        if (connection != null) {
+            drop(connection);
+        }
+    }
+
+    /** إغلاق كل الاتصالات - Close every connection; the manager cannot be used after. */
+    public void close() {
+        PeerConnection[] open;
+        PendingRequest[] waiting;
+        synchronized (this) {
+            closed = true;
+            open = connections.values().toArray(new PeerConnection[0]);
+            waiting = requests.values().toArray(new PendingRequest[0]);
+            connections.clear();
+            requests.clear();
+        }
+        for (PeerConnection connection : open) {
+            connection.close();
+        }
+        for (PendingRequest pending : waiting) {
+            finish(pending, null);
+        }
+        readers.shutdown();
+    }
+}
@@ -0,0 +1,187 @@
+package com.lancall;
+
+/**
+ * محول معدل العينات متعدد الأطوار - يحول بين معدل الجهاز الأصلي ومعدل الشبكة
+ * Polyphase rational resampler between the device's native rate and the
+ * wire rate, e.g. 48000 ↔ 16000 (1:3) or 44100 ↔ 16000 (441:160).
+ *
+ * The rate ratio is reduced to L/M. A Kaiser-windowed sinc low-pass at
+ * L × the input rate is split into L phases of {@code taps} coefficients,
+ * and each output sample is one dot product of a phase with the last
+ * {@code taps} input samples - the zero-stuffed samples of classic
+ * upsample/filter/decimate are never computed. The cutoff sits just below
+ * the lower Nyquist frequency with its stopband (80 dB) starting exactly
+ * there, so nothing aliases into the band.
+ *
+ * Streaming: input may come in chunks of any size up to the one given at
+ * construction, and the output count per chunk follows the phase, so a
+ * 20 ms chunk at 44.1 kHz always yields 20 ms at 16 kHz. One instance per
+ * direction and thread; nothing is allocated per call.
+ */
+public class PolyphaseResampler {
+
+    private static final double STOPBAND_DB = 80.0;
+    private static final double TRANSITION = 0.15; // عرض منطقة الانتقال كنسبة من أدنى Nyquist
+    private static final int MIN_TAPS = 8;
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int up; // L
+    private final int down; // M
+    private final int taps; // معاملات كل طور
+    private final float[] coefficients; // الطور p في [p * taps, (p + 1) * taps) بترتيب معكوس
+    private final float[] history; // taps - 1 عينة سابقة ثم الدفعة الحالية
+    private final int maxInputSamples;
+
+    private int filled;
+    private int next; // موقع أحدث عينة يحتاجها الخرج التالي
+    private int phase;
+
+    /**
+     * @param maxInputSamples largest chunk passed to {@link #process}
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int maxInputSamples) {
+        if (inputRate <= 0 || outputRate <= 0 || maxInputSamples <= 0) {
+            throw new IllegalArgumentException("Invalid resampler configuration");
+        }
+        int gcd = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        this.maxInputSamples = maxInputSamples;
+
+        // طول المرشح من معادلة Kaiser مقاساً بعينات الدخل - Kaiser length, in input samples
+        double nyquist = Math.min(inputRate, outputRate) / 2.0;
+        double transition = TRANSITION * nyquist / inputRate; // cycles per input sample
+        int length = (int) Math.ceil((STOPBAND_DB - 7.95) / (2.285 * 2.0 * Math.PI * transition));
+        taps = up == down ? 1 : Math.max(MIN_TAPS, length + (length & 1));
+
+        coefficients = new float[up * taps];
+        if (up == down) {
+            coefficients[0] = 1f; // نفس المعدل - straight copy
+        } else {
+            design(nyquist * (1.0 - TRANSITION / 2.0));
+        }
+        history = new float[taps - 1 + maxInputSamples];
+        reset();
+    }
+
+    /** تصميم المرشح الأولي وتقسيمه على الأطوار - design the prototype and split it into phases. */
+    private void design(double cutoffHz) {
+        int length = up * taps;
+        double centre = (length - 1) / 2.0;
+        double cutoff = cutoffHz / ((double) inputRate * up); // cycles per upsampled sample
+        double beta = 0.1102 * (STOPBAND_DB - 8.7);
+        double norm = besselI0(beta);
+        for (int i = 0; i < length; i++) {
+            double t = i - centre;
+            double sinc = t == 0 ? 2.0 * cutoff : Math.sin(2.0 * Math.PI * cutoff * t) / (Math.PI * t);
+            double x = 2.0 * i / (length - 1) - 1.0;
+            double window = besselI0(beta * Math.sqrt(Math.max(0.0, 1.0 - x * x))) / norm;
+            // الطور p يأخذ المعاملات p, p + L, p + 2L... ويضرب في L لتعويض الحشو بالأصفار
+            int p = i % up;
+            int k = i / up;
+            coefficients[p * taps + (taps - 1 - k)] = (float) (sinc * window * up);
+        }
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    public int getTaps() {
+        return taps;
+    }
+
+    /** أقصى خرج لدفعة - Upper bound on the samples {@link #process} returns for {@code inputSamples}. */
+    public int getMaxOutputSamples(int inputSamples) {
+        return (int) (((long) inputSamples * up + down - 1) / down) + 1;
+    }
+
+    /** تأخير المرشح بعينات الخرج - Group delay of the filter, in output samples. */
+    public double getDelaySamples() {
+        return up == down ? 0.0 : (up * taps - 1) / 2.0 / down;
+    }
+
+    /**
+     * تحويل دفعة - Resample a chunk.
+     *
+     * @param out room for {@link #getMaxOutputSamples(int)} samples
+     * @return samples written to {@code out}
+     */
+    public int process(short[] in, int inOffset, int inSamples, short[] out, int outOffset) {
+        if (inSamples > maxInputSamples) {
+            throw new IllegalArgumentException("Chunk larger than " + maxInputSamples + ": " + inSamples);
+        }
+        float[] x = history;
+        for (int i = 0; i < inSamples; i++) {
+            x[filled + i] = in[inOffset + i];
+        }
+        filled += inSamples;
+
+        float[] h = coefficients;
+        int produced = 0;
+        while (next < filled) {
+            // جداء نقطي للطور مع آخر taps عينة - one phase against the last taps inputs
+            int base = phase * taps;
+            int start = next - (taps - 1);
+            float sum = 0f;
+            for (int k = 0; k < taps; k++) {
+                sum += h[base + k] * x[start + k];
+            }
+            out[outOffset + produced++] = clip(sum);
+
+            phase += down;
+            next += phase / up;
+            phase %= up;
+        }
+
+        // إبقاء ما يحتاجه الخرج التالي فقط - keep only the history the next output needs
+        int consumed = next - (taps - 1);
+        int keep = filled - consumed;
+        System.arraycopy(x, consumed, x, 0, keep);
+        filled = keep;
+        next -= consumed;
+        return produced;
+    }
+
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0f;
+        }
+        filled = taps - 1;
+        next = taps - 1;
+        phase = 0;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2.0 * k)) * (x / (2.0 * k));
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static short clip(float value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
@@ -378,61 +378,30 @@ public class QrActivity extends AppCompatActivity implements CallService.CallSer
                 // Create connection request message
                 String localIP = getLocalIPv4();
                 SignalingProtocol.Message request = SignalingProtocol.createConnectionRequest(localIP);
-                String jsonMessage = SignalingProtocol.messageToJson(request);
-                
-                if (jsonMessage != null) {
-                    // Send connection request via TCP socket
-                    java.net.Socket signalingSocket = new java.net.Socket(targetIp, targetPort);
-                    Log.d("QrActivity", "Connected to target signaling server");
-                    
-                    // Set timeout for the socket
-                    signalingSocket.setSoTimeout(10000); // 10 seconds timeout
-                    
-                    signalingSocket.getOutputStream().write(jsonMessage.getBytes("UTF-8"));
-                    signalingSocket.getOutputStream().flush();
-                    Log.d("QrActivity", "Sent connection request to " + targetIp);
-                    
-                    // Wait for acknowledgment
-                    java.io.InputStream inputStream = signalingSocket.getInputStream();
-                    java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-                    byte[] data = new byte[1024];
-                    int nRead;
-                    
-                    // Read all available data
-                    while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-                        buffer.write(data, 0, nRead);
-                        // Check if we have a complete JSON message
-                        String currentData = buffer.toString("UTF-8");
-                        if (currentData.trim().endsWith("}")) {
-                            break; // We have a complete JSON message
-                        }
-                    }
-                    
-                    buffer.flush();
-                    String jsonResponse = buffer.toString("UTF-8");
-                    Log.d("QrActivity", "Received response: " + jsonResponse);
-                    
-                    // Parse the response
-                    SignalingProtocol.Message response = SignalingProtocol.jsonToMessage(jsonResponse);
-                    
-                    if (response != null && SignalingProtocol.MESSAGE_TYPE_CONNECTION_ACK.equals(response.type)) {
-                        // Connection acknowledged, update UI but don't navigate away
-                        runOnUiThread(() -> {
-                            Toast.makeText(this, "تم التوصيل بين الأجهزة", Toast.LENGTH_LONG).show();
-                            remoteIpAddress = targetIp;
-                            isConnected = true;
-                            updateConnectionStatus();
-                        });
-                    } else {
-                        runOnUiThread(() -> {
-                            Toast.makeText(this, "فشل في الاتصال: لم يتم تأكيد الاتصال", Toast.LENGTH_LONG).show();
-                        });
-                    }
-                    
-                    signalingSocket.close();
+
+                // على اتصال الخدمة الدائم بالجهاز - over the service's connection to the peer
+                CallService service = callService;
+                if (service == null) {
+                    runOnUiThread(() -> {
+                        Toast.makeText(this, "فشل في الاتصال: الخدمة غير جاهزة", Toast.LENGTH_LONG).show();
+                    });
+                    return;
+                }
+                SignalingProtocol.Message response = service.getPeerConnections().request(targetIp, targetPort,
+                        request, 10000, SignalingProtocol.MESSAGE_TYPE_CONNECTION_ACK); // 10 seconds timeout
+                Log.d("QrActivity", "Received response: " + (response != null ? response.type : "connection closed"));
+
+                if (response != null && SignalingProtocol.MESSAGE_TYPE_CONNECTION_ACK.equals(response.type)) {
+                    // Connection acknowledged, update UI but don't navigate away
+                    runOnUiThread(() -> {
+                        Toast.makeText(this, "تم التوصيل بين الأجهزة", Toast.LENGTH_LONG).show();
+                        remoteIpAddress = targetIp;
+                        isConnected = true;
+                        updateConnectionStatus();
+                    });
                 } else {
                     runOnUiThread(() -> {
-                        Toast.makeText(this, "فشل في إعداد الاتصال", Toast.LENGTH_LONG).show();
+                        Toast.makeText(this, "فشل في الاتصال: لم يتم تأكيد الاتصال", Toast.LENGTH_LONG).show();
                     });
                 }
             } catch (Exception e) {
@@ -0,0 +1,172 @@
+package com.lancall;
+
+/**
+ * تحويل فورييه سريع لإشارة حقيقية - بدون تخصيص ذاكرة أثناء التشغيل
+ * In-place FFT of a real signal on a float array, allocation-free after
+ * construction.
+ *
+ * A real signal of size N is transformed as an N/2-point complex FFT of its
+ * even/odd samples, followed by a split step. The half spectrum is stored
+ * packed in the same array:
+ *
+ * <pre>
+ * data[0] = Re X[0]   data[1] = Re X[N/2]   (both bins are purely real)
+ * data[2k] = Re X[k]  data[2k + 1] = Im X[k]   for 0 &lt; k &lt; N/2
+ * </pre>
+ *
+ * {@link #forward} is unscaled and {@link #inverse} carries the whole
+ * scaling, so inverse(forward(x)) == x. The tables are read-only, so one
+ * instance may be shared; the data array may not.
+ */
+public class RealFft {
+
+    private final int size;
+    private final int half; // حجم التحويل المركب - size of the complex FFT
+    private final int[] bitReverse;
+    private final float[] cosHalf; // cos(2πk / half)
+    private final float[] sinHalf;
+    private final float[] cosFull; // cos(2πk / size) for the split step
+    private final float[] sinFull;
+
+    /**
+     * @param size power of two, at least 4
+     */
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+
+        bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        cosHalf = new float[Math.max(1, half / 2)];
+        sinHalf = new float[cosHalf.length];
+        for (int k = 0; k < cosHalf.length; k++) {
+            double angle = 2.0 * Math.PI * k / half;
+            cosHalf[k] = (float) Math.cos(angle);
+            sinHalf[k] = (float) Math.sin(angle);
+        }
+        cosFull = new float[half / 2 + 1];
+        sinFull = new float[cosFull.length];
+        for (int k = 0; k < cosFull.length; k++) {
+            double angle = 2.0 * Math.PI * k / size;
+            cosFull[k] = (float) Math.cos(angle);
+            sinFull[k] = (float) Math.sin(angle);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * التحويل الأمامي - Replace {@code size} real samples with their packed
+     * half spectrum.
+     */
+    public void forward(float[] data) {
+        complexFft(data, false);
+
+        // فصل طيفي الزوجي والفردي - split Z[k] into the spectrum of the real signal
+        float z0r = data[0];
+        float z0i = data[1];
+        data[0] = z0r + z0i;
+        data[1] = z0r - z0i;
+        for (int k = 1; k <= half / 2; k++) {
+            int m = half - k;
+            float zkr = data[2 * k];
+            float zki = data[2 * k + 1];
+            float zmr = data[2 * m];
+            float zmi = data[2 * m + 1];
+            float er = 0.5f * (zkr + zmr);
+            float ei = 0.5f * (zki - zmi);
+            float or = 0.5f * (zki + zmi);
+            float oi = -0.5f * (zkr - zmr);
+            float wr = cosFull[k];
+            float wi = -sinFull[k];
+            float tr = wr * or - wi * oi;
+            float ti = wr * oi + wi * or;
+            data[2 * k] = er + tr;
+            data[2 * k + 1] = ei + ti;
+            if (m != k) {
+                data[2 * m] = er - tr;
+                data[2 * m + 1] = ti - ei;
+            }
+        }
+    }
+
+    /**
+     * التحويل العكسي - Replace a packed half spectrum with the real signal.
+     */
+    public void inverse(float[] data) {
+        float x0 = data[0];
+        float xn = data[1];
+        data[0] = 0.5f * (x0 + xn);
+        data[1] = 0.5f * (x0 - xn);
+        for (int k = 1; k <= half / 2; k++) {
+            int m = half - k;
+            float xkr = data[2 * k];
+            float xki = data[2 * k + 1];
+            float xmr = data[2 * m];
+            float xmi = data[2 * m + 1];
+            // E = (X[k] + conj X[m]) / 2,  W^k O = (X[k] - conj X[m]) / 2
+            float er = 0.5f * (xkr + xmr);
+            float ei = 0.5f * (xki - xmi);
+            float dr = 0.5f * (xkr - xmr);
+            float di = 0.5f * (xki + xmi);
+            float wr = cosFull[k];
+            float wi = sinFull[k]; // conj(W^k)
+            float or = dr * wr - di * wi;
+            float oi = dr * wi + di * wr;
+            // Z[k] = E + iO,  Z[m] = conj(E) + i conj(O)
+            data[2 * k] = er - oi;
+            data[2 * k + 1] = ei + or;
+            if (m != k) {
+                data[2 * m] = er + oi;
+                data[2 * m + 1] = or - ei;
+            }
+        }
+
+        complexFft(data, true);
+        float scale = 1f / half;
+        for (int i = 0; i < size; i++) {
+            data[i] *= scale;
+        }
+    }
+
+    /** FFT مركب جذري-2 على بيانات متداخلة - iterative radix-2 on interleaved re/im. */
+    private void complexFft(float[] data, boolean inverse) {
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            if (j > i) {
+                float tr = data[2 * i];
+                float ti = data[2 * i + 1];
+                data[2 * i] = data[2 * j];
+                data[2 * i + 1] = data[2 * j + 1];
+                data[2 * j] = tr;
+                data[2 * j + 1] = ti;
+            }
+        }
+        for (int length = 2; length <= half; length <<= 1) {
+            int span = length / 2;
+            int step = half / length;
+            for (int start = 0; start < half; start += length) {
+                for (int j = 0; j < span; j++) {
+                    float wr = cosHalf[j * step];
+                    float wi = inverse ? sinHalf[j * step] : -sinHalf[j * step];
+                    int a = 2 * (start + j);
+                    int b = 2 * (start + j + span);
+                    float br = data[b] * wr - data[b + 1] * wi;
+                    float bi = data[b] * wi + data[b + 1] * wr;
+                    data[b] = data[a] - br;
+                    data[b + 1] = data[a + 1] - bi;
+                    data[a] += br;
+                    data[a + 1] += bi;
+                }
+            }
+        }
+    }
+}
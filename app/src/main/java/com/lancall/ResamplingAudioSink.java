@@ -0,0 +1,45 @@
+package com.lancall;
+
+/**
+ * مصرف بمعدل مختلف - يستقبل بمعدل الشبكة ويشغل بمعدل الجهاز الأصلي
+ * {@link AudioSink} that takes wire-rate frames and writes them to another
+ * sink at its own rate (the device's native rate) through a
+ * {@link PolyphaseResampler}. Writes block as long as the inner sink does,
+ * so the device still paces playout.
+ */
+public class ResamplingAudioSink implements AudioSink {
+
+    private final AudioSink sink;
+    private final PolyphaseResampler resampler;
+    private final short[] output;
+
+    /**
+     * @param maxFrameSamples largest frame written, at the wire rate
+     */
+    public ResamplingAudioSink(AudioSink sink, int sampleRate, int maxFrameSamples) {
+        this.sink = sink;
+        this.resampler = new PolyphaseResampler(sampleRate, sink.getSampleRate(), maxFrameSamples);
+        this.output = new short[resampler.getMaxOutputSamples(maxFrameSamples)];
+    }
+
+    @Override
+    public int getSampleRate() {
+        return resampler.getInputRate();
+    }
+
+    @Override
+    public int write(short[] buffer, int offset, int samples) {
+        int count = resampler.process(buffer, offset, samples, output, 0);
+        int written = sink.write(output, 0, count);
+        return written < 0 ? written : samples;
+    }
+
+    public PolyphaseResampler getResampler() {
+        return resampler;
+    }
+
+    @Override
+    public void close() {
+        sink.close();
+    }
+}
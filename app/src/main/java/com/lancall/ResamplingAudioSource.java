@@ -0,0 +1,83 @@
+package com.lancall;
+
+/**
+ * مصدر بمعدل مختلف - يلتقط بمعدل الجهاز الأصلي ويسلم بمعدل الشبكة
+ * {@link AudioSource} that reads another source at its own rate (the
+ * device's native rate) and delivers it at the wire rate through a
+ * {@link PolyphaseResampler}.
+ *
+ * Each read pulls just enough device samples for the requested frame. When
+ * the ratio does not divide the frame evenly the one extra output sample is
+ * held over for the next read, so frames stay exactly the requested size.
+ */
+public class ResamplingAudioSource implements AudioSource {
+
+    private final AudioSource source;
+    private final PolyphaseResampler resampler;
+    private final int up;
+    private final int down;
+    private final short[] input;
+    private final short[] output;
+    private int pending; // عينات محولة لم تسلم بعد، في أول output
+    private long requested; // ما طلب من المصدر حتى الآن، بعينات الخرج × down
+
+    /**
+     * @param maxFrameSamples largest frame read, at the wire rate
+     */
+    public ResamplingAudioSource(AudioSource source, int sampleRate, int maxFrameSamples) {
+        this.source = source;
+        int gcd = gcd(source.getSampleRate(), sampleRate);
+        this.up = sampleRate / gcd;
+        this.down = source.getSampleRate() / gcd;
+        int maxInput = (int) (((long) maxFrameSamples * down + up - 1) / up) + 1;
+        this.resampler = new PolyphaseResampler(source.getSampleRate(), sampleRate, maxInput);
+        this.input = new short[maxInput];
+        this.output = new short[resampler.getMaxOutputSamples(maxInput) + maxFrameSamples];
+    }
+
+    @Override
+    public int getSampleRate() {
+        return resampler.getOutputRate();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int samples) {
+        while (pending < samples) {
+            // عينات الجهاز اللازمة لإكمال الإطار - device samples for the rest of the frame
+            long target = requested + (long) (samples - pending) * down;
+            int needed = (int) ((target + up - 1) / up - (requested + up - 1) / up);
+            int read = source.read(input, 0, Math.max(1, Math.min(needed, input.length)));
+            if (read <= 0) {
+                if (pending == 0) {
+                    return read;
+                }
+                break; // ما تجمع يسلم ثم يظهر الخطأ في القراءة التالية
+            }
+            requested += (long) read * up;
+            pending += resampler.process(input, 0, read, output, pending);
+        }
+        int count = Math.min(samples, pending);
+        System.arraycopy(output, 0, buffer, offset, count);
+        System.arraycopy(output, count, output, 0, pending - count);
+        pending -= count;
+        return count;
+    }
+
+    public PolyphaseResampler getResampler() {
+        return resampler;
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
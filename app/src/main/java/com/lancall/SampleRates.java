@@ -0,0 +1,108 @@
+package com.lancall;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * معدلات العينات على الشبكة والتفاوض عليها - Wire sample rates and their negotiation
+ * The caller offers every supported rate up to its limit, highest first,
+ * and the callee picks the highest offered rate within its own limit; both
+ * directions then run at that rate. Each side's limit is the lower of a
+ * user setting and what its Wi-Fi link looks able to carry, so a weak or
+ * slow link settles on narrowband and a good one on HD voice.
+ */
+public final class SampleRates {
+
+    public static final int NARROWBAND = 8000;
+    public static final int WIDEBAND = 16000;
+    public static final int SUPER_WIDEBAND = 32000;
+    public static final int FULLBAND = 48000;
+
+    // المعدل قبل التفاوض عليه - peers that predate negotiation always ran at 16 kHz
+    public static final int DEFAULT_RATE = WIDEBAND;
+    public static final int MAX_RATE = FULLBAND;
+
+    private static final int[] SUPPORTED = { FULLBAND, SUPER_WIDEBAND, WIDEBAND, NARROWBAND };
+
+    // حدود جودة الرابط لكل معدل - link needed per rate: RSSI (dBm) and PHY rate (Mbps)
+    private static final int FULLBAND_MIN_RSSI = -60;
+    private static final int FULLBAND_MIN_LINK_MBPS = 54;
+    private static final int SUPER_WIDEBAND_MIN_RSSI = -67;
+    private static final int SUPER_WIDEBAND_MIN_LINK_MBPS = 24;
+    private static final int WIDEBAND_MIN_RSSI = -75;
+    private static final int MIN_VALID_RSSI = -127; // WifiInfo يعيد هذا أو أقل عند عدم الاتصال
+
+    private SampleRates() {
+    }
+
+    public static boolean isSupported(int rate) {
+        for (int supported : SUPPORTED) {
+            if (supported == rate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * أعلى معدل يتحمله الرابط - Highest rate the Wi-Fi link should carry.
+     * At 48 kHz even PCMU needs 384 kbit/s each way plus retries, which a
+     * marginal link loses as bursts; narrowband needs a sixth of that.
+     *
+     * @param rssiDbm        signal strength, or a value below -127 if unknown
+     * @param linkSpeedMbps  PHY rate, or 0 or less if unknown
+     * @return the limit, {@link #DEFAULT_RATE} when the link is unknown
+     */
+    public static int forLinkQuality(int rssiDbm, int linkSpeedMbps) {
+        if (rssiDbm <= MIN_VALID_RSSI || rssiDbm >= 0 || linkSpeedMbps <= 0) {
+            return DEFAULT_RATE;
+        }
+        if (rssiDbm >= FULLBAND_MIN_RSSI && linkSpeedMbps >= FULLBAND_MIN_LINK_MBPS) {
+            return FULLBAND;
+        }
+        if (rssiDbm >= SUPER_WIDEBAND_MIN_RSSI && linkSpeedMbps >= SUPER_WIDEBAND_MIN_LINK_MBPS) {
+            return SUPER_WIDEBAND;
+        }
+        return rssiDbm >= WIDEBAND_MIN_RSSI ? WIDEBAND : NARROWBAND;
+    }
+
+    /** العرض المرسل - Supported rates up to {@code maxRate}, highest first. */
+    public static List<Integer> getOffer(int maxRate) {
+        List<Integer> offer = new ArrayList<>();
+        for (int rate : SUPPORTED) {
+            if (rate <= maxRate) {
+                offer.add(rate);
+            }
+        }
+        if (offer.isEmpty()) {
+            offer.add(NARROWBAND);
+        }
+        return offer;
+    }
+
+    /**
+     * اختيار المعدل من عرض المتصل - Pick the highest offered rate we support
+     * within {@code maxRate}. Peers that predate negotiation offer nothing
+     * and get {@link #DEFAULT_RATE}.
+     */
+    public static int negotiate(List<Integer> offered, int maxRate) {
+        if (offered == null || offered.isEmpty()) {
+            return DEFAULT_RATE;
+        }
+        int best = 0;
+        for (Integer rate : offered) {
+            if (rate != null && isSupported(rate) && rate <= maxRate && rate > best) {
+                best = rate;
+            }
+        }
+        return best > 0 ? best : NARROWBAND; // كل طرف يدعم النطاق الضيق
+    }
+
+    /**
+     * المعدل المعلن في القبول - Rate from a CALL_ACCEPT; 0 or an unknown rate
+     * means an older callee running at {@link #DEFAULT_RATE}.
+     */
+    public static int accepted(int rate) {
+        return isSupported(rate) ? rate : DEFAULT_RATE;
+    }
+}
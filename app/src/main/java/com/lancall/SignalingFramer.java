@@ -0,0 +1,133 @@
+package com.lancall;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * تأطير رسائل الإشارات على TCP - كل رسالة مسبوقة بطولها
+ * Length-prefixed framing of signaling messages on a TCP stream.
+ *
+ * <pre>
+ * +---------------------------------------------------------------+
+ * |            body length in bytes (u32, big-endian)             |
+ * +---------------------------------------------------------------+
+ * |          body: one {@link SignalingProtocol.Message}          |
+ * |                    as UTF-8 JSON                              |
+ * +---------------------------------------------------------------+
+ * </pre>
+ *
+ * The reader knows where a message ends before it reads it, so nested
+ * objects or braces inside a text message cannot cut it short, and any
+ * number of messages can follow each other on one connection. A length
+ * above {@link #MAX_MESSAGE_SIZE} is refused before anything is allocated.
+ *
+ * The body is read straight into a buffer kept across messages; it only
+ * grows for a larger message. Nothing is read ahead, so a connection may
+ * change hands between framers. Reading is for one thread; writes are
+ * synchronized so several threads may share one connection.
+ */
+public class SignalingFramer {
+
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_MESSAGE_SIZE = 64 * 1024; // أطول نص دردشة مع هامش كبير
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final byte[] header = new byte[HEADER_SIZE];
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private byte[] frame = new byte[HEADER_SIZE + INITIAL_BUFFER_SIZE];
+    // الإطار الجاري قراءته - progress through the frame being read, kept across a read timeout
+    private int received;
+    private int length;
+
+    public SignalingFramer(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * قراءة الرسالة التالية - Read the next message.
+     *
+     * A read timeout on the socket ({@link java.net.SocketTimeoutException}) may
+     * strike inside a frame. The bytes read so far are kept and the next
+     * call carries on where this one stopped, so the caller may treat the
+     * timeout as idle time without losing its place in the stream.
+     *
+     * @return the message, or null if the peer closed the connection
+     *         between messages
+     * @throws EOFException if it closed in the middle of one
+     * @throws IOException  if the length is out of range or the body is not
+     *                      a message; the stream is out of step and must be
+     *                      closed
+     */
+    public SignalingProtocol.Message read() throws IOException {
+        while (received < HEADER_SIZE) {
+            int n = in.read(header, received, HEADER_SIZE - received);
+            if (n < 0) {
+                if (received == 0) {
+                    return null;
+                }
+                throw new EOFException("Connection closed inside a signaling frame");
+            }
+            received += n;
+            if (received == HEADER_SIZE) {
+                length = (header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16 | (header[2] & 0xFF) << 8
+                        | (header[3] & 0xFF);
+                if (length <= 0 || length > MAX_MESSAGE_SIZE) {
+                    // طول غير صالح (أو طرف لا يؤطر) - not a frame we accept; do not allocate for it
+                    throw new IOException("Invalid signaling frame length: " + (length & 0xFFFFFFFFL));
+                }
+                if (buffer.length < length) {
+                    buffer = new byte[Math.min(MAX_MESSAGE_SIZE, Math.max(length, buffer.length * 2))];
+                }
+            }
+        }
+        while (received < HEADER_SIZE + length) {
+            int done = received - HEADER_SIZE;
+            int n = in.read(buffer, done, length - done);
+            if (n < 0) {
+                throw new EOFException("Connection closed inside a signaling frame");
+            }
+            received += n;
+        }
+        received = 0; // الإطار التالي يبدأ من ترويسته - the next call starts a new frame
+        SignalingProtocol.Message message = SignalingProtocol.jsonToMessage(
+                new String(buffer, 0, length, StandardCharsets.UTF_8));
+        if (message == null) {
+            throw new IOException("Malformed signaling message of " + length + " bytes");
+        }
+        return message;
+    }
+
+    /**
+     * إرسال رسالة - Write one message as a single frame and flush it.
+     *
+     * @throws IOException if it cannot be serialized, is longer than
+     *                     {@link #MAX_MESSAGE_SIZE}, or the write fails
+     */
+    public synchronized void write(SignalingProtocol.Message message) throws IOException {
+        String json = SignalingProtocol.messageToJson(message);
+        if (json == null) {
+            throw new IOException("Cannot serialize signaling message: " + message.type);
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        if (body.length > MAX_MESSAGE_SIZE) {
+            throw new IOException("Signaling message too large: " + body.length + " bytes");
+        }
+        // الترويسة والجسم في كتابة واحدة - one write, so the frame leaves in as few segments as it fits
+        if (frame.length < HEADER_SIZE + body.length) {
+            frame = new byte[HEADER_SIZE + Math.max(body.length, frame.length * 2)];
+        }
+        frame[0] = (byte) (body.length >>> 24);
+        frame[1] = (byte) (body.length >>> 16);
+        frame[2] = (byte) (body.length >>> 8);
+        frame[3] = (byte) body.length;
+        System.arraycopy(body, 0, frame, HEADER_SIZE, body.length);
+        out.write(frame, 0, HEADER_SIZE + body.length);
+        out.flush();
+    }
+}
@@ -3,6 +3,8 @@ package com.lancall;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 
+import java.util.List;
+
 /**
  * نظام بروتوكول الإشارات للتواصل بين الأجهزة
  * Signaling Protocol for inter-device communication
@@ -50,11 +52,18 @@ public class SignalingProtocol {
         public String callerName;
         public String callerIp;
         public int audioPort;
+        public List<String> codecs; // الترميزات المعروضة بترتيب التفضيل - offered codecs, preferred first
+        public String fec; // نمط تصحيح الأخطاء المطلوب - requested FEC mode, see FecEncoder
+        public List<Integer> sampleRates; // المعدلات المعروضة، الأعلى أولاً - offered wire rates, see SampleRates
 
-        public CallRequestData(String callerName, String callerIp, int audioPort) {
+        public CallRequestData(String callerName, String callerIp, int audioPort, List<String> codecs,
+                String fec, List<Integer> sampleRates) {
             this.callerName = callerName;
             this.callerIp = callerIp;
             this.audioPort = audioPort;
+            this.codecs = codecs;
+            this.fec = fec;
+            this.sampleRates = sampleRates;
         }
     }
 
@@ -65,16 +74,26 @@ public class SignalingProtocol {
     public static class CallAcceptData {
         public String receiverIp;
         public int audioPort;
+        public String codec; // الترميز المختار من العرض - codec chosen from the offer
+        public String fec; // نمط تصحيح الأخطاء المتفق عليه - agreed FEC mode, both directions
+        public int sampleRate; // معدل العينات المتفق عليه - agreed wire rate, both directions
+        public List<String> codecs; // ما يفككه المجيب - codecs the answerer decodes, for bitrate adaptation
 
-        public CallAcceptData(String receiverIp, int audioPort) {
+        public CallAcceptData(String receiverIp, int audioPort, String codec, String fec, int sampleRate,
+                List<String> codecs) {
             this.receiverIp = receiverIp;
             this.audioPort = audioPort;
+            this.codec = codec;
+            this.fec = fec;
+            this.sampleRate = sampleRate;
+            this.codecs = codecs;
         }
     }
 
     /**
      * بيانات الصوت
-     * Audio data
+     * Audio data - not used on the media path, where audio travels as binary
+     * {@link MediaPacket} datagrams
      */
     public static class AudioData {
         public byte[] audioBytes;
@@ -152,12 +171,32 @@ public class SignalingProtocol {
         }
     }
 
+    /**
+     * استخراج بيانات الرسالة بنوعها الصحيح
+     * Gson turns {@code data} into a map when parsing, so convert it back to
+     * the expected payload class
+     */
+    public static <T> T getData(Message message, Class<T> type) {
+        if (message == null || message.data == null) {
+            return null;
+        }
+        if (type.isInstance(message.data)) {
+            return type.cast(message.data);
+        }
+        try {
+            return gson.fromJson(gson.toJsonTree(message.data), type);
+        } catch (JsonSyntaxException e) {
+            return null;
+        }
+    }
+
     /**
      * إنشاء رسالة طلب مكالمة
      * Create call request message
      */
-    public static Message createCallRequest(String fromIp, String callerName, int audioPort) {
-        CallRequestData data = new CallRequestData(callerName, fromIp, audioPort);
+    public static Message createCallRequest(String fromIp, String callerName, int audioPort, List<String> codecs,
+            String fec, List<Integer> sampleRates) {
+        CallRequestData data = new CallRequestData(callerName, fromIp, audioPort, codecs, fec, sampleRates);
         return new Message(MESSAGE_TYPE_CALL_REQUEST, fromIp, data);
     }
 
@@ -165,8 +204,9 @@ public class SignalingProtocol {
      * إنشاء رسالة قبول المكالمة
      * Create call accept message
      */
-    public static Message createCallAccept(String fromIp, int audioPort) {
-        CallAcceptData data = new CallAcceptData(fromIp, audioPort);
+    public static Message createCallAccept(String fromIp, int audioPort, String codec, String fec,
+            int sampleRate, List<String> codecs) {
+        CallAcceptData data = new CallAcceptData(fromIp, audioPort, codec, fec, sampleRate, codecs);
         return new Message(MESSAGE_TYPE_CALL_ACCEPT, fromIp, data);
     }
 
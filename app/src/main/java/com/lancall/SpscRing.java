@@ -0,0 +1,167 @@
+package com.lancall;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * حلقة منتج واحد / مستهلك واحد بدون أقفال - تنقل الإطارات بين خيوط الالتقاط والشبكة والتشغيل
+ * Lock-free single-producer/single-consumer ring of preallocated slots.
+ *
+ * Slots are created once and handed out in place: the producer calls
+ * {@link #claim()}, fills the slot and calls {@link #publish()}; the consumer
+ * calls {@link #peek()} (or {@link #await(long)}), reads the slot and calls
+ * {@link #release()}. Nothing is allocated or copied per frame.
+ *
+ * A full ring never blocks the producer - {@link #claim()} returns null and
+ * the frame is counted as an overrun, so a slow consumer cannot stall audio
+ * capture or the network thread.
+ *
+ * Everything the producer writes (tail, its cached head and the counters)
+ * and everything the consumer writes (head, the parked thread) sits in
+ * array elements 128 bytes away from the other side's, so the producer's
+ * and consumer's cache lines are never shared.
+ */
+public class SpscRing<T> {
+
+    // مواقع المؤشرات داخل المصفوفة - 16 × 8 بايت = 128 بايت بين كل مؤشر وآخر
+    private static final int PAD = 16;
+    // يكتبها المنتج فقط - written by the producer only, on one line
+    private static final int TAIL = PAD;
+    private static final int CACHED_HEAD = TAIL + 1;
+    private static final int OVERRUNS = TAIL + 2;
+    private static final int MAX_OCCUPANCY = TAIL + 3;
+    // يكتبه المستهلك فقط - written by the consumer only
+    private static final int HEAD = PAD * 2;
+    // المستهلك المنتظر في await، في منتصف مصفوفته - consumer parked in await(), padded on both sides
+    private static final int WAITER = PAD * 2;
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLongArray indices = new AtomicLongArray(PAD * 3);
+    private final AtomicReferenceArray<Thread> waiter = new AtomicReferenceArray<>(WAITER * 2 + 1);
+
+    /**
+     * @param capacity     عدد الخانات، يجب أن يكون قوة للعدد 2
+     * @param slotFactory  ينشئ كل خانة مرة واحدة
+     */
+    public SpscRing(int capacity, Supplier<T> slotFactory) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        slots = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = slotFactory.get();
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * حجز الخانة التالية للكتابة - Producer: the next free slot, or null if
+     * the ring is full (counted as an overrun).
+     */
+    @SuppressWarnings("unchecked")
+    public T claim() {
+        long tail = indices.get(TAIL);
+        if (tail - indices.get(CACHED_HEAD) > mask) {
+            long head = indices.get(HEAD);
+            indices.lazySet(CACHED_HEAD, head);
+            if (tail - head > mask) {
+                indices.lazySet(OVERRUNS, indices.get(OVERRUNS) + 1);
+                return null;
+            }
+        }
+        return (T) slots[(int) tail & mask];
+    }
+
+    /**
+     * نشر الخانة المحجوزة - Producer: make the claimed slot visible to the
+     * consumer.
+     */
+    public void publish() {
+        long tail = indices.get(TAIL) + 1;
+        // كتابة volatile كاملة لا lazySet: قراءة waiter بعدها يجب ألا تسبقها (StoreLoad)، وإلا
+        // فات الإيقاظ مستهلكاً سجل نفسه للتو ولم ير الذيل الجديد - a full volatile store, not a
+        // release store: the read of the waiter below must not pass it, or a consumer that just
+        // registered and re-checked the old tail would park without a wakeup
+        indices.set(TAIL, tail);
+        long occupancy = tail - indices.get(HEAD);
+        if (occupancy > indices.get(MAX_OCCUPANCY)) {
+            indices.lazySet(MAX_OCCUPANCY, occupancy);
+        }
+        Thread parked = waiter.get(WAITER);
+        if (parked != null) {
+            LockSupport.unpark(parked);
+        }
+    }
+
+    /**
+     * الخانة التالية للقراءة - Consumer: the oldest published slot, or null
+     * if the ring is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        long head = indices.get(HEAD);
+        if (head == indices.get(TAIL)) {
+            return null;
+        }
+        return (T) slots[(int) head & mask];
+    }
+
+    /**
+     * انتظار خانة - Consumer: like {@link #peek()} but parks for up to
+     * {@code timeoutNanos} while the ring is empty.
+     */
+    public T await(long timeoutNanos) {
+        T slot = peek();
+        if (slot != null) {
+            return slot;
+        }
+        waiter.set(WAITER, Thread.currentThread()); // volatile: يسبق إعادة قراءة الذيل - ordered before the re-check
+        try {
+            // إعادة الفحص بعد التسجيل حتى لا يضيع إيقاظ المنتج - re-check after registering
+            slot = peek();
+            if (slot == null) {
+                LockSupport.parkNanos(this, timeoutNanos);
+                slot = peek();
+            }
+        } finally {
+            waiter.lazySet(WAITER, null);
+        }
+        return slot;
+    }
+
+    /**
+     * تحرير الخانة المقروءة - Consumer: return the peeked slot to the producer.
+     */
+    public void release() {
+        indices.lazySet(HEAD, indices.get(HEAD) + 1);
+    }
+
+    /**
+     * تفريغ الحلقة - Consumer: discard everything currently published.
+     */
+    public void clear() {
+        indices.lazySet(HEAD, indices.get(TAIL));
+    }
+
+    /** عدد الخانات المنشورة غير المقروءة - Current occupancy (approximate from other threads). */
+    public int size() {
+        long head = indices.get(HEAD);
+        return (int) (indices.get(TAIL) - head);
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /** Frames the producer could not store because the ring was full. */
+    public long getOverruns() {
+        return indices.get(OVERRUNS);
+    }
+
+    public int getMaxOccupancy() {
+        return (int) indices.get(MAX_OCCUPANCY);
+    }
+}
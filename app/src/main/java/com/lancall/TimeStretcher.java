@@ -0,0 +1,229 @@
+package com.lancall;
+
+/**
+ * تغيير سرعة الكلام دون تغيير طبقته - WSOLA لتفريغ مخزن الارتعاش أو تعبئته بسلاسة
+ * Time-scale modification by WSOLA (waveform similarity overlap-add):
+ * plays speech a few percent faster or slower without changing its pitch,
+ * so the playout delay can follow its target without dropped or inserted
+ * frames.
+ *
+ * Output is built from 20 ms Hann-windowed segments overlapped by half
+ * (10 ms hops). Each segment is taken near its nominal input position
+ * ({@code hop × rate} after the previous one) at the offset, within ±5 ms,
+ * whose start best matches the natural continuation of the previous
+ * segment, so the overlap-add joins waveforms in phase instead of smearing
+ * pitch periods. The search runs coarse on decimated samples, then refines
+ * around the best coarse lag. At rate 1 the segments follow each other
+ * exactly and the input comes back unchanged.
+ *
+ * Streaming on {@code short[]}: input is consumed in any chunk size and
+ * output comes out in whole hops; one hop plus the search tolerance,
+ * rounded up to whole hops (15-20 ms), is held back. One instance per thread; nothing is allocated per
+ * call.
+ */
+public class TimeStretcher {
+
+    public static final int HOP_MS = 10;
+    public static final int TOLERANCE_MS = 5;
+    public static final double MIN_RATE = 0.5;
+    public static final double MAX_RATE = 2.0;
+    private static final int SEARCH_RATE = 8000; // معدل البحث الخشن - coarse search resolution
+
+    private final int hop;
+    private final int window;
+    private final int tolerance;
+    private final int step; // خطوة التجزئة في البحث الخشن
+    private final float[] hann;
+    private final float[] input;
+    private final float[] overlap;
+
+    private int length; // عينات صالحة في input
+    private double analysis; // الموقع الاسمي للمقطع التالي - nominal start of the next segment
+    private int previous; // بداية المقطع السابق المختار
+    private boolean first = true;
+    private double rate = 1.0;
+
+    private long samplesIn;
+    private long samplesOut;
+    private long samplesDropped;
+
+    /**
+     * @param maxInputSamples largest chunk passed to {@link #process}
+     */
+    public TimeStretcher(int sampleRate, int maxInputSamples) {
+        hop = sampleRate * HOP_MS / 1000;
+        window = 2 * hop;
+        tolerance = sampleRate * TOLERANCE_MS / 1000;
+        step = Math.max(1, sampleRate / SEARCH_RATE);
+        hann = new float[window];
+        for (int i = 0; i < window; i++) {
+            hann[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / window)); // مجموع النصفين = 1
+        }
+        // ما يبقى بين الاستدعاءات لا يتجاوز نافذة وقفزة والسماحية مرتين عند أقصى سرعة
+        input = new float[maxInputSamples + (int) Math.ceil(window * MAX_RATE) + 2 * tolerance + window];
+        overlap = new float[hop];
+        reset();
+    }
+
+    /**
+     * نسبة السرعة - Playback speed: above 1 consumes input faster than real
+     * time (drains the buffer), below 1 slower (grows it). Takes effect from
+     * the next hop.
+     */
+    public void setRate(double rate) {
+        this.rate = Math.max(MIN_RATE, Math.min(MAX_RATE, rate));
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public int getHopSamples() {
+        return hop;
+    }
+
+    /**
+     * معالجة دفعة - Append {@code samples} input samples and write every
+     * whole hop of output that is ready, up to {@code capacity}. One call
+     * returns about {@code samples / rate} plus or minus two hops; if the
+     * capacity keeps output back for long, queued input overflows and is
+     * dropped ({@link #getSamplesDropped()}).
+     *
+     * @return samples written to {@code out}, a multiple of the hop
+     */
+    public int process(short[] in, int inOffset, int samples, short[] out, int outOffset, int capacity) {
+        compact();
+        int count = Math.min(samples, input.length - length);
+        for (int i = 0; i < count; i++) {
+            input[length + i] = in[inOffset + i];
+        }
+        length += count;
+        samplesIn += count;
+        samplesDropped += samples - count;
+
+        int produced = 0;
+        while (produced + hop <= capacity) {
+            int nominal = (int) Math.round(analysis);
+            int natural = previous + hop;
+            if (natural + hop > length || nominal + tolerance + window > length) {
+                break; // لا يكفي الدخل للبحث - wait for more input
+            }
+            int start = rate == 1.0 && !first ? natural : search(nominal, natural);
+
+            int o = outOffset + produced;
+            if (first) {
+                // أول مقطع بلا سابق يتداخل معه - no previous segment to fade against
+                for (int i = 0; i < hop; i++) {
+                    out[o + i] = clip(input[start + i]);
+                }
+                first = false;
+            } else {
+                for (int i = 0; i < hop; i++) {
+                    out[o + i] = clip(overlap[i] + input[start + i] * hann[i]);
+                }
+            }
+            for (int i = 0; i < hop; i++) {
+                overlap[i] = input[start + hop + i] * hann[hop + i];
+            }
+            produced += hop;
+            previous = start;
+            // عند السرعة الطبيعية يتبع الموقع الاسمي المقطع المختار - at rate 1 continue exactly
+            analysis = rate == 1.0 ? start + hop : analysis + hop * rate;
+        }
+        samplesOut += produced;
+        return produced;
+    }
+
+    /**
+     * البحث عن أفضل بداية - Offset within the tolerance around
+     * {@code nominal} whose first hop best matches the natural continuation.
+     */
+    private int search(int nominal, int natural) {
+        int low = Math.max(0, nominal - tolerance);
+        int high = nominal + tolerance;
+        int best = coarse(low, high, natural);
+        return fine(Math.max(low, best - step), Math.min(high, best + step), natural);
+    }
+
+    private int coarse(int low, int high, int natural) {
+        int best = Math.max(low, Math.min(high, natural));
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int candidate = low; candidate <= high; candidate += step) {
+            float score = similarity(candidate, natural, step);
+            if (score > bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private int fine(int low, int high, int natural) {
+        int best = low;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int candidate = low; candidate <= high; candidate++) {
+            float score = similarity(candidate, natural, 1);
+            if (score > bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /** ارتباط مطبع بطاقة المرشح - cross-correlation normalised by the candidate's energy. */
+    private float similarity(int candidate, int natural, int stride) {
+        float cross = 0f;
+        float energy = 1e-3f;
+        for (int i = 0; i < hop; i += stride) {
+            float x = input[candidate + i];
+            cross += x * input[natural + i];
+            energy += x * x;
+        }
+        return cross / (float) Math.sqrt(energy);
+    }
+
+    /** حذف الدخل المستهلك - drop input no future segment can reach. */
+    private void compact() {
+        int consumed = Math.min(previous + hop, (int) Math.floor(analysis) - tolerance);
+        if (consumed <= 0) {
+            return;
+        }
+        consumed = Math.min(consumed, length);
+        System.arraycopy(input, consumed, input, 0, length - consumed);
+        length -= consumed;
+        previous -= consumed;
+        analysis -= consumed;
+    }
+
+    /** عينات الدخل المحتجزة - Input samples queued and not yet played. */
+    public int getQueuedSamples() {
+        return Math.max(0, length - (previous + hop));
+    }
+
+    public long getSamplesIn() {
+        return samplesIn;
+    }
+
+    public long getSamplesOut() {
+        return samplesOut;
+    }
+
+    public long getSamplesDropped() {
+        return samplesDropped;
+    }
+
+    public void reset() {
+        length = 0;
+        analysis = 0;
+        previous = -hop;
+        first = true;
+        for (int i = 0; i < hop; i++) {
+            overlap[i] = 0f;
+        }
+    }
+
+    private static short clip(float value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
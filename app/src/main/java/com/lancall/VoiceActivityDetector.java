@@ -0,0 +1,133 @@
+package com.lancall;
+
+/**
+ * كاشف النشاط الصوتي - يقرر لكل إطار هل فيه كلام اعتماداً على الطاقة ومعدل عبور الصفر
+ * Voice activity detector based on frame energy and zero-crossing rate.
+ *
+ * The background level is tracked as an adaptive noise floor (fast to fall,
+ * slow to rise). Voiced speech stands well above that floor; unvoiced
+ * sounds (s, f, sh) are quieter but cross zero much more often, so they are
+ * accepted at a lower margin when the zero-crossing rate is high. A
+ * hangover keeps the decision on for a while after speech stops so word
+ * endings are not clipped.
+ */
+public class VoiceActivityDetector implements AudioProcessor {
+
+    private static final double FULL_SCALE = 32768.0;
+    private static final double MIN_LEVEL_DBOV = -96.0; // أرضية حسابية لإطار صامت تماماً
+
+    private static final double VOICED_MARGIN_DB = 9.0; // كلام مجهور: أعلى من الضجيج بـ 9 ديسيبل
+    private static final double UNVOICED_MARGIN_DB = 4.0; // كلام مهموس: هامش أقل مع عبور صفر مرتفع
+    private static final double UNVOICED_ZCR = 0.25; // عبور لكل عينة
+    private static final double ABSOLUTE_FLOOR_DBOV = -60.0; // ما دونه صمت مهما كان الضجيج
+
+    private static final double FLOOR_FALL = 0.25; // الأرضية تنزل بسرعة مع الهدوء
+    private static final double FLOOR_RISE = 0.01; // وتصعد ببطء حتى لا يبتلعها الكلام الطويل
+    private static final double FLOOR_RISE_IDLE = 0.04; // أسرع قليلاً عندما لا يكون الإطار كلاماً
+    private static final double INITIAL_FLOOR_DBOV = -60.0;
+
+    private static final int DEFAULT_HANGOVER_MS = 200;
+
+    private final int sampleRate;
+    private final int hangoverSamples;
+
+    private double noiseFloorDb = INITIAL_FLOOR_DBOV;
+    private double lastLevelDb = MIN_LEVEL_DBOV;
+    private double lastZcr;
+    private int hangoverLeft;
+
+    public VoiceActivityDetector(int sampleRate) {
+        this(sampleRate, DEFAULT_HANGOVER_MS);
+    }
+
+    public VoiceActivityDetector(int sampleRate, int hangoverMs) {
+        this.sampleRate = sampleRate;
+        this.hangoverSamples = sampleRate * hangoverMs / 1000;
+    }
+
+    /**
+     * Classify a pipeline frame into {@link AudioFrame#speech} and record the
+     * noise floor in {@link AudioFrame#noiseLevelDbov} for comfort noise.
+     */
+    @Override
+    public void process(AudioFrame frame) {
+        frame.speech = isSpeech(frame.pcm, 0, frame.samples);
+        frame.noiseLevelDbov = noiseFloorDb;
+    }
+
+    /**
+     * تحليل إطار - Classify one frame.
+     *
+     * @return true if the frame should be sent as speech
+     */
+    public boolean isSpeech(short[] pcm, int offset, int samples) {
+        if (samples <= 0) {
+            return hangoverLeft > 0;
+        }
+
+        long energy = 0;
+        int crossings = 0;
+        int previous = pcm[offset];
+        for (int i = 0; i < samples; i++) {
+            int sample = pcm[offset + i];
+            energy += (long) sample * sample;
+            if ((sample ^ previous) < 0) {
+                crossings++; // تغيرت الإشارة - sign change
+            }
+            previous = sample;
+        }
+
+        double meanSquare = (double) energy / samples;
+        lastLevelDb = meanSquare > 0
+                ? Math.max(MIN_LEVEL_DBOV, 10.0 * Math.log10(meanSquare / (FULL_SCALE * FULL_SCALE)))
+                : MIN_LEVEL_DBOV;
+        lastZcr = (double) crossings / samples;
+
+        double snr = lastLevelDb - noiseFloorDb;
+        boolean active = lastLevelDb > ABSOLUTE_FLOOR_DBOV
+                && (snr > VOICED_MARGIN_DB || (snr > UNVOICED_MARGIN_DB && lastZcr > UNVOICED_ZCR));
+
+        // تحديث أرضية الضجيج - the floor follows quiet frames quickly and loud ones slowly
+        if (lastLevelDb < noiseFloorDb) {
+            noiseFloorDb += (lastLevelDb - noiseFloorDb) * FLOOR_FALL;
+        } else if (!active) {
+            noiseFloorDb += (lastLevelDb - noiseFloorDb) * FLOOR_RISE_IDLE;
+        } else {
+            noiseFloorDb += (lastLevelDb - noiseFloorDb) * FLOOR_RISE;
+        }
+
+        if (active) {
+            hangoverLeft = hangoverSamples;
+            return true;
+        }
+        if (hangoverLeft > 0) {
+            hangoverLeft -= samples;
+            return true;
+        }
+        return false;
+    }
+
+    public void reset() {
+        noiseFloorDb = INITIAL_FLOOR_DBOV;
+        lastLevelDb = MIN_LEVEL_DBOV;
+        lastZcr = 0;
+        hangoverLeft = 0;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /** مستوى الضجيج الخلفي بالديسيبل نسبة للمدى الكامل - Background noise level in dBov. */
+    public double getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+
+    public double getLastLevelDb() {
+        return lastLevelDb;
+    }
+
+    public double getLastZeroCrossingRate() {
+        return lastZcr;
+    }
+}
@@ -0,0 +1,84 @@
+package com.lancall;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * مصرف إلى ملف WAV - PCM 16 بت أحادي القناة
+ * {@link AudioSink} writing a 16-bit mono PCM WAV file. The chunk sizes in
+ * the header are filled in by {@link #close()}.
+ */
+public class WavFileSink implements AudioSink {
+
+    private static final int HEADER_SIZE = 44;
+    private static final int WRITE_ERROR = -2;
+
+    private final RandomAccessFile file;
+    private final int sampleRate;
+    private long dataBytes;
+    private byte[] scratch = new byte[0];
+
+    public WavFileSink(File path, int sampleRate) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        this.sampleRate = sampleRate;
+        file.setLength(0);
+        writeHeader();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int write(short[] buffer, int offset, int samples) {
+        if (scratch.length < samples * 2) {
+            scratch = new byte[samples * 2]; // مرة واحدة بحجم الإطار
+        }
+        for (int i = 0; i < samples; i++) {
+            short sample = buffer[offset + i];
+            scratch[2 * i] = (byte) sample;
+            scratch[2 * i + 1] = (byte) (sample >> 8);
+        }
+        try {
+            file.write(scratch, 0, samples * 2);
+        } catch (IOException e) {
+            return WRITE_ERROR;
+        }
+        dataBytes += samples * 2L;
+        return samples;
+    }
+
+    @Override
+    public void close() {
+        try {
+            file.seek(0);
+            writeHeader();
+        } catch (IOException ignored) {
+            // الملف يبقى بأحجام صفرية - the samples are still there for tools that ignore the sizes
+        } finally {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        long data = Math.min(dataBytes, 0xFFFFFFFFL - HEADER_SIZE);
+        file.writeBytes("RIFF");
+        file.writeInt(Integer.reverseBytes((int) (HEADER_SIZE - 8 + data)));
+        file.writeBytes("WAVE");
+        file.writeBytes("fmt ");
+        file.writeInt(Integer.reverseBytes(16));
+        file.writeShort(Short.reverseBytes((short) 1)); // PCM
+        file.writeShort(Short.reverseBytes((short) 1)); // أحادي
+        file.writeInt(Integer.reverseBytes(sampleRate));
+        file.writeInt(Integer.reverseBytes(sampleRate * 2));
+        file.writeShort(Short.reverseBytes((short) 2));
+        file.writeShort(Short.reverseBytes((short) 16));
+        file.writeBytes("data");
+        file.writeInt(Integer.reverseBytes((int) data));
+    }
+}
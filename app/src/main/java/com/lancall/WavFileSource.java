@@ -0,0 +1,131 @@
+package com.lancall;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * مصدر من ملف WAV - PCM 16 بت أحادي القناة
+ * {@link AudioSource} reading a 16-bit mono PCM WAV file, for feeding
+ * recorded speech and noise through the media path on a plain JVM.
+ */
+public class WavFileSource implements AudioSource {
+
+    private static final int READ_ERROR = -2;
+
+    private final DataInputStream in;
+    private final int sampleRate;
+    private long remainingBytes;
+    private byte[] scratch = new byte[0];
+
+    /**
+     * @throws IOException if the file cannot be read or is not 16-bit mono PCM
+     */
+    public WavFileSource(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (readTag() != tag("RIFF")) {
+                throw new IOException("Not a RIFF file: " + file);
+            }
+            readLittleInt(); // حجم الملف - ignored, the data chunk says how much audio there is
+            if (readTag() != tag("WAVE")) {
+                throw new IOException("Not a WAVE file: " + file);
+            }
+            int rate = 0;
+            while (true) {
+                int id = readTag();
+                long size = readLittleInt() & 0xFFFFFFFFL;
+                if (id == tag("fmt ")) {
+                    int format = readLittleShort();
+                    int channels = readLittleShort();
+                    rate = readLittleInt();
+                    readLittleInt(); // معدل البايتات
+                    readLittleShort(); // محاذاة الكتلة
+                    int bits = readLittleShort();
+                    if (format != 1 || channels != 1 || bits != 16) {
+                        throw new IOException("Only 16-bit mono PCM is supported: " + file);
+                    }
+                    skip(size - 16 + (size & 1));
+                } else if (id == tag("data")) {
+                    if (rate == 0) {
+                        throw new IOException("WAVE data before format: " + file);
+                    }
+                    remainingBytes = size;
+                    break;
+                } else {
+                    skip(size + (size & 1)); // الكتل محاذاة على بايتين
+                }
+            }
+            sampleRate = rate;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int samples) {
+        int count = (int) Math.min(samples, remainingBytes / 2);
+        if (count == 0) {
+            return samples == 0 ? 0 : -1;
+        }
+        if (scratch.length < count * 2) {
+            scratch = new byte[count * 2]; // مرة واحدة بحجم الإطار
+        }
+        try {
+            in.readFully(scratch, 0, count * 2);
+        } catch (EOFException e) {
+            remainingBytes = 0; // ملف مقطوع - truncated file, treat as the end
+            return -1;
+        } catch (IOException e) {
+            return READ_ERROR;
+        }
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = (short) ((scratch[2 * i] & 0xFF) | (scratch[2 * i + 1] << 8));
+        }
+        remainingBytes -= count * 2L;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private int readTag() throws IOException {
+        return in.readInt();
+    }
+
+    private int readLittleInt() throws IOException {
+        return Integer.reverseBytes(in.readInt());
+    }
+
+    private int readLittleShort() throws IOException {
+        return Short.reverseBytes(in.readShort()) & 0xFFFF;
+    }
+
+    private void skip(long bytes) throws IOException {
+        while (bytes > 0) {
+            int skipped = in.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private static int tag(String id) {
+        return id.charAt(0) << 24 | id.charAt(1) << 16 | id.charAt(2) << 8 | id.charAt(3);
+    }
+}
@@ -0,0 +1,53 @@
+package com.lancall;
+
+import java.util.Locale;
+
+/**
+ * أداة القياس - تسخين ثم عدة جولات مقاسة، ويؤخذ أفضلها
+ * Minimal harness for the {@code main}-driven benchmarks in this source
+ * set: warm up, then time several rounds and keep the best, which is the
+ * least disturbed by GC and the scheduler. Run a benchmark's {@code main}
+ * from the IDE, or with {@code java -cp} over the unit test classpath.
+ */
+final class Bench {
+
+    /** عملية مقاسة - The measured operation; its result is kept so the JIT cannot drop it. */
+    interface Op {
+        long run(int iteration);
+    }
+
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    static volatile long sink;
+
+    private Bench() {
+    }
+
+    /** نانوثانية لكل عملية - Best-of-rounds nanoseconds per call of {@code op}. */
+    static double nanosPerOp(int iterations, Op op) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+            long result = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                result += op.run(i);
+            }
+            long elapsed = System.nanoTime() - start;
+            sink = result;
+            if (round >= WARM_UP_ROUNDS) {
+                best = Math.min(best, (double) elapsed / iterations);
+            }
+        }
+        return best;
+    }
+
+    /** مئين من عينات مرتبة - Percentile of sorted samples. */
+    static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+
+    static void print(String format, Object... args) {
+        System.out.println(String.format(Locale.ROOT, format, args));
+    }
+}
@@ -0,0 +1,131 @@
+package com.lancall;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * انحراف ساعة المرسل - ±100 جزء في المليون عبر المستقبل لربع ساعة
+ * A sender whose capture clock runs 100 ppm fast or slow against ours,
+ * over a jittery link, for a quarter of an hour. The receiver must
+ * estimate the skew, and the playout delay must stay flat instead of
+ * growing or shrinking by the skew (90 ms over the run) - with no dropped
+ * frames or concealment to get there.
+ */
+public class ClockDriftTest {
+
+    private static final int RATE = 16000;
+    private static final int PTIME = 20;
+    private static final int MINUTES = 15;
+    private static final int TICK_MS = 10; // دورة التشغيل - the playout callback
+    private static final int MAX_PACKET = 1500;
+
+    @Test
+    public void fastSender() {
+        run(100);
+    }
+
+    @Test
+    public void slowSender() {
+        run(-100);
+    }
+
+    @Test
+    public void matchedClocks() {
+        run(0);
+    }
+
+    private static void run(double ppm) {
+        double skew = ppm * 1e-6;
+        int samples = FramePacer.samplesPerFrame(RATE, PTIME);
+        int maxFrame = FramePacer.samplesPerFrame(RATE, FramePacer.MAX_PTIME_MS);
+        JitterBuffer buffer = new JitterBuffer(RATE, 64, MAX_PACKET, samples);
+        AudioReceiver receiver = new AudioReceiver(buffer, RATE, maxFrame, MAX_PACKET);
+        AudioPacketizer packetizer = new AudioPacketizer(AudioCodecs.create("PCMU"),
+                new FecEncoder(FecEncoder.MODE_OFF, FecEncoder.DEFAULT_GROUP_SIZE, MAX_PACKET), PTIME, 7, maxFrame);
+        AudioFrame captured = new AudioFrame(samples);
+        AudioFrame played = new AudioFrame(AudioReceiver.getMaxPlayoutSamples(maxFrame));
+        ByteBuffer packet = ByteBuffer.allocate(MAX_PACKET);
+        short[] speech = TestSignals.speech(RATE, 10);
+        Random random = new Random(5);
+
+        // الشبكة: ارتعاش 0-4 مللي ثانية ونحو 10% من الحزم حتى 40 - jitter with occasional 40 ms spikes
+        PriorityQueue<Arrival> inFlight = new PriorityQueue<>((a, b) -> Long.compare(a.atMs, b.atMs));
+        long frame = 0;
+        long device = 0; // عينات في مخزن جهاز التشغيل - queued in the audio device
+        double[] minuteDelay = new double[MINUTES];
+        int[] minuteTicks = new int[MINUTES];
+        long endMs = MINUTES * 60_000L;
+        for (long now = 0; now < endMs; now += TICK_MS) {
+            // الإطار k يلتقط عند k × ptime بساعة المرسل - frame k leaves at sender time (k + 1) × ptime
+            while ((frame + 1) * PTIME / (1 + skew) <= now + 200) {
+                int offset = (int) ((frame * samples) % (speech.length - samples));
+                System.arraycopy(speech, offset, captured.pcm, 0, samples);
+                captured.samples = samples;
+                captured.mediaTimestamp = frame * samples;
+                captured.speech = true;
+                int length = packetizer.packetize(captured, packet);
+                double sentMs = (frame + 1) * PTIME / (1 + skew);
+                double delayMs = 2 + (random.nextDouble() < 0.1 ? 40 : 4) * random.nextDouble();
+                inFlight.add(new Arrival((long) Math.floor(sentMs + delayMs), packet, length));
+                frame++;
+            }
+            while (!inFlight.isEmpty() && inFlight.peek().atMs <= now) {
+                Arrival arrival = inFlight.poll();
+                receiver.admit(ByteBuffer.wrap(arrival.data), arrival.data.length, arrival.atMs);
+            }
+
+            // الجهاز يستهلك 10 مللي ثانية ويعاد ملؤه إلى 20 - the device plays 10 ms and is topped up to 20
+            device = Math.max(0, device - RATE * TICK_MS / 1000);
+            while (device < 2 * RATE * TICK_MS / 1000) {
+                int produced = receiver.playout(now, played);
+                if (produced == 0) {
+                    break;
+                }
+                device += produced;
+            }
+            double delayMs = buffer.getBufferedMs()
+                    + (receiver.getStretcher().getQueuedSamples() + device) * 1000.0 / RATE;
+            int minute = (int) (now / 60_000);
+            minuteDelay[minute] += delayMs;
+            minuteTicks[minute]++;
+        }
+
+        // الارتعاش وحده يحرك المتوسط بضع مللي ثانية، والانحراف غير المصحح 6 في الدقيقة
+        // jitter alone moves the mean a few ms; uncorrected skew would add 6 ms a minute
+        double first = minuteDelay[1] / minuteTicks[1]; // بعد استقرار التقدير - once the estimate has settled
+        double worst = 0;
+        StringBuilder perMinute = new StringBuilder();
+        for (int m = 0; m < MINUTES; m++) {
+            double mean = minuteDelay[m] / minuteTicks[m];
+            perMinute.append(Math.round(mean)).append(' ');
+            if (m >= 1) {
+                worst = Math.max(worst, Math.abs(mean - first));
+            }
+        }
+        double estimated = receiver.getDriftEstimator().getDriftPpm();
+        Bench.print("skew %+4.0f ppm: estimated %+6.1f ppm, delay per minute (ms) %s, dropped %d, lost %d", ppm,
+                estimated, perMinute, buffer.getFramesDropped(), buffer.getFramesLost());
+        assertEquals("estimated skew", ppm, estimated, 5);
+        assertTrue("delay moved by " + worst + " ms", worst <= 15);
+        assertEquals("dropped frames", 0, buffer.getFramesDropped());
+        assertEquals("lost frames", 0, buffer.getFramesLost());
+    }
+
+    /** حزمة على الشبكة - A datagram in flight, copied out of the packetizer's buffer. */
+    private static final class Arrival {
+        final long atMs;
+        final byte[] data;
+
+        Arrival(long atMs, ByteBuffer packet, int length) {
+            this.atMs = atMs;
+            this.data = new byte[length];
+            System.arraycopy(packet.array(), 0, data, 0, length);
+        }
+    }
+}
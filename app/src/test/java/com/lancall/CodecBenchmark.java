@@ -0,0 +1,34 @@
+package com.lancall;
+
+import java.nio.ByteBuffer;
+
+/**
+ * قياس كلفة الترميزات - نانوثانية لترميز وفك إطار 20 مللي ثانية، مع حجمه ومعدله
+ * Encode and decode cost of every codec per 20 ms frame at 16 kHz, next to
+ * its payload size and bitrate, so the CPU spent can be weighed against
+ * the bandwidth saved over L16.
+ */
+public class CodecBenchmark {
+
+    private static final int RATE = 16000;
+    private static final int PTIME = 20;
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) {
+        int samples = FramePacer.samplesPerFrame(RATE, PTIME);
+        short[] speech = TestSignals.speech(RATE, 2);
+        short[] pcm = new short[samples];
+        System.arraycopy(speech, RATE / 2, pcm, 0, samples); // إطار من داخل مقطع كلام
+        short[] decoded = new short[samples];
+        ByteBuffer payload = ByteBuffer.allocate(2 * samples + 16);
+
+        Bench.print("%-10s %7s %13s %11s %11s", "codec", "bytes", "payload kbps", "encode ns", "decode ns");
+        for (String name : AudioCodecs.getSupportedNames()) {
+            AudioCodec codec = AudioCodecs.create(name);
+            int length = codec.encode(pcm, 0, samples, payload, 0);
+            double encode = Bench.nanosPerOp(ITERATIONS, i -> codec.encode(pcm, 0, samples, payload, 0));
+            double decode = Bench.nanosPerOp(ITERATIONS, i -> codec.decode(payload, 0, length, decoded, 0));
+            Bench.print("%-10s %7d %13.1f %11.0f %11.0f", name, length, length * 8.0 / PTIME, encode, decode);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.lancall;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * محاكي شبكة داخل JVM - عنق زجاجة بطابور drop-tail وحركة منافسة
+ * In-JVM network emulator for the congestion control: sender, a drop-tail
+ * bottleneck (link rate, queue size, optional cross traffic for a while),
+ * then the receiver; its reports come back over an uncongested path. Each
+ * scenario runs once at a fixed rate, which must congest the link, and
+ * once with the {@link BitrateController} adapting, which must keep the
+ * queue short and lose nothing.
+ */
+public class CongestionControlTest {
+
+    private static final int PTIME = 20;
+    private static final int MTU = 1500;
+    private static final int IP_UDP_OVERHEAD = 28;
+    private static final int CROSS_PACKET_BYTES = 1228;
+    private static final int BASE_DELAY_MS = 3;
+    private static final int REPORT_INTERVAL_MS = 1000;
+
+    @Test
+    public void crossTrafficOnAShortLink() {
+        check(new Scenario("16 kHz L16, 400 kbps link, 250 kbps cross 20-60 s", 16000, "L16", 400_000, 60_000,
+                250_000, 20_000, 60_000, 90_000));
+    }
+
+    @Test
+    public void crossTrafficAtFullBand() {
+        check(new Scenario("48 kHz L16, 1.5 Mbps link, 1 Mbps cross 20-50 s", 48000, "L16", 1_500_000, 150_000,
+                1_000_000, 20_000, 50_000, 80_000));
+    }
+
+    @Test
+    public void bottleneckBelowTheNegotiatedRate() {
+        check(new Scenario("16 kHz PCMU, 120 kbps link", 16000, "PCMU", 120_000, 30_000, 0, 0, 0, 60_000));
+    }
+
+    private static void check(Scenario scenario) {
+        Result fixed = run(scenario, false);
+        Result adaptive = run(scenario, true);
+        Bench.print("%s%n  fixed:    %s%n  adaptive: %s", scenario.name, fixed, adaptive);
+        // المحاكي يزدحم فعلاً بالمعدل الثابت - the emulated link really does congest at the fixed rate
+        assertTrue("fixed rate never congested: " + fixed, fixed.delayP95Ms > 300 && fixed.mediaDropped > 0.01);
+        assertTrue("queueing delay " + adaptive, adaptive.delayP95Ms <= 100);
+        assertTrue("dropped at the bottleneck " + adaptive, adaptive.mediaDropped <= 0.005);
+        assertTrue("lost at playout " + adaptive, adaptive.playoutLossPercent <= 0.5);
+        assertTrue("never stepped down " + adaptive, adaptive.stepsDown > 0);
+    }
+
+    private static Result run(Scenario scenario, boolean adaptive) {
+        int rate = scenario.sampleRate;
+        int samples = FramePacer.samplesPerFrame(rate, PTIME);
+        int maxFrame = FramePacer.samplesPerFrame(rate, FramePacer.MAX_PTIME_MS);
+        AudioCodec encoder = AudioCodecs.create(scenario.codec);
+        FecEncoder fec = new FecEncoder(FecEncoder.MODE_OFF, FecEncoder.DEFAULT_GROUP_SIZE, maxFrame * 2);
+        AudioPacketizer packetizer = new AudioPacketizer(encoder, fec, PTIME, 7, maxFrame);
+        CallStatistics senderStatistics = new CallStatistics(rate);
+        senderStatistics.setLocalStreamId(7);
+        BitrateController controller = new BitrateController(rate, scenario.codec, AudioCodecs.getSupportedNames(),
+                PTIME, FecEncoder.MODE_OFF, MTU);
+        JitterBuffer buffer = new JitterBuffer(rate, 64, MTU, samples);
+        AudioReceiver receiver = new AudioReceiver(buffer, rate, maxFrame, MTU);
+        CallStatistics receiverStatistics = receiver.getStatistics();
+        receiverStatistics.setLocalStreamId(9);
+
+        AudioFrame frame = new AudioFrame(maxFrame);
+        AudioFrame played = new AudioFrame(AudioReceiver.getMaxPlayoutSamples(maxFrame));
+        ByteBuffer packet = ByteBuffer.allocate(4 * maxFrame + 64);
+        ByteBuffer control = ByteBuffer.allocate(64);
+        ByteBuffer delivered = ByteBuffer.allocate(8192);
+        MediaReport report = new MediaReport();
+        MediaReport parsed = new MediaReport();
+        Bottleneck link = new Bottleneck(scenario.linkBps, scenario.queueBytes);
+        ArrayDeque<Datagram> reverse = new ArrayDeque<>(); // تقارير المستقبل، بلا ازدحام
+        Random random = new Random(3);
+
+        long[] delays = new long[(int) (scenario.durationMs / PTIME) * 4];
+        int delayCount = 0;
+        long mediaSent = 0;
+        long mediaDropped = 0;
+        long nextSenderReport = 0;
+        long nextReceiverReport = 0;
+        long receiverOveruse = 0;
+        long senderOveruse = 0;
+        long reportsSeen = 0;
+        double crossCredit = 0;
+        long timestamp = 0;
+        long start = 1_000_000;
+        for (long t = 0; t < scenario.durationMs; t++) {
+            long now = start + t;
+            if (t % PTIME == 0) {
+                // المرسل: تقرير للطرف الآخر ثم إطار - the sender's own report (for RTT), then a frame
+                if (now >= nextSenderReport || senderStatistics.getOveruseEvents() != senderOveruse) {
+                    senderOveruse = senderStatistics.getOveruseEvents();
+                    senderStatistics.fillReport(report, now);
+                    link.offer(control, packetizer.packetizeReport(report, timestamp, control), now, false);
+                    nextSenderReport = now + REPORT_INTERVAL_MS;
+                }
+                long reports = senderStatistics.getReportsReceived();
+                if (adaptive && reports != reportsSeen) {
+                    reportsSeen = reports;
+                    if (controller.onReport(now, senderStatistics.getRemoteEstimateBps(),
+                            senderStatistics.isRemoteOveruse(), senderStatistics.getRemoteFractionLost())) {
+                        String codec = controller.getLevel().codecName;
+                        if (!codec.equals(encoder.getName())) {
+                            encoder = AudioCodecs.create(codec);
+                        }
+                        if (!controller.getFecMode().equals(fec.getMode())) {
+                            fec = new FecEncoder(controller.getFecMode(), FecEncoder.DEFAULT_GROUP_SIZE, maxFrame * 2);
+                        }
+                        packetizer.reconfigure(encoder, fec);
+                        packetizer.setFramesPerPacket(controller.getFramesPerPacket());
+                    }
+                }
+                for (int i = 0; i < samples; i++) {
+                    frame.pcm[i] = TestSignals.clip(8000 * Math.sin(2 * Math.PI * 220 * (timestamp + i) / rate)
+                            + 500 * random.nextGaussian());
+                }
+                frame.samples = samples;
+                frame.mediaTimestamp = timestamp;
+                frame.speech = true;
+                timestamp += samples;
+                int length = packetizer.packetize(frame, packet);
+                if (length > 0) {
+                    mediaSent++;
+                    if (!link.offer(packet, length, now, true)) {
+                        mediaDropped++;
+                    }
+                }
+            }
+
+            // حركة منافسة بحزم 1200 بايت - cross traffic in full-size packets
+            if (t >= scenario.crossStartMs && t < scenario.crossEndMs) {
+                crossCredit += scenario.crossBps / 1000.0;
+                while (crossCredit >= CROSS_PACKET_BYTES * 8) {
+                    crossCredit -= CROSS_PACKET_BYTES * 8;
+                    link.offerCross(now);
+                }
+            }
+
+            for (Datagram datagram = link.poll(now); datagram != null; datagram = link.poll(now)) {
+                long arrival = now + BASE_DELAY_MS;
+                if (datagram.media && delayCount < delays.length) {
+                    delays[delayCount++] = arrival - datagram.sentMs;
+                }
+                delivered.clear();
+                delivered.put(datagram.data);
+                receiver.admit(delivered, datagram.data.length, arrival);
+            }
+            if (t % 10 == 0) {
+                receiver.playout(now, played);
+            }
+
+            // المستقبل يرد كل ثانية أو فور الازدحام - reports every second, or at once on overuse
+            if (now >= nextReceiverReport || receiverStatistics.getOveruseEvents() != receiverOveruse) {
+                receiverOveruse = receiverStatistics.getOveruseEvents();
+                receiverStatistics.fillReport(report, now);
+                report.write(control, 0);
+                byte[] data = new byte[MediaReport.SIZE];
+                control.get(0, data);
+                reverse.add(new Datagram(data, now + BASE_DELAY_MS, false));
+                nextReceiverReport = now + REPORT_INTERVAL_MS;
+            }
+            while (!reverse.isEmpty() && reverse.peek().sentMs <= now) {
+                Datagram back = reverse.poll();
+                parsed.parse(ByteBuffer.wrap(back.data), 0, back.data.length);
+                parsed.sourceStreamId = 7;
+                senderStatistics.onReport(parsed, now);
+            }
+        }
+
+        Arrays.sort(delays, 0, delayCount);
+        return new Result(delays[delayCount * 95 / 100], delays[delayCount - 1], (double) mediaDropped / mediaSent,
+                receiverStatistics.snapshot().playoutLossPercent, controller.getStepsDown(),
+                adaptive ? controller.getLevel().toString() : scenario.codec);
+    }
+
+    /** سيناريو - Link, cross traffic and call settings of one run. */
+    private static final class Scenario {
+        final String name;
+        final int sampleRate;
+        final String codec;
+        final int linkBps;
+        final int queueBytes;
+        final int crossBps;
+        final long crossStartMs;
+        final long crossEndMs;
+        final long durationMs;
+
+        Scenario(String name, int sampleRate, String codec, int linkBps, int queueBytes, int crossBps,
+                long crossStartMs, long crossEndMs, long durationMs) {
+            this.name = name;
+            this.sampleRate = sampleRate;
+            this.codec = codec;
+            this.linkBps = linkBps;
+            this.queueBytes = queueBytes;
+            this.crossBps = crossBps;
+            this.crossStartMs = crossStartMs;
+            this.crossEndMs = crossEndMs;
+            this.durationMs = durationMs;
+        }
+    }
+
+    private static final class Result {
+        final long delayP95Ms;
+        final long delayMaxMs;
+        final double mediaDropped;
+        final double playoutLossPercent;
+        final long stepsDown;
+        final String level;
+
+        Result(long delayP95Ms, long delayMaxMs, double mediaDropped, double playoutLossPercent, long stepsDown,
+                String level) {
+            this.delayP95Ms = delayP95Ms;
+            this.delayMaxMs = delayMaxMs;
+            this.mediaDropped = mediaDropped;
+            this.playoutLossPercent = playoutLossPercent;
+            this.stepsDown = stepsDown;
+            this.level = level;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "delay p95 %d ms max %d ms, dropped %.1f%%, playout loss %.1f%%, %d steps down, final %s",
+                    delayP95Ms, delayMaxMs, 100 * mediaDropped, playoutLossPercent, stepsDown, level);
+        }
+    }
+
+    /** حزمة - A datagram on the emulated path; cross traffic carries no data. */
+    private static final class Datagram {
+        final byte[] data;
+        final long sentMs;
+        final boolean media;
+
+        Datagram(byte[] data, long sentMs, boolean media) {
+            this.data = data;
+            this.sentMs = sentMs;
+            this.media = media;
+        }
+
+        int wireBytes() {
+            return data == null ? CROSS_PACKET_BYTES : data.length + IP_UDP_OVERHEAD;
+        }
+    }
+
+    /**
+     * عنق الزجاجة - Drop-tail queue in front of a fixed-rate link, served
+     * once per emulated millisecond.
+     */
+    private static final class Bottleneck {
+        private final ArrayDeque<Datagram> queue = new ArrayDeque<>();
+        private final int linkBps;
+        private final int queueBytes;
+        private int queued;
+        private double credit; // بتات يسمح الرابط بإرسالها
+
+        Bottleneck(int linkBps, int queueBytes) {
+            this.linkBps = linkBps;
+            this.queueBytes = queueBytes;
+        }
+
+        /** @return false if the queue was full and the datagram dropped */
+        boolean offer(ByteBuffer packet, int length, long nowMs, boolean media) {
+            byte[] data = new byte[length];
+            packet.get(0, data);
+            return add(new Datagram(data, nowMs, media));
+        }
+
+        void offerCross(long nowMs) {
+            add(new Datagram(null, nowMs, false));
+        }
+
+        private boolean add(Datagram datagram) {
+            if (queued + datagram.wireBytes() > queueBytes) {
+                return false;
+            }
+            queue.add(datagram);
+            queued += datagram.wireBytes();
+            return true;
+        }
+
+        /** الحزمة التالية التي يتسع لها الرابط في هذه المللي ثانية، أو null */
+        Datagram poll(long nowMs) {
+            if (queue.isEmpty()) {
+                credit = Math.min(credit + linkBps / 1000.0, MTU * 8); // رابط خامل لا يدخر أكثر من حزمة
+                return null;
+            }
+            credit += linkBps / 1000.0;
+            while (!queue.isEmpty()) {
+                Datagram head = queue.peek();
+                if (credit < head.wireBytes() * 8) {
+                    return null;
+                }
+                credit -= head.wireBytes() * 8;
+                queued -= head.wireBytes();
+                queue.poll();
+                if (head.data != null) {
+                    return head;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.lancall;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * إلغاء الصدى دون اتصال - مسارات صدى اصطناعية وقياس ERLE والكلفة
+ * Offline echo cancellation: the far end is played through synthetic
+ * echo paths (bulk delay plus a decaying room tail) into a noisy
+ * microphone, and the canceller's echo return loss enhancement and CPU per
+ * frame are measured once it has converged.
+ */
+public class EchoCancellerTest {
+
+    private static final int RATE = 16000;
+    private static final int FRAME = 320; // 20 مللي ثانية
+    private static final long FRAME_NANOS = 20_000_000L;
+
+    @Test
+    public void cancelsEchoAcrossDelaysAndTails() {
+        for (int delayMs : new int[] {40, 150, 280}) {
+            for (int tailMs : new int[] {20, 50}) {
+                Echo echo = new Echo(delayMs, tailMs, 10);
+                EchoCanceller canceller = new EchoCanceller(RATE, FRAME);
+                long nanos = 0;
+                int measured = 0;
+                for (int f = 0; f < echo.frames(); f++) {
+                    long start = System.nanoTime();
+                    echo.step(canceller, f, false);
+                    if (f >= 50) {
+                        nanos += System.nanoTime() - start;
+                        measured++;
+                    }
+                }
+                double erle = echo.erleDb(4, 10);
+                Bench.print("delay %3d ms tail %2d ms: estimated %3d ms, ERLE %.1f dB, %.0f us/frame", delayMs,
+                        tailMs, canceller.getDelayMs(), erle, nanos / 1000.0 / measured);
+                assertTrue(String.format(Locale.ROOT, "ERLE %.1f dB at %d ms", erle, delayMs), erle >= 15);
+                assertTrue("delay " + canceller.getDelayMs(), Math.abs(canceller.getDelayMs() - delayMs) <= 15);
+                assertTrue("over the frame budget", nanos / measured < FRAME_NANOS / 4);
+            }
+        }
+    }
+
+    @Test
+    public void staysAlignedThroughMute() {
+        // 5 ثوان تقارب، 3 ثوان كتم والطرف البعيد يتكلم، ثم 4 ثوان - converge, mute 3 s, resume
+        Echo echo = new Echo(100, 20, 12);
+        EchoCanceller canceller = new EchoCanceller(RATE, FRAME);
+        for (int f = 0; f < echo.frames(); f++) {
+            int second = f * FRAME / RATE;
+            echo.step(canceller, f, second >= 5 && second < 8);
+        }
+        double erle = echo.erleDb(8, 9);
+        Bench.print("100 ms path, 3 s mute: ERLE %.1f dB in the first second after unmute", erle);
+        assertTrue(String.format(Locale.ROOT, "ERLE after unmute %.1f dB", erle), erle >= 15);
+    }
+
+    /** مسار صدى اصطناعي - Far end, microphone and the energy of both sides of the canceller. */
+    private static final class Echo {
+        final short[] far;
+        final short[] mic;
+        final double[] micEnergy;
+        final double[] outEnergy;
+        final short[] frame = new short[FRAME];
+
+        Echo(int delayMs, int tailMs, int seconds) {
+            far = TestSignals.talker(RATE, seconds, 900, 3.7, 0, 5);
+            mic = new short[far.length];
+            Random random = new Random(7);
+            int delay = delayMs * RATE / 1000;
+            double[] path = new double[tailMs * RATE / 1000];
+            for (int j = 0; j < path.length; j++) {
+                path[j] = random.nextGaussian() * Math.exp(-5.0 * j / path.length) * 0.25;
+            }
+            for (int i = 0; i < mic.length; i++) {
+                double value = 20 * random.nextGaussian();
+                for (int j = 0; j < path.length && i - delay - j >= 0; j++) {
+                    value += path[j] * far[i - delay - j];
+                }
+                mic[i] = TestSignals.clip(value);
+            }
+            micEnergy = new double[seconds];
+            outEnergy = new double[seconds];
+        }
+
+        int frames() {
+            return far.length / FRAME;
+        }
+
+        /** إطار واحد: تشغيل ثم التقاط - play frame {@code f}, then capture it */
+        void step(EchoCanceller canceller, int f, boolean muted) {
+            int offset = f * FRAME;
+            long playedNanos = (f + 1) * FRAME_NANOS;
+            canceller.onFarEnd(far, offset, FRAME, offset, playedNanos);
+            System.arraycopy(mic, offset, frame, 0, FRAME);
+            if (muted) {
+                canceller.skip(FRAME);
+                return;
+            }
+            canceller.process(frame, 0, FRAME, playedNanos);
+            int second = offset / RATE;
+            for (int i = 0; i < FRAME; i++) {
+                micEnergy[second] += (double) mic[offset + i] * mic[offset + i];
+                outEnergy[second] += (double) frame[i] * frame[i];
+            }
+        }
+
+        /** ERLE over seconds [from, to) - تقليل الصدى في المجال */
+        double erleDb(int from, int to) {
+            double in = 0;
+            double out = 0;
+            for (int s = from; s < to; s++) {
+                in += micEnergy[s];
+                out += outEnergy[s];
+            }
+            return 10 * Math.log10(in / out);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.lancall;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * استرجاع FEC تحت أنماط فقدان - فقدان منفرد، أزواج متتالية، وفقدان عشوائي
+ * Sends speech through the packetizer and the receiver with RED and XOR
+ * parity under isolated, paired and random loss, and counts the lost media
+ * frames FEC rebuilt before playout needed them.
+ */
+public class FecRecoveryTest {
+
+    private static final int RATE = 16000;
+    private static final int PTIME = 20;
+    private static final int MAX_PACKET = 1500;
+    private static final int FRAMES = 10_000;
+
+    /** نمط الفقدان - Whether media packet {@code index} (or a parity packet) is dropped. */
+    private interface LossPattern {
+        boolean dropMedia(int index);
+
+        boolean dropParity();
+    }
+
+    @Test
+    public void isolatedLossIsAlwaysRecovered() {
+        LossPattern everyTenth = pattern(i -> i % 10 == 5);
+        assertEquals(1.0, run(FecEncoder.MODE_XOR, "isolated", everyTenth), 0.0);
+        assertEquals(1.0, run(FecEncoder.MODE_RED, "isolated", everyTenth), 0.0);
+    }
+
+    @Test
+    public void pairedLossIsHalfRecoveredByRed() {
+        // زوجان متتاليان: الحزمة بعدهما تحمل الثاني فقط - the next packet carries only the second
+        LossPattern pairs = pattern(i -> i % 20 == 9 || i % 20 == 10);
+        assertEquals(0.5, run(FecEncoder.MODE_RED, "pairs", pairs), 0.0);
+        // الزوج يقع دائماً في مجموعة تكافؤ واحدة - both frames fall in one parity group
+        assertEquals(0.0, run(FecEncoder.MODE_XOR, "pairs", pairs), 0.0);
+    }
+
+    @Test
+    public void randomLossIsMostlyRecovered() {
+        for (double loss : new double[] {0.02, 0.05, 0.10}) {
+            Random random = new Random(3);
+            LossPattern uniform = new LossPattern() {
+                @Override
+                public boolean dropMedia(int index) {
+                    return random.nextDouble() < loss;
+                }
+
+                @Override
+                public boolean dropParity() {
+                    return random.nextDouble() < loss;
+                }
+            };
+            String name = String.format(Locale.ROOT, "random %.0f%%", loss * 100);
+            double xor = run(FecEncoder.MODE_XOR, name, uniform);
+            double red = run(FecEncoder.MODE_RED, name, uniform);
+            // XOR يحتاج بقية المجموعة والتكافؤ: نحو (1 - p)^4 - needs the other frames and the parity
+            assertTrue(name + " XOR recovered " + xor, xor >= 1.0 - 5 * loss);
+            // RED يحتاج الحزمة التالية فقط - needs only the next packet
+            assertTrue(name + " RED recovered " + red, red >= 1.0 - 2 * loss);
+        }
+    }
+
+    /** @return share of the lost media frames that FEC rebuilt */
+    private static double run(String mode, String name, LossPattern loss) {
+        int samples = FramePacer.samplesPerFrame(RATE, PTIME);
+        JitterBuffer buffer = new JitterBuffer(RATE, 64, MAX_PACKET, samples);
+        AudioReceiver receiver = new AudioReceiver(buffer, RATE, samples, MAX_PACKET);
+        AudioPacketizer packetizer = new AudioPacketizer(AudioCodecs.create("PCMU"),
+                new FecEncoder(mode, FecEncoder.DEFAULT_GROUP_SIZE, MAX_PACKET), PTIME, 1, samples);
+        short[] speech = TestSignals.speech(RATE, 10);
+        AudioFrame frame = new AudioFrame(samples);
+        AudioFrame played = new AudioFrame(AudioReceiver.getMaxPlayoutSamples(samples));
+        ByteBuffer packet = ByteBuffer.allocate(MAX_PACKET);
+        ByteBuffer parity = ByteBuffer.allocate(MAX_PACKET);
+
+        int lost = 0;
+        for (int k = 0; k < FRAMES; k++) {
+            long nowMs = (long) k * PTIME;
+            System.arraycopy(speech, (k * samples) % (speech.length - samples), frame.pcm, 0, samples);
+            frame.samples = samples;
+            frame.mediaTimestamp = (long) k * samples;
+            frame.speech = true; // كل إطار حزمة وسائط - no DTX gaps in this test
+            int length = packetizer.packetize(frame, packet);
+            if (loss.dropMedia(k)) {
+                lost++;
+            } else {
+                receiver.admit(packet, length, nowMs);
+            }
+            int parityLength = packetizer.packetizeParity(parity);
+            if (parityLength > 0 && !loss.dropParity()) {
+                receiver.admit(parity, parityLength, nowMs);
+            }
+            receiver.playout(nowMs, played);
+        }
+
+        double recovered = (double) receiver.getFec().getFramesRecovered() / lost;
+        System.out.println(String.format(Locale.ROOT, "%s %s: %d media frames lost, %d recovered (%.1f%%)", mode,
+                name, lost, receiver.getFec().getFramesRecovered(), 100 * recovered));
+        return recovered;
+    }
+
+    private interface IndexPredicate {
+        boolean test(int index);
+    }
+
+    /** فقدان حتمي للوسائط فقط - Deterministic media loss, parity always delivered. */
+    private static LossPattern pattern(IndexPredicate media) {
+        return new LossPattern() {
+            @Override
+            public boolean dropMedia(int index) {
+                return media.test(index);
+            }
+
+            @Override
+            public boolean dropParity() {
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package com.lancall;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * اختيار مدة الحزمة ضمن MTU - Checks that fitPtimeToMtu never hands back a
+ * ptime whose datagram would fragment.
+ */
+public class FramePacerTest {
+
+    @Test
+    public void wideBandPcmUnderRedDoesNotFit() {
+        AudioCodec l16 = new Pcm16Codec();
+        int redMtu = FecEncoder.getFrameMtu(FecEncoder.MODE_RED, FramePacer.DEFAULT_MTU);
+        // 10 مللي ثانية عند 48 كيلوهرتز = 960 بايت، مرتين في حزمة RED - twice in one RED datagram
+        assertEquals(FramePacer.PTIME_DOES_NOT_FIT, FramePacer.fitPtimeToMtu(20, 48000, l16, redMtu));
+        // دون RED يتسع إطار 10 مللي ثانية - a single 10 ms frame fits
+        assertEquals(10, FramePacer.fitPtimeToMtu(20, 48000, l16, FramePacer.DEFAULT_MTU));
+    }
+
+    @Test
+    public void largestFittingPtimeIsChosen() {
+        AudioCodec pcmu = AudioCodecs.create(G711Codec.NAME_MU_LAW);
+        int redMtu = FecEncoder.getFrameMtu(FecEncoder.MODE_RED, FramePacer.DEFAULT_MTU);
+        assertEquals(60, FramePacer.fitPtimeToMtu(60, 8000, pcmu, FramePacer.DEFAULT_MTU));
+        assertEquals(20, FramePacer.fitPtimeToMtu(20, 8000, pcmu, redMtu));
+        // 16 كيلوهرتز L16: 40 مللي ثانية = 1280 بايت تتسع، 60 لا - 60 ms would fragment
+        assertEquals(40, FramePacer.fitPtimeToMtu(60, 16000, new Pcm16Codec(), FramePacer.DEFAULT_MTU));
+    }
+}
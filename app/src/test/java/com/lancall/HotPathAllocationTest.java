@@ -0,0 +1,66 @@
+package com.lancall;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+/**
+ * المسار الساخن بلا حجز ذاكرة - يعد البايتات المحجوزة في الحالة المستقرة لكل ترميز
+ * Counts the heap bytes the steady-state media path allocates, for every
+ * codec: capture stages, packetizer with FEC, receiver, jitter buffer,
+ * concealment and playout, run in-process by {@link AudioPipelineRunner}
+ * with 5% loss. Any allocation per frame fails the test.
+ */
+public class HotPathAllocationTest {
+
+    private static final int RATE = 16000;
+    private static final int PTIME = 20;
+    private static final int MAX_PACKET = 1500;
+    private static final int WARM_UP_FRAMES = 20_000; // حتى يستقر المترجم - until the JIT settles
+    private static final int MEASURED_FRAMES = 10_000;
+
+    @Test
+    public void steadyStateDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long thread = Thread.currentThread().getId();
+
+        for (String codec : AudioCodecs.getSupportedNames()) {
+            AudioPipelineRunner runner = createRunner(codec);
+            runner.run(WARM_UP_FRAMES);
+
+            long probe = threads.getThreadAllocatedBytes(thread);
+            long overhead = threads.getThreadAllocatedBytes(thread) - probe; // كلفة القياس نفسه
+            long before = threads.getThreadAllocatedBytes(thread);
+            long frames = runner.run(MEASURED_FRAMES);
+            long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+            assertEquals(MEASURED_FRAMES, frames);
+            assertEquals(codec + ": bytes allocated over " + frames + " frames", 0, allocated);
+        }
+    }
+
+    private static AudioPipelineRunner createRunner(String codec) {
+        int maxFrame = FramePacer.samplesPerFrame(RATE, FramePacer.MAX_PTIME_MS);
+        JitterBuffer buffer = new JitterBuffer(RATE, 64, MAX_PACKET, maxFrame / 3);
+        AudioReceiver receiver = new AudioReceiver(buffer, RATE, maxFrame, MAX_PACKET);
+        AudioPipeline capture = new AudioPipeline()
+                .add("aec", new EchoCanceller(RATE, maxFrame))
+                .add("ns", new NoiseSuppressor(RATE, NoiseSuppressor.LEVEL_MODERATE))
+                .add("vad", new VoiceActivityDetector(RATE))
+                .add("agc", AutomaticGainControl.forCapture(RATE));
+        AudioPipeline playout = new AudioPipeline().add("agc", AutomaticGainControl.forPlayout(RATE));
+        AudioPacketizer packetizer = new AudioPacketizer(AudioCodecs.create(codec),
+                new FecEncoder(FecEncoder.MODE_XOR, FecEncoder.DEFAULT_GROUP_SIZE, MAX_PACKET), PTIME, 7, maxFrame);
+        AudioPipelineRunner runner = new AudioPipelineRunner(new MemoryAudioSource(TestSignals.speech(RATE, 10), RATE,
+                true), capture, packetizer, receiver, playout, new MemoryAudioSink(RATE, RATE), PTIME, maxFrame,
+                MAX_PACKET);
+        runner.setPacketLoss(0.05, 1);
+        return runner;
+    }
+}
@@ -0,0 +1,224 @@
+package com.lancall;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * مخزن الارتعاش تحت آثار وصول مصطنعة - شبكة محلية نظيفة، ارتعاش متقطع،
+ * إعادة ترتيب، تكرار، ووصول متأخر بعد نفاد المخزن
+ * Replays synthetic arrival traces (clean LAN, bursty jitter, reordering,
+ * duplicates, a late frame after an underrun) into the jitter buffer, polling
+ * once per frame period, and checks the target delay, the late and duplicate
+ * counters, and that playout never goes back to an earlier sequence.
+ */
+public class JitterBufferTest {
+
+    private static final int RATE = 8000;
+    private static final int PTIME = 20;
+    private static final int SAMPLES = RATE * PTIME / 1000;
+    private static final int FRAME_BYTES = SAMPLES * 2;
+
+    @Test
+    public void cleanLanStaysAtTheMinimumDelay() {
+        Replay replay = new Replay();
+        Random random = new Random(1);
+        List<long[]> trace = new ArrayList<>();
+        for (int seq = 0; seq < 3000; seq++) {
+            trace.add(new long[] {seq * PTIME + 1 + random.nextInt(2), seq});
+        }
+        replay.run(trace);
+
+        JitterBuffer buffer = replay.buffer;
+        replay.print("clean LAN");
+        assertTrue("target " + buffer.getTargetDelayMs(), buffer.getTargetDelayMs() <= 2 * PTIME);
+        assertEquals(0, buffer.getFramesLost());
+        assertEquals(0, buffer.getFramesLate());
+        assertEquals(0, buffer.getUnderruns());
+    }
+
+    @Test
+    public void burstyJitterGrowsTheDelayAndCalmShrinksItBack() {
+        Replay replay = new Replay();
+        List<long[]> trace = new ArrayList<>();
+        int seq = 0;
+        // 10 ث نظيفة - clean start
+        for (; seq < 500; seq++) {
+            trace.add(new long[] {seq * PTIME + 1, seq});
+        }
+        // 10 ث متقطعة: كل ثمانية إطارات تُحبس 120 مللي ثانية ثم تصل دفعة واحدة
+        // bursty: every eighth frame is held 120 ms and the frames behind it arrive together
+        for (; seq < 1000; seq++) {
+            int held = seq % 8;
+            long release = (seq - held) * PTIME + 120;
+            trace.add(new long[] {Math.max(seq * PTIME + 1, release), seq});
+        }
+        // 60 ث هادئة - calm again
+        for (; seq < 4000; seq++) {
+            trace.add(new long[] {seq * PTIME + 1, seq});
+        }
+
+        replay.checkpointAt(500 * PTIME, 1000 * PTIME, 4000 * PTIME - PTIME);
+        replay.run(trace);
+        long clean = replay.checkpoints[0];
+        long bursty = replay.checkpoints[1];
+        long calm = replay.checkpoints[2];
+        replay.print(String.format(Locale.ROOT, "bursty: target %d -> %d -> %d ms", clean, bursty, calm));
+
+        assertTrue("grew to " + bursty, bursty >= clean + 100);
+        assertTrue("shrank to " + calm, calm <= clean + PTIME);
+        assertEquals(0, replay.buffer.getFramesLate());
+    }
+
+    @Test
+    public void reorderedFramesPlayInSequence() {
+        Replay replay = new Replay();
+        List<long[]> trace = new ArrayList<>();
+        for (int seq = 0; seq < 2000; seq++) {
+            // كل سابع زوج يصل معكوساً - every seventh pair arrives swapped, 5 ms apart
+            int sent = seq % 7 == 3 ? seq + 1 : seq % 7 == 4 ? seq - 1 : seq;
+            trace.add(new long[] {seq * PTIME + 5, sent});
+        }
+        replay.run(trace);
+
+        JitterBuffer buffer = replay.buffer;
+        replay.print("reorder");
+        // أول زوج معكوس يسبق تكيف العمق فقط - only swaps before the delay adapts miss playout
+        assertTrue("late " + buffer.getFramesLate(), buffer.getFramesLate() <= 2);
+        assertEquals(buffer.getFramesLate(), buffer.getFramesLost());
+        assertTrue("target " + buffer.getTargetDelayMs(), buffer.getTargetDelayMs() > 2 * PTIME);
+    }
+
+    @Test
+    public void duplicatesAreCountedAndPlayedOnce() {
+        Replay replay = new Replay();
+        List<long[]> trace = new ArrayList<>();
+        int duplicates = 0;
+        for (int seq = 0; seq < 2000; seq++) {
+            trace.add(new long[] {seq * PTIME + 1, seq});
+            if (seq % 10 == 0) {
+                trace.add(new long[] {seq * PTIME + 3, seq}); // نسخة ثانية قبل التشغيل - copy before playout
+                duplicates++;
+            }
+        }
+        replay.run(trace);
+
+        JitterBuffer buffer = replay.buffer;
+        replay.print("duplicates");
+        assertEquals(duplicates, buffer.getFramesDuplicate());
+        assertEquals(0, buffer.getFramesLate());
+        assertEquals(0, buffer.getFramesLost());
+    }
+
+    @Test
+    public void lateFrameAfterUnderrunIsRejected() {
+        Replay replay = new Replay();
+        for (int seq = 0; seq < 5; seq++) {
+            replay.put(seq, seq * PTIME);
+        }
+        long now = 0;
+        int result;
+        do {
+            result = replay.poll(now);
+            now += PTIME;
+        } while (result != JitterBuffer.RESULT_UNDERRUN);
+        assertEquals(4, replay.lastPlayed);
+
+        // الإطار 2 سبق تشغيله - frame 2 was already played before the underrun
+        assertFalse(replay.put(2, now));
+        assertEquals(1, replay.buffer.getFramesLate());
+        assertFalse(replay.put(4, now));
+        assertEquals(2, replay.buffer.getFramesLate());
+
+        for (int seq = 5; seq < 50; seq++) {
+            assertTrue(replay.put(seq, now));
+            result = replay.poll(now);
+            assertTrue("result " + result, result != JitterBuffer.RESULT_LOST);
+            now += PTIME;
+        }
+        assertTrue(replay.lastPlayed > 40);
+        assertEquals(0, replay.buffer.getFramesLost());
+    }
+
+    @Test
+    public void olderFrameBeforeFirstPlayoutIsKept() {
+        Replay replay = new Replay();
+        assertTrue(replay.put(5, 0));
+        assertTrue(replay.put(4, 1)); // ما زال التشغيل لم يبدأ - nothing played yet, may rewind
+        long now = 0;
+        while (replay.lastPlayed < 5 && now < 1000) {
+            replay.poll(now);
+            now += PTIME;
+        }
+        assertEquals(2, replay.played);
+        assertEquals(0, replay.buffer.getFramesLate());
+    }
+
+    /**
+     * مشغل الأثر - Feeds (arrival ms, seq) events and polls every frame
+     * period, asserting the played sequence only ever moves forward.
+     */
+    private static final class Replay {
+        final JitterBuffer buffer = new JitterBuffer(RATE, 64, FRAME_BYTES, SAMPLES);
+        final byte[] payload = new byte[FRAME_BYTES];
+        final byte[] out = new byte[FRAME_BYTES];
+        int lastPlayed = -1;
+        int played;
+        long[] checkpointTimes = new long[0];
+        long[] checkpoints = new long[0];
+
+        boolean put(int seq, long arrivalMs) {
+            return buffer.put(seq, (long) seq * SAMPLES, SAMPLES, 0, payload, 0, FRAME_BYTES, arrivalMs);
+        }
+
+        int poll(long nowMs) {
+            int result = buffer.poll(nowMs, out, 0);
+            if (result >= 0) {
+                int seq = (int) (buffer.getLastTimestamp() / SAMPLES);
+                assertTrue("played " + seq + " after " + lastPlayed, seq > lastPlayed);
+                lastPlayed = seq;
+                played++;
+            }
+            return result;
+        }
+
+        void checkpointAt(long... timesMs) {
+            checkpointTimes = timesMs;
+            checkpoints = new long[timesMs.length];
+        }
+
+        /** @param trace (arrival ms, seq) pairs in non-decreasing arrival order */
+        void run(List<long[]> trace) {
+            long end = trace.get(trace.size() - 1)[0];
+            int next = 0;
+            for (long now = 0; now <= end; now++) {
+                while (next < trace.size() && trace.get(next)[0] <= now) {
+                    put((int) trace.get(next)[1], now);
+                    next++;
+                }
+                if (now % PTIME == 0) {
+                    poll(now);
+                }
+                for (int i = 0; i < checkpointTimes.length; i++) {
+                    if (checkpointTimes[i] == now) {
+                        checkpoints[i] = buffer.getTargetDelayMs();
+                    }
+                }
+            }
+        }
+
+        void print(String name) {
+            System.out.println(String.format(Locale.ROOT,
+                    "%s: target %d ms, played %d, lost %d, late %d, duplicate %d, underruns %d", name,
+                    buffer.getTargetDelayMs(), buffer.getFramesPlayed(), buffer.getFramesLost(),
+                    buffer.getFramesLate(), buffer.getFramesDuplicate(), buffer.getUnderruns()));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.lancall;
+
+import java.util.Random;
+
+/**
+ * قياس كلفة كبت الضجيج - التحويل وحده ثم الكابت كاملاً لكل إطار 20 مللي ثانية
+ * Cost of the noise suppressor: the real FFT alone (forward plus inverse)
+ * at the sizes the suppressor uses, then the whole suppressor per 20 ms
+ * frame at every level and rate, as a share of the frame's real time.
+ */
+public class NoiseSuppressorBenchmark {
+
+    private static final int PTIME = 20;
+    private static final int FFT_ITERATIONS = 20_000;
+    private static final int FRAME_ITERATIONS = 5_000;
+
+    public static void main(String[] args) {
+        Bench.print("%-6s %14s", "fft", "fwd+inv ns");
+        for (int size : new int[] {256, 512, 1024}) {
+            RealFft fft = new RealFft(size);
+            float[] data = new float[size];
+            Random random = new Random(size);
+            for (int i = 0; i < size; i++) {
+                data[i] = (float) random.nextGaussian();
+            }
+            // inverse(forward(x)) == x، فالبيانات لا تنفجر عبر التكرار - the data round-trips unchanged
+            double nanos = Bench.nanosPerOp(FFT_ITERATIONS, i -> {
+                fft.forward(data);
+                fft.inverse(data);
+                return Float.floatToRawIntBits(data[i & (size - 1)]);
+            });
+            Bench.print("%-6d %14.0f", size, nanos);
+        }
+
+        Bench.print("");
+        Bench.print("%-6s %-9s %12s %9s", "rate", "level", "ns/frame", "% of rt");
+        String[] levels = {"off", "low", "moderate", "high"};
+        for (int rate : new int[] {8000, 16000, 48000}) {
+            int samples = FramePacer.samplesPerFrame(rate, PTIME);
+            short[] noisy = TestSignals.conversation(rate, 4, -45, 2).pcm;
+            int frames = noisy.length / samples;
+            short[] pcm = new short[samples];
+            for (int level = NoiseSuppressor.LEVEL_OFF; level <= NoiseSuppressor.LEVEL_HIGH; level++) {
+                NoiseSuppressor suppressor = new NoiseSuppressor(rate, level);
+                double nanos = Bench.nanosPerOp(FRAME_ITERATIONS, i -> {
+                    System.arraycopy(noisy, (i % frames) * samples, pcm, 0, samples);
+                    suppressor.process(pcm, 0, samples);
+                    return pcm[0];
+                });
+                double percent = 100 * nanos / (PTIME * 1_000_000.0);
+                Bench.print("%-6d %-9s %12.0f %8.2f%%", rate, levels[level], nanos, percent);
+            }
+        }
+    }
+}
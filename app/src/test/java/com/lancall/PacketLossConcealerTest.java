@@ -0,0 +1,107 @@
+package com.lancall;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * إخفاء الفقدان تحت أنماط فقدان مختلفة - جودة الإطارات البديلة، نعومة العودة، والزمن
+ * Runs voiced speech through {@link PacketLossConcealer} under random and
+ * bursty loss, and checks that concealed frames are closer to the lost
+ * audio than silence, that the output never steps further between two
+ * samples than the clean speech does (no click where concealment starts,
+ * loops or hands back), and that concealment fits easily in the 20 ms
+ * frame budget.
+ */
+public class PacketLossConcealerTest {
+
+    private static final int RATE = 16000;
+    private static final int SAMPLES = 320;
+    private static final int FRAMES = 3000;
+    private static final long FRAME_BUDGET_NANOS = 20_000_000L;
+
+    @Test
+    public void concealsRandomAndBurstLoss() {
+        short[] signal = voiced(SAMPLES * FRAMES);
+        double cleanStep = maxStep(signal, 0, signal.length);
+        // (احتمال بدء الفقدان، طول الدفعة) - (probability a loss starts, burst length)
+        double[][] patterns = {{0.05, 1}, {0.10, 1}, {0.03, 3}};
+        for (double[] pattern : patterns) {
+            PacketLossConcealer concealer = new PacketLossConcealer(RATE);
+            Random random = new Random(1);
+            short[] frame = new short[SAMPLES];
+            short last = 0;
+            double signalEnergy = 0;
+            double errorEnergy = 0;
+            double worstStep = 0;
+            long concealNanos = 0;
+            int lostFrames = 0;
+            int burstLeft = 0;
+            for (int k = 0; k < FRAMES; k++) {
+                if (burstLeft == 0 && k > 5 && random.nextDouble() < pattern[0]) {
+                    burstLeft = (int) pattern[1];
+                }
+                int start = k * SAMPLES;
+                if (burstLeft > 0) {
+                    burstLeft--;
+                    long begin = System.nanoTime();
+                    concealer.conceal(frame, 0, SAMPLES);
+                    concealNanos += System.nanoTime() - begin;
+                    lostFrames++;
+                    for (int i = 0; i < SAMPLES; i++) {
+                        double reference = signal[start + i];
+                        signalEnergy += reference * reference;
+                        errorEnergy += (frame[i] - reference) * (frame[i] - reference);
+                    }
+                } else {
+                    System.arraycopy(signal, start, frame, 0, SAMPLES);
+                    concealer.onGoodFrame(frame, 0, SAMPLES);
+                }
+                // الخطوات داخل الإطار وعند حده مع السابق - within the frame and across its start
+                worstStep = Math.max(worstStep, Math.max(Math.abs(frame[0] - last), maxStep(frame, 0, SAMPLES)));
+                last = frame[SAMPLES - 1];
+            }
+
+            double snrDb = 10 * Math.log10(signalEnergy / errorEnergy);
+            double microsPerFrame = concealNanos / 1000.0 / lostFrames;
+            System.out.println(String.format(Locale.ROOT,
+                    "loss %.0f%% x%d: %d frames lost, concealed SNR %.1f dB (silence 0 dB), largest step %.0f"
+                            + " (clean %.0f), %.1f us per concealed frame",
+                    pattern[0] * 100, (int) pattern[1], lostFrames, snrDb, worstStep, cleanStep, microsPerFrame));
+            assertTrue("concealment no better than silence: " + snrDb + " dB", snrDb >= 2.0);
+            assertTrue("click: step " + worstStep + ", clean " + cleanStep, worstStep <= 1.2 * cleanStep);
+            assertTrue("conceal takes " + microsPerFrame + " us", concealNanos / lostFrames < FRAME_BUDGET_NANOS / 10);
+        }
+    }
+
+    /** كلام مجهور - Voiced speech: harmonics of a pitch that changes every 250 ms, with a syllable envelope. */
+    private static short[] voiced(int samples) {
+        short[] pcm = new short[samples];
+        Random random = new Random(7);
+        double phase = 0;
+        double pitch = 140;
+        for (int i = 0; i < samples; i++) {
+            if (i % (RATE / 4) == 0) {
+                pitch = 100 + 120 * random.nextDouble();
+            }
+            phase += 2 * Math.PI * pitch / RATE;
+            double value = 0;
+            for (int harmonic = 1; harmonic <= 10; harmonic++) {
+                value += 3000 * Math.sin(harmonic * phase) / harmonic;
+            }
+            pcm[i] = TestSignals.clip(value * (0.6 + 0.4 * Math.sin(2 * Math.PI * 3 * i / RATE)));
+        }
+        return pcm;
+    }
+
+    private static double maxStep(short[] pcm, int offset, int samples) {
+        double step = 0;
+        for (int i = offset + 1; i < offset + samples; i++) {
+            step = Math.max(step, Math.abs(pcm[i] - pcm[i - 1]));
+        }
+        return step;
+    }
+}
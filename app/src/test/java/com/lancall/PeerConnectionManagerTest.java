@@ -0,0 +1,128 @@
+package com.lancall;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * اتصالات الأجهزة - أي اتصال يبقى حين يوجد اتصالان لنفس الجهاز
+ * Which connection survives when a peer ends up with two, on loopback:
+ * the manager listens on 127.0.0.1 and a hand-driven peer on 127.0.0.2.
+ * The superseded connection must be shut, not left open to keep itself
+ * alive with keep-alives.
+ */
+public class PeerConnectionManagerTest {
+
+    private static final String LOCAL = "127.0.0.1";
+    private static final String PEER = "127.0.0.2";
+    private static final int WAIT_MS = 2000;
+
+    private final BlockingQueue<SignalingProtocol.Message> received = new LinkedBlockingQueue<>();
+    private PeerConnectionManager manager;
+    private ServerSocket managerServer;
+    private ServerSocket peerServer;
+
+    @Before
+    public void setUp() throws IOException {
+        manager = new PeerConnectionManager(new PeerConnectionManager.Listener() {
+            @Override
+            public void onMessage(String peerIp, SignalingProtocol.Message message) {
+                received.add(message);
+            }
+
+            @Override
+            public void onDisconnected(String peerIp) {
+            }
+        });
+        managerServer = new ServerSocket(0, 8, InetAddress.getByName(LOCAL));
+        peerServer = new ServerSocket(0, 8, InetAddress.getByName(PEER));
+        Thread acceptor = new Thread(() -> {
+            while (!managerServer.isClosed()) {
+                try {
+                    manager.adopt(managerServer.accept());
+                } catch (IOException e) {
+                    return; // أغلق الخادم
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        manager.close();
+        managerServer.close();
+        peerServer.close();
+    }
+
+    @Test
+    public void crossedDialsKeepTheLowerAddressDial() throws IOException, InterruptedException {
+        // نطلب الطرف، وهو يطلبنا قبل أن يرى اتصالنا - both dial before either sees the other's
+        manager.send(PEER, peerServer.getLocalPort(), SignalingProtocol.createTextMessage(LOCAL, "from us"));
+        Socket ours = peerServer.accept();
+        Socket theirs = dialFromPeer();
+        SignalingFramer theirsFramer = framer(theirs);
+        theirsFramer.write(SignalingProtocol.createTextMessage(PEER, "in flight on the crossed dial"));
+
+        // اتصالنا من 127.0.0.1 هو الأدنى فيبقى؛ اتصاله يغلق للكتابة - ours wins, theirs is shut for writing
+        theirs.setSoTimeout(WAIT_MS);
+        assertEquals("crossed connection not shut", null, theirsFramer.read());
+        SignalingProtocol.Message inFlight = received.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertTrue("message on the crossed dial lost", inFlight != null);
+
+        manager.send(PEER, peerServer.getLocalPort(), SignalingProtocol.createTextMessage(LOCAL, "after"));
+        SignalingFramer oursFramer = framer(ours);
+        ours.setSoTimeout(WAIT_MS);
+        assertEquals(SignalingProtocol.MESSAGE_TYPE_TEXT_MESSAGE, oursFramer.read().type);
+        assertEquals(SignalingProtocol.MESSAGE_TYPE_TEXT_MESSAGE, oursFramer.read().type);
+
+        // الطرف يغلق جهته أيضاً فيغلق المدير المقبس - once the peer shuts its side too, it is closed
+        theirs.shutdownOutput();
+        assertEquals("crossed connection left open", -1, theirs.getInputStream().read());
+        theirs.close();
+        ours.close();
+    }
+
+    @Test
+    public void redialFromThePeerSupersedesTheOldConnection() throws IOException, InterruptedException {
+        Socket first = dialFromPeer();
+        framer(first).write(SignalingProtocol.createTextMessage(PEER, "first"));
+        assertTrue(received.poll(WAIT_MS, TimeUnit.MILLISECONDS) != null);
+
+        Socket second = dialFromPeer();
+        framer(second).write(SignalingProtocol.createTextMessage(PEER, "second"));
+        assertTrue(received.poll(WAIT_MS, TimeUnit.MILLISECONDS) != null);
+
+        first.setSoTimeout(WAIT_MS);
+        assertEquals("old connection not shut", -1, first.getInputStream().read());
+        manager.send(PEER, peerServer.getLocalPort(), SignalingProtocol.createKeepAlive(LOCAL));
+        second.setSoTimeout(WAIT_MS);
+        assertEquals(SignalingProtocol.MESSAGE_TYPE_KEEP_ALIVE, framer(second).read().type);
+        first.close();
+        second.close();
+    }
+
+    private Socket dialFromPeer() throws IOException {
+        Socket socket = new Socket();
+        socket.bind(new InetSocketAddress(PEER, 0));
+        socket.connect(new InetSocketAddress(LOCAL, managerServer.getLocalPort()), WAIT_MS);
+        return socket;
+    }
+
+    private static SignalingFramer framer(Socket socket) throws IOException {
+        return new SignalingFramer(socket.getInputStream(), socket.getOutputStream());
+    }
+}
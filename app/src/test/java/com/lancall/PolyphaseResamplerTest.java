@@ -0,0 +1,98 @@
+package com.lancall;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+/**
+ * جودة إعادة التشكيل - مسح جيبي عبر النطاق ورفض التداخل فوق نايكوست
+ * Resampler quality: a sine sweep across the passband is converted in
+ * 20 ms chunks and compared with the ideal sweep at the output rate
+ * (shifted by the filter delay), and a tone above the output Nyquist
+ * frequency must be filtered away rather than folded back.
+ */
+public class PolyphaseResamplerTest {
+
+    private static final int SECONDS = 4;
+    private static final double AMPLITUDE = 16000;
+    private static final int[][] PAIRS = {{48000, 16000}, {16000, 48000}, {44100, 16000}, {16000, 44100}};
+
+    @Test
+    public void sweepSurvivesConversion() {
+        for (int[] pair : PAIRS) {
+            double top = 0.85 * Math.min(pair[0], pair[1]) / 2; // حتى 85% من نايكوست الأدنى
+            double wide = sweepSnrDb(pair[0], pair[1], 100, top);
+            double voice = sweepSnrDb(pair[0], pair[1], 100, 3400);
+            Bench.print("%5d -> %5d: sweep SNR 100-%.0f Hz %.1f dB, 100-3400 Hz %.1f dB", pair[0], pair[1], top, wide,
+                    voice);
+            String name = String.format(Locale.ROOT, "%d -> %d", pair[0], pair[1]);
+            assertTrue(name + " wideband SNR " + wide, wide >= 70);
+            assertTrue(name + " voice band SNR " + voice, voice >= 70);
+        }
+    }
+
+    @Test
+    public void rejectsToneAboveOutputNyquist() {
+        int in = 48000;
+        int chunk = in / 50;
+        PolyphaseResampler resampler = new PolyphaseResampler(in, 16000, chunk);
+        short[] x = new short[chunk];
+        short[] y = new short[resampler.getMaxOutputSamples(chunk)];
+        double energy = 0;
+        int count = 0;
+        long t = 0;
+        for (int f = 0; f < 100; f++) {
+            for (int i = 0; i < chunk; i++, t++) {
+                x[i] = (short) Math.round(AMPLITUDE * Math.sin(2 * Math.PI * 9000 * t / in));
+            }
+            int produced = resampler.process(x, 0, chunk, y, 0);
+            if (f >= 5) {
+                for (int j = 0; j < produced; j++) {
+                    energy += (double) y[j] * y[j];
+                    count++;
+                }
+            }
+        }
+        double rejectionDb = 10 * Math.log10(AMPLITUDE * AMPLITUDE / 2 / Math.max(energy / count, 1e-9));
+        Bench.print("9 kHz tone 48000 -> 16000: %.1f dB below the input", rejectionDb);
+        assertTrue("alias rejection " + rejectionDb, rejectionDb >= 60);
+    }
+
+    /** نسبة الإشارة للخطأ لمسح من f0 إلى f1 - SNR of a linear sweep against its ideal resampled copy */
+    private static double sweepSnrDb(int in, int out, double f0, double f1) {
+        int chunk = in / 50;
+        PolyphaseResampler resampler = new PolyphaseResampler(in, out, chunk);
+        int n = in * SECONDS;
+        short[] x = new short[n];
+        double[] phase = new double[n];
+        double p = 0;
+        for (int i = 0; i < n; i++) {
+            p += 2 * Math.PI * (f0 + (f1 - f0) * i / n) / in;
+            phase[i] = p;
+            x[i] = (short) Math.round(AMPLITUDE * Math.sin(p));
+        }
+        short[] y = new short[out * SECONDS + chunk];
+        short[] chunkOut = new short[resampler.getMaxOutputSamples(chunk)];
+        int m = 0;
+        for (int i = 0; i + chunk <= n; i += chunk) {
+            int produced = resampler.process(x, i, chunk, chunkOut, 0);
+            System.arraycopy(chunkOut, 0, y, m, produced);
+            m += produced;
+        }
+
+        // المرجع: طور المسح عند زمن كل عينة خرج بعد طرح تأخير المرشح - the ideal sweep at output time
+        double delay = resampler.getDelaySamples();
+        double signal = 0;
+        double error = 0;
+        for (int j = (int) delay + 200; j < m - 200; j++) {
+            double tIn = (j - delay) * in / (double) out;
+            int i0 = (int) Math.floor(tIn);
+            double reference = AMPLITUDE * Math.sin(phase[i0] + (tIn - i0) * (phase[i0 + 1] - phase[i0]));
+            signal += reference * reference;
+            error += (y[j] - reference) * (y[j] - reference);
+        }
+        return 10 * Math.log10(signal / error);
+    }
+}
@@ -0,0 +1,31 @@
+package com.lancall;
+
+import java.util.Random;
+
+/**
+ * قياس كلفة إعادة التشكيل - نانوثانية لكل إطار 20 مللي ثانية بين معدلات الجهاز والسلك
+ * Cost of the polyphase resampler per 20 ms frame for the device/wire
+ * rate pairs a call actually uses, with its filter length and delay.
+ */
+public class ResamplerBenchmark {
+
+    private static final int ITERATIONS = 20_000;
+
+    public static void main(String[] args) {
+        int[][] pairs = {{48000, 16000}, {16000, 48000}, {44100, 16000}, {16000, 44100}, {48000, 8000}};
+        Bench.print("%-16s %5s %9s %12s %9s", "conversion", "taps", "delay ms", "ns/frame", "% of rt");
+        for (int[] pair : pairs) {
+            int chunk = pair[0] / 50;
+            PolyphaseResampler resampler = new PolyphaseResampler(pair[0], pair[1], chunk);
+            short[] in = new short[chunk];
+            Random random = new Random(1);
+            for (int i = 0; i < chunk; i++) {
+                in[i] = (short) random.nextInt(20000);
+            }
+            short[] out = new short[resampler.getMaxOutputSamples(chunk)];
+            double nanos = Bench.nanosPerOp(ITERATIONS, i -> resampler.process(in, 0, chunk, out, 0));
+            Bench.print("%-16s %5d %9.2f %12.0f %8.2f%%", pair[0] + " -> " + pair[1], resampler.getTaps(),
+                    resampler.getDelaySamples() * 1000 / pair[1], nanos, 100 * nanos / 20_000_000.0);
+        }
+    }
+}
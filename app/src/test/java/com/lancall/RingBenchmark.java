@@ -0,0 +1,132 @@
+package com.lancall;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * قياس حلقة SPSC مقابل ArrayBlockingQueue - كلفة التسليم في خيط واحد وزمن التسليم بين خيطين
+ * {@link SpscRing} against an {@link ArrayBlockingQueue} baseline: the cost
+ * of a hand-off on one thread, then the latency from publish to the
+ * consumer waking up across two threads, with the consumer parked between
+ * frames as the playout thread is. A handoff that takes most of the
+ * consumer's timeout is a lost wakeup.
+ */
+public class RingBenchmark {
+
+    private static final int CAPACITY = 64;
+    private static final int BATCH = 16;
+    private static final int ITERATIONS = 1_000_000;
+    private static final int HANDOFFS = 20_000;
+    private static final long GAP_NANOS = 50_000; // المنتج يهدأ بين الإطارات فينام المستهلك
+    private static final long TIMEOUT_NANOS = 100_000_000L; // كما في CallService
+    private static final long LATE_NANOS = 10_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        SpscRing<AudioFrame> ring = new SpscRing<>(CAPACITY, () -> new AudioFrame(4));
+        ArrayBlockingQueue<AudioFrame> queue = new ArrayBlockingQueue<>(CAPACITY);
+        AudioFrame[] pool = new AudioFrame[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            pool[i] = new AudioFrame(4);
+        }
+
+        double spsc = Bench.nanosPerOp(ITERATIONS, i -> {
+            for (int j = 0; j < BATCH; j++) {
+                ring.claim().samples = j;
+                ring.publish();
+            }
+            long sum = 0;
+            for (int j = 0; j < BATCH; j++) {
+                sum += ring.peek().samples;
+                ring.release();
+            }
+            return sum;
+        }) / BATCH;
+        double blocking = Bench.nanosPerOp(ITERATIONS, i -> {
+            for (int j = 0; j < BATCH; j++) {
+                queue.offer(pool[j]);
+            }
+            long sum = 0;
+            for (int j = 0; j < BATCH; j++) {
+                sum += queue.poll().samples;
+            }
+            return sum;
+        }) / BATCH;
+        Bench.print("same thread, ns per frame:  SpscRing %.1f  ArrayBlockingQueue %.1f", spsc, blocking);
+
+        for (int round = 0; round < 3; round++) {
+            report("SpscRing", ringHandoff(new SpscRing<>(CAPACITY, () -> new AudioFrame(4))));
+            report("ArrayBlockingQueue", queueHandoff(new ArrayBlockingQueue<>(CAPACITY)));
+        }
+    }
+
+    private static long[] ringHandoff(SpscRing<AudioFrame> ring) throws InterruptedException {
+        long[] latencies = new long[HANDOFFS];
+        Thread consumer = new Thread(() -> {
+            for (int i = 0; i < HANDOFFS; i++) {
+                AudioFrame frame;
+                while ((frame = ring.await(TIMEOUT_NANOS)) == null) {
+                    // انتهت المهلة دون إطار - timed out empty; wait again
+                }
+                latencies[i] = System.nanoTime() - frame.timestampNanos;
+                ring.release();
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < HANDOFFS; i++) {
+            LockSupport.parkNanos(GAP_NANOS);
+            AudioFrame frame;
+            while ((frame = ring.claim()) == null) {
+                Thread.yield();
+            }
+            frame.timestampNanos = System.nanoTime();
+            ring.publish();
+        }
+        consumer.join();
+        return latencies;
+    }
+
+    private static long[] queueHandoff(ArrayBlockingQueue<AudioFrame> queue) throws InterruptedException {
+        long[] latencies = new long[HANDOFFS];
+        AudioFrame[] pool = new AudioFrame[CAPACITY];
+        for (int i = 0; i < CAPACITY; i++) {
+            pool[i] = new AudioFrame(4);
+        }
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < HANDOFFS; i++) {
+                    AudioFrame frame;
+                    while ((frame = queue.poll(TIMEOUT_NANOS, TimeUnit.NANOSECONDS)) == null) {
+                        // انتهت المهلة دون إطار
+                    }
+                    latencies[i] = System.nanoTime() - frame.timestampNanos;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < HANDOFFS; i++) {
+            LockSupport.parkNanos(GAP_NANOS);
+            AudioFrame frame = pool[i % CAPACITY];
+            frame.timestampNanos = System.nanoTime();
+            queue.put(frame);
+        }
+        consumer.join();
+        return latencies;
+    }
+
+    private static void report(String name, long[] latencies) {
+        long late = 0;
+        for (long latency : latencies) {
+            if (latency > LATE_NANOS) {
+                late++;
+            }
+        }
+        Arrays.sort(latencies);
+        Bench.print("%-18s handoff p50 %6.1f us  p99 %7.1f us  max %8.1f us  late (>10 ms) %d", name,
+                Bench.percentile(latencies, 0.5) / 1e3, Bench.percentile(latencies, 0.99) / 1e3,
+                latencies[latencies.length - 1] / 1e3, late);
+    }
+}
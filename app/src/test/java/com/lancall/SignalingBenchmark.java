@@ -0,0 +1,197 @@
+package com.lancall;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * قياس الإشارات - رسائل في الثانية وزمن الإرسال، باتصال لكل رسالة مقابل اتصال دائم
+ * Signaling throughput and latency on loopback: a new TCP connection per
+ * message (the old path) against {@link PeerConnectionManager}'s
+ * persistent connection, plus request/reply round trips on the persistent
+ * connection. Reports messages per second and p50/p99/max per send.
+ */
+public class SignalingBenchmark {
+
+    private static final String LOCAL = "127.0.0.1";
+    private static final String PEER = "127.0.0.2";
+    private static final int MESSAGES = 5000;
+    private static final int WARM_UP = 500;
+    private static final int ROUNDS = 3; // الجولة الأولى تسخين - the first round only warms up
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean print = round > 0;
+            perMessage(print);
+            persistent(print);
+            requestReply(print);
+        }
+    }
+
+    /** اتصال لكل رسالة - one socket per message, the server reading each to its end */
+    private static void perMessage(boolean print) throws Exception {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        CountDownLatch done = new CountDownLatch(MESSAGES + WARM_UP);
+        try (ServerSocket server = new ServerSocket(0, 512, InetAddress.getByName(PEER))) {
+            Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket socket = server.accept();
+                        pool.execute(() -> drain(socket, done));
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.start();
+            long[] latency = new long[MESSAGES];
+            long start = 0;
+            for (int i = 0; i < MESSAGES + WARM_UP; i++) {
+                if (i == WARM_UP) {
+                    start = System.nanoTime();
+                }
+                SignalingProtocol.Message message = SignalingProtocol.createTextMessage(LOCAL, "message " + i);
+                long sent = System.nanoTime();
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress(PEER, server.getLocalPort()), 5000);
+                    new SignalingFramer(socket.getInputStream(), socket.getOutputStream()).write(message);
+                    socket.shutdownOutput();
+                }
+                if (i >= WARM_UP) {
+                    latency[i - WARM_UP] = System.nanoTime() - sent;
+                }
+            }
+            done.await(30, TimeUnit.SECONDS);
+            report(print, "per-message", latency, System.nanoTime() - start);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** اتصال دائم - PeerConnectionManager on both sides */
+    private static void persistent(boolean print) throws Exception {
+        CountDownLatch done = new CountDownLatch(MESSAGES + WARM_UP);
+        PeerConnectionManager callee = new PeerConnectionManager(listener(done, null));
+        PeerConnectionManager caller = new PeerConnectionManager(listener(null, null));
+        try (ServerSocket server = listen(callee)) {
+            long[] latency = new long[MESSAGES];
+            long start = 0;
+            for (int i = 0; i < MESSAGES + WARM_UP; i++) {
+                if (i == WARM_UP) {
+                    start = System.nanoTime();
+                }
+                SignalingProtocol.Message message = SignalingProtocol.createTextMessage(LOCAL, "message " + i);
+                long sent = System.nanoTime();
+                caller.send(PEER, server.getLocalPort(), message);
+                if (i >= WARM_UP) {
+                    latency[i - WARM_UP] = System.nanoTime() - sent;
+                }
+            }
+            done.await(30, TimeUnit.SECONDS);
+            report(print, "persistent", latency, System.nanoTime() - start);
+        } finally {
+            caller.close();
+            callee.close();
+        }
+    }
+
+    /** طلب ورد - CONNECTION_REQUEST answered by CONNECTION_ACK on the same connection */
+    private static void requestReply(boolean print) throws Exception {
+        PeerConnectionManager[] callee = new PeerConnectionManager[1];
+        callee[0] = new PeerConnectionManager(listener(null, callee));
+        PeerConnectionManager caller = new PeerConnectionManager(listener(null, null));
+        try (ServerSocket server = listen(callee[0])) {
+            long[] latency = new long[MESSAGES];
+            long start = 0;
+            for (int i = 0; i < MESSAGES + WARM_UP; i++) {
+                if (i == WARM_UP) {
+                    start = System.nanoTime();
+                }
+                long sent = System.nanoTime();
+                SignalingProtocol.Message reply = caller.request(PEER, server.getLocalPort(),
+                        SignalingProtocol.createConnectionRequest(LOCAL), 5000,
+                        SignalingProtocol.MESSAGE_TYPE_CONNECTION_ACK);
+                if (reply == null) {
+                    throw new IOException("Connection lost during request " + i);
+                }
+                if (i >= WARM_UP) {
+                    latency[i - WARM_UP] = System.nanoTime() - sent;
+                }
+            }
+            report(print, "round trip", latency, System.nanoTime() - start);
+        } finally {
+            caller.close();
+            callee[0].close();
+        }
+    }
+
+    /**
+     * @param done    counted down per message, if not null
+     * @param replier answers CONNECTION_REQUEST on this manager, if not null
+     */
+    private static PeerConnectionManager.Listener listener(CountDownLatch done, PeerConnectionManager[] replier) {
+        return new PeerConnectionManager.Listener() {
+            @Override
+            public void onMessage(String peerIp, SignalingProtocol.Message message) {
+                if (done != null) {
+                    done.countDown();
+                }
+                if (replier != null && SignalingProtocol.MESSAGE_TYPE_CONNECTION_REQUEST.equals(message.type)) {
+                    try {
+                        // الاتصال قائم، فالمنفذ لا يستعمل - the open connection is reused, no port needed
+                        replier[0].send(peerIp, 0, SignalingProtocol.createConnectionAck(PEER));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+
+            @Override
+            public void onDisconnected(String peerIp) {
+            }
+        };
+    }
+
+    private static ServerSocket listen(PeerConnectionManager manager) throws IOException {
+        ServerSocket server = new ServerSocket(0, 512, InetAddress.getByName(PEER));
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    manager.adopt(server.accept());
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.start();
+        return server;
+    }
+
+    private static void drain(Socket socket, CountDownLatch done) {
+        try (Socket connection = socket) {
+            SignalingFramer framer = new SignalingFramer(connection.getInputStream(), connection.getOutputStream());
+            while (framer.read() != null) {
+                done.countDown();
+            }
+        } catch (IOException e) {
+            // اتصال قطع - counted as not received
+        }
+    }
+
+    private static void report(boolean print, String name, long[] latency, long totalNanos) {
+        if (!print) {
+            return;
+        }
+        Arrays.sort(latency);
+        Bench.print("%-11s %8.0f msg/s  p50 %7.1f us  p99 %7.1f us  max %8.1f us", name,
+                MESSAGES * 1e9 / totalNanos, Bench.percentile(latency, 0.50) / 1e3,
+                Bench.percentile(latency, 0.99) / 1e3, latency[latency.length - 1] / 1e3);
+    }
+}
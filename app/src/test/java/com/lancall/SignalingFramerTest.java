@@ -0,0 +1,218 @@
+package com.lancall;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * تأطير الإشارات - حدود الطول، إطارات متتالية، أقواس داخل النص، وانتهاء
+ * مهلة القراءة داخل إطار دون فقدان موضع التدفق
+ * Signaling framing: out-of-range lengths are refused from the header alone,
+ * frames sent back to back come out one by one whatever their bodies
+ * contain, and a read timeout inside a frame resumes with the same frame.
+ */
+public class SignalingFramerTest {
+
+    @Test
+    public void timeoutInsideTheHeaderResumes() throws IOException {
+        checkTimeoutAt(2);
+    }
+
+    @Test
+    public void timeoutInsideTheBodyResumes() throws IOException {
+        checkTimeoutAt(SignalingFramer.HEADER_SIZE + 10);
+    }
+
+    @Test
+    public void timeoutBetweenFramesIsIdle() throws IOException {
+        checkTimeoutAt(0);
+    }
+
+    @Test
+    public void endInsideAFrameIsAnError() throws IOException {
+        byte[] stream = frames(SignalingProtocol.createTextMessage("10.0.0.1", "cut short"));
+        InputStream in = new StallingInput(stream, stream.length - 3, false);
+        SignalingFramer framer = new SignalingFramer(in, new ByteArrayOutputStream());
+        try {
+            framer.read();
+            fail("read a truncated frame");
+        } catch (EOFException expected) {
+            // الطرف أغلق داخل الإطار - the peer closed mid-frame
+        }
+    }
+
+    @Test
+    public void zeroLengthIsRefused() {
+        checkRefusedLength(0);
+    }
+
+    @Test
+    public void oversizeLengthIsRefusedBeforeTheBody() {
+        checkRefusedLength(SignalingFramer.MAX_MESSAGE_SIZE + 1);
+        checkRefusedLength(Integer.MAX_VALUE);
+        checkRefusedLength(-1); // 0xFFFFFFFF
+    }
+
+    @Test
+    public void largestMessageIsAccepted() throws IOException {
+        char[] text = new char[SignalingFramer.MAX_MESSAGE_SIZE - 200];
+        Arrays.fill(text, 'x');
+        byte[] stream = frames(SignalingProtocol.createTextMessage("10.0.0.1", new String(text)));
+        SignalingFramer framer = new SignalingFramer(new ByteArrayInputStream(stream), new ByteArrayOutputStream());
+        assertEquals(text.length, SignalingProtocol.getData(framer.read(),
+                SignalingProtocol.TextMessageData.class).message.length());
+
+        char[] tooLong = new char[SignalingFramer.MAX_MESSAGE_SIZE];
+        Arrays.fill(tooLong, 'x');
+        try {
+            frames(SignalingProtocol.createTextMessage("10.0.0.1", new String(tooLong)));
+            fail("wrote a body over the limit");
+        } catch (IOException expected) {
+            // لا يُكتب ما لن يقبله الطرف الآخر - never send what the peer would refuse
+        }
+    }
+
+    @Test
+    public void backToBackFramesComeOutInOrder() throws IOException {
+        SignalingProtocol.Message[] sent = new SignalingProtocol.Message[50];
+        for (int i = 0; i < sent.length; i++) {
+            sent[i] = i % 3 == 0 ? SignalingProtocol.createKeepAlive("10.0.0." + i)
+                    : SignalingProtocol.createTextMessage("10.0.0." + i, "message " + i);
+        }
+        // كل الإطارات في مخزن واحد تصل في قراءات كبيرة - one buffer, large reads spanning frames
+        SignalingFramer framer = new SignalingFramer(new ByteArrayInputStream(frames(sent)),
+                new ByteArrayOutputStream());
+        for (SignalingProtocol.Message expected : sent) {
+            SignalingProtocol.Message read = framer.read();
+            assertEquals(expected.type, read.type);
+            assertEquals(expected.fromIp, read.fromIp);
+        }
+        assertNull(framer.read());
+    }
+
+    @Test
+    public void bracesAndNestedObjectsStayInsideTheirFrame() throws IOException {
+        String text = "}} {\"type\":\"CALL_END\"} {{ \u0645\u0631\u062d\u0628\u0627 }";
+        SignalingProtocol.Message chat = SignalingProtocol.createTextMessage("10.0.0.1", text);
+        SignalingProtocol.Message request = SignalingProtocol.createCallRequest("10.0.0.1", "caller {1}", 5004,
+                Arrays.asList("L16", "PCMU"), FecEncoder.MODE_RED, Arrays.asList(48000, 16000));
+        SignalingProtocol.Message keepAlive = SignalingProtocol.createKeepAlive("10.0.0.1");
+        byte[] stream = frames(chat, request, keepAlive);
+        StallingInput in = new StallingInput(stream, stream.length, false); // أجزاء من 3 بايت - 3-byte pieces
+        SignalingFramer framer = new SignalingFramer(in, new ByteArrayOutputStream());
+
+        assertEquals(text, SignalingProtocol.getData(framer.read(), SignalingProtocol.TextMessageData.class).message);
+        SignalingProtocol.CallRequestData data = SignalingProtocol.getData(framer.read(),
+                SignalingProtocol.CallRequestData.class);
+        assertEquals("caller {1}", data.callerName);
+        assertEquals(Arrays.asList("L16", "PCMU"), data.codecs);
+        assertEquals(Arrays.asList(48000, 16000), data.sampleRates);
+        assertEquals(keepAlive.type, framer.read().type);
+        assertNull(framer.read());
+    }
+
+    /**
+     * طول مرفوض - A header with {@code length} must be refused as invalid
+     * from the header alone, without reading (or allocating for) the body.
+     */
+    private static void checkRefusedLength(int length) {
+        byte[] stream = new byte[SignalingFramer.HEADER_SIZE + 16];
+        stream[0] = (byte) (length >>> 24);
+        stream[1] = (byte) (length >>> 16);
+        stream[2] = (byte) (length >>> 8);
+        stream[3] = (byte) length;
+        ByteArrayInputStream in = new ByteArrayInputStream(stream);
+        SignalingFramer framer = new SignalingFramer(in, new ByteArrayOutputStream());
+        try {
+            framer.read();
+            fail("accepted length " + length);
+        } catch (EOFException e) {
+            fail("length " + length + " was taken as a frame and the body awaited");
+        } catch (IOException expected) {
+            // طول خارج النطاق - rejected from the header
+        }
+        assertEquals(16, in.available()); // الجسم لم يُمس - the body was left unread
+    }
+
+    private static void checkTimeoutAt(int position) throws IOException {
+        SignalingProtocol.Message first = SignalingProtocol.createTextMessage("10.0.0.1", "first message");
+        SignalingProtocol.Message second = SignalingProtocol.createKeepAlive("10.0.0.1");
+        byte[] stream = frames(first, second);
+        StallingInput in = new StallingInput(stream, position, true);
+        SignalingFramer framer = new SignalingFramer(in, new ByteArrayOutputStream());
+        try {
+            framer.read();
+            fail("no timeout at " + position);
+        } catch (SocketTimeoutException expected) {
+            // مهلة القراءة - what the socket throws after setSoTimeout
+        }
+        SignalingProtocol.Message read = framer.read();
+        assertEquals(first.type, read.type);
+        assertEquals(first.fromIp, read.fromIp);
+        assertEquals(first.timestamp, read.timestamp);
+        assertEquals(second.type, framer.read().type);
+        assertNull(framer.read());
+    }
+
+    private static byte[] frames(SignalingProtocol.Message... messages) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SignalingFramer framer = new SignalingFramer(null, out);
+        for (SignalingProtocol.Message message : messages) {
+            framer.write(message);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * مقبس بطيء - Delivers a byte stream a few bytes at a time; at
+     * {@code stallAt} it either times out once or ends the stream.
+     */
+    private static final class StallingInput extends InputStream {
+        private final byte[] data;
+        private final int stallAt;
+        private final boolean timeout;
+        private int position;
+        private boolean stalled;
+
+        StallingInput(byte[] data, int stallAt, boolean timeout) {
+            this.data = data;
+            this.stallAt = stallAt;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (position == stallAt && !stalled) {
+                if (!timeout) {
+                    return -1;
+                }
+                stalled = true;
+                throw new SocketTimeoutException("Read timed out");
+            }
+            int limit = position < stallAt ? stallAt : data.length;
+            int n = Math.min(Math.min(length, 3), limit - position); // أجزاء صغيرة كما في TCP
+            if (n <= 0) {
+                return -1;
+            }
+            System.arraycopy(data, position, target, offset, n);
+            position += n;
+            return n;
+        }
+    }
+}
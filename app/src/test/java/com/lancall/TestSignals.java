@@ -0,0 +1,154 @@
+package com.lancall;
+
+import java.util.Random;
+
+/**
+ * إشارات اختبار ثابتة - كلام اصطناعي وضوضاء بنفس البذرة في كل تشغيل
+ * Deterministic test signals shared by the unit tests and benchmarks, so
+ * every run sees the same samples.
+ */
+final class TestSignals {
+
+    private TestSignals() {
+    }
+
+    /**
+     * كلام اصطناعي - Speech-like fixture: talk spurts of voiced harmonics
+     * with a gliding pitch and a syllable envelope, separated by pauses, over
+     * a low noise floor. About 60% of the time is speech, as in a
+     * conversation.
+     */
+    static short[] speech(int sampleRate, int seconds) {
+        short[] pcm = new short[sampleRate * seconds];
+        Random random = new Random(1);
+        double phase = 0;
+        int spurtEnd = 0;
+        boolean talking = false;
+        for (int i = 0; i < pcm.length; i++) {
+            if (i >= spurtEnd) {
+                talking = !talking;
+                double lengthSeconds = talking ? 0.8 + 1.6 * random.nextDouble() : 0.4 + 1.2 * random.nextDouble();
+                spurtEnd = i + (int) (lengthSeconds * sampleRate);
+            }
+            double t = (double) i / sampleRate;
+            double value = 60 * random.nextGaussian(); // أرضية الضوضاء - room noise floor
+            if (talking) {
+                double pitch = 140 + 30 * Math.sin(2 * Math.PI * 0.7 * t);
+                phase += 2 * Math.PI * pitch / sampleRate;
+                double envelope = 0.55 + 0.45 * Math.sin(2 * Math.PI * 4 * t); // المقاطع - syllables
+                double voiced = 0;
+                for (int harmonic = 1; harmonic <= 8 && harmonic * pitch < sampleRate / 2.0; harmonic++) {
+                    voiced += Math.sin(harmonic * phase) / harmonic;
+                }
+                value += 5000 * envelope * voiced;
+            }
+            pcm[i] = clip(value);
+        }
+        return pcm;
+    }
+
+    /** إشارة مع مواضع الكلام - A fixture together with which samples carry speech. */
+    static final class Labelled {
+        final short[] pcm;
+        final boolean[] speech;
+
+        Labelled(int samples) {
+            pcm = new short[samples];
+            speech = new boolean[samples];
+        }
+
+        /** هل في الإطار كلام - Whether any sample of the frame is speech. */
+        boolean hasSpeech(int offset, int samples) {
+            for (int i = offset; i < offset + samples; i++) {
+                if (speech[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * محادثة بضجيج خلفي - One side of a two-party conversation at a given
+     * background noise level: turns of one to three talk spurts of 0.8-2.8 s
+     * with 0.4-1.2 s pauses between them, then 2-6 s of silence while the
+     * other party talks (about 40% of frames carry speech, as for one
+     * direction of a real call). Voiced syllables at a random pitch with
+     * unvoiced (noise-like) segments, over white noise at {@code noiseDbov}.
+     * Samples under a syllable envelope above 5% are labelled speech.
+     */
+    static Labelled conversation(int sampleRate, int seconds, double noiseDbov, long seed) {
+        Labelled fixture = new Labelled(sampleRate * seconds);
+        Random random = new Random(seed);
+        double noiseAmplitude = 32768 * Math.pow(10, noiseDbov / 20) * Math.sqrt(3); // RMS عند noiseDbov
+        boolean talking = false;
+        int spurtsLeft = 0; // ما بقي من دفعات الكلام في هذا الدور - talk spurts left in this turn
+        int left = sampleRate;
+        double pitch = 120;
+        double phase = 0;
+        for (int i = 0; i < fixture.pcm.length; i++) {
+            if (--left <= 0) {
+                if (talking) {
+                    // وقفة داخل الدور أو دور الطرف الآخر كاملاً - a pause, or the other party's turn
+                    left = (int) (sampleRate * (spurtsLeft > 0 ? 0.4 + 0.8 * random.nextDouble()
+                            : 2.0 + 4.0 * random.nextDouble()));
+                } else {
+                    if (spurtsLeft == 0) {
+                        spurtsLeft = 1 + random.nextInt(3);
+                    }
+                    spurtsLeft--;
+                    left = (int) (sampleRate * (0.8 + 2.0 * random.nextDouble()));
+                    pitch = 90 + 120 * random.nextDouble();
+                }
+                talking = !talking;
+            }
+            double value = (2 * random.nextDouble() - 1) * noiseAmplitude;
+            if (talking) {
+                double envelope = 0.5 - 0.5 * Math.cos(2 * Math.PI * 4.5 * left / sampleRate); // المقاطع
+                boolean unvoiced = (left / (sampleRate / 9)) % 5 == 0; // s, f, sh
+                double voice;
+                if (unvoiced) {
+                    voice = (2 * random.nextDouble() - 1) * 1500;
+                } else {
+                    phase += 2 * Math.PI * pitch / sampleRate;
+                    voice = 0;
+                    for (int harmonic = 1; harmonic <= 8; harmonic++) {
+                        voice += 4000 * Math.sin(harmonic * phase) / harmonic;
+                    }
+                }
+                value += envelope * voice;
+                fixture.speech[i] = envelope > 0.05;
+            }
+            fixture.pcm[i] = clip(value);
+        }
+        return fixture;
+    }
+
+    /**
+     * متحدث بضجيج ملون - Noise-excited talker: white noise through a
+     * two-pole resonance (a single broad formant near 1 kHz at 16 kHz)
+     * under a syllable envelope at {@code syllableHz}, silent one second in
+     * four. Broadband like real speech, which the harmonic fixtures are
+     * not, so an adaptive filter sees the whole echo path.
+     */
+    static short[] talker(int sampleRate, int seconds, double amplitude, double syllableHz, double phase,
+            long seed) {
+        short[] pcm = new short[sampleRate * seconds];
+        Random random = new Random(seed);
+        double y1 = 0;
+        double y2 = 0;
+        for (int i = 0; i < pcm.length; i++) {
+            double y = random.nextGaussian() + 1.6 * y1 - 0.8 * y2;
+            y2 = y1;
+            y1 = y;
+            boolean pause = (i / sampleRate) % 4 == 3;
+            double envelope = pause ? 0 : Math.max(0, Math.sin(2 * Math.PI * syllableHz * i / sampleRate + phase));
+            pcm[i] = clip(y * amplitude * envelope);
+        }
+        return pcm;
+    }
+
+    static short clip(double value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+}
@@ -0,0 +1,29 @@
+package com.lancall;
+
+/**
+ * قياس كلفة WSOLA - نانوثانية لكل إطار 20 مللي ثانية عند كل سرعة
+ * Cost of the time stretcher per 20 ms input frame at the playout speeds
+ * the receiver uses. Rate 1 skips the similarity search, so it is the
+ * floor the other rates are compared with.
+ */
+public class TimeStretcherBenchmark {
+
+    private static final int ITERATIONS = 20_000;
+
+    public static void main(String[] args) {
+        Bench.print("%-6s %5s %12s %9s", "rate", "speed", "ns/frame", "% of rt");
+        for (int sampleRate : new int[] {16000, 48000}) {
+            int frame = sampleRate / 50;
+            short[] speech = TestSignals.speech(sampleRate, 4);
+            int frames = speech.length / frame;
+            short[] out = new short[4 * frame];
+            for (double rate : new double[] {0.92, 0.95, 1.0, 1.05, 1.08}) {
+                TimeStretcher stretcher = new TimeStretcher(sampleRate, frame);
+                stretcher.setRate(rate);
+                double nanos = Bench.nanosPerOp(ITERATIONS,
+                        i -> stretcher.process(speech, (i % frames) * frame, frame, out, 0, out.length));
+                Bench.print("%-6d %5.2f %12.0f %8.2f%%", sampleRate, rate, nanos, 100 * nanos / 20_000_000.0);
+            }
+        }
+    }
+}
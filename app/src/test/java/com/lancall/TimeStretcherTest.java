@@ -0,0 +1,132 @@
+package com.lancall;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+/**
+ * جودة WSOLA - المدة والطبقة والنعومة عند كل سرعة يستعملها التشغيل
+ * WSOLA quality at the playout speeds the receiver uses: the output must
+ * last input / rate, keep the pitch of the input at matching content
+ * points, and join segments without steps sharper than the input's own.
+ * At rate 1 the input must come back bit-exact.
+ */
+public class TimeStretcherTest {
+
+    private static final int SECONDS = 20;
+    private static final double[] RATES = {0.92, 0.95, 0.98, 1.02, 1.05, 1.08, 1.10};
+
+    @Test
+    public void unityRateIsBitExact() {
+        for (int rate : new int[] {16000, 48000}) {
+            short[] x = voiced(rate, SECONDS);
+            short[] y = new short[2 * x.length];
+            int m = stretch(new TimeStretcher(rate, rate / 50), x, y, rate / 50);
+            for (int i = 0; i < m; i++) {
+                assertEquals("sample " + i + " at " + rate + " Hz", x[i], y[i]);
+            }
+            assertTrue("held back " + (x.length - m), x.length - m <= rate / 50);
+        }
+    }
+
+    @Test
+    public void keepsDurationPitchAndSmoothness() {
+        for (int sampleRate : new int[] {16000, 48000}) {
+            int frame = sampleRate / 50;
+            short[] x = voiced(sampleRate, SECONDS);
+            double inputStep = maxSecondDifference(x, x.length);
+            short[] y = new short[2 * x.length];
+            for (double rate : RATES) {
+                TimeStretcher stretcher = new TimeStretcher(sampleRate, frame);
+                stretcher.setRate(rate);
+                int m = stretch(stretcher, x, y, frame);
+
+                double durationRatio = (double) x.length / m;
+                double pitchDeviation = 0;
+                int points = 0;
+                for (double t = 2; t < SECONDS - 3; t += 0.5) {
+                    int inPos = (int) (t * sampleRate);
+                    int outPos = (int) (inPos / rate);
+                    double expected = pitchHz(x, inPos, sampleRate);
+                    pitchDeviation += Math.abs(pitchHz(y, outPos, sampleRate) / expected - 1);
+                    points++;
+                }
+                pitchDeviation /= points;
+                double step = maxSecondDifference(y, m) / inputStep;
+                Bench.print("%5d Hz rate %.2f: duration ratio %.4f, pitch deviation %.2f%%, peak step out/in %.2f",
+                        sampleRate, rate, durationRatio, 100 * pitchDeviation, step);
+
+                String name = String.format(Locale.ROOT, "%d Hz rate %.2f", sampleRate, rate);
+                assertEquals(name + " duration", rate, durationRatio, 0.005);
+                assertTrue(name + " pitch deviation " + pitchDeviation, pitchDeviation < 0.01);
+                assertTrue(name + " step " + step, step <= 1.2);
+            }
+        }
+    }
+
+    private static int stretch(TimeStretcher stretcher, short[] x, short[] y, int frame) {
+        int m = 0;
+        for (int i = 0; i + frame <= x.length; i += frame) {
+            m += stretcher.process(x, i, frame, y, m, y.length - m);
+        }
+        return m;
+    }
+
+    /**
+     * كلام مجهور متصل - Continuously voiced fixture: a pitch gliding
+     * between 110 and 220 Hz, harmonics shaped by two formants, under a
+     * syllable envelope that never reaches silence, so the pitch is
+     * measurable everywhere.
+     */
+    private static short[] voiced(int sampleRate, int seconds) {
+        short[] pcm = new short[sampleRate * seconds];
+        double phase = 0;
+        for (int i = 0; i < pcm.length; i++) {
+            double t = (double) i / sampleRate;
+            double pitch = 165 + 55 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / sampleRate;
+            double value = 0;
+            for (int h = 1; h <= 20 && h * pitch <= sampleRate / 2.2; h++) {
+                double f = h * pitch;
+                double formants = 1 + 2 * Math.exp(-Math.pow((f - 700) / 300, 2))
+                        + Math.exp(-Math.pow((f - 1800) / 400, 2));
+                value += Math.sin(h * phase) / h * formants;
+            }
+            double envelope = 0.3 + 0.7 * Math.max(0, Math.sin(2 * Math.PI * 3.5 * t));
+            pcm[i] = TestSignals.clip(3000 * value * envelope);
+        }
+        return pcm;
+    }
+
+    /** طبقة الصوت بالترابط الذاتي على 40 مللي ثانية - autocorrelation pitch over 40 ms */
+    private static double pitchHz(short[] x, int from, int sampleRate) {
+        int length = sampleRate / 25;
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int lag = sampleRate / 400; lag <= sampleRate / 70; lag++) {
+            double cross = 0;
+            double energy = 0;
+            for (int i = from; i < from + length; i++) {
+                cross += x[i] * (double) x[i + lag];
+                energy += x[i + lag] * (double) x[i + lag];
+            }
+            double score = cross / Math.sqrt(energy + 1);
+            if (score > bestScore) {
+                bestScore = score;
+                best = lag;
+            }
+        }
+        return (double) sampleRate / best;
+    }
+
+    private static double maxSecondDifference(short[] x, int length) {
+        double max = 0;
+        for (int i = 2; i < length; i++) {
+            max = Math.max(max, Math.abs(x[i] - 2 * x[i - 1] + x[i - 2]));
+        }
+        return max;
+    }
+}
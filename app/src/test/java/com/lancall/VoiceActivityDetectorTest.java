@@ -0,0 +1,86 @@
+package com.lancall;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import org.junit.Test;
+
+/**
+ * إعادة تشغيل محادثات مسجلة عبر كاشف الكلام و DTX - نسبة الحزم الموفرة وقص الكلام
+ * Replays conversation fixtures at three background noise levels through
+ * the VAD and the DTX packetizer, and reports the share of packets
+ * suppressed (comfort noise descriptors included) and the share of speech
+ * frames wrongly classified as silence.
+ */
+public class VoiceActivityDetectorTest {
+
+    private static final int RATE = 16000;
+    private static final int PTIME = 20;
+    private static final int SECONDS = 120;
+
+    @Test
+    public void replaySuppressesSilenceWithoutClippingSpeech() {
+        for (double noiseDbov : new double[] {-70, -55, -45}) {
+            TestSignals.Labelled fixture = TestSignals.conversation(RATE, SECONDS, noiseDbov, 42);
+            int samples = FramePacer.samplesPerFrame(RATE, PTIME);
+            VoiceActivityDetector vad = new VoiceActivityDetector(RATE);
+            AudioPacketizer packetizer = new AudioPacketizer(AudioCodecs.create("L16"),
+                    new FecEncoder(FecEncoder.MODE_OFF, FecEncoder.DEFAULT_GROUP_SIZE, 1500), PTIME, 1, samples);
+            AudioFrame frame = new AudioFrame(samples);
+            ByteBuffer packet = ByteBuffer.allocate(1500);
+
+            int frames = 0;
+            int packets = 0;
+            int speechFrames = 0;
+            int clipped = 0;
+            for (int offset = 0; offset + samples <= fixture.pcm.length; offset += samples) {
+                System.arraycopy(fixture.pcm, offset, frame.pcm, 0, samples);
+                frame.samples = samples;
+                frame.mediaTimestamp = offset;
+                vad.process(frame);
+                if (packetizer.packetize(frame, packet) > 0) {
+                    packets++;
+                }
+                frames++;
+                if (fixture.hasSpeech(offset, samples)) {
+                    speechFrames++;
+                    if (!frame.speech) {
+                        clipped++;
+                    }
+                }
+            }
+
+            double suppression = 1.0 - (double) packets / frames;
+            double clipping = (double) clipped / speechFrames;
+            System.out.println(String.format(Locale.ROOT,
+                    "noise %.0f dBov: speech %.1f%% of frames, packets suppressed %.1f%%, speech clipped %.2f%%",
+                    noiseDbov, 100.0 * speechFrames / frames, 100 * suppression, 100 * clipping));
+            // الهدف خفض 40-60% من الحزم - the target is a 40-60% packet-rate cut
+            assertTrue("suppression at " + noiseDbov + " dBov: " + suppression,
+                    suppression >= 0.40 && suppression <= 0.60);
+            assertTrue("clipping at " + noiseDbov + " dBov: " + clipping, clipping <= 0.01);
+        }
+    }
+
+    @Test
+    public void comfortNoiseMatchesTheDescribedLevel() {
+        ByteBuffer descriptor = ByteBuffer.allocate(ComfortNoise.DESCRIPTOR_SIZE);
+        for (double levelDbov : new double[] {-70, -55, -45}) {
+            int length = ComfortNoise.writeDescriptor(descriptor, 0, levelDbov);
+            ComfortNoise noise = new ComfortNoise();
+            noise.setLevel(ComfortNoise.readDescriptor(descriptor, 0, length));
+            short[] out = new short[RATE];
+            noise.generate(out, 0, out.length); // الكسب ينزلق إلى المستوى أولاً - the gain glides in first
+            noise.generate(out, 0, out.length);
+            double energy = 0;
+            for (short sample : out) {
+                energy += sample * (double) sample;
+            }
+            double measuredDbov = 10 * Math.log10(energy / out.length / (32768.0 * 32768.0));
+            assertEquals("comfort noise at " + levelDbov + " dBov", levelDbov, measuredDbov, 2.0);
+        }
+    }
+}